@@ -0,0 +1,100 @@
+package net.mitrol.codec;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How codec throughput scales with cores. Each thread serves its own set of {@link MediaChannel}s round robin, one
+ * packet per operation, so with many channels per thread every packet finds its codec state cache cold as in a
+ * loaded server. Compare {@link #oneCore} with {@link #allCores}: on perfect scaling the time per packet stays the
+ * same, and 20 ms over it is the channels one core sustains.
+ * <p>
+ * The <code>churn</code> group adds call setup: one thread leases and gives back ciphers from a shared
+ * {@link CipherPool} while three run media, to see what call arrival rate costs the media threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class ChannelScalingBenchMark {
+
+    private static final int PACKETS = 50;
+
+    @State(Scope.Thread)
+    public static class Channels {
+
+        @Param({"PCMU", "PCMA", "G729", "OPUS"})
+        public String codec;
+
+        @Param({"1", "100", "1000"})
+        public int channelsPerThread;
+
+        private CipherKey key;
+        private MediaChannel[] channels;
+        private int next;
+
+        @Setup
+        public void setUp() {
+            key = MediaChannel.key(codec);
+            byte[][] packets = MediaChannel.speech(key, PACKETS);
+            channels = new MediaChannel[channelsPerThread];
+            for (int i = 0; i < channels.length; i++) {
+                channels[i] = new MediaChannel(key.create(), packets, i);
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            for (MediaChannel channel : channels) {
+                channel.dispose();
+            }
+        }
+
+        int process() {
+            int c = next;
+            next = c + 1 == channels.length ? 0 : c + 1;
+            return channels[c].process();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+
+        private final CipherPool pool = new CipherPool();
+
+        @TearDown
+        public void tearDown() {
+            pool.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int oneCore(Channels channels) {
+        return channels.process();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int allCores(Channels channels) {
+        return channels.process();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public int media(Channels channels) {
+        return channels.process();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public Cipher callSetup(Channels channels, Pool pool) {
+        Cipher cipher = pool.pool.acquire(channels.key);
+        cipher.dispose();
+        return cipher;
+    }
+}
@@ -2,68 +2,144 @@ package net.mitrol.codec;
 
 import org.openjdk.jmh.annotations.*;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Created by francisco.decuzzi on 02/09/2016.
+ * Cost of one 20 ms packet (8 kHz mono) through each codec: encode, decode and the round trip of a channel that
+ * does both. Every thread owns its cipher, created once and run over a few seconds of {@link SpeechSignal} in
+ * order, so codec state evolves as in a call and nothing is allocated per packet; the reported time per packet
+ * over 20 ms is the share of a core one channel needs. Buffers are heap or direct, little-endian like the PCM.
+ * <p>
+ * build.gradle runs the suite with the <code>gc</code> profiler: <code>gc.alloc.rate.norm</code> should stay
+ * near zero bytes per operation.
  */
-@BenchmarkMode(Mode.All)
-@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+@State(Scope.Thread)
 public class CipherPerformanceBenchMark {
 
-
     public static final String OPUS = "OPUS";
     public static final String G729 = "G729";
     public static final String PCMA = "PCMA";
     public static final String PCMU = "PCMU";
 
-    private static byte[] pcmData = new byte[320];
-    //@Param({PCMU, PCMA, G729, OPUS})
-    @Param({G729, OPUS})
+    private static final int SAMPLE_RATE = 8000;
+    private static final int PACKET_MILLIS = 20;
+    private static final int PCM_PACKET = 2 * SAMPLE_RATE * PACKET_MILLIS / 1000;
+    private static final int PACKETS = 250;
+
+    @Param({PCMU, PCMA, G729, OPUS})
     private String cipherName;
 
-    public static <T extends Cipher> byte[] encode(byte[] pcmData, T cipher) {
-        return cipher.encode(pcmData).get(0);
+    @Param({"false", "true"})
+    private boolean direct;
+
+    private Cipher encoder;
+    private Cipher decoder;
+    private Cipher channel;
+
+    // the whole signal, one packet after the other
+    private ByteBuffer pcm;
+    // the signal encoded, packet i at offsets[i]
+    private ByteBuffer encoded;
+    private int[] offsets;
+    private ByteBuffer packetOut;
+    private ByteBuffer pcmOut;
+    private int packet;
+
+    @Setup
+    public void setUp() {
+        encoder = initCipher(cipherName);
+        decoder = initCipher(cipherName);
+        channel = initCipher(cipherName);
+
+        pcm = allocate(PACKETS * PCM_PACKET);
+        pcm.put(SpeechSignal.generate(SAMPLE_RATE, PACKETS * PACKET_MILLIS, 1)).clear();
+        packetOut = allocate(PCM_PACKET);
+        pcmOut = allocate(PCM_PACKET);
+
+        // encode the signal once, with a cipher of its own so the benchmark ones start fresh
+        Cipher warm = initCipher(cipherName);
+        encoded = allocate(PACKETS * PCM_PACKET);
+        offsets = new int[PACKETS + 1];
+        for (int i = 0; i < PACKETS; i++) {
+            slice(pcm, i * PCM_PACKET, PCM_PACKET);
+            warm.encode(pcm, encoded);
+            offsets[i + 1] = encoded.position();
+        }
+        warm.dispose();
+        pcm.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoder.dispose();
+        decoder.dispose();
+        channel.dispose();
     }
 
-    public static <T extends Cipher> byte[] decode(byte[] encryptedData, T cipher) {
-        return cipher.decode(encryptedData);
+    @Benchmark
+    public int encode() {
+        int p = next();
+        slice(pcm, p * PCM_PACKET, PCM_PACKET);
+        packetOut.clear();
+        return encoder.encode(pcm, packetOut);
     }
 
     @Benchmark
-    @Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.NANOSECONDS)
-    @Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.NANOSECONDS)
-    public void encode() {
-        Cipher cipher = initCipher(cipherName);
-        cipher.encode(pcmData);
+    public int decode() {
+        int p = next();
+        slice(encoded, offsets[p], offsets[p + 1] - offsets[p]);
+        pcmOut.clear();
+        return decoder.decode(encoded, pcmOut);
     }
 
+    /**
+     * One packet each way, what a transcoding leg costs.
+     */
     @Benchmark
-    @Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.NANOSECONDS)
-    @Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.NANOSECONDS)
-    public void decode() {
-        Cipher cipher = initCipher(cipherName);
-        byte[] toDecode = new byte[pcmData.length / (cipher.getCompressionRate().isPresent() ? cipher.getCompressionRate().get() : 8)];
-        cipher.decode(toDecode);
+    public int roundTrip() {
+        int p = next();
+        slice(pcm, p * PCM_PACKET, PCM_PACKET);
+        packetOut.clear();
+        channel.encode(pcm, packetOut);
+        packetOut.flip();
+        pcmOut.clear();
+        return channel.decode(packetOut, pcmOut);
     }
 
-    private Cipher initCipher(String cipherName) {
-        Cipher cipher = null;
+    private int next() {
+        int p = packet;
+        packet = p + 1 == PACKETS ? 0 : p + 1;
+        return p;
+    }
+
+    private ByteBuffer allocate(int size) {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void slice(ByteBuffer buffer, int offset, int length) {
+        buffer.limit(offset + length).position(offset);
+    }
+
+    private static Cipher initCipher(String cipherName) {
         switch (cipherName) {
             case PCMU:
-                cipher = new PCMUCipher();
-                break;
+                return new PCMUCipher();
             case PCMA:
-                cipher = new PCMACipher();
-                break;
+                return new PCMACipher();
             case G729:
-                cipher = new G729Cipher();
-                break;
+                return new G729Cipher();
             case OPUS:
-                cipher = new OpusCipher(8000, 1);
-                break;
+                return new OpusCipher(SAMPLE_RATE, 1);
+            default:
+                throw new IllegalArgumentException(cipherName);
         }
-        return cipher;
     }
-
 }
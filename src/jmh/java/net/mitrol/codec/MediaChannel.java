@@ -0,0 +1,95 @@
+package net.mitrol.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * One transcoding leg for the scaling benchmarks: each {@link #process()} takes the next received packet, decodes
+ * it and encodes the audio back, the codec work a media server does per channel every packet time. Channels of a
+ * codec replay the same speech, encoded once by {@link #speech}, each through its own cipher.
+ */
+public final class MediaChannel {
+
+    public static final int SAMPLE_RATE = 8000;
+    public static final int PACKET_MILLIS = 20;
+    public static final int PCM_PACKET = 2 * SAMPLE_RATE * PACKET_MILLIS / 1000;
+
+    private final Cipher cipher;
+    private final byte[][] packets;
+    private final ByteBuffer in = ByteBuffer.allocate(PCM_PACKET);
+    private final ByteBuffer pcm = ByteBuffer.allocate(PCM_PACKET).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer out = ByteBuffer.allocate(PCM_PACKET);
+    private int packet;
+
+    /**
+     * @param cipher  the channel's own cipher
+     * @param packets packets of the cipher's codec, from {@link #speech}
+     * @param offset  first packet, so channels are not in lockstep
+     */
+    public MediaChannel(Cipher cipher, byte[][] packets, int offset) {
+        this.cipher = cipher;
+        this.packets = packets;
+        this.packet = Math.floorMod(offset, packets.length);
+    }
+
+    /**
+     * Decodes the next packet and encodes it again.
+     *
+     * @return the size of the encoded packet
+     */
+    public int process() {
+        byte[] data = packets[packet];
+        packet = packet + 1 == packets.length ? 0 : packet + 1;
+
+        in.clear();
+        in.put(data).flip();
+        pcm.clear();
+        cipher.decode(in, pcm);
+        pcm.flip();
+        out.clear();
+        return cipher.encode(pcm, out);
+    }
+
+    public void dispose() {
+        cipher.dispose();
+    }
+
+    /**
+     * Encodes <code>count</code> packets of {@link SpeechSignal} with a cipher of <code>key</code>.
+     */
+    public static byte[][] speech(CipherKey key, int count) {
+        Cipher cipher = key.create();
+        try {
+            ByteBuffer pcm = ByteBuffer.wrap(SpeechSignal.generate(SAMPLE_RATE, count * PACKET_MILLIS, 1));
+            ByteBuffer out = ByteBuffer.allocate(PCM_PACKET);
+            byte[][] packets = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                pcm.limit((i + 1) * PCM_PACKET).position(i * PCM_PACKET);
+                out.clear();
+                cipher.encode(pcm, out);
+                out.flip();
+                packets[i] = new byte[out.remaining()];
+                out.get(packets[i]);
+            }
+            return packets;
+        } finally {
+            cipher.dispose();
+        }
+    }
+
+    /**
+     * @param codec PCMA, PCMU, G729 or OPUS
+     */
+    public static CipherKey key(String codec) {
+        switch (CipherKey.Codec.valueOf(codec)) {
+            case PCMA:
+                return CipherKey.pcma();
+            case PCMU:
+                return CipherKey.pcmu();
+            case G729:
+                return CipherKey.g729();
+            default:
+                return CipherKey.opus(SAMPLE_RATE, 1);
+        }
+    }
+}
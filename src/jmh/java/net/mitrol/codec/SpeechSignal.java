@@ -0,0 +1,89 @@
+package net.mitrol.codec;
+
+import java.util.Random;
+
+/**
+ * Synthetic speech for the benchmarks, 16-bit little-endian PCM: voiced syllables from a glottal pulse train with a
+ * moving pitch shaped by three vowel formants, unvoiced fricative bursts and short pauses of background noise. Codec
+ * searches (pitch, codebooks, VAD) do the same work on it as on a real talker, unlike on silence or a pure tone.
+ * The signal only depends on the seed, so runs compare.
+ */
+public final class SpeechSignal {
+
+    // first three formants of /a/, /e/, /i/, /o/, /u/
+    private static final double[][] VOWELS = {
+            {730, 1090, 2440}, {530, 1840, 2480}, {270, 2290, 3010}, {570, 840, 2410}, {300, 870, 2240}
+    };
+    private static final double[] BANDWIDTHS = {90, 110, 170};
+
+    private SpeechSignal() {
+    }
+
+    /**
+     * @param sampleRate samples per second
+     * @param millis     length of the signal
+     * @param seed       random seed
+     * @return PCM, 2 bytes per sample
+     */
+    public static byte[] generate(int sampleRate, int millis, long seed) {
+        Random random = new Random(seed);
+        int samples = sampleRate * millis / 1000;
+        byte[] pcm = new byte[2 * samples];
+
+        // resonator memories, one two-pole filter per formant
+        double[] y1 = new double[3], y2 = new double[3];
+        double phase = 0;
+        int i = 0;
+        while (i < samples) {
+            // a syllable: 120-300 ms, 20% unvoiced, then a 40-160 ms pause
+            int length = Math.min(samples - i, sampleRate * (120 + random.nextInt(180)) / 1000);
+            boolean voiced = random.nextInt(5) != 0;
+            double[] vowel = VOWELS[random.nextInt(VOWELS.length)];
+            double pitch = 90 + random.nextInt(130);
+            double glide = (random.nextDouble() - 0.5) * 0.4 * pitch;
+            double gain = 0.4 + 0.6 * random.nextDouble();
+
+            double[] a1 = new double[3], a2 = new double[3];
+            for (int f = 0; f < 3; f++) {
+                double r = Math.exp(-Math.PI * BANDWIDTHS[f] / sampleRate);
+                a1[f] = 2 * r * Math.cos(2 * Math.PI * vowel[f] / sampleRate);
+                a2[f] = -r * r;
+            }
+
+            for (int n = 0; n < length; n++, i++) {
+                double excitation;
+                if (voiced) {
+                    phase += (pitch + glide * n / length) / sampleRate;
+                    // a decaying glottal pulse per pitch period plus a little aspiration
+                    excitation = (phase - Math.floor(phase) < 0.1 ? 1 : 0) + 0.02 * random.nextGaussian();
+                } else {
+                    excitation = 0.3 * random.nextGaussian();
+                }
+
+                double out = 0;
+                for (int f = 0; f < 3; f++) {
+                    double y = excitation + a1[f] * y1[f] + a2[f] * y2[f];
+                    y2[f] = y1[f];
+                    y1[f] = y;
+                    out += y / (f + 1);
+                }
+
+                // raised cosine envelope over the syllable
+                double envelope = 0.5 - 0.5 * Math.cos(2 * Math.PI * n / length);
+                store(pcm, i, gain * envelope * out * (voiced ? 900 : 2500));
+            }
+
+            int pause = Math.min(samples - i, sampleRate * (40 + random.nextInt(120)) / 1000);
+            for (int n = 0; n < pause; n++, i++) {
+                store(pcm, i, 30 * random.nextGaussian());
+            }
+        }
+        return pcm;
+    }
+
+    private static void store(byte[] pcm, int i, double value) {
+        int s = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+        pcm[2 * i] = (byte) s;
+        pcm[2 * i + 1] = (byte) (s >> 8);
+    }
+}
@@ -0,0 +1,71 @@
+package net.mitrol.codec.g729;
+
+import net.mitrol.codec.G729Cipher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per frame cost of each {@link G729Cipher.Mode}, 10 ms frames straight between arrays. Every thread owns its
+ * codecs, so running with <code>-t</code> shows how each mode scales when the cores are busy.
+ */
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class G729ModeBenchMark {
+
+    private static final int FRAMES = 50;
+
+    @Param({"FLOAT", "FLOAT_ANNEX_A"})
+    private G729Cipher.Mode mode;
+
+    private FrameEncoder encoder;
+    private FrameDecoder decoder;
+    private byte[] pcm;
+    private byte[] encoded;
+    private byte[] decoded;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        encoder = mode.newEncoder();
+        decoder = mode.newDecoder();
+
+        // half a second of a voiced-like signal, looped so the pitch and gain searches see real work
+        pcm = new byte[FRAMES * G729Cipher.PCM_FRAME_SIZE];
+        for (int i = 0; i < pcm.length / 2; i++) {
+            double t = (double) i / 8000;
+            short s = (short) (6000 * Math.sin(2 * Math.PI * 140 * t) + 3000 * Math.sin(2 * Math.PI * 420 * t)
+                    + 1500 * Math.sin(2 * Math.PI * 980 * t));
+            pcm[2 * i] = (byte) s;
+            pcm[2 * i + 1] = (byte) (s >> 8);
+        }
+        encoded = new byte[FRAMES * G729Cipher.ENCODED_FRAME_SIZE];
+        for (int f = 0; f < FRAMES; f++) {
+            encoder.process(pcm, f * G729Cipher.PCM_FRAME_SIZE, encoded, f * G729Cipher.ENCODED_FRAME_SIZE);
+        }
+        decoded = new byte[G729Cipher.PCM_FRAME_SIZE];
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        int f = next();
+        encoder.process(pcm, f * G729Cipher.PCM_FRAME_SIZE, encoded, f * G729Cipher.ENCODED_FRAME_SIZE);
+        return encoded;
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        decoder.process(encoded, next() * G729Cipher.ENCODED_FRAME_SIZE, decoded, 0);
+        return decoded;
+    }
+
+    private int next() {
+        int f = frame;
+        frame = f + 1 == FRAMES ? 0 : f + 1;
+        return f;
+    }
+}
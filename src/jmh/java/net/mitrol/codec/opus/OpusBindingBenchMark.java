@@ -0,0 +1,100 @@
+package net.mitrol.codec.opus;
+
+import com.sun.jna.Memory;
+import com.sun.jna.ptr.PointerByReference;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per call cost of the interface-mapped {@link Opus} binding (proxy dispatch, heap buffers marshalled on every call)
+ * against the direct-mapped {@link OpusDirect} binding with reused native memory, 20 ms frames at 8 kHz mono.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class OpusBindingBenchMark {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int FRAME_SIZE = SAMPLE_RATE / 50;
+    private static final int MAX_PACKET = 1 + 1275;
+
+    private PointerByReference encoder;
+    private PointerByReference decoder;
+
+    // interface mapping
+    private ShortBuffer pcmBuffer;
+    private ByteBuffer packetBuffer;
+    private byte[] packet;
+    private ShortBuffer decodedBuffer;
+
+    // direct mapping
+    private Memory pcmMemory;
+    private Memory packetMemory;
+    private Memory decodedMemory;
+    private int packetLength;
+
+    @Setup
+    public void setUp() {
+        encoder = Opus.INSTANCE.opus_encoder_create(SAMPLE_RATE, 1, Opus.OPUS_APPLICATION_VOIP, IntBuffer.allocate(1));
+        decoder = Opus.INSTANCE.opus_decoder_create(SAMPLE_RATE, 1, IntBuffer.allocate(1));
+
+        short[] samples = new short[FRAME_SIZE];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+        }
+        pcmBuffer = ShortBuffer.wrap(samples);
+        packetBuffer = ByteBuffer.allocate(MAX_PACKET);
+        decodedBuffer = ShortBuffer.allocate(FRAME_SIZE);
+
+        pcmMemory = new Memory(2 * FRAME_SIZE);
+        pcmMemory.write(0, samples, 0, samples.length);
+        packetMemory = new Memory(MAX_PACKET);
+        decodedMemory = new Memory(2 * FRAME_SIZE);
+
+        packetLength = OpusDirect.opus_encode(encoder.getPointer(), pcmMemory, FRAME_SIZE, packetMemory, MAX_PACKET);
+        packet = packetMemory.getByteArray(0, packetLength);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Opus.INSTANCE.opus_encoder_destroy(encoder);
+        Opus.INSTANCE.opus_decoder_destroy(decoder);
+    }
+
+    @Benchmark
+    public int encodeInterface() {
+        return Opus.INSTANCE.opus_encode(encoder, pcmBuffer, FRAME_SIZE, packetBuffer, MAX_PACKET);
+    }
+
+    @Benchmark
+    public int encodeDirect() {
+        return OpusDirect.opus_encode(encoder.getPointer(), pcmMemory, FRAME_SIZE, packetMemory, MAX_PACKET);
+    }
+
+    @Benchmark
+    public int decodeInterface() {
+        return Opus.INSTANCE.opus_decode(decoder, packet, packetLength, decodedBuffer, FRAME_SIZE, 0);
+    }
+
+    @Benchmark
+    public int decodeDirect() {
+        return OpusDirect.opus_decode(decoder.getPointer(), packetMemory, packetLength, decodedMemory, FRAME_SIZE, 0);
+    }
+
+    @Benchmark
+    public int ctlInterface() {
+        return Opus.INSTANCE.opus_encoder_ctl(encoder, Opus.OPUS_SET_COMPLEXITY_REQUEST, 5);
+    }
+
+    @Benchmark
+    public int ctlDirect() {
+        return OpusDirect.opus_encoder_ctl(encoder.getPointer(), Opus.OPUS_SET_COMPLEXITY_REQUEST, 5);
+    }
+}
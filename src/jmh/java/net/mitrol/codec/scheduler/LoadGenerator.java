@@ -0,0 +1,266 @@
+package net.mitrol.codec.scheduler;
+
+import net.mitrol.codec.CipherKey;
+import net.mitrol.codec.MediaChannel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Capacity test: ramps the number of simulated channels, each a periodic 20 ms {@link Task} running one
+ * {@link MediaChannel} packet, through {@link Scheduler} or {@link EDFScheduler}, and reports per step the
+ * channels per core, the deadline miss rate and the worst execution time, stopping at the first step over the
+ * allowed miss rate. The last step within it is what the box sustains.
+ * <p>
+ * Run from the jmh jar:
+ * <pre>
+ * java -cp build/libs/*-jmh.jar net.mitrol.codec.scheduler.LoadGenerator -codec G729 -threads 8 -from 100 -step 100
+ * </pre>
+ * Options, with their defaults: <code>-scheduler scheduler|edf</code>, <code>-queue TaskQueue</code> (or
+ * SkipListTaskQueue, ConcurrentTaskQueue, TimingWheel, PartitionedTaskQueue), <code>-codec G729</code>,
+ * <code>-threads</code> the available processors, <code>-from 100 -to 100000 -step 100</code> channels,
+ * <code>-seconds 10</code> per step and <code>-maxMiss 0.01</code>.
+ */
+public final class LoadGenerator {
+
+    private static final long PERIOD = MediaChannel.PACKET_MILLIS * 1000000L;
+    private static final long TOLERANCE = 3000000L;
+    private static final long WARMUP = 2000000000L;
+
+    private final String scheduler;
+    private final String queue;
+    private final CipherKey key;
+    private final int threads;
+    private final byte[][] packets;
+    private final long wcet;
+
+    //region Step counters
+    private volatile boolean measuring;
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder lateness = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final AtomicLong worst = new AtomicLong();
+    //endregion
+
+    private LoadGenerator(String scheduler, String queue, String codec, int threads) {
+        this.scheduler = scheduler;
+        this.queue = queue;
+        this.key = MediaChannel.key(codec);
+        this.threads = threads;
+        this.packets = MediaChannel.speech(key, 50);
+        this.wcet = calibrate();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^-+", ""), args[i + 1]);
+        }
+        int threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int from = Integer.parseInt(options.getOrDefault("from", "100"));
+        int to = Integer.parseInt(options.getOrDefault("to", "100000"));
+        int step = Integer.parseInt(options.getOrDefault("step", "100"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "10"));
+        double maxMiss = Double.parseDouble(options.getOrDefault("maxMiss", "0.01"));
+
+        LoadGenerator generator = new LoadGenerator(options.getOrDefault("scheduler", "scheduler"),
+                options.getOrDefault("queue", "TaskQueue"), options.getOrDefault("codec", "G729"), threads);
+
+        System.out.printf("%s, %s, %s, %d threads, packet cost %d us%n", generator.scheduler, generator.queue,
+                generator.key.getCodec(), threads, generator.wcet / 1000);
+        System.out.printf("%9s %9s %9s %10s %9s %12s %11s %7s%n",
+                "channels", "admitted", "per core", "packets", "miss rate", "mean late us", "worst us", "busy");
+
+        int sustained = 0;
+        for (int channels = from; channels <= to; channels += step) {
+            int admitted = generator.step(channels, seconds, maxMiss);
+            if (admitted < 0) {
+                break;
+            }
+            sustained = admitted;
+            if (admitted < channels) {
+                //EDF admission is full, more channels would only be refused
+                break;
+            }
+        }
+        System.out.printf("sustained %d channels, %.1f per core%n", sustained, (double) sustained / threads);
+    }
+
+    /**
+     * Runs <code>channels</code> channels for <code>seconds</code> after a warm up.
+     *
+     * @return the channels admitted, or -1 when over <code>maxMiss</code>
+     */
+    private int step(int channels, int seconds, double maxMiss) throws InterruptedException {
+        measuring = false;
+        runs.reset();
+        misses.reset();
+        lateness.reset();
+        busy.reset();
+        worst.set(0);
+
+        Scheduler shared = null;
+        EDFScheduler edf = null;
+        if (scheduler.equals("edf")) {
+            edf = new EDFScheduler(threads);
+            edf.setClock(new DefaultClock());
+            edf.start();
+        } else {
+            shared = new Scheduler(threads, newQueue());
+            shared.setClock(new DefaultClock());
+            shared.start();
+        }
+
+        //spread the channels over the packet time
+        long start = System.nanoTime() + 10000000L;
+        ChannelTask[] tasks = new ChannelTask[channels];
+        int admitted = 0;
+        for (int i = 0; i < channels; i++) {
+            ChannelTask task = new ChannelTask(shared, edf, new MediaChannel(key.create(), packets, i), i,
+                    start + PERIOD * i / channels);
+            if (edf == null) {
+                shared.submit(task);
+            } else if (!edf.submit(task)) {
+                task.channel.dispose();
+                continue;
+            }
+            tasks[admitted++] = task;
+        }
+
+        Thread.sleep(WARMUP / 1000000L);
+        measuring = true;
+        long began = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        measuring = false;
+        long elapsed = System.nanoTime() - began;
+
+        for (int i = 0; i < admitted; i++) {
+            tasks[i].stop();
+        }
+        if (edf == null) {
+            shared.stop();
+        } else {
+            edf.stop();
+        }
+        //both stop() wait for their threads, no process() is running past this point
+        for (int i = 0; i < admitted; i++) {
+            tasks[i].channel.dispose();
+        }
+
+        long packets = runs.sum();
+        double missRate = packets > 0 ? (double) misses.sum() / packets : 1;
+        System.out.printf("%9d %9d %9.1f %10d %9.4f %12d %11d %6.1f%%%n", channels, admitted,
+                (double) admitted / threads, packets, missRate, packets > 0 ? lateness.sum() / packets / 1000 : 0,
+                worst.get() / 1000, 100.0 * busy.sum() / elapsed / threads);
+        return missRate > maxMiss ? -1 : admitted;
+    }
+
+    private TaskQueue newQueue() {
+        switch (queue) {
+            case "TaskQueue":
+                return new TaskQueue();
+            case "SkipListTaskQueue":
+                return new SkipListTaskQueue();
+            case "ConcurrentTaskQueue":
+                return new ConcurrentTaskQueue();
+            case "TimingWheel":
+                return new TimingWheel();
+            case "PartitionedTaskQueue":
+                return new PartitionedTaskQueue(threads);
+            default:
+                throw new IllegalArgumentException("Unknown queue " + queue);
+        }
+    }
+
+    //worst of a few hundred packets on one warm channel, the declared cost for EDF admission
+    private long calibrate() {
+        MediaChannel channel = new MediaChannel(key.create(), packets, 0);
+        long worst = 0;
+        for (int i = 0; i < 1000; i++) {
+            long begin = System.nanoTime();
+            channel.process();
+            if (i >= 500) {
+                worst = Math.max(worst, System.nanoTime() - begin);
+            }
+        }
+        channel.dispose();
+        return worst;
+    }
+
+    /**
+     * A channel's packet time: runs one packet when released and counts a miss when it starts more than the
+     * scheduler tolerance late.
+     */
+    private final class ChannelTask extends Task {
+
+        private final EDFScheduler edf;
+        private final MediaChannel channel;
+        private volatile boolean stopped;
+
+        ChannelTask(Scheduler scheduler, EDFScheduler edf, MediaChannel channel, int id, long release) {
+            super(scheduler);
+            this.edf = edf;
+            this.channel = channel;
+            this.interarrivalTime = PERIOD;
+            setAffinity(id);
+            if (edf == null) {
+                //Scheduler runs a task at its dead line and queues it again a period later
+                setDeadLine(release);
+            } else {
+                //EDF releases it at the start of the period and orders by its end
+                this.releaseTime = release;
+                setDeadLine(release + PERIOD);
+            }
+        }
+
+        @Override
+        public long getPriority() {
+            return 0;
+        }
+
+        @Override
+        public long getDuration() {
+            return wcet;
+        }
+
+        @Override
+        public long perform() {
+            long begin = System.nanoTime();
+            long release = edf == null ? getDeadLine() : releaseTime;
+            channel.process();
+            long end = System.nanoTime();
+
+            if (measuring) {
+                long late = begin - release;
+                runs.increment();
+                lateness.add(Math.max(0, late));
+                if (late > TOLERANCE) {
+                    misses.increment();
+                }
+                busy.add(end - begin);
+                long duration = end - begin;
+                long w;
+                while (duration > (w = worst.get()) && !worst.compareAndSet(w, duration)) ;
+            }
+
+            if (edf != null && !stopped) {
+                releaseTime += PERIOD;
+                setDeadLine(getDeadLine() + PERIOD);
+                edf.submit(this);
+            }
+            return 0;
+        }
+
+        void stop() {
+            stopped = true;
+            if (edf == null) {
+                cancel();
+            } else {
+                edf.release(this);
+            }
+        }
+    }
+}
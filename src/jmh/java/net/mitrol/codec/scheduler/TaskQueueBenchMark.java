@@ -0,0 +1,98 @@
+package net.mitrol.codec.scheduler;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of one scheduling cycle of a periodic task, polled when due and queued again one period later, against the
+ * number of live tasks, for each queue implementation. The queue is shared by all benchmark threads, so running
+ * with <code>-t</code> adds the contention of several CPU threads. Time is virtual and moves forward whenever a
+ * thread finds nothing due.
+ */
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskQueueBenchMark {
+
+    private static final long PERIOD = 20000000L;
+    private static final long STEP = 100000L;
+
+    @Param({"TaskQueue", "ConcurrentTaskQueue", "SkipListTaskQueue", "TimingWheel"})
+    private String queue;
+
+    @Param({"1000", "20000"})
+    private int tasks;
+
+    private TaskQueue taskQueue;
+    private final AtomicLong time = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        switch (queue) {
+            case "TaskQueue":
+                taskQueue = new TaskQueue();
+                break;
+            case "ConcurrentTaskQueue":
+                taskQueue = new ConcurrentTaskQueue();
+                break;
+            case "SkipListTaskQueue":
+                taskQueue = new SkipListTaskQueue();
+                break;
+            case "TimingWheel":
+                taskQueue = new TimingWheel();
+                break;
+            default:
+                throw new IllegalArgumentException(queue);
+        }
+
+        // start well clear of zero, which TaskQueue reads as empty, and spread the tasks over one period
+        long start = 1000000000L;
+        time.set(start);
+        for (int i = 0; i < tasks; i++) {
+            MediaTask task = new MediaTask();
+            task.setDeadLine(start + PERIOD * i / tasks);
+            taskQueue.accept(task);
+        }
+    }
+
+    @Benchmark
+    public Task cycle() {
+        for (; ; ) {
+            long now = time.get();
+            Task task = taskQueue.poll(now);
+            if (task != null) {
+                task.setDeadLine(task.getDeadLine() + PERIOD);
+                taskQueue.accept(task);
+                return task;
+            }
+            time.compareAndSet(now, now + STEP);
+        }
+    }
+
+    private static final class MediaTask extends Task {
+
+        MediaTask() {
+            super(null);
+        }
+
+        @Override
+        public long getPriority() {
+            return 0;
+        }
+
+        @Override
+        public long getDuration() {
+            return 0;
+        }
+
+        @Override
+        public long perform() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package net.mitrol.codec;
+
+/**
+ * Encodes or decodes one tick for many channels in a single call, instead of one {@link Cipher} call per leg.
+ * <p>
+ * A batch cipher owns the codec state of a fixed number of channel slots; slot <code>i</code> always processes
+ * channel <code>i</code> of the {@link ChannelBatch}. When a slot is handed to a new call it must be
+ * {@link #reset(int) reset}. Instances are not thread safe, use one per worker thread.
+ */
+public interface BatchCipher {
+
+    /**
+     * Creates a batch laid out for this codec with room for {@link #getChannels()} channels.
+     *
+     * @param frameMillis tick duration, a multiple of the codec frame duration
+     */
+    ChannelBatch createBatch(int frameMillis);
+
+    /**
+     * Encodes the PCM frame of every channel of the batch into its encoded frame.
+     */
+    void encode(ChannelBatch batch);
+
+    /**
+     * Decodes the encoded frame of every channel of the batch into its PCM frame.
+     */
+    void decode(ChannelBatch batch);
+
+    /**
+     * Number of channel slots.
+     */
+    int getChannels();
+
+    /**
+     * Clears the codec state of one channel slot.
+     */
+    void reset(int channel);
+}
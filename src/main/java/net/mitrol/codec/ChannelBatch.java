@@ -0,0 +1,84 @@
+package net.mitrol.codec;
+
+/**
+ * One tick worth of media for many channels, in a structure-of-arrays layout: the PCM frames of all channels are
+ * stored back to back in a single array, and so are the encoded frames. Channel <code>i</code> owns
+ * <code>pcm[i * pcmFrameSize]</code> and <code>encoded[i * encodedFrameSize]</code>, and is always bound to the
+ * same codec state slot of the {@link BatchCipher} that processes the batch.
+ * <p>
+ * PCM is 16-bit little-endian. Only the first {@link #size()} channels are processed.
+ */
+public final class ChannelBatch {
+
+    private final int capacity;
+    private final int pcmFrameSize;
+    private final int encodedFrameSize;
+    private final byte[] pcm;
+    private final byte[] encoded;
+    private int size;
+
+    /**
+     * @param capacity         maximum number of channels
+     * @param pcmFrameSize     PCM bytes per channel per tick
+     * @param encodedFrameSize encoded bytes per channel per tick
+     */
+    public ChannelBatch(int capacity, int pcmFrameSize, int encodedFrameSize) {
+        if (capacity <= 0 || pcmFrameSize <= 0 || encodedFrameSize <= 0) {
+            throw new IllegalArgumentException("capacity and frame sizes must be positive");
+        }
+        this.capacity = capacity;
+        this.pcmFrameSize = pcmFrameSize;
+        this.encodedFrameSize = encodedFrameSize;
+        this.pcm = new byte[capacity * pcmFrameSize];
+        this.encoded = new byte[capacity * encodedFrameSize];
+        this.size = capacity;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of channels processed, channels <code>0..size-1</code>.
+     */
+    public int size() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        if (size < 0 || size > capacity) {
+            throw new IllegalArgumentException("size " + size + " out of [0, " + capacity + "]");
+        }
+        this.size = size;
+    }
+
+    public int getPcmFrameSize() {
+        return pcmFrameSize;
+    }
+
+    public int getEncodedFrameSize() {
+        return encodedFrameSize;
+    }
+
+    /**
+     * PCM frames of all channels, channel <code>i</code> at {@link #pcmOffset(int)}.
+     */
+    public byte[] getPcm() {
+        return pcm;
+    }
+
+    /**
+     * Encoded frames of all channels, channel <code>i</code> at {@link #encodedOffset(int)}.
+     */
+    public byte[] getEncoded() {
+        return encoded;
+    }
+
+    public int pcmOffset(int channel) {
+        return channel * pcmFrameSize;
+    }
+
+    public int encodedOffset(int channel) {
+        return channel * encodedFrameSize;
+    }
+}
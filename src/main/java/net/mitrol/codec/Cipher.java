@@ -1,5 +1,6 @@
 package net.mitrol.codec;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Optional;
 
@@ -9,7 +10,51 @@ import java.util.Optional;
 public interface Cipher {
     List<byte[]> encode(byte[] data);
     byte[] decode(byte[]... packets);
+
+    /**
+     * Encodes 16-bit little-endian PCM read from <code>pcmIn</code> into <code>out</code> without
+     * intermediate copies. Both buffers may be heap or direct; reading and writing start at their
+     * current positions, and positions are advanced past whatever was consumed and produced.
+     *
+     * @return the number of bytes written to <code>out</code>
+     */
+    int encode(ByteBuffer pcmIn, ByteBuffer out);
+
+    /**
+     * Decodes the encoded data read from <code>in</code> into 16-bit little-endian PCM written to
+     * <code>pcmOut</code>. Follows the same buffer conventions as {@link #encode(ByteBuffer, ByteBuffer)}.
+     *
+     * @return the number of bytes written to <code>pcmOut</code>
+     */
+    int decode(ByteBuffer in, ByteBuffer pcmOut);
+
+    /**
+     * Conceals <code>frames</code> lost frames with the codec's own packet loss concealment, writing 16-bit
+     * little-endian PCM to <code>pcmOut</code> and advancing its position. Frames are 10 ms for G.711 and G.729
+     * and one packet for Opus; stops early when <code>pcmOut</code> has no room for another one. Use this rather
+     * than decoding made up packets to fill a gap: it is cheaper and the decoder state stays consistent.
+     *
+     * @return the number of bytes written to <code>pcmOut</code>
+     */
+    int decodeLost(int frames, ByteBuffer pcmOut);
+
+    /**
+     * Decodes the redundant copy of a lost packet that codecs with in-band forward error correction carry in the
+     * packet after it, <code>next</code>, which is left unread. Codecs without FEC write nothing, the caller then
+     * falls back to {@link #decodeLost(int, ByteBuffer)}.
+     *
+     * @return the number of bytes written to <code>pcmOut</code>, 0 when the codec has no FEC
+     */
+    default int decodeFec(ByteBuffer next, ByteBuffer pcmOut) {
+        return 0;
+    }
     Optional<Integer> getCompressionRate();
+
+    /**
+     * Clears the codec state (filter memories, predictors, ...) so the instance can be reused for a new
+     * stream as if it had just been created. Buffers are kept, nothing is reallocated.
+     */
+    void reset();
     void dispose();
 
 }
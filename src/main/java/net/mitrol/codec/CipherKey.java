@@ -0,0 +1,145 @@
+package net.mitrol.codec;
+
+import net.mitrol.codec.jfr.FlightEvents;
+
+/**
+ * Identifies a {@link Cipher} configuration: the codec plus every parameter that affects how an instance is built.
+ * Two keys are equal when their ciphers are interchangeable, which is what {@link CipherPool} relies on.
+ */
+public final class CipherKey {
+
+    public enum Codec {
+        PCMA, PCMU, G729, OPUS
+    }
+
+    private static final CipherKey PCMA = new CipherKey(Codec.PCMA, 8000, 1, null, null);
+    private static final CipherKey PCMU = new CipherKey(Codec.PCMU, 8000, 1, null, null);
+    private static final CipherKey G729 = new CipherKey(Codec.G729, 8000, 1, null, G729Cipher.Mode.FLOAT);
+    private static final CipherKey G729_ANNEX_A = new CipherKey(Codec.G729, 8000, 1, null, G729Cipher.Mode.FLOAT_ANNEX_A);
+
+    private final Codec codec;
+    private final int sampleRate;
+    private final int channels;
+    // copied out of OpusCipherOptions, which is mutable
+    private final int complexity;
+    private final int bandwidth;
+    private final int signalType;
+    private final int applicationType;
+    private final G729Cipher.Mode g729Mode;
+
+    private CipherKey(Codec codec, int sampleRate, int channels, OpusCipherOptions options, G729Cipher.Mode g729Mode) {
+        this.codec = codec;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.complexity = options == null ? 0 : options.getComplexity();
+        this.bandwidth = options == null ? 0 : options.getBandwidth();
+        this.signalType = options == null ? 0 : options.getSignalType();
+        this.applicationType = options == null ? 0 : options.getApplicationType();
+        this.g729Mode = g729Mode;
+    }
+
+    public static CipherKey pcma() {
+        return PCMA;
+    }
+
+    public static CipherKey pcmu() {
+        return PCMU;
+    }
+
+    public static CipherKey g729() {
+        return G729;
+    }
+
+    public static CipherKey g729(G729Cipher.Mode mode) {
+        switch (mode) {
+            case FLOAT_ANNEX_A:
+                return G729_ANNEX_A;
+            default:
+                return G729;
+        }
+    }
+
+    public static CipherKey opus(int sampleRate, int channels) {
+        return opus(sampleRate, channels, new OpusCipherOptions());
+    }
+
+    public static CipherKey opus(int sampleRate, int channels, OpusCipherOptions options) {
+        return new CipherKey(Codec.OPUS, sampleRate, channels, options, null);
+    }
+
+    /**
+     * Builds a new cipher for this configuration.
+     */
+    public Cipher create() {
+        FlightEvents.init();
+        switch (codec) {
+            case PCMA:
+                return new PCMACipher();
+            case PCMU:
+                return new PCMUCipher();
+            case G729:
+                return new G729Cipher(g729Mode);
+            case OPUS:
+                OpusCipherOptions options = new OpusCipherOptions();
+                options.setComplexity(complexity);
+                options.setBandwidth(bandwidth);
+                options.setSignalType(signalType);
+                options.setApplicationType(applicationType);
+                return new OpusCipher(sampleRate, channels, options);
+            default:
+                throw new IllegalStateException("Unknown codec " + codec);
+        }
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CipherKey)) {
+            return false;
+        }
+        CipherKey that = (CipherKey) o;
+        return codec == that.codec && sampleRate == that.sampleRate && channels == that.channels
+                && complexity == that.complexity && bandwidth == that.bandwidth
+                && signalType == that.signalType && applicationType == that.applicationType
+                && g729Mode == that.g729Mode;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = codec.hashCode();
+        result = 31 * result + sampleRate;
+        result = 31 * result + channels;
+        result = 31 * result + complexity;
+        result = 31 * result + bandwidth;
+        result = 31 * result + signalType;
+        result = 31 * result + applicationType;
+        result = 31 * result + (g729Mode == null ? 0 : g729Mode.hashCode());
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (g729Mode != null && g729Mode != G729Cipher.Mode.FLOAT) {
+            return codec + "/" + g729Mode;
+        }
+        if (codec != Codec.OPUS) {
+            return codec.name();
+        }
+        return codec + "/" + sampleRate + "/" + channels + "[complexity=" + complexity + ", bandwidth=" + bandwidth
+                + ", signal=" + signalType + ", application=" + applicationType + "]";
+    }
+}
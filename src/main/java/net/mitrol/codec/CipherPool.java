@@ -0,0 +1,347 @@
+package net.mitrol.codec;
+
+import org.apache.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of reusable {@link Cipher} sessions, partitioned by {@link CipherKey}.
+ * <p>
+ * {@link #acquire(CipherKey)} hands out an idle instance of the requested configuration when there is one and only
+ * builds a new cipher otherwise. Calling {@link Cipher#dispose()} on the returned cipher gives it back: its state is
+ * {@link Cipher#reset() reset} (G.729 re-initialised in place, Opus through <code>OPUS_RESET_STATE</code>) and it goes
+ * back to the idle list, so the next call setup skips the codec initialisation and, for Opus, the native
+ * <code>*_create</code> and ctl calls.
+ * <p>
+ * Each key holds at most {@link #getCapacity()} live instances (idle plus leased). When that limit is reached
+ * {@link #acquire(CipherKey)} fails instead of growing the pool. Idle lists are LIFO so the most recently used,
+ * cache-warm instance is handed out first. All methods are thread safe.
+ */
+public class CipherPool {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final Logger logger = Logger.getLogger(CipherPool.class);
+
+    private final int capacity;
+    private final boolean instrumented;
+    private final ConcurrentHashMap<CipherKey, Partition> partitions = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    //region Metrics
+    private final LongAdder created = new LongAdder();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder resetFailures = new LongAdder();
+    //endregion
+
+    public CipherPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of live ciphers per key
+     */
+    public CipherPool(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * @param capacity     maximum number of live ciphers per key
+     * @param instrumented build {@link InstrumentedCipher}s recording into {@link CodecMetrics}
+     */
+    public CipherPool(int capacity, boolean instrumented) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.instrumented = instrumented;
+    }
+
+    /**
+     * Returns a ready to use cipher for <code>key</code>. Dispose it to give it back to the pool.
+     *
+     * @throws IllegalStateException when the key already has {@link #getCapacity()} live ciphers or the pool is closed
+     */
+    public Cipher acquire(CipherKey key) {
+        if (closed) {
+            throw new IllegalStateException("CipherPool is closed");
+        }
+        Partition partition = partition(key);
+
+        PooledCipher cipher = partition.poll();
+        if (cipher != null) {
+            reused.increment();
+        } else {
+            cipher = partition.create();
+            if (cipher == null) {
+                rejected.increment();
+                throw new IllegalStateException("CipherPool exhausted for " + key + ": " + capacity + " ciphers in use");
+            }
+        }
+        if (closed) {
+            //close() ran meanwhile and may have missed this one
+            partition.destroy(cipher);
+            throw new IllegalStateException("CipherPool is closed");
+        }
+        cipher.leased.set(true);
+        acquired.increment();
+        return cipher;
+    }
+
+    /**
+     * Builds ciphers for <code>key</code> ahead of time so the first calls don't pay for initialisation.
+     *
+     * @return the number of idle ciphers available for <code>key</code> afterwards
+     */
+    public int prestart(CipherKey key, int count) {
+        Partition partition = partition(key);
+        while (partition.idleCount.get() < count) {
+            PooledCipher cipher = partition.create();
+            if (cipher == null) {
+                break;
+            }
+            partition.offer(cipher);
+        }
+        if (closed) {
+            drain(partition);
+        }
+        return partition.idleCount.get();
+    }
+
+    /**
+     * Disposes every idle cipher. Leased ciphers are disposed when they are given back.
+     */
+    public void close() {
+        closed = true;
+        for (Partition partition : partitions.values()) {
+            drain(partition);
+        }
+    }
+
+    private static void drain(Partition partition) {
+        PooledCipher cipher;
+        while ((cipher = partition.poll()) != null) {
+            partition.destroy(cipher);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    //region Metrics
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    /**
+     * Acquisitions served from the idle list, without building a cipher.
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    public long getReleasedCount() {
+        return released.sum();
+    }
+
+    /**
+     * Acquisitions refused because the key was at capacity.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getDestroyedCount() {
+        return destroyed.sum();
+    }
+
+    public long getResetFailureCount() {
+        return resetFailures.sum();
+    }
+
+    public int getIdleCount() {
+        int idle = 0;
+        for (Partition partition : partitions.values()) {
+            idle += partition.idleCount.get();
+        }
+        return idle;
+    }
+
+    public int getActiveCount() {
+        int active = 0;
+        for (Partition partition : partitions.values()) {
+            active += partition.liveCount.get() - partition.idleCount.get();
+        }
+        return active;
+    }
+
+    public int getIdleCount(CipherKey key) {
+        Partition partition = partitions.get(key);
+        return partition == null ? 0 : partition.idleCount.get();
+    }
+
+    public int getActiveCount(CipherKey key) {
+        Partition partition = partitions.get(key);
+        return partition == null ? 0 : partition.liveCount.get() - partition.idleCount.get();
+    }
+    //endregion
+
+    private Partition partition(CipherKey key) {
+        Partition partition = partitions.get(key);
+        if (partition == null) {
+            partition = partitions.computeIfAbsent(key, Partition::new);
+        }
+        return partition;
+    }
+
+    private void release(PooledCipher cipher) {
+        if (!cipher.leased.compareAndSet(true, false)) {
+            throw new IllegalStateException("Cipher already returned to the pool");
+        }
+        released.increment();
+        Partition partition = cipher.partition;
+        if (closed) {
+            partition.destroy(cipher);
+            return;
+        }
+        try {
+            cipher.delegate.reset();
+        } catch (RuntimeException e) {
+            resetFailures.increment();
+            logger.warn("Discarding " + partition.key + " cipher, reset failed", e);
+            partition.destroy(cipher);
+            return;
+        }
+        partition.offer(cipher);
+        if (closed) {
+            //close() may have drained the partition between the check above and the offer
+            drain(partition);
+        }
+    }
+
+    private final class Partition {
+        final CipherKey key;
+        final ConcurrentLinkedDeque<PooledCipher> idle = new ConcurrentLinkedDeque<>();
+        final AtomicInteger idleCount = new AtomicInteger();
+        final AtomicInteger liveCount = new AtomicInteger();
+
+        Partition(CipherKey key) {
+            this.key = key;
+        }
+
+        PooledCipher poll() {
+            PooledCipher cipher = idle.pollFirst();
+            if (cipher != null) {
+                idleCount.decrementAndGet();
+            }
+            return cipher;
+        }
+
+        void offer(PooledCipher cipher) {
+            idleCount.incrementAndGet();
+            idle.offerFirst(cipher);
+        }
+
+        /**
+         * @return a new cipher, or null when the partition is at capacity
+         */
+        PooledCipher create() {
+            if (liveCount.incrementAndGet() > capacity) {
+                liveCount.decrementAndGet();
+                return null;
+            }
+            try {
+                PooledCipher cipher = new PooledCipher(this, instrumented ? InstrumentedCipher.create(key) : key.create());
+                created.increment();
+                return cipher;
+            } catch (RuntimeException | Error e) {
+                liveCount.decrementAndGet();
+                throw e;
+            }
+        }
+
+        void destroy(PooledCipher cipher) {
+            liveCount.decrementAndGet();
+            destroyed.increment();
+            cipher.delegate.dispose();
+        }
+    }
+
+    /**
+     * The handle given to callers. Allocated once per underlying cipher and reused across leases.
+     */
+    private final class PooledCipher implements Cipher {
+        final Partition partition;
+        final Cipher delegate;
+        final AtomicBoolean leased = new AtomicBoolean();
+
+        PooledCipher(Partition partition, Cipher delegate) {
+            this.partition = partition;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public List<byte[]> encode(byte[] data) {
+            return delegate.encode(data);
+        }
+
+        @Override
+        public byte[] decode(byte[]... packets) {
+            return delegate.decode(packets);
+        }
+
+        @Override
+        public int encode(ByteBuffer pcmIn, ByteBuffer out) {
+            return delegate.encode(pcmIn, out);
+        }
+
+        @Override
+        public int decode(ByteBuffer in, ByteBuffer pcmOut) {
+            return delegate.decode(in, pcmOut);
+        }
+
+        @Override
+        public int decodeLost(int frames, ByteBuffer pcmOut) {
+            return delegate.decodeLost(frames, pcmOut);
+        }
+
+        @Override
+        public int decodeFec(ByteBuffer next, ByteBuffer pcmOut) {
+            return delegate.decodeFec(next, pcmOut);
+        }
+
+        @Override
+        public Optional<Integer> getCompressionRate() {
+            return delegate.getCompressionRate();
+        }
+
+        @Override
+        public void reset() {
+            delegate.reset();
+        }
+
+        /**
+         * Gives the cipher back to the pool, it must not be used afterwards.
+         */
+        @Override
+        public void dispose() {
+            release(this);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net.mitrol.codec;
+
+/**
+ * Management view of the {@link CodecMetrics} of one codec, registered with {@link CodecMetrics#registerMBeans()}.
+ * Times are in nanoseconds.
+ */
+public interface CodecMetricsMXBean {
+
+    String getCodec();
+
+    long getEncodedPacketCount();
+
+    long getDecodedPacketCount();
+
+    long getPcmBytesIn();
+
+    long getEncodedBytesOut();
+
+    long getEncodedBytesIn();
+
+    long getPcmBytesOut();
+
+    long getConcealCallCount();
+
+    long getConcealedFrameCount();
+
+    long getFecCallCount();
+
+    long getFecRecoveredCount();
+
+    long getNativeCallCount();
+
+    double getEncodeTimeMean();
+
+    long getEncodeTimeP99();
+
+    long getEncodeTimeMax();
+
+    double getDecodeTimeMean();
+
+    long getDecodeTimeP99();
+
+    long getDecodeTimeMax();
+
+    double getAllocatedBytesPerCall();
+}
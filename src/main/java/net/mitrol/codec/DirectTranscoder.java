@@ -0,0 +1,52 @@
+package net.mitrol.codec;
+
+import net.mitrol.codec.g711.G711Transcoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Byte to byte transcoding between G.711 laws, or a plain copy when both sides use the same configuration.
+ */
+class DirectTranscoder implements Transcoder {
+
+    private final G711Transcoder g711Transcoder;
+
+    /**
+     * @param g711Transcoder the law mapping, null to copy
+     */
+    DirectTranscoder(G711Transcoder g711Transcoder) {
+        this.g711Transcoder = g711Transcoder;
+    }
+
+    @Override
+    public int transcode(ByteBuffer in, ByteBuffer out) {
+        if (g711Transcoder != null) {
+            return g711Transcoder.process(in, out);
+        }
+        if (in == out) {
+            int count = in.remaining();
+            in.position(in.limit());
+            return count;
+        }
+        int count = Math.min(in.remaining(), out.remaining());
+        ByteBuffer src = in.duplicate();
+        src.limit(src.position() + count);
+        out.put(src);
+        in.position(in.position() + count);
+        return count;
+    }
+
+    @Override
+    public byte[] transcode(byte[] data) {
+        byte[] out = Arrays.copyOf(data, data.length);
+        if (g711Transcoder != null) {
+            g711Transcoder.transcode(out, 0, out.length);
+        }
+        return out;
+    }
+
+    @Override
+    public void dispose() {
+    }
+}
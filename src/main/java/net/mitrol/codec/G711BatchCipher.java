@@ -0,0 +1,72 @@
+package net.mitrol.codec;
+
+import net.mitrol.codec.g711.G711Kernels;
+
+/**
+ * {@link BatchCipher} for PCMA and PCMU. G.711 has no per channel state and the batch keeps every channel
+ * contiguous, so a whole tick for all channels is a single pass of the table kernel over one array.
+ */
+public class G711BatchCipher implements BatchCipher {
+
+    private final boolean aLaw;
+    private final int channels;
+
+    /**
+     * @param law      {@link CipherKey.Codec#PCMA} or {@link CipherKey.Codec#PCMU}
+     * @param channels number of channel slots
+     */
+    public G711BatchCipher(CipherKey.Codec law, int channels) {
+        if (law != CipherKey.Codec.PCMA && law != CipherKey.Codec.PCMU) {
+            throw new IllegalArgumentException("Not a G.711 codec: " + law);
+        }
+        this.aLaw = law == CipherKey.Codec.PCMA;
+        this.channels = channels;
+    }
+
+    @Override
+    public ChannelBatch createBatch(int frameMillis) {
+        int samples = 8 * frameMillis;
+        return new ChannelBatch(channels, 2 * samples, samples);
+    }
+
+    @Override
+    public void encode(ChannelBatch batch) {
+        int samples = check(batch);
+        if (aLaw) {
+            G711Kernels.linearToALaw(batch.getPcm(), 0, batch.getEncoded(), 0, batch.size() * samples);
+        } else {
+            G711Kernels.linearToULaw(batch.getPcm(), 0, batch.getEncoded(), 0, batch.size() * samples);
+        }
+    }
+
+    @Override
+    public void decode(ChannelBatch batch) {
+        int samples = check(batch);
+        if (aLaw) {
+            G711Kernels.aLawToLinear(batch.getEncoded(), 0, batch.getPcm(), 0, batch.size() * samples);
+        } else {
+            G711Kernels.uLawToLinear(batch.getEncoded(), 0, batch.getPcm(), 0, batch.size() * samples);
+        }
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public void reset(int channel) {
+        // G.711 is stateless
+    }
+
+    private int check(ChannelBatch batch) {
+        int samples = batch.getEncodedFrameSize();
+        if (batch.getPcmFrameSize() != 2 * samples) {
+            throw new IllegalArgumentException("Batch is not laid out for G.711");
+        }
+        if (batch.size() > channels) {
+            throw new IllegalArgumentException("Batch has " + batch.size() + " channels, cipher has " + channels);
+        }
+        return samples;
+    }
+}
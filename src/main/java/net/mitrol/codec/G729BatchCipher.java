@@ -0,0 +1,104 @@
+package net.mitrol.codec;
+
+import net.mitrol.codec.g729.FrameDecoder;
+import net.mitrol.codec.g729.FrameEncoder;
+
+/**
+ * {@link BatchCipher} for G.729. Each channel slot keeps its own encoder and decoder state, created the first
+ * time the slot is used in that direction. A tick runs one loop over the slots, each one reading its 10 ms frames
+ * straight from the batch arrays and writing straight into them, without intermediate buffers or allocation.
+ */
+public class G729BatchCipher implements BatchCipher {
+
+    private final G729Cipher.Mode mode;
+    private final FrameEncoder[] encoders;
+    private final FrameDecoder[] decoders;
+
+    public G729BatchCipher(int channels) {
+        this(channels, G729Cipher.Mode.FLOAT);
+    }
+
+    public G729BatchCipher(int channels, G729Cipher.Mode mode) {
+        this.mode = mode;
+        this.encoders = new FrameEncoder[channels];
+        this.decoders = new FrameDecoder[channels];
+    }
+
+    @Override
+    public ChannelBatch createBatch(int frameMillis) {
+        if (frameMillis <= 0 || frameMillis % 10 != 0) {
+            throw new IllegalArgumentException("G.729 ticks must be a multiple of 10 ms: " + frameMillis);
+        }
+        int frames = frameMillis / 10;
+        return new ChannelBatch(encoders.length, frames * G729Cipher.PCM_FRAME_SIZE, frames * G729Cipher.ENCODED_FRAME_SIZE);
+    }
+
+    @Override
+    public void encode(ChannelBatch batch) {
+        int frames = check(batch);
+        byte[] pcm = batch.getPcm();
+        byte[] encoded = batch.getEncoded();
+        FrameEncoder[] encoders = this.encoders;
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            FrameEncoder encoder = encoders[i];
+            if (encoder == null) {
+                encoder = encoders[i] = mode.newEncoder();
+            }
+            int p = batch.pcmOffset(i);
+            int e = batch.encodedOffset(i);
+            for (int f = 0; f < frames; f++) {
+                encoder.process(pcm, p, encoded, e);
+                p += G729Cipher.PCM_FRAME_SIZE;
+                e += G729Cipher.ENCODED_FRAME_SIZE;
+            }
+        }
+    }
+
+    @Override
+    public void decode(ChannelBatch batch) {
+        int frames = check(batch);
+        byte[] pcm = batch.getPcm();
+        byte[] encoded = batch.getEncoded();
+        FrameDecoder[] decoders = this.decoders;
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            FrameDecoder decoder = decoders[i];
+            if (decoder == null) {
+                decoder = decoders[i] = mode.newDecoder();
+            }
+            int p = batch.pcmOffset(i);
+            int e = batch.encodedOffset(i);
+            for (int f = 0; f < frames; f++) {
+                decoder.process(encoded, e, pcm, p);
+                p += G729Cipher.PCM_FRAME_SIZE;
+                e += G729Cipher.ENCODED_FRAME_SIZE;
+            }
+        }
+    }
+
+    @Override
+    public int getChannels() {
+        return encoders.length;
+    }
+
+    @Override
+    public void reset(int channel) {
+        if (encoders[channel] != null) {
+            encoders[channel].reset();
+        }
+        if (decoders[channel] != null) {
+            decoders[channel].reset();
+        }
+    }
+
+    private int check(ChannelBatch batch) {
+        int frames = batch.getEncodedFrameSize() / G729Cipher.ENCODED_FRAME_SIZE;
+        if (frames == 0 || batch.getEncodedFrameSize() != frames * G729Cipher.ENCODED_FRAME_SIZE
+                || batch.getPcmFrameSize() != frames * G729Cipher.PCM_FRAME_SIZE) {
+            throw new IllegalArgumentException("Batch is not laid out for G.729");
+        }
+        if (batch.size() > encoders.length) {
+            throw new IllegalArgumentException("Batch has " + batch.size() + " channels, cipher has " + encoders.length);
+        }
+        return frames;
+    }
+}
@@ -1,11 +1,12 @@
 package net.mitrol.codec;
 
-import net.mitrol.codec.g729.Decoder;
-import net.mitrol.codec.g729.Encoder;
-import net.mitrol.codec.memory.Frame;
+import net.mitrol.codec.g729.FrameDecoder;
+import net.mitrol.codec.g729.FrameEncoder;
+import net.mitrol.codec.jfr.FlightEvents;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -15,71 +16,222 @@ import java.util.stream.Stream;
  */
 public class G729Cipher implements Cipher {
 
+    //region Constants
+    /**
+     * One 10 ms G.729 frame: 80 linear samples (16-bit) in, 10 bytes out.
+     */
+    public static final int PCM_FRAME_SIZE = 160;
+    public static final int ENCODED_FRAME_SIZE = 10;
+    /**
+     * One G.729 Annex B silence descriptor, sent with DTX in place of background noise frames.
+     */
+    public static final int SID_FRAME_SIZE = 2;
+    //endregion
+
+    /**
+     * G.729 implementation the codec runs on. All produce and accept the same G.729 bitstream, so the two ends of
+     * a call need not agree on it.
+     */
+    public enum Mode {
+        /**
+         * The floating point G.729 codec.
+         */
+        FLOAT {
+            @Override
+            public FrameEncoder newEncoder() {
+                return new net.mitrol.codec.g729.Encoder();
+            }
+
+            @Override
+            public FrameEncoder newEncoder(boolean dtx) {
+                return new net.mitrol.codec.g729.Encoder(false, dtx);
+            }
+
+            @Override
+            public FrameDecoder newDecoder() {
+                return new net.mitrol.codec.g729.Decoder();
+            }
+        },
+        /**
+         * The floating point codec with the G.729 Annex A encoder: roughly half the encoding cost of {@link #FLOAT}
+         * and the simplified postfilter of Annex A in the decoder.
+         */
+        FLOAT_ANNEX_A {
+            @Override
+            public FrameEncoder newEncoder() {
+                return new net.mitrol.codec.g729.Encoder(true);
+            }
+
+            @Override
+            public FrameEncoder newEncoder(boolean dtx) {
+                return new net.mitrol.codec.g729.Encoder(true, dtx);
+            }
+
+            @Override
+            public FrameDecoder newDecoder() {
+                return new net.mitrol.codec.g729.Decoder(true);
+            }
+        };
+
+        public abstract FrameEncoder newEncoder();
+
+        /**
+         * @param dtx discontinuous transmission (G.729 Annex B)
+         * @throws IllegalArgumentException if the mode has no DTX
+         */
+        public FrameEncoder newEncoder(boolean dtx) {
+            if (dtx)
+                throw new IllegalArgumentException(this + " has no DTX");
+            return newEncoder();
+        }
+
+        public abstract FrameDecoder newDecoder();
+    }
+
     //region Attributes
-    private Encoder g729Encoder;
-    private Decoder g729Decoder;
+    private final Mode mode;
+    private final boolean dtx;
+    private FrameEncoder g729Encoder;
+    private FrameDecoder g729Decoder;
     //endregion
 
     //region Constructor
     public G729Cipher() {
-        this.g729Decoder = new Decoder();
-        this.g729Encoder = new Encoder();
+        this(Mode.FLOAT);
+    }
+
+    public G729Cipher(Mode mode) {
+        this(mode, false);
+    }
 
+    /**
+     * @param dtx enables G.729 Annex B on the encoder: background noise is sent as 2 byte SID frames or not at
+     *            all, saving both the bandwidth and most of the encoding cost of silence. The decoder always
+     *            accepts SID frames; only with DTX does it also take an empty packet for an untransmitted frame
+     *            and fill it with comfort noise, without it an empty packet decodes to nothing.
+     * @throws IllegalArgumentException if <code>mode</code> has no DTX
+     */
+    public G729Cipher(Mode mode, boolean dtx) {
+        this.mode = mode;
+        this.dtx = dtx;
+        this.g729Decoder = mode.newDecoder();
+        this.g729Encoder = mode.newEncoder(dtx);
     }
     //endregion
 
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isDtx() {
+        return dtx;
+    }
+
     //region Cipher
+    /**
+     * Without DTX the result is a single packet with all the frames. With DTX there is one packet per 10 ms
+     * frame, of {@link #ENCODED_FRAME_SIZE} bytes for speech, {@link #SID_FRAME_SIZE} for a SID frame and empty
+     * for a frame that need not be sent.
+     */
     @Override
     public List<byte[]> encode(byte[] data) {
+        if (!dtx) {
+            byte[] encoded = new byte[data.length / getCompressionRate().get()];
+            encode(ByteBuffer.wrap(data), ByteBuffer.wrap(encoded));
 
-        int length = data.length / getCompressionRate().get();
-
-        int step = 160;
-        int index = 0;
-        int stepCount = data.length / step;
-        byte[] partialData;
-        byte[] temp;
-
-        ByteBuffer inputBuffer = ByteBuffer.wrap(data);
-        ByteBuffer outPutBuffer = ByteBuffer.allocate(length);
-        while (index < stepCount) {
-            partialData = new byte[step];
-            inputBuffer.get(partialData);
-            temp = g729Encoder.process(new Frame(partialData)).getData();
-            outPutBuffer.put(temp);
-            index++;
+            List<byte[]> bytes = new ArrayList<>(1);
+            bytes.add(encoded);
+            return bytes;
+        }
+
+        int frames = data.length / PCM_FRAME_SIZE;
+        List<byte[]> bytes = new ArrayList<>(frames);
+        ByteBuffer pcm = ByteBuffer.wrap(data);
+        byte[] encoded = new byte[ENCODED_FRAME_SIZE];
+        for (int i = 0; i < frames; i++) {
+            Object event = FlightEvents.beginCodecFrame();
+            int len = g729Encoder.process(pcm, ByteBuffer.wrap(encoded));
+            FlightEvents.endCodecFrame(event, "G729", "encode", PCM_FRAME_SIZE, len);
+            bytes.add(Arrays.copyOf(encoded, len));
         }
-        List<byte[]> bytes = new ArrayList<>(1);
-        bytes.add(outPutBuffer.array());
         return bytes;
     }
 
+    /**
+     * Each packet holds whole 10 byte frames, possibly followed by a 2 byte SID frame. With DTX an empty packet
+     * stands for one untransmitted 10 ms frame and decodes to comfort noise, without it to nothing, like
+     * {@link #decode(ByteBuffer, ByteBuffer)}.
+     */
     @Override
     public byte[] decode(byte[]... packets) {
+        ByteBuffer pcm = ByteBuffer.allocate(Stream.of(packets).mapToInt(this::decodedSize).sum());
+        for (byte[] data : packets) {
+            decode(ByteBuffer.wrap(data), pcm);
+            if (data.length % ENCODED_FRAME_SIZE != SID_FRAME_SIZE)
+                pcm.position(pcm.position() + data.length % ENCODED_FRAME_SIZE * getCompressionRate().get());
+        }
+        return pcm.array();
+    }
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate(Stream.of(packets).mapToInt(x -> x.length).sum() * getCompressionRate().get());
+    private int decodedSize(byte[] packet) {
+        if (packet.length == 0)
+            return dtx ? PCM_FRAME_SIZE : 0;
+        int rest = packet.length % ENCODED_FRAME_SIZE;
+        if (rest == SID_FRAME_SIZE)
+            return packet.length / ENCODED_FRAME_SIZE * PCM_FRAME_SIZE + PCM_FRAME_SIZE;
+        return packet.length * 16;
+    }
 
-        for (byte[] data : packets) {
-            int length = data.length * getCompressionRate().get();
-            int step = 10;
-            int index = 0;
-            int stepCount = data.length / step;
-            byte[] partialData;
-            byte[] temp;
-            ByteBuffer inputBuffer = ByteBuffer.wrap(data);
-            ByteBuffer outputBuffer = ByteBuffer.allocate(length);
-            while (index < stepCount) {
-                partialData = new byte[step];
-                inputBuffer.get(partialData);
-                temp = g729Decoder.process(new Frame(partialData)).getData();
-                outputBuffer.put(temp);
-                index++;
-            }
-            byteBuffer.put(outputBuffer.array());
+    /**
+     * Encodes as many whole 10 ms frames as are available in <code>pcmIn</code> and fit in <code>out</code>.
+     * A trailing partial frame is left unread. With DTX encoding stops after the first frame that is not speech,
+     * so what is written is whole speech frames optionally followed by one SID frame, the layout of an RTP
+     * packet (RFC 3551); a frame that need not be sent consumes its input and writes nothing.
+     */
+    @Override
+    public int encode(ByteBuffer pcmIn, ByteBuffer out) {
+        int position = pcmIn.position();
+        Object event = FlightEvents.beginCodecFrame();
+        int frames = Math.min(pcmIn.remaining() / PCM_FRAME_SIZE, out.remaining() / ENCODED_FRAME_SIZE);
+        int written = 0;
+        for (int i = 0; i < frames; i++) {
+            int len = g729Encoder.process(pcmIn, out);
+            written += len;
+            if (len != ENCODED_FRAME_SIZE)
+                break;
         }
+        FlightEvents.endCodecFrame(event, "G729", "encode", pcmIn.position() - position, written);
+        return written;
+    }
 
-        return byteBuffer.array();
+    /**
+     * Decodes as many whole 10 byte frames as are available in <code>in</code> and fit in <code>pcmOut</code>,
+     * then a trailing 2 byte SID frame if that is exactly what remains. Any other trailing partial frame is left
+     * unread. With DTX an empty <code>in</code> is an untransmitted frame and decodes to 10 ms of comfort noise.
+     */
+    @Override
+    public int decode(ByteBuffer in, ByteBuffer pcmOut) {
+        int position = in.position();
+        Object event = FlightEvents.beginCodecFrame();
+        int frames = Math.min(in.remaining() / ENCODED_FRAME_SIZE, pcmOut.remaining() / PCM_FRAME_SIZE);
+        for (int i = 0; i < frames; i++) {
+            g729Decoder.process(in, pcmOut);
+        }
+        if (in.remaining() == SID_FRAME_SIZE && pcmOut.remaining() >= PCM_FRAME_SIZE) {
+            g729Decoder.process(in, pcmOut);
+            frames++;
+        } else if (dtx && frames == 0 && !in.hasRemaining() && pcmOut.remaining() >= PCM_FRAME_SIZE) {
+            /* untransmitted frame */
+            g729Decoder.process(in, pcmOut);
+            frames++;
+        }
+        FlightEvents.endCodecFrame(event, "G729", "decode", in.position() - position, frames * PCM_FRAME_SIZE);
+        return frames * PCM_FRAME_SIZE;
+    }
 
+    @Override
+    public int decodeLost(int frames, ByteBuffer pcmOut) {
+        return g729Decoder.decodeLost(frames, pcmOut);
     }
 
     @Override
@@ -87,6 +239,12 @@ public class G729Cipher implements Cipher {
         return Optional.of(16);
     }
 
+    @Override
+    public void reset() {
+        g729Encoder.reset();
+        g729Decoder.reset();
+    }
+
     @Override
     public void dispose() {
         g729Decoder = null;
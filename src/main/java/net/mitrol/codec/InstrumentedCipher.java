@@ -0,0 +1,206 @@
+package net.mitrol.codec;
+
+import net.mitrol.codec.scheduler.ConcurrentLatencyHistogram;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Decorates a {@link Cipher} to record what goes through it into the {@link CodecMetrics} of its codec.
+ * <p>
+ * Opt in by wrapping a cipher, {@link #create(CipherKey)}, or with an instrumented {@link CipherPool}. The
+ * decorator adds no allocation; like the cipher it wraps it must be used by one thread at a time. Packet and byte
+ * counts are accumulated in the instance and added to the shared counters on each sampled call (see
+ * {@link CodecMetrics#setSamplingInterval(int)}), on {@link #reset()} and on {@link #dispose()}, so they lag by
+ * at most a sampling interval. Libopus calls are only counted when the wrapped cipher is the {@link OpusCipher}
+ * itself.
+ */
+public final class InstrumentedCipher implements Cipher {
+
+    private final Cipher delegate;
+    private final CodecMetrics metrics;
+    private final OpusCipher opus;
+
+    //sampling state, the instance is single threaded
+    private int calls;
+    private long start;
+    private long allocationStart;
+    private long nativeCalls;
+
+    //counts not yet added to the metrics
+    private int encodedPackets;
+    private long pcmBytesIn;
+    private long encodedBytesOut;
+    private int decodedPackets;
+    private long encodedBytesIn;
+    private long pcmBytesOut;
+
+    public InstrumentedCipher(Cipher delegate, CodecMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.opus = delegate instanceof OpusCipher ? (OpusCipher) delegate : null;
+        this.nativeCalls = opus != null ? opus.getNativeCallCount() : 0;
+    }
+
+    /**
+     * Builds a new cipher for <code>key</code> recording into the metrics of its codec.
+     */
+    public static InstrumentedCipher create(CipherKey key) {
+        return new InstrumentedCipher(key.create(), CodecMetrics.get(key.getCodec()));
+    }
+
+    public Cipher getDelegate() {
+        return delegate;
+    }
+
+    public CodecMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public List<byte[]> encode(byte[] data) {
+        boolean sampled = begin();
+        List<byte[]> packets = delegate.encode(data);
+        end(sampled, metrics.encodeTimer());
+        int bytes = 0;
+        for (int i = 0; i < packets.size(); i++) {
+            bytes += packets.get(i).length;
+        }
+        encoded(packets.size(), data.length, bytes);
+        flush(sampled);
+        return packets;
+    }
+
+    @Override
+    public byte[] decode(byte[]... packets) {
+        boolean sampled = begin();
+        byte[] pcm = delegate.decode(packets);
+        end(sampled, metrics.decodeTimer());
+        int bytes = 0;
+        for (byte[] packet : packets) {
+            bytes += packet.length;
+        }
+        decoded(packets.length, bytes, pcm.length);
+        flush(sampled);
+        return pcm;
+    }
+
+    @Override
+    public int encode(ByteBuffer pcmIn, ByteBuffer out) {
+        int position = pcmIn.position();
+        boolean sampled = begin();
+        int written = delegate.encode(pcmIn, out);
+        end(sampled, metrics.encodeTimer());
+        encoded(written > 0 ? 1 : 0, pcmIn.position() - position, written);
+        flush(sampled);
+        return written;
+    }
+
+    @Override
+    public int decode(ByteBuffer in, ByteBuffer pcmOut) {
+        int position = in.position();
+        boolean sampled = begin();
+        int written = delegate.decode(in, pcmOut);
+        end(sampled, metrics.decodeTimer());
+        decoded(1, in.position() - position, written);
+        flush(sampled);
+        return written;
+    }
+
+    @Override
+    public int decodeLost(int frames, ByteBuffer pcmOut) {
+        int written = delegate.decodeLost(frames, pcmOut);
+        metrics.concealed(frames, written);
+        countNativeCalls();
+        return written;
+    }
+
+    @Override
+    public int decodeFec(ByteBuffer next, ByteBuffer pcmOut) {
+        int written = delegate.decodeFec(next, pcmOut);
+        metrics.fec(written);
+        countNativeCalls();
+        return written;
+    }
+
+    @Override
+    public Optional<Integer> getCompressionRate() {
+        return delegate.getCompressionRate();
+    }
+
+    @Override
+    public void reset() {
+        delegate.reset();
+        flush(true);
+    }
+
+    @Override
+    public void dispose() {
+        flush(true);
+        delegate.dispose();
+    }
+
+    //decides whether this call is timed and starts the clock
+    private boolean begin() {
+        if (++calls < metrics.getSamplingInterval()) {
+            return false;
+        }
+        calls = 0;
+        if (metrics.isAllocationTracking()) {
+            allocationStart = CodecMetrics.Allocations.current();
+        }
+        start = System.nanoTime();
+        return true;
+    }
+
+    private void end(boolean sampled, ConcurrentLatencyHistogram timer) {
+        if (!sampled) {
+            return;
+        }
+        timer.record(System.nanoTime() - start);
+        if (metrics.isAllocationTracking()) {
+            metrics.allocated(CodecMetrics.Allocations.current() - allocationStart);
+        }
+    }
+
+    private void encoded(int packets, int pcmBytes, int encodedBytes) {
+        encodedPackets += packets;
+        pcmBytesIn += pcmBytes;
+        encodedBytesOut += encodedBytes;
+    }
+
+    private void decoded(int packets, int encodedBytes, int pcmBytes) {
+        decodedPackets += packets;
+        encodedBytesIn += encodedBytes;
+        pcmBytesOut += pcmBytes;
+    }
+
+    //adds the counts accumulated since the last flush to the shared metrics
+    private void flush(boolean sampled) {
+        if (!sampled) {
+            return;
+        }
+        if (encodedPackets != 0 || pcmBytesIn != 0) {
+            metrics.encoded(encodedPackets, pcmBytesIn, encodedBytesOut);
+            encodedPackets = 0;
+            pcmBytesIn = 0;
+            encodedBytesOut = 0;
+        }
+        if (decodedPackets != 0 || encodedBytesIn != 0) {
+            metrics.decoded(decodedPackets, encodedBytesIn, pcmBytesOut);
+            decodedPackets = 0;
+            encodedBytesIn = 0;
+            pcmBytesOut = 0;
+        }
+        countNativeCalls();
+    }
+
+    private void countNativeCalls() {
+        if (opus != null) {
+            long count = opus.getNativeCallCount();
+            metrics.nativeCalls(count - nativeCalls);
+            nativeCalls = count;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.mitrol.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Generic transcoding through 16-bit linear: decodes with one cipher and encodes the result with another.
+ * Linear samples that don't make a whole frame for the encoder are kept for the next call.
+ */
+class LinearTranscoder implements Transcoder {
+
+    /**
+     * Room for the linear output of any single packet (120 ms at 48 kHz stereo is 23040 bytes).
+     */
+    private static final int LINEAR_CAPACITY = 32 * 1024;
+
+    private final Cipher decoder;
+    private final Cipher encoder;
+    private final ByteBuffer linear = ByteBuffer.allocate(LINEAR_CAPACITY);
+
+    LinearTranscoder(Cipher decoder, Cipher encoder) {
+        this.decoder = decoder;
+        this.encoder = encoder;
+    }
+
+    @Override
+    public int transcode(ByteBuffer in, ByteBuffer out) {
+        decoder.decode(in, linear);
+        linear.flip();
+        int written = 0;
+        int n;
+        while (linear.hasRemaining() && (n = encoder.encode(linear, out)) > 0) {
+            written += n;
+        }
+        linear.compact();
+        return written;
+    }
+
+    @Override
+    public byte[] transcode(byte[] data) {
+        byte[] pcm = decoder.decode(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pcm.length);
+        for (byte[] packet : encoder.encode(pcm)) {
+            out.write(packet, 0, packet.length);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void dispose() {
+        decoder.dispose();
+        encoder.dispose();
+    }
+}
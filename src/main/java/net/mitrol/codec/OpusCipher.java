@@ -1,13 +1,18 @@
 package net.mitrol.codec;
 
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
 import com.sun.jna.ptr.PointerByReference;
 import net.mitrol.codec.opus.Opus;
+import net.mitrol.codec.jfr.FlightEvents;
+import net.mitrol.codec.opus.OpusDirect;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,16 +31,33 @@ public class OpusCipher implements Cipher {
      */
     public static final int MAX_PACKET = 1 + 1275;
     private static final OpusCipherOptions DEFAULT_OPTIONS = new OpusCipherOptions();
+    /**
+     * libopus reads and writes native-order samples, so direct PCM buffers can only be handed over as they are
+     * when the platform is little-endian.
+     */
+    private static final boolean NATIVE_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
     //endregion
 
 
     private PointerByReference encoder;
     private PointerByReference decoder;
+    private Pointer encoderState;
+    private Pointer decoderState;
     private int sampleRate;
     private int channels;
     private int frameSizeInMillis = 20;
     private int frameSize;
 
+    // native memory reused by every call, PCM and packets cross into libopus from here without per call copies
+    private Memory pcmMemory;
+    private Memory packetMemory;
+    // heap scratch, only used when the caller buffers are not little-endian byte arrays or direct buffers
+    private short[] samples;
+    private byte[] packet;
+
+    // calls into libopus on the media path, read by InstrumentedCipher
+    private long nativeCalls;
+
     public OpusCipher(int sampleRate, int channels) {
         this(sampleRate, channels, DEFAULT_OPTIONS);
     }
@@ -44,6 +66,11 @@ public class OpusCipher implements Cipher {
         this.sampleRate = sampleRate;
         this.channels = channels;
         this.frameSize = (this.sampleRate * frameSizeInMillis) / 1000;
+        // sized for float samples, so the float api can share it
+        this.pcmMemory = new Memory(4 * frameSize * channels);
+        this.packetMemory = new Memory(MAX_PACKET);
+        this.samples = new short[frameSize * channels];
+        this.packet = new byte[MAX_PACKET];
 
         IntBuffer decoderError = IntBuffer.allocate(4);
 
@@ -68,58 +95,244 @@ public class OpusCipher implements Cipher {
         Opus.INSTANCE.opus_encoder_ctl(encoder, Opus.OPUS_SET_COMPLEXITY_REQUEST, complexityArgs);
         Opus.INSTANCE.opus_encoder_ctl(encoder, Opus.OPUS_SET_SIGNAL_REQUEST, signalArgs);
         Opus.INSTANCE.opus_encoder_ctl(encoder, Opus.OPUS_SET_APPLICATION_REQUEST, appArgs);
+
+        encoderState = encoder.getPointer();
+        decoderState = decoder.getPointer();
     }
 
     @Override
     public byte[] decode(byte[]... packets) {
-        ShortBuffer shortBuffer = ShortBuffer.allocate(MAX_PACKET);
+        byte[] pcm = new byte[packets.length * 2 * frameSize * channels];
+        int size = 0;
         for (byte[] transferedBytes : packets) {
-            int decoded = Opus.INSTANCE.opus_decode(decoder, transferedBytes, transferedBytes.length, shortBuffer, frameSize, 0);
-            shortBuffer.position(shortBuffer.position() + decoded);
+            if (transferedBytes.length > MAX_PACKET) {
+                throw new IllegalArgumentException("Opus packet too large: " + transferedBytes.length);
+            }
+            Object frame = FlightEvents.beginCodecFrame();
+            packetMemory.write(0, transferedBytes, 0, transferedBytes.length);
+            nativeCalls++;
+            Object event = FlightEvents.beginOpusNativeCall();
+            int decoded = OpusDirect.opus_decode(decoderState, packetMemory, transferedBytes.length, pcmMemory, frameSize, 0);
+            FlightEvents.endOpusNativeCall(event, "opus_decode", decoded);
+            if (decoded < 0) {
+                throw new RuntimeException("opus_decode failed: " + Opus.INSTANCE.opus_strerror(decoded));
+            }
+            int written = storePcm(decoded * channels, pcm, size);
+            size += written;
+            FlightEvents.endCodecFrame(frame, "OPUS", "decode", transferedBytes.length, written);
         }
-        shortBuffer.flip();
-
-        short[] shorts = new short[shortBuffer.remaining()];
-        shortBuffer.get(shorts);
-
-        return shortToByte(shorts);
+        return size == pcm.length ? pcm : Arrays.copyOf(pcm, size);
     }
 
     public int getFrameSize() {
         return frameSize;
     }
 
+    /**
+     * Number of encode, decode and reset calls made into libopus by this instance.
+     */
+    public long getNativeCallCount() {
+        return nativeCalls;
+    }
+
     @Override
     public List<byte[]> encode(byte[] data) {
+        int pcmBytes = 2 * frameSize * channels;
 
-        short[] shorts = new short[data.length / 2];
-        // to turn bytes to shorts as either big endian or little endian.
-        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(shorts);
+        List<byte[]> list = new ArrayList<>();
+        for (int offset = 0; offset < data.length; offset += pcmBytes) {
+            int length = Math.min(pcmBytes, data.length - offset);
+            Object frame = FlightEvents.beginCodecFrame();
+            loadPcm(data, offset, length);
+            if (length < pcmBytes) {
+                // the last frame is padded with silence
+                pcmMemory.setMemory(length, pcmBytes - length, (byte) 0);
+            }
+            nativeCalls++;
+            Object event = FlightEvents.beginOpusNativeCall();
+            int written = OpusDirect.opus_encode(encoderState, pcmMemory, frameSize, packetMemory, MAX_PACKET);
+            FlightEvents.endOpusNativeCall(event, "opus_encode", written);
+            if (written < 0) {
+                throw new RuntimeException("opus_encode failed: " + Opus.INSTANCE.opus_strerror(written));
+            }
+            list.add(packetMemory.getByteArray(0, written));
+            FlightEvents.endCodecFrame(frame, "OPUS", "encode", length, written);
+        }
+        return list;
+    }
 
-        ShortBuffer shortBuffer = ShortBuffer.wrap(shorts);
+    /**
+     * Encodes exactly one frame ({@link #getFrameSize()} samples per channel) into a single packet.
+     * Nothing is consumed and 0 is returned when <code>pcmIn</code> holds less than a full frame.
+     */
+    @Override
+    public int encode(ByteBuffer pcmIn, ByteBuffer out) {
+        int pcmBytes = 2 * frameSize * channels;
+        if (pcmIn.remaining() < pcmBytes) {
+            return 0;
+        }
+        int maxDataBytes = Math.min(out.remaining(), MAX_PACKET);
+        Object frame = FlightEvents.beginCodecFrame();
 
-        shortBuffer.position(shorts.length);
+        Pointer pcm;
+        if (pcmIn.isDirect() && NATIVE_LITTLE_ENDIAN) {
+            pcm = Native.getDirectBufferPointer(pcmIn).share(pcmIn.position());
+        } else if (pcmIn.hasArray()) {
+            loadPcm(pcmIn.array(), pcmIn.arrayOffset() + pcmIn.position(), pcmBytes);
+            pcm = pcmMemory;
+        } else {
+            int position = pcmIn.position();
+            for (int i = 0; i < samples.length; i++, position += 2) {
+                samples[i] = (short) ((pcmIn.get(position) & 0xff) | (pcmIn.get(position + 1) << 8));
+            }
+            pcmMemory.write(0, samples, 0, samples.length);
+            pcm = pcmMemory;
+        }
+        Pointer data = out.isDirect() ? Native.getDirectBufferPointer(out).share(out.position()) : packetMemory;
 
-        shortBuffer.flip();
+        nativeCalls++;
+        Object event = FlightEvents.beginOpusNativeCall();
+        int written = OpusDirect.opus_encode(encoderState, pcm, frameSize, data, maxDataBytes);
+        FlightEvents.endOpusNativeCall(event, "opus_encode", written);
+        if (written < 0) {
+            throw new RuntimeException("opus_encode failed: " + Opus.INSTANCE.opus_strerror(written));
+        }
+        if (!out.isDirect()) {
+            packetMemory.read(0, packet, 0, written);
+            out.put(packet, 0, written);
+        } else {
+            out.position(out.position() + written);
+        }
+        pcmIn.position(pcmIn.position() + pcmBytes);
+        FlightEvents.endCodecFrame(frame, "OPUS", "encode", pcmBytes, written);
+        return written;
+    }
 
-        int read;
+    /**
+     * Decodes the remaining bytes of <code>in</code> as a single packet.
+     */
+    @Override
+    public int decode(ByteBuffer in, ByteBuffer pcmOut) {
+        int len = in.remaining();
+        if (len > MAX_PACKET) {
+            throw new IllegalArgumentException("Opus packet too large: " + len);
+        }
+        Object frame = FlightEvents.beginCodecFrame();
+        int written = decode(loadPacket(in, len), len, pcmOut, 0);
+        in.position(in.position() + len);
+        FlightEvents.endCodecFrame(frame, "OPUS", "decode", len, written);
+        return written;
+    }
 
-        List<byte[]> list = new ArrayList<>();
-        while (shortBuffer.hasRemaining()) {
-            ByteBuffer dataBuffer = ByteBuffer.allocate(MAX_PACKET);
-            int toRead = Math.min(shortBuffer.remaining(), dataBuffer.remaining());
-            read = Opus.INSTANCE.opus_encode(encoder, shortBuffer, frameSize, dataBuffer, toRead);
-            // System.err.println("read: "+read);
-            dataBuffer.position(dataBuffer.position() + read);
-            dataBuffer.flip();
-            byte[] encoded = new byte[dataBuffer.remaining()];
-            dataBuffer.get(encoded);
-            list.add(encoded);
-            shortBuffer.position(shortBuffer.position() + frameSize);
-        }
-        // used for debugging
-        shortBuffer.flip();
-        return list;
+    /**
+     * Conceals <code>frames</code> lost packets of {@link #getFrameSize()} samples each through the decoder's
+     * native packet loss concealment.
+     */
+    @Override
+    public int decodeLost(int frames, ByteBuffer pcmOut) {
+        int written = 0;
+        for (int i = 0; i < frames && pcmOut.remaining() >= 2 * frameSize * channels; i++) {
+            written += decode(null, 0, pcmOut, 0);
+        }
+        return written;
+    }
+
+    /**
+     * Rebuilds the packet lost before <code>next</code> from the in-band FEC data that <code>next</code> carries
+     * (the encoder needs <code>OPUS_SET_INBAND_FEC</code>), falling back to concealment when it carries none.
+     * <code>next</code> is left unread so it can be decoded normally afterwards.
+     */
+    @Override
+    public int decodeFec(ByteBuffer next, ByteBuffer pcmOut) {
+        int len = next.remaining();
+        if (len > MAX_PACKET) {
+            throw new IllegalArgumentException("Opus packet too large: " + len);
+        }
+        return decode(loadPacket(next, len), len, pcmOut, 1);
+    }
+
+    /*
+     * Decodes one packet, or conceals a lost one when data is null, into pcmOut.
+     * With fec set the packet's redundant copy of the previous one is decoded instead.
+     */
+    private int decode(Pointer data, int len, ByteBuffer pcmOut, int fec) {
+        int maxFrameSize = Math.min(frameSize, pcmOut.remaining() / (2 * channels));
+
+        boolean direct = pcmOut.isDirect() && NATIVE_LITTLE_ENDIAN;
+        Pointer pcm = direct ? Native.getDirectBufferPointer(pcmOut).share(pcmOut.position()) : pcmMemory;
+
+        nativeCalls++;
+        Object event = FlightEvents.beginOpusNativeCall();
+        int decoded = OpusDirect.opus_decode(decoderState, data, len, pcm, maxFrameSize, fec);
+        FlightEvents.endOpusNativeCall(event, "opus_decode", decoded);
+        if (decoded < 0) {
+            throw new RuntimeException("opus_decode failed: " + Opus.INSTANCE.opus_strerror(decoded));
+        }
+        int count = decoded * channels;
+        if (direct) {
+            pcmOut.position(pcmOut.position() + 2 * count);
+        } else if (pcmOut.hasArray()) {
+            int stored = storePcm(count, pcmOut.array(), pcmOut.arrayOffset() + pcmOut.position());
+            pcmOut.position(pcmOut.position() + stored);
+        } else {
+            pcmMemory.read(0, samples, 0, count);
+            for (int i = 0; i < count; i++) {
+                pcmOut.put((byte) samples[i]);
+                pcmOut.put((byte) (samples[i] >> 8));
+            }
+        }
+        return 2 * count;
+    }
+
+    /**
+     * Encodes exactly one frame of float samples in [-1, 1] (interleaved, {@link #getFrameSize()} per channel)
+     * read from <code>pcm[offset]</code> into a single packet.
+     *
+     * @return the number of bytes written to <code>out</code>
+     */
+    public int encodeFloat(float[] pcm, int offset, ByteBuffer out) {
+        int maxDataBytes = Math.min(out.remaining(), MAX_PACKET);
+        pcmMemory.write(0, pcm, offset, frameSize * channels);
+        Pointer data = out.isDirect() ? Native.getDirectBufferPointer(out).share(out.position()) : packetMemory;
+
+        nativeCalls++;
+        Object event = FlightEvents.beginOpusNativeCall();
+        int written = OpusDirect.opus_encode_float(encoderState, pcmMemory, frameSize, data, maxDataBytes);
+        FlightEvents.endOpusNativeCall(event, "opus_encode_float", written);
+        if (written < 0) {
+            throw new RuntimeException("opus_encode_float failed: " + Opus.INSTANCE.opus_strerror(written));
+        }
+        if (!out.isDirect()) {
+            packetMemory.read(0, packet, 0, written);
+            out.put(packet, 0, written);
+        } else {
+            out.position(out.position() + written);
+        }
+        return written;
+    }
+
+    /**
+     * Decodes the remaining bytes of <code>in</code> as a single packet into float samples in [-1, 1]
+     * written to <code>pcm[offset]</code>, which must have room for a full frame.
+     *
+     * @return the number of samples written (all channels)
+     */
+    public int decodeFloat(ByteBuffer in, float[] pcm, int offset) {
+        int len = in.remaining();
+        if (len > MAX_PACKET) {
+            throw new IllegalArgumentException("Opus packet too large: " + len);
+        }
+        nativeCalls++;
+        Object event = FlightEvents.beginOpusNativeCall();
+        int decoded = OpusDirect.opus_decode_float(decoderState, loadPacket(in, len), len, pcmMemory, frameSize, 0);
+        FlightEvents.endOpusNativeCall(event, "opus_decode_float", decoded);
+        if (decoded < 0) {
+            throw new RuntimeException("opus_decode_float failed: " + Opus.INSTANCE.opus_strerror(decoded));
+        }
+        int count = decoded * channels;
+        pcmMemory.read(0, pcm, offset, count);
+        in.position(in.position() + len);
+        return count;
     }
 
     @Override
@@ -127,6 +340,23 @@ public class OpusCipher implements Cipher {
         return Optional.ofNullable(null);
     }
 
+    @Override
+    public void reset() {
+        nativeCalls++;
+        Object event = FlightEvents.beginOpusNativeCall();
+        int error = OpusDirect.opus_encoder_ctl(encoderState, Opus.OPUS_RESET_STATE, 0);
+        FlightEvents.endOpusNativeCall(event, "opus_encoder_ctl", error);
+        if (error == Opus.OPUS_OK) {
+            nativeCalls++;
+            event = FlightEvents.beginOpusNativeCall();
+            error = OpusDirect.opus_decoder_ctl(decoderState, Opus.OPUS_RESET_STATE, 0);
+            FlightEvents.endOpusNativeCall(event, "opus_decoder_ctl", error);
+        }
+        if (error != Opus.OPUS_OK) {
+            throw new RuntimeException("OPUS_RESET_STATE failed: " + Opus.INSTANCE.opus_strerror(error));
+        }
+    }
+
     @Override
     public void dispose() {
         if (encoder != null) {
@@ -137,6 +367,10 @@ public class OpusCipher implements Cipher {
             Opus.INSTANCE.opus_decoder_destroy(decoder);
             decoder = null;
         }
+        encoderState = null;
+        decoderState = null;
+        pcmMemory = null;
+        packetMemory = null;
     }
 
     private byte[] shortToByte_Twiddle_Method(final short[] input) {
@@ -149,13 +383,53 @@ public class OpusCipher implements Cipher {
         return buffer;
     }
 
-    private byte[] shortToByte(final short[] input) {
-        final int len = input.length;
-        final byte[] buffer = new byte[len * 2];
-        for (int i = 0; i < len; i++) {
-            buffer[(i * 2)] = (byte) (input[i]);
-            buffer[(i * 2) + 1] = (byte) (input[i] >> 8);
+    /**
+     * Copies little-endian PCM bytes into {@link #pcmMemory}.
+     */
+    private void loadPcm(byte[] src, int offset, int length) {
+        if (NATIVE_LITTLE_ENDIAN) {
+            pcmMemory.write(0, src, offset, length);
+        } else {
+            int count = length / 2;
+            for (int i = 0; i < count; i++, offset += 2) {
+                samples[i] = (short) ((src[offset] & 0xff) | (src[offset + 1] << 8));
+            }
+            pcmMemory.write(0, samples, 0, count);
         }
-        return buffer;
+    }
+
+    /**
+     * Copies <code>count</code> samples from {@link #pcmMemory} into <code>dst</code> as little-endian PCM.
+     *
+     * @return the number of bytes written
+     */
+    private int storePcm(int count, byte[] dst, int offset) {
+        if (NATIVE_LITTLE_ENDIAN) {
+            pcmMemory.read(0, dst, offset, 2 * count);
+        } else {
+            pcmMemory.read(0, samples, 0, count);
+            for (int i = 0; i < count; i++) {
+                dst[offset++] = (byte) samples[i];
+                dst[offset++] = (byte) (samples[i] >> 8);
+            }
+        }
+        return 2 * count;
+    }
+
+    /**
+     * Returns a pointer to the next <code>len</code> bytes of <code>in</code>, copied into {@link #packetMemory}
+     * unless <code>in</code> is direct. The position is not advanced.
+     */
+    private Pointer loadPacket(ByteBuffer in, int len) {
+        if (in.isDirect()) {
+            return Native.getDirectBufferPointer(in).share(in.position());
+        }
+        if (in.hasArray()) {
+            packetMemory.write(0, in.array(), in.arrayOffset() + in.position(), len);
+        } else {
+            in.duplicate().get(packet, 0, len);
+            packetMemory.write(0, packet, 0, len);
+        }
+        return packetMemory;
     }
 }
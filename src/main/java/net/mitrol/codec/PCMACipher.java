@@ -2,7 +2,9 @@ package net.mitrol.codec;
 
 import net.mitrol.codec.g711.alaw.Decoder;
 import net.mitrol.codec.g711.alaw.Encoder;
+import net.mitrol.codec.jfr.FlightEvents;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -28,14 +30,43 @@ public class PCMACipher implements Cipher {
     @Override
     public List<byte[]> encode(byte[] data) {
         int length = data.length / getCompressionRate().get();
-        return g711AlawEncoder.process(data, length);
+        Object event = FlightEvents.beginCodecFrame();
+        List<byte[]> encoded = g711AlawEncoder.process(data, length);
+        FlightEvents.endCodecFrame(event, "PCMA", "encode", data.length, length);
+        return encoded;
     }
 
     @Override
     public byte[] decode(byte[]... packets) {
         int compressionRate = getCompressionRate().get();
         int dstLength = packets.length == 1 ? packets[0].length * compressionRate : Stream.of(packets).mapToInt(x -> x.length).sum() * compressionRate;
-        return g711AlawDecoder.process(compressionRate, dstLength, packets);
+        Object event = FlightEvents.beginCodecFrame();
+        byte[] pcm = g711AlawDecoder.process(compressionRate, dstLength, packets);
+        FlightEvents.endCodecFrame(event, "PCMA", "decode", dstLength / compressionRate, pcm.length);
+        return pcm;
+    }
+
+    @Override
+    public int encode(ByteBuffer pcmIn, ByteBuffer out) {
+        int position = pcmIn.position();
+        Object event = FlightEvents.beginCodecFrame();
+        int written = g711AlawEncoder.process(pcmIn, out);
+        FlightEvents.endCodecFrame(event, "PCMA", "encode", pcmIn.position() - position, written);
+        return written;
+    }
+
+    @Override
+    public int decode(ByteBuffer in, ByteBuffer pcmOut) {
+        int position = in.position();
+        Object event = FlightEvents.beginCodecFrame();
+        int written = g711AlawDecoder.process(in, pcmOut);
+        FlightEvents.endCodecFrame(event, "PCMA", "decode", in.position() - position, written);
+        return written;
+    }
+
+    @Override
+    public int decodeLost(int frames, ByteBuffer pcmOut) {
+        return g711AlawDecoder.decodeLost(frames, pcmOut);
     }
 
     @Override
@@ -43,6 +74,12 @@ public class PCMACipher implements Cipher {
         return Optional.of(2);
     }
 
+    @Override
+    public void reset() {
+        // G.711 is stateless, only the concealment history is kept
+        g711AlawDecoder.reset();
+    }
+
     @Override
     public void dispose() {
         g711AlawDecoder = null;
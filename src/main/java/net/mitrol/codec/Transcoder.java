@@ -0,0 +1,46 @@
+package net.mitrol.codec;
+
+import net.mitrol.codec.g711.G711Transcoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts encoded media from one cipher configuration to another, e.g. between the two legs of a bridged call.
+ * Use {@link #create(CipherKey, CipherKey)} to get the cheapest path for a pair of configurations.
+ */
+public interface Transcoder {
+
+    /**
+     * Transcodes the encoded data read from <code>in</code> into <code>out</code>, following the buffer conventions
+     * of {@link Cipher#encode(ByteBuffer, ByteBuffer)}. <code>in</code> and <code>out</code> may be the same buffer
+     * when both sides are G.711.
+     *
+     * @return the number of bytes written to <code>out</code>
+     */
+    int transcode(ByteBuffer in, ByteBuffer out);
+
+    byte[] transcode(byte[] data);
+
+    void dispose();
+
+    /**
+     * Picks the transcoding path between two configurations:
+     * <ul>
+     * <li>same configuration: a plain copy,</li>
+     * <li>A-law and u-law: a direct byte to byte {@link G711Transcoder}, no 16-bit linear intermediate,</li>
+     * <li>anything else: decode to linear with <code>from</code>, encode with <code>to</code>.</li>
+     * </ul>
+     */
+    static Transcoder create(CipherKey from, CipherKey to) {
+        if (from.equals(to)) {
+            return new DirectTranscoder(null);
+        }
+        if (from.getCodec() == CipherKey.Codec.PCMA && to.getCodec() == CipherKey.Codec.PCMU) {
+            return new DirectTranscoder(G711Transcoder.aLawToULaw());
+        }
+        if (from.getCodec() == CipherKey.Codec.PCMU && to.getCodec() == CipherKey.Codec.PCMA) {
+            return new DirectTranscoder(G711Transcoder.uLawToALaw());
+        }
+        return new LinearTranscoder(from.create(), to.create());
+    }
+}
@@ -14,6 +14,15 @@ public interface G711Codec extends Codec {
 
     public int process(byte[] data, int offset, int length, byte[] out);
 
+    /**
+     * Transcodes the remaining bytes of <code>src</code> into <code>dst</code>, starting at their
+     * current positions. Linear samples are always 16-bit little-endian, regardless of the buffer order.
+     * Works on heap and direct buffers; both positions are advanced past the processed data.
+     *
+     * @return the number of bytes written to <code>dst</code>
+     */
+    public int process(ByteBuffer src, ByteBuffer dst);
+
     default List<byte[]> process(byte[] src, int dstLength) {
         byte[] encodedBytes = new byte[dstLength];
         this.process(src, 0, src.length, encodedBytes);
@@ -25,10 +34,7 @@ public interface G711Codec extends Codec {
     default byte[] process(int compressionRate, int dstLength, byte[]... packets) {
         ByteBuffer byteBuffer = ByteBuffer.allocate(dstLength);
         for (byte[] data : packets) {
-            int length = data.length * compressionRate;
-            byte[] linearBytes = new byte[length];
-            this.process(data, 0, data.length, linearBytes);
-            byteBuffer.put(linearBytes);
+            this.process(ByteBuffer.wrap(data), byteBuffer);
         }
         return byteBuffer.array();
     }
@@ -0,0 +1,369 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package net.mitrol.codec.g711;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Bulk G.711 kernels shared by the A-law and u-law codecs.
+ * <p>
+ * Encoding is a single lookup per sample in a 64K table indexed by the raw 16-bit sample, built once from the
+ * reference per-sample compressors, so there is no sign handling, clipping or segment search left in the loop.
+ * Decoding is a lookup in a 256 entry table. Linear PCM is always 16-bit little-endian; heap buffers are processed
+ * on their backing arrays and direct buffers through little-endian short views.
+ */
+public final class G711Kernels {
+
+    private final static int cBias = 0x84;
+    private final static int cClip = 32635;
+
+    private static final ByteOrder LE = ByteOrder.LITTLE_ENDIAN;
+
+    private static final byte aLawCompressTable[] = new byte[]{
+            1, 1, 2, 2, 3, 3, 3, 3,
+            4, 4, 4, 4, 4, 4, 4, 4,
+            5, 5, 5, 5, 5, 5, 5, 5,
+            5, 5, 5, 5, 5, 5, 5, 5,
+            6, 6, 6, 6, 6, 6, 6, 6,
+            6, 6, 6, 6, 6, 6, 6, 6,
+            6, 6, 6, 6, 6, 6, 6, 6,
+            6, 6, 6, 6, 6, 6, 6, 6,
+            7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7
+    };
+
+    private static final short seg_end[] = new short[]{0xFF, 0x1FF, 0x3FF, 0x7FF,
+            0xFFF, 0x1FFF, 0x3FFF, 0x7FFF
+    };
+
+    /**
+     * linear -> law, indexed by the unsigned 16-bit sample (<code>sample &amp; 0xffff</code>)
+     */
+    static final byte[] linearToALaw = new byte[65536];
+    static final byte[] linearToULaw = new byte[65536];
+
+    /**
+     * law -> linear
+     */
+    static final short[] aLawToLinear = new short[]{
+            -5504, -5248, -6016, -5760, -4480, -4224, -4992, -4736,
+            -7552, -7296, -8064, -7808, -6528, -6272, -7040, -6784,
+            -2752, -2624, -3008, -2880, -2240, -2112, -2496, -2368,
+            -3776, -3648, -4032, -3904, -3264, -3136, -3520, -3392,
+            -22016, -20992, -24064, -23040, -17920, -16896, -19968, -18944,
+            -30208, -29184, -32256, -31232, -26112, -25088, -28160, -27136,
+            -11008, -10496, -12032, -11520, -8960, -8448, -9984, -9472,
+            -15104, -14592, -16128, -15616, -13056, -12544, -14080, -13568,
+            -344, -328, -376, -360, -280, -264, -312, -296,
+            -472, -456, -504, -488, -408, -392, -440, -424,
+            -88, -72, -120, -104, -24, -8, -56, -40,
+            -216, -200, -248, -232, -152, -136, -184, -168,
+            -1376, -1312, -1504, -1440, -1120, -1056, -1248, -1184,
+            -1888, -1824, -2016, -1952, -1632, -1568, -1760, -1696,
+            -688, -656, -752, -720, -560, -528, -624, -592,
+            -944, -912, -1008, -976, -816, -784, -880, -848,
+            5504, 5248, 6016, 5760, 4480, 4224, 4992, 4736,
+            7552, 7296, 8064, 7808, 6528, 6272, 7040, 6784,
+            2752, 2624, 3008, 2880, 2240, 2112, 2496, 2368,
+            3776, 3648, 4032, 3904, 3264, 3136, 3520, 3392,
+            22016, 20992, 24064, 23040, 17920, 16896, 19968, 18944,
+            30208, 29184, 32256, 31232, 26112, 25088, 28160, 27136,
+            11008, 10496, 12032, 11520, 8960, 8448, 9984, 9472,
+            15104, 14592, 16128, 15616, 13056, 12544, 14080, 13568,
+            344, 328, 376, 360, 280, 264, 312, 296,
+            472, 456, 504, 488, 408, 392, 440, 424,
+            88, 72, 120, 104, 24, 8, 56, 40,
+            216, 200, 248, 232, 152, 136, 184, 168,
+            1376, 1312, 1504, 1440, 1120, 1056, 1248, 1184,
+            1888, 1824, 2016, 1952, 1632, 1568, 1760, 1696,
+            688, 656, 752, 720, 560, 528, 624, 592,
+            944, 912, 1008, 976, 816, 784, 880, 848
+    };
+    static final short[] uLawToLinear = new short[]{
+            -32124, -31100, -30076, -29052, -28028, -27004, -25980, -24956,
+            -23932, -22908, -21884, -20860, -19836, -18812, -17788, -16764,
+            -15996, -15484, -14972, -14460, -13948, -13436, -12924, -12412,
+            -11900, -11388, -10876, -10364, -9852, -9340, -8828, -8316,
+            -7932, -7676, -7420, -7164, -6908, -6652, -6396, -6140,
+            -5884, -5628, -5372, -5116, -4860, -4604, -4348, -4092,
+            -3900, -3772, -3644, -3516, -3388, -3260, -3132, -3004,
+            -2876, -2748, -2620, -2492, -2364, -2236, -2108, -1980,
+            -1884, -1820, -1756, -1692, -1628, -1564, -1500, -1436,
+            -1372, -1308, -1244, -1180, -1116, -1052, -988, -924,
+            -876, -844, -812, -780, -748, -716, -684, -652,
+            -620, -588, -556, -524, -492, -460, -428, -396,
+            -372, -356, -340, -324, -308, -292, -276, -260,
+            -244, -228, -212, -196, -180, -164, -148, -132,
+            -120, -112, -104, -96, -88, -80, -72, -64,
+            -56, -48, -40, -32, -24, -16, -8, 0,
+            32124, 31100, 30076, 29052, 28028, 27004, 25980, 24956,
+            23932, 22908, 21884, 20860, 19836, 18812, 17788, 16764,
+            15996, 15484, 14972, 14460, 13948, 13436, 12924, 12412,
+            11900, 11388, 10876, 10364, 9852, 9340, 8828, 8316,
+            7932, 7676, 7420, 7164, 6908, 6652, 6396, 6140,
+            5884, 5628, 5372, 5116, 4860, 4604, 4348, 4092,
+            3900, 3772, 3644, 3516, 3388, 3260, 3132, 3004,
+            2876, 2748, 2620, 2492, 2364, 2236, 2108, 1980,
+            1884, 1820, 1756, 1692, 1628, 1564, 1500, 1436,
+            1372, 1308, 1244, 1180, 1116, 1052, 988, 924,
+            876, 844, 812, 780, 748, 716, 684, 652,
+            620, 588, 556, 524, 492, 460, 428, 396,
+            372, 356, 340, 324, 308, 292, 276, 260,
+            244, 228, 212, 196, 180, 164, 148, 132,
+            120, 112, 104, 96, 88, 80, 72, 64,
+            56, 48, 40, 32, 24, 16, 8, 0
+    };
+
+    static {
+        for (int i = 0; i < 65536; i++) {
+            linearToALaw[i] = linearToALawSample((short) i);
+            linearToULaw[i] = linear2ulaw((short) i);
+        }
+    }
+
+    private G711Kernels() {
+    }
+
+    //region A-law
+    public static byte linearToALaw(short sample) {
+        return linearToALaw[sample & 0xffff];
+    }
+
+    public static short aLawToLinear(byte alaw) {
+        return aLawToLinear[alaw & 0xff];
+    }
+
+    /**
+     * Compresses <code>count</code> little-endian samples from <code>src[srcOffset]</code> into
+     * <code>dst[dstOffset]</code>.
+     */
+    public static void linearToALaw(byte[] src, int srcOffset, byte[] dst, int dstOffset, int count) {
+        encode(linearToALaw, src, srcOffset, dst, dstOffset, count);
+    }
+
+    /**
+     * Expands <code>count</code> codes from <code>src[srcOffset]</code> into little-endian samples at
+     * <code>dst[dstOffset]</code>.
+     */
+    public static void aLawToLinear(byte[] src, int srcOffset, byte[] dst, int dstOffset, int count) {
+        decode(aLawToLinear, src, srcOffset, dst, dstOffset, count);
+    }
+
+    /**
+     * @see G711Codec#process(ByteBuffer, ByteBuffer)
+     */
+    public static int linearToALaw(ByteBuffer src, ByteBuffer dst) {
+        return encode(linearToALaw, src, dst);
+    }
+
+    /**
+     * @see G711Codec#process(ByteBuffer, ByteBuffer)
+     */
+    public static int aLawToLinear(ByteBuffer src, ByteBuffer dst) {
+        return decode(aLawToLinear, src, dst);
+    }
+    //endregion
+
+    //region u-law
+    public static byte linearToULaw(short sample) {
+        return linearToULaw[sample & 0xffff];
+    }
+
+    public static short uLawToLinear(byte ulaw) {
+        return uLawToLinear[ulaw & 0xff];
+    }
+
+    /**
+     * Compresses <code>count</code> little-endian samples from <code>src[srcOffset]</code> into
+     * <code>dst[dstOffset]</code>.
+     */
+    public static void linearToULaw(byte[] src, int srcOffset, byte[] dst, int dstOffset, int count) {
+        encode(linearToULaw, src, srcOffset, dst, dstOffset, count);
+    }
+
+    /**
+     * Expands <code>count</code> codes from <code>src[srcOffset]</code> into little-endian samples at
+     * <code>dst[dstOffset]</code>.
+     */
+    public static void uLawToLinear(byte[] src, int srcOffset, byte[] dst, int dstOffset, int count) {
+        decode(uLawToLinear, src, srcOffset, dst, dstOffset, count);
+    }
+
+    /**
+     * @see G711Codec#process(ByteBuffer, ByteBuffer)
+     */
+    public static int linearToULaw(ByteBuffer src, ByteBuffer dst) {
+        return encode(linearToULaw, src, dst);
+    }
+
+    /**
+     * @see G711Codec#process(ByteBuffer, ByteBuffer)
+     */
+    public static int uLawToLinear(ByteBuffer src, ByteBuffer dst) {
+        return decode(uLawToLinear, src, dst);
+    }
+    //endregion
+
+    //region Kernels
+    private static void encode(byte[] table, byte[] src, int srcOffset, byte[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++, srcOffset += 2) {
+            dst[dstOffset + i] = table[(src[srcOffset] & 0xff) | (src[srcOffset + 1] & 0xff) << 8];
+        }
+    }
+
+    private static void decode(short[] table, byte[] src, int srcOffset, byte[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++, dstOffset += 2) {
+            short s = table[src[srcOffset + i] & 0xff];
+            dst[dstOffset] = (byte) s;
+            dst[dstOffset + 1] = (byte) (s >> 8);
+        }
+    }
+
+    private static int encode(byte[] table, ByteBuffer src, ByteBuffer dst) {
+        int count = Math.min(src.remaining() / 2, dst.remaining());
+        int j = src.position();
+        int k = dst.position();
+        if (src.hasArray() && dst.hasArray()) {
+            encode(table, src.array(), src.arrayOffset() + j, dst.array(), dst.arrayOffset() + k, count);
+        } else {
+            ByteBuffer in = src.order() == LE ? src : src.duplicate().order(LE);
+            for (int i = 0; i < count; i++) {
+                dst.put(k + i, table[in.getShort(j + 2 * i) & 0xffff]);
+            }
+        }
+        src.position(j + 2 * count);
+        dst.position(k + count);
+        return count;
+    }
+
+    private static int decode(short[] table, ByteBuffer src, ByteBuffer dst) {
+        int count = Math.min(src.remaining(), dst.remaining() / 2);
+        int i = src.position();
+        int j = dst.position();
+        if (src.hasArray() && dst.hasArray()) {
+            decode(table, src.array(), src.arrayOffset() + i, dst.array(), dst.arrayOffset() + j, count);
+        } else {
+            ByteBuffer out = dst.order() == LE ? dst : dst.duplicate().order(LE);
+            for (int n = 0; n < count; n++) {
+                out.putShort(j + 2 * n, table[src.get(i + n) & 0xff]);
+            }
+        }
+        src.position(i + count);
+        dst.position(j + 2 * count);
+        return 2 * count;
+    }
+    //endregion
+
+    //region Reference compressors, only used to build the tables
+    /**
+     * Compress 16bit value to 8bit value
+     *
+     * @param sample 16-bit sample
+     * @return compressed 8-bit value.
+     */
+    private static byte linearToALawSample(short sample) {
+        int sign;
+        int exponent;
+        int mantissa;
+        int s;
+
+        sign = ((~sample) >> 8) & 0x80;
+        if (!(sign == 0x80)) {
+            sample = (short) -sample;
+        }
+        if (sample > cClip) {
+            sample = cClip;
+        }
+        if (sample >= 256) {
+            exponent = (int) aLawCompressTable[(sample >> 8) & 0x7F];
+            mantissa = (sample >> (exponent + 3)) & 0x0F;
+            s = (exponent << 4) | mantissa;
+        } else {
+            s = sample >> 4;
+        }
+        s ^= (sign ^ 0x55);
+        return (byte) s;
+    }
+
+    private static int search(int val, short[] table, int size) {
+        int i;
+
+        for (i = 0; i < size; i++) {
+            if (val <= table[i]) {
+                return (i);
+            }
+        }
+        return (size);
+    }
+
+    /*
+     * linear2ulaw() - Convert a linear PCM value to u-law
+     *
+     * In order to simplify the encoding process, the original linear magnitude
+     * is biased by adding 33 which shifts the encoding range from (0 - 8158) to
+     * (33 - 8191). Each biased linear code has a leading 1 which identifies the
+     * segment number. The value of the segment number is equal to 7 minus the
+     * number of leading 0's. The quantization interval is directly available as
+     * the four bits wxyz. The trailing bits are ignored.
+     *
+     * Ordinarily the complement of the resulting code word is used for
+     * transmission, and so the code word is complemented before it is returned.
+     */
+    private static byte linear2ulaw(short pcm_val) {
+        int mask;
+        int seg;
+        byte uval;
+
+        /* Get the sign and the magnitude of the value. */
+        if (pcm_val < 0) {
+            pcm_val = (short) (cBias - pcm_val);
+            mask = 0x7F;
+        } else {
+            pcm_val += cBias;
+            mask = 0xFF;
+        }
+
+        /* Convert the scaled magnitude to segment number. */
+        seg = search(pcm_val, seg_end, 8);
+
+        /*
+         * Combine the sign, segment, quantization bits;
+         * and complement the code word.
+         */
+        if (seg >= 8) /* out of range, return maximum value. */ {
+            return (byte) (0x7F ^ mask);
+        } else {
+            uval = (byte) ((seg << 4) | ((pcm_val >> (seg + 3)) & 0xF));
+            return (byte) (uval ^ mask);
+        }
+
+    }
+    //endregion
+}
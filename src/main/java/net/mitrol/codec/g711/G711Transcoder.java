@@ -0,0 +1,171 @@
+package net.mitrol.codec.g711;
+
+import net.mitrol.codec.format.Format;
+import net.mitrol.codec.format.FormatFactory;
+import net.mitrol.codec.jfr.FlightEvents;
+import net.mitrol.codec.memory.Frame;
+import net.mitrol.codec.memory.Memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Transcodes A-law to u-law (or back) one byte at a time through a 256 entry table, without going through
+ * 16-bit linear. Each table entry is the result of expanding the code and compressing it again with
+ * {@link G711Kernels}, so the output is exactly what the decode then encode path produces.
+ * <p>
+ * Input and output have the same size, so the transcoding can be done in place: {@link #process(Frame)} rewrites
+ * the payload of a frame it holds the only reference to and returns the same frame, and {@link #process(ByteBuffer, ByteBuffer)} accepts the same
+ * buffer as source and destination.
+ */
+public class G711Transcoder implements G711Codec {
+
+    private final static Format alaw = FormatFactory.createAudioFormat("pcma", 8000, 8, 1);
+    private final static Format ulaw = FormatFactory.createAudioFormat("pcmu", 8000, 8, 1);
+
+    private static final byte[] aLawToULaw = new byte[256];
+    private static final byte[] uLawToALaw = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            aLawToULaw[i] = G711Kernels.linearToULaw[G711Kernels.aLawToLinear[i] & 0xffff];
+            uLawToALaw[i] = G711Kernels.linearToALaw[G711Kernels.uLawToLinear[i] & 0xffff];
+        }
+    }
+
+    private final byte[] table;
+    private final Format input;
+    private final Format output;
+    //output codec, as named by flight recorder events
+    private final String codec;
+
+    private G711Transcoder(byte[] table, Format input, Format output, String codec) {
+        this.table = table;
+        this.input = input;
+        this.output = output;
+        this.codec = codec;
+    }
+
+    /**
+     * PCMA to PCMU.
+     */
+    public static G711Transcoder aLawToULaw() {
+        return new G711Transcoder(aLawToULaw, alaw, ulaw, "PCMU");
+    }
+
+    /**
+     * PCMU to PCMA.
+     */
+    public static G711Transcoder uLawToALaw() {
+        return new G711Transcoder(uLawToALaw, ulaw, alaw, "PCMA");
+    }
+
+    public Format getSupportedInputFormat() {
+        return input;
+    }
+
+    public Format getSupportedOutputFormat() {
+        return output;
+    }
+
+    /**
+     * Transcodes the frame payload in place and returns the same frame, now in the output format. A frame other
+     * holders still reference ({@link Frame#refCnt()} over one) is left untouched: the result goes to a new frame
+     * from the pool, and the caller's reference to the original one is released, so that either way the caller
+     * owns exactly the frame returned.
+     */
+    public Frame process(Frame frame) {
+        Object event = FlightEvents.beginCodecFrame();
+        if (frame.refCnt() > 1) {
+            Frame res = Memory.allocate(frame.getLength(), frame.isDirect());
+            int len = frame.isDirect()
+                    ? process(frame.getBuffer(), res.getBuffer())
+                    : process(frame.getData(), frame.getOffset(), frame.getLength(), res.getData());
+
+            res.setOffset(0);
+            res.setLength(len);
+            res.setFormat(output);
+            res.setTimestamp(frame.getTimestamp());
+            res.setDuration(frame.getDuration());
+            res.setEOM(frame.isEOM());
+            res.setSequenceNumber(frame.getSequenceNumber());
+            res.setHeader(frame.getHeader());
+            FlightEvents.endCodecFrame(event, codec, "transcode", frame.getLength(), len);
+            frame.release();
+            return res;
+        }
+        if (frame.isDirect()) {
+            ByteBuffer payload = frame.getBuffer();
+            process(payload, payload);
+        } else {
+            transcode(frame.getData(), frame.getOffset(), frame.getLength());
+        }
+        frame.setFormat(output);
+        FlightEvents.endCodecFrame(event, codec, "transcode", frame.getLength(), frame.getLength());
+        return frame;
+    }
+
+    /**
+     * Transcodes <code>length</code> bytes from <code>data[offset]</code> into <code>out[0]</code>.
+     * <code>out</code> may be <code>data</code> itself when <code>offset</code> is 0.
+     */
+    public int process(byte[] data, int offset, int length, byte[] out) {
+        byte[] table = this.table;
+        for (int i = 0; i < length; i++) {
+            out[i] = table[data[offset + i] & 0xff];
+        }
+        return length;
+    }
+
+    /**
+     * <code>src</code> and <code>dst</code> may be the same buffer, in which case the remaining bytes are
+     * transcoded in place and the position is advanced once.
+     *
+     * @see G711Codec#process(ByteBuffer, ByteBuffer)
+     */
+    public int process(ByteBuffer src, ByteBuffer dst) {
+        byte[] table = this.table;
+        if (src == dst) {
+            int count = src.remaining();
+            int i = src.position();
+            if (src.hasArray()) {
+                transcode(src.array(), src.arrayOffset() + i, count);
+            } else {
+                for (int n = 0; n < count; n++, i++) {
+                    src.put(i, table[src.get(i) & 0xff]);
+                }
+            }
+            src.position(src.limit());
+            return count;
+        }
+
+        int count = Math.min(src.remaining(), dst.remaining());
+        int i = src.position();
+        int j = dst.position();
+        if (src.hasArray() && dst.hasArray()) {
+            byte[] in = src.array();
+            byte[] out = dst.array();
+            int inOffset = src.arrayOffset() + i;
+            int outOffset = dst.arrayOffset() + j;
+            for (int n = 0; n < count; n++) {
+                out[outOffset + n] = table[in[inOffset + n] & 0xff];
+            }
+        } else {
+            for (int n = 0; n < count; n++) {
+                dst.put(j + n, table[src.get(i + n) & 0xff]);
+            }
+        }
+        src.position(i + count);
+        dst.position(j + count);
+        return count;
+    }
+
+    /**
+     * Transcodes <code>length</code> bytes of <code>data</code> in place, starting at <code>offset</code>.
+     */
+    public void transcode(byte[] data, int offset, int length) {
+        byte[] table = this.table;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            data[i] = table[data[i] & 0xff];
+        }
+    }
+}
@@ -26,7 +26,14 @@ package net.mitrol.codec.g711.alaw;
 import net.mitrol.codec.format.Format;
 import net.mitrol.codec.format.FormatFactory;
 import net.mitrol.codec.g711.G711Codec;
+import net.mitrol.codec.g711.G711Kernels;
+import net.mitrol.codec.jfr.FlightEvents;
 import net.mitrol.codec.memory.Frame;
+import net.mitrol.codec.memory.Memory;
+import net.mitrol.codec.plc.Concealer;
+import net.mitrol.codec.plc.G711Concealer;
+
+import java.nio.ByteBuffer;
 
 /**
  * Implements G.711 A-Law decompressor.
@@ -37,46 +44,15 @@ public class Decoder implements G711Codec {
 
     private final static Format alaw = FormatFactory.createAudioFormat("pcma", 8000, 8, 1);
     private final static Format linear = FormatFactory.createAudioFormat("linear", 8000, 16, 1);
+
+    private Concealer concealer = new G711Concealer();
+
     /**
-     * decompress table constants
+     * Replaces the packet loss concealment used by {@link #decodeLost}, G.711 Appendix I by default.
      */
-    private static short aLawDecompressTable[] = new short[]{
-            -5504, -5248, -6016, -5760, -4480, -4224, -4992, -4736,
-            -7552, -7296, -8064, -7808, -6528, -6272, -7040, -6784,
-            -2752, -2624, -3008, -2880, -2240, -2112, -2496, -2368,
-            -3776, -3648, -4032, -3904, -3264, -3136, -3520, -3392,
-            -22016, -20992, -24064, -23040, -17920, -16896, -19968, -18944,
-            -30208, -29184, -32256, -31232, -26112, -25088, -28160, -27136,
-            -11008, -10496, -12032, -11520, -8960, -8448, -9984, -9472,
-            -15104, -14592, -16128, -15616, -13056, -12544, -14080, -13568,
-            -344, -328, -376, -360, -280, -264, -312, -296,
-            -472, -456, -504, -488, -408, -392, -440, -424,
-            -88, -72, -120, -104, -24, -8, -56, -40,
-            -216, -200, -248, -232, -152, -136, -184, -168,
-            -1376, -1312, -1504, -1440, -1120, -1056, -1248, -1184,
-            -1888, -1824, -2016, -1952, -1632, -1568, -1760, -1696,
-            -688, -656, -752, -720, -560, -528, -624, -592,
-            -944, -912, -1008, -976, -816, -784, -880, -848,
-            5504, 5248, 6016, 5760, 4480, 4224, 4992, 4736,
-            7552, 7296, 8064, 7808, 6528, 6272, 7040, 6784,
-            2752, 2624, 3008, 2880, 2240, 2112, 2496, 2368,
-            3776, 3648, 4032, 3904, 3264, 3136, 3520, 3392,
-            22016, 20992, 24064, 23040, 17920, 16896, 19968, 18944,
-            30208, 29184, 32256, 31232, 26112, 25088, 28160, 27136,
-            11008, 10496, 12032, 11520, 8960, 8448, 9984, 9472,
-            15104, 14592, 16128, 15616, 13056, 12544, 14080, 13568,
-            344, 328, 376, 360, 280, 264, 312, 296,
-            472, 456, 504, 488, 408, 392, 440, 424,
-            88, 72, 120, 104, 24, 8, 56, 40,
-            216, 200, 248, 232, 152, 136, 184, 168,
-            1376, 1312, 1504, 1440, 1120, 1056, 1248, 1184,
-            1888, 1824, 2016, 1952, 1632, 1568, 1760, 1696,
-            688, 656, 752, 720, 560, 528, 624, 592,
-            944, 912, 1008, 976, 816, 784, 880, 848
-    };
-    private int j = 0;
-    private int i = 0;
-    private int len = 0;
+    public void setConcealer(Concealer concealer) {
+        this.concealer = concealer;
+    }
 
     /**
      * (Non Java-doc)
@@ -97,8 +73,11 @@ public class Decoder implements G711Codec {
      */
     @Override
     public Frame process(Frame frame) {
-        Frame res = new Frame(new byte[frame.getLength() * 2]);
-        len = process(frame.getData(), 0, frame.getLength(), res.getData());
+        Object event = FlightEvents.beginCodecFrame();
+        Frame res = Memory.allocate(frame.getLength() * 2, frame.isDirect());
+        int len = frame.isDirect()
+                ? process(frame.getBuffer(), res.getBuffer())
+                : process(frame.getData(), frame.getOffset(), frame.getLength(), res.getData());
 
         res.setOffset(0);
         res.setLength(len);
@@ -108,6 +87,7 @@ public class Decoder implements G711Codec {
         res.setEOM(frame.isEOM());
         res.setFormat(linear);
         res.setHeader(frame.getHeader());
+        FlightEvents.endCodecFrame(event, "PCMA", "decode", frame.getLength(), res.getLength());
         return res;
     }
 
@@ -117,12 +97,37 @@ public class Decoder implements G711Codec {
      * @return the output decompressed media.
      */
     public int process(byte[] src, int offset, int len, byte[] res) {
-        j = 0;
-        for (i = 0; i < len; i++) {
-            short s = aLawDecompressTable[src[i + offset] & 0xff];
-            res[j++] = (byte) s;
-            res[j++] = (byte) (s >> 8);
-        }
+        G711Kernels.aLawToLinear(src, offset, res, 0, len);
+        concealer.good(res, 0, len);
         return 2 * len;
     }
+
+    public int process(ByteBuffer src, ByteBuffer dst) {
+        int p = dst.position();
+        int written = G711Kernels.aLawToLinear(src, dst);
+        concealer.good(dst, p, written / 2);
+        return written;
+    }
+
+    /**
+     * Conceals <code>frames</code> lost 10 ms frames, writing 16-bit little-endian PCM to <code>pcm</code> and
+     * advancing its position. Stops early when <code>pcm</code> has no room for another frame.
+     *
+     * @return the number of bytes written
+     */
+    public int decodeLost(int frames, ByteBuffer pcm) {
+        int written = 0;
+        for (int i = 0; i < frames && pcm.remaining() >= 2 * Concealer.FRAME_SIZE; i++) {
+            concealer.lost(pcm);
+            written += 2 * Concealer.FRAME_SIZE;
+        }
+        return written;
+    }
+
+    /**
+     * Clears the concealment history, the only state of the decoder.
+     */
+    public void reset() {
+        concealer.reset();
+    }
 }
@@ -26,7 +26,12 @@ package net.mitrol.codec.g711.alaw;
 import net.mitrol.codec.format.Format;
 import net.mitrol.codec.format.FormatFactory;
 import net.mitrol.codec.g711.G711Codec;
+import net.mitrol.codec.g711.G711Kernels;
+import net.mitrol.codec.jfr.FlightEvents;
 import net.mitrol.codec.memory.Frame;
+import net.mitrol.codec.memory.Memory;
+
+import java.nio.ByteBuffer;
 
 /**
  * Implements G.711 A-law compressor.
@@ -38,26 +43,6 @@ public class Encoder implements G711Codec {
     private final static Format alaw = FormatFactory.createAudioFormat("pcma", 8000, 8, 1);
     private final static Format linear = FormatFactory.createAudioFormat("linear", 8000, 16, 1);
 
-    private final static int cClip = 32635;
-    private static byte aLawCompressTable[] = new byte[]{
-            1, 1, 2, 2, 3, 3, 3, 3,
-            4, 4, 4, 4, 4, 4, 4, 4,
-            5, 5, 5, 5, 5, 5, 5, 5,
-            5, 5, 5, 5, 5, 5, 5, 5,
-            6, 6, 6, 6, 6, 6, 6, 6,
-            6, 6, 6, 6, 6, 6, 6, 6,
-            6, 6, 6, 6, 6, 6, 6, 6,
-            6, 6, 6, 6, 6, 6, 6, 6,
-            7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7
-    };
-
     /**
      * (Non Java-doc)
      */
@@ -76,8 +61,11 @@ public class Encoder implements G711Codec {
      * (Non Java-doc)
      */
     public Frame process(Frame frame) {
-        Frame res = new Frame(new byte[frame.getLength() / 2]);
-        int len = process(frame.getData(), 0, frame.getLength(), res.getData());
+        Object event = FlightEvents.beginCodecFrame();
+        Frame res = Memory.allocate(frame.getLength() / 2, frame.isDirect());
+        int len = frame.isDirect()
+                ? process(frame.getBuffer(), res.getBuffer())
+                : process(frame.getData(), frame.getOffset(), frame.getLength(), res.getData());
 
         res.setOffset(0);
         res.setLength(len);
@@ -87,48 +75,17 @@ public class Encoder implements G711Codec {
         res.setEOM(frame.isEOM());
         res.setSequenceNumber(frame.getSequenceNumber());
 
+        FlightEvents.endCodecFrame(event, "PCMA", "encode", frame.getLength(), res.getLength());
         return res;
     }
 
     public int process(byte[] src, int offset, int len, byte[] res) {
-        int j = offset;
         int count = len / 2;
-        short sample = 0;
-
-        for (int i = 0; i < count; i++) {
-            sample = (short) (((src[j++] & 0xff) | (src[j++]) << 8));
-            res[i] = linearToALawSample(sample);
-        }
+        G711Kernels.linearToALaw(src, offset, res, 0, count);
         return count;
     }
 
-    /**
-     * Compress 16bit value to 8bit value
-     *
-     * @param sample 16-bit sample
-     * @return compressed 8-bit value.
-     */
-    private byte linearToALawSample(short sample) {
-        int sign;
-        int exponent;
-        int mantissa;
-        int s;
-
-        sign = ((~sample) >> 8) & 0x80;
-        if (!(sign == 0x80)) {
-            sample = (short) -sample;
-        }
-        if (sample > cClip) {
-            sample = cClip;
-        }
-        if (sample >= 256) {
-            exponent = (int) aLawCompressTable[(sample >> 8) & 0x7F];
-            mantissa = (sample >> (exponent + 3)) & 0x0F;
-            s = (exponent << 4) | mantissa;
-        } else {
-            s = sample >> 4;
-        }
-        s ^= (sign ^ 0x55);
-        return (byte) s;
+    public int process(ByteBuffer src, ByteBuffer dst) {
+        return G711Kernels.linearToALaw(src, dst);
     }
 }
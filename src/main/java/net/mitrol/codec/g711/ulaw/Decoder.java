@@ -26,7 +26,14 @@ package net.mitrol.codec.g711.ulaw;
 import net.mitrol.codec.format.Format;
 import net.mitrol.codec.format.FormatFactory;
 import net.mitrol.codec.g711.G711Codec;
+import net.mitrol.codec.g711.G711Kernels;
+import net.mitrol.codec.jfr.FlightEvents;
 import net.mitrol.codec.memory.Frame;
+import net.mitrol.codec.memory.Memory;
+import net.mitrol.codec.plc.Concealer;
+import net.mitrol.codec.plc.G711Concealer;
+
+import java.nio.ByteBuffer;
 
 /**
  * @author Oleg Kulikov
@@ -40,42 +47,16 @@ public class Decoder implements G711Codec {
     private final static int SEG_SHIFT = 4;
     private final static int SEG_MASK = 0x70;
     private final static int SIGN_BIT = 0x80;
-    private static short muLawDecompressTable[] = new short[]{
-            -32124, -31100, -30076, -29052, -28028, -27004, -25980, -24956,
-            -23932, -22908, -21884, -20860, -19836, -18812, -17788, -16764,
-            -15996, -15484, -14972, -14460, -13948, -13436, -12924, -12412,
-            -11900, -11388, -10876, -10364, -9852, -9340, -8828, -8316,
-            -7932, -7676, -7420, -7164, -6908, -6652, -6396, -6140,
-            -5884, -5628, -5372, -5116, -4860, -4604, -4348, -4092,
-            -3900, -3772, -3644, -3516, -3388, -3260, -3132, -3004,
-            -2876, -2748, -2620, -2492, -2364, -2236, -2108, -1980,
-            -1884, -1820, -1756, -1692, -1628, -1564, -1500, -1436,
-            -1372, -1308, -1244, -1180, -1116, -1052, -988, -924,
-            -876, -844, -812, -780, -748, -716, -684, -652,
-            -620, -588, -556, -524, -492, -460, -428, -396,
-            -372, -356, -340, -324, -308, -292, -276, -260,
-            -244, -228, -212, -196, -180, -164, -148, -132,
-            -120, -112, -104, -96, -88, -80, -72, -64,
-            -56, -48, -40, -32, -24, -16, -8, 0,
-            32124, 31100, 30076, 29052, 28028, 27004, 25980, 24956,
-            23932, 22908, 21884, 20860, 19836, 18812, 17788, 16764,
-            15996, 15484, 14972, 14460, 13948, 13436, 12924, 12412,
-            11900, 11388, 10876, 10364, 9852, 9340, 8828, 8316,
-            7932, 7676, 7420, 7164, 6908, 6652, 6396, 6140,
-            5884, 5628, 5372, 5116, 4860, 4604, 4348, 4092,
-            3900, 3772, 3644, 3516, 3388, 3260, 3132, 3004,
-            2876, 2748, 2620, 2492, 2364, 2236, 2108, 1980,
-            1884, 1820, 1756, 1692, 1628, 1564, 1500, 1436,
-            1372, 1308, 1244, 1180, 1116, 1052, 988, 924,
-            876, 844, 812, 780, 748, 716, 684, 652,
-            620, 588, 556, 524, 492, 460, 428, 396,
-            372, 356, 340, 324, 308, 292, 276, 260,
-            244, 228, 212, 196, 180, 164, 148, 132,
-            120, 112, 104, 96, 88, 80, 72, 64,
-            56, 48, 40, 32, 24, 16, 8, 0
-    };
     private int QUANT_MASK = 0xf;
     private byte[] temp = new byte[8192];
+    private Concealer concealer = new G711Concealer();
+
+    /**
+     * Replaces the packet loss concealment used by {@link #decodeLost}, G.711 Appendix I by default.
+     */
+    public void setConcealer(Concealer concealer) {
+        this.concealer = concealer;
+    }
 
     /**
      * (Non Java-doc)
@@ -95,11 +76,12 @@ public class Decoder implements G711Codec {
      * (Non Java-doc)
      */
     public Frame process(Frame frame) {
-        byte[] data = frame.getData();
+        Object event = FlightEvents.beginCodecFrame();
+        Frame res = Memory.allocate(frame.getLength() * 2, frame.isDirect());
 
-        Frame res = new Frame(new byte[data.length * 2]);
-
-        int len = process(data, 0, data.length, res.getData());
+        int len = frame.isDirect()
+                ? process(frame.getBuffer(), res.getBuffer())
+                : process(frame.getData(), frame.getOffset(), frame.getLength(), res.getData());
         res.setOffset(0);
         res.setLength(len);
         res.setTimestamp(frame.getTimestamp());
@@ -108,6 +90,7 @@ public class Decoder implements G711Codec {
         res.setEOM(frame.isEOM());
         res.setFormat(linear);
 
+        FlightEvents.endCodecFrame(event, "PCMU", "decode", frame.getLength(), res.getLength());
         return res;
     }
 
@@ -115,15 +98,40 @@ public class Decoder implements G711Codec {
      * Perform decopression
      */
     public int process(byte[] media, int offset, int len, byte[] res) {
-        int j = 0;
-        for (int i = 0; i < len; i++) {
-            short s = muLawDecompressTable[media[i + offset] & 0xff];
-            res[j++] = (byte) s;
-            res[j++] = (byte) (s >> 8);
-        }
+        G711Kernels.uLawToLinear(media, offset, res, 0, len);
+        concealer.good(res, 0, len);
         return 2 * len;
     }
 
+    public int process(ByteBuffer src, ByteBuffer dst) {
+        int p = dst.position();
+        int written = G711Kernels.uLawToLinear(src, dst);
+        concealer.good(dst, p, written / 2);
+        return written;
+    }
+
+    /**
+     * Conceals <code>frames</code> lost 10 ms frames, writing 16-bit little-endian PCM to <code>pcm</code> and
+     * advancing its position. Stops early when <code>pcm</code> has no room for another frame.
+     *
+     * @return the number of bytes written
+     */
+    public int decodeLost(int frames, ByteBuffer pcm) {
+        int written = 0;
+        for (int i = 0; i < frames && pcm.remaining() >= 2 * Concealer.FRAME_SIZE; i++) {
+            concealer.lost(pcm);
+            written += 2 * Concealer.FRAME_SIZE;
+        }
+        return written;
+    }
+
+    /**
+     * Clears the concealment history, the only state of the decoder.
+     */
+    public void reset() {
+        concealer.reset();
+    }
+
     /*
      * ulaw2linear() - Convert a u-law value to 16-bit linear PCM
      *
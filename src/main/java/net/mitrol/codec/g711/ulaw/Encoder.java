@@ -26,7 +26,12 @@ package net.mitrol.codec.g711.ulaw;
 import net.mitrol.codec.format.Format;
 import net.mitrol.codec.format.FormatFactory;
 import net.mitrol.codec.g711.G711Codec;
+import net.mitrol.codec.g711.G711Kernels;
+import net.mitrol.codec.jfr.FlightEvents;
 import net.mitrol.codec.memory.Frame;
+import net.mitrol.codec.memory.Memory;
+
+import java.nio.ByteBuffer;
 
 /**
  * Implements G.711 U-law compressor.
@@ -37,42 +42,6 @@ public class Encoder implements G711Codec {
     private final static Format ulaw = FormatFactory.createAudioFormat("pcmu", 8000, 8, 1);
     private final static Format linear = FormatFactory.createAudioFormat("linear", 8000, 16, 1);
 
-    private final static byte[] muLawCompressTable = new byte[]{
-            0, 0, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 3, 3,
-            4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4,
-            5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5,
-            5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5, 5,
-            6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6,
-            6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6,
-            6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6,
-            6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6, 6,
-            7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
-            7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7
-    };
-    private final static int cBias = 0x84;
-    private final static int cClip = 32635;
-    private static short seg_end[] = new short[]{0xFF, 0x1FF, 0x3FF, 0x7FF,
-            0xFFF, 0x1FFF, 0x3FFF, 0x7FFF
-    };
-    private byte[] temp = new byte[8192];
-
-    private static int search(int val, short[] table, int size) {
-        int i;
-
-        for (i = 0; i < size; i++) {
-            if (val <= table[i]) {
-                return (i);
-            }
-        }
-        return (size);
-    }
-
     public Format getSupportedInputFormat() {
         return linear;
     }
@@ -85,10 +54,12 @@ public class Encoder implements G711Codec {
      * (Non Java-doc)
      */
     public Frame process(Frame frame) {
-        byte[] data = frame.getData();
-        Frame res = new Frame(new byte[data.length / 2]);
+        Object event = FlightEvents.beginCodecFrame();
+        Frame res = Memory.allocate(frame.getLength() / 2, frame.isDirect());
 
-        int len = process(data, 0, data.length, res.getData());
+        int len = frame.isDirect()
+                ? process(frame.getBuffer(), res.getBuffer())
+                : process(frame.getData(), frame.getOffset(), frame.getLength(), res.getData());
         res.setOffset(0);
         res.setLength(len);
         res.setFormat(ulaw);
@@ -97,112 +68,18 @@ public class Encoder implements G711Codec {
         res.setEOM(frame.isEOM());
         res.setSequenceNumber(frame.getSequenceNumber());
 
+        FlightEvents.endCodecFrame(event, "PCMU", "encode", frame.getLength(), res.getLength());
         return res;
     }
 
     public int process(byte[] src, int offset, int len, byte[] res) {
-        int j = offset;
         int count = len / 2;
-        short sample = 0;
-        for (int i = 0; i < count; i++) {
-            sample = (short) (((src[j++] & 0xff) | (src[j++]) << 8));
-            res[i] = this.linear2ulaw(sample);
-        }
-        return count;
-
-/*         int j = offset;
-        int count = len / 2;
-        short sample = 0;
-
-        for (int i = 0; i < count; i++) {
-            sample = (short) (((src[j++] & 0xff) | (src[j++]) << 8));
-            res[i] = linearToULawSample(sample);
-        }
+        G711Kernels.linearToULaw(src, offset, res, 0, count);
         return count;
- */
     }
 
-    private byte linearToULawSample(short sample) {
-        int sign;
-        int exponent;
-        int mantissa;
-        int s;
-
-        sign = ((~sample) >> 8) & 0x80;
-        if (!(sign == 0x80)) {
-            sample = (short) -sample;
-        }
-        if (sample > cClip) {
-            sample = cClip;
-        }
-        if (sample >= 256) {
-            exponent = (int) muLawCompressTable[(sample >> 8) & 0x7F];
-            mantissa = (sample >> (exponent + 3)) & 0x0F;
-            s = (exponent << 4) | mantissa;
-        } else {
-            s = sample >> 4;
-        }
-        s ^= (sign ^ 0x55);
-        return (byte) s;
-    }
-
-    /*
-     * linear2ulaw() - Convert a linear PCM value to u-law
-     *
-     * In order to simplify the encoding process, the original linear magnitude
-     * is biased by adding 33 which shifts the encoding range from (0 - 8158) to
-     * (33 - 8191). The result can be seen in the following encoding table:
-     *
-     *	Biased Linear Input Code	Compressed Code
-     *	------------------------	---------------
-     *	00000001wxyza			000wxyz
-     *	0000001wxyzab			001wxyz
-     *	000001wxyzabc			010wxyz
-     *	00001wxyzabcd			011wxyz
-     *	0001wxyzabcde			100wxyz
-     *	001wxyzabcdef			101wxyz
-     *	01wxyzabcdefg			110wxyz
-     *	1wxyzabcdefgh			111wxyz
-     *
-     * Each biased linear code has a leading 1 which identifies the segment
-     * number. The value of the segment number is equal to 7 minus the number
-     * of leading 0's. The quantization interval is directly available as the
-     * four bits wxyz.  * The trailing bits (a - h) are ignored.
-     *
-     * Ordinarily the complement of the resulting code word is used for
-     * transmission, and so the code word is complemented before it is returned.
-     *
-     * For further information see John C. Bellamy's Digital Telephony, 1982,
-     * John Wiley & Sons, pps 98-111 and 472-476.
-     */
-    private byte linear2ulaw(short pcm_val) {
-        int mask;
-        int seg;
-        byte uval;
-
-        /* Get the sign and the magnitude of the value. */
-        if (pcm_val < 0) {
-            pcm_val = (short) (cBias - pcm_val);
-            mask = 0x7F;
-        } else {
-            pcm_val += cBias;
-            mask = 0xFF;
-        }
-
-        /* Convert the scaled magnitude to segment number. */
-        seg = search(pcm_val, seg_end, 8);
-
-        /*
-         * Combine the sign, segment, quantization bits;
-         * and complement the code word.
-         */
-        if (seg >= 8) /* out of range, return maximum value. */ {
-            return (byte) (0x7F ^ mask);
-        } else {
-            uval = (byte) ((seg << 4) | ((pcm_val >> (seg + 3)) & 0xF));
-            return (byte) (uval ^ mask);
-        }
-
+    public int process(ByteBuffer src, ByteBuffer dst) {
+        return G711Kernels.linearToULaw(src, dst);
     }
 
 }
@@ -0,0 +1,511 @@
+package net.mitrol.codec.g729;
+
+/**
+ * Algebraic codebook search of G.729 Annex A (acelp_ca.c): same 17 bit codebook and bitstream as {@link CelpCo},
+ * found with the depth-first search instead of the nested loops of the full search. Only 320 of the 8192 pulse
+ * combinations are tried per subframe.
+ */
+public class AcelpCa {
+
+    /* start of each correlation vector in rr[], same layout as CelpCo.cor_h() */
+    private static final int RRI0I0 = 0;
+    private static final int RRI1I1 = RRI0I0 + LD8KConstants.NB_POS;
+    private static final int RRI2I2 = RRI1I1 + LD8KConstants.NB_POS;
+    private static final int RRI3I3 = RRI2I2 + LD8KConstants.NB_POS;
+    private static final int RRI4I4 = RRI3I3 + LD8KConstants.NB_POS;
+    private static final int RRI0I1 = RRI4I4 + LD8KConstants.NB_POS;
+    private static final int RRI0I2 = RRI0I1 + LD8KConstants.MSIZE;
+    private static final int RRI0I3 = RRI0I2 + LD8KConstants.MSIZE;
+    private static final int RRI0I4 = RRI0I3 + LD8KConstants.MSIZE;
+    private static final int RRI1I2 = RRI0I4 + LD8KConstants.MSIZE;
+    private static final int RRI1I3 = RRI1I2 + LD8KConstants.MSIZE;
+    private static final int RRI1I4 = RRI1I3 + LD8KConstants.MSIZE;
+    private static final int RRI2I3 = RRI1I4 + LD8KConstants.MSIZE;
+    private static final int RRI2I4 = RRI2I3 + LD8KConstants.MSIZE;
+
+    /* scratch */
+    float dn[] = new float[LD8KConstants.L_SUBFR];
+    float rr[] = new float[LD8KConstants.DIM_RR];
+    float p_sign[] = new float[LD8KConstants.L_SUBFR];
+    float tmp_vect[] = new float[LD8KConstants.NB_POS];
+
+    /*---------------------------------------------------------------------------*
+     *  Function  ACELP_code_A()                                                 *
+     *  ~~~~~~~~~~~~~~~~~~~~~~~~                                                 *
+     *   Find Algebraic codebook for G.729A                                      *
+     *--------------------------------------------------------------------------*/
+    int ACELP_code_A(       /* (o)     :index of pulses positions    */
+                            float x[],            /* (i)     :Target vector                */
+                            float h[],            /* (i)     :Impulse response of filters  */
+                            int t0,               /* (i)     :Pitch lag                    */
+                            float pitch_sharp,    /* (i)     :Last quantized pitch gain    */
+                            float code[],         /* (o)     :Innovative codebook          */
+                            float y[],            /* (o)     :Filtered innovative codebook */
+                            IntegerPointer sign   /* (o)     :Signs of 4 pulses            */
+    ) {
+        int i, index;
+
+	    /*-----------------------------------------------------------------*
+        * Include fixed-gain pitch contribution into impulse resp. h[]    *
+	    * Find correlations of h[] needed for the codebook search.        *
+	    *-----------------------------------------------------------------*/
+
+        if (t0 < LD8KConstants.L_SUBFR)
+            for (i = t0; i < LD8KConstants.L_SUBFR; i++)
+                h[i] += pitch_sharp * h[i - t0];
+
+        CelpCo.cor_h(h, rr);
+
+	    /*-----------------------------------------------------------------*
+        * Compute correlation of target vector with impulse response.     *
+	    *-----------------------------------------------------------------*/
+
+        CorFunc.cor_h_x(h, x, dn);
+
+	    /*-----------------------------------------------------------------*
+        * Find innovative codebook.                                       *
+	    *-----------------------------------------------------------------*/
+
+        index = d4i40_17_fast(dn, rr, h, code, y, sign);
+
+	    /*-----------------------------------------------------------------*
+        * Include fixed-gain pitch contribution into code[].              *
+	    *-----------------------------------------------------------------*/
+
+        if (t0 < LD8KConstants.L_SUBFR)
+            for (i = t0; i < LD8KConstants.L_SUBFR; i++)
+                code[i] += pitch_sharp * code[i - t0];
+
+        return index;
+    }
+
+    /*------------------------------------------------------------------------*
+     * Function  d4i40_17_fast()                                              *
+     *           ~~~~~~~~~~~~~~~                                              *
+     * Algebraic codebook for ITU 8kb/s, depth-first search.                  *
+     *  -> 17 bits; 4 pulses in a frame of 40 samples                         *
+     *                                                                        *
+     *------------------------------------------------------------------------*
+     * The code length is 40, containing 4 nonzero pulses i0, i1, i2, i3.    *
+     * Each pulses can have 8 possible positions (positive or negative)       *
+     * except i3 that have 16 possible positions.                             *
+     *                                                                        *
+     * i0 (+-1) : 0, 5, 10, 15, 20, 25, 30, 35                                *
+     * i1 (+-1) : 1, 6, 11, 16, 21, 26, 31, 36                                *
+     * i2 (+-1) : 2, 7, 12, 17, 22, 27, 32, 37                                *
+     * i3 (+-1) : 3, 8, 13, 18, 23, 28, 33, 38                                *
+     *            4, 9, 14, 19, 24, 29, 34, 39                                *
+     *------------------------------------------------------------------------*
+     * The search alternates two orders, each one once with i3 on track 3     *
+     * and once on track 4:                                                   *
+     *   - i2 on its 2 best dn[] positions x i3,  then i0 x i1               *
+     *   - i3 on its 2 best dn[] positions x i0,  then i1 x i2               *
+     * keeping the combination with the best sq / alp, where sq is the       *
+     * squared correlation and alp the energy of the filtered codeword.      *
+     *------------------------------------------------------------------------*/
+    private int d4i40_17_fast(  /* (o)    : Index of pulses positions.               */
+                                float dn[],          /* (i)    : Correlations between h[] and Xn[].       */
+                                float rr[],          /* (i)    : Correlations of impulse response h[].    */
+                                float h[],           /* (i)    : Impulse response of filters.             */
+                                float cod[],         /* (o)    : Selected algebraic codeword.             */
+                                float y[],           /* (o)    : Filtered algebraic codeword.             */
+                                IntegerPointer sign  /* (o)    : Signs of 4 pulses.                       */
+    ) {
+        int i0, i1, i2, i3, ip0, ip1, ip2, ip3;
+        int i, j, ix, iy, track;
+        int prev_i0, i1_offset;
+        float psk, ps, ps0, ps1, ps2, sq, sq2;
+        float alpk, alp, alp0, alp1, alp2;
+        float max;
+        int p0, p1, p2, p3, p4;
+
+        int ptr_rri0i3_i4;
+        int ptr_rri1i3_i4;
+        int ptr_rri2i3_i4;
+        int ptr_rri3i3_i4;
+
+	    /*-----------------------------------------------------------------------*
+        * Chose the sign of the impulse.                                        *
+	    *-----------------------------------------------------------------------*/
+
+        for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+            if (dn[i] >= (float) 0.0) {
+                p_sign[i] = (float) 1.0;
+            } else {
+                p_sign[i] = (float) -1.0;
+                dn[i] = -dn[i];
+            }
+        }
+
+	    /*-------------------------------------------------------------------*
+        * Modification of rrixiy[] to take signs into account.              *
+	    *-------------------------------------------------------------------*/
+
+        p0 = RRI0I1;
+        p1 = RRI0I2;
+        p2 = RRI0I3;
+        p3 = RRI0I4;
+
+        for (i0 = 0; i0 < LD8KConstants.L_SUBFR; i0 += LD8KConstants.STEP) {
+            for (i1 = 1; i1 < LD8KConstants.L_SUBFR; i1 += LD8KConstants.STEP) {
+                rr[p0++] *= p_sign[i0] * p_sign[i1];
+                rr[p1++] *= p_sign[i0] * p_sign[i1 + 1];
+                rr[p2++] *= p_sign[i0] * p_sign[i1 + 2];
+                rr[p3++] *= p_sign[i0] * p_sign[i1 + 3];
+            }
+        }
+
+        p0 = RRI1I2;
+        p1 = RRI1I3;
+        p2 = RRI1I4;
+
+        for (i1 = 1; i1 < LD8KConstants.L_SUBFR; i1 += LD8KConstants.STEP) {
+            for (i2 = 2; i2 < LD8KConstants.L_SUBFR; i2 += LD8KConstants.STEP) {
+                rr[p0++] *= p_sign[i1] * p_sign[i2];
+                rr[p1++] *= p_sign[i1] * p_sign[i2 + 1];
+                rr[p2++] *= p_sign[i1] * p_sign[i2 + 2];
+            }
+        }
+
+        p0 = RRI2I3;
+        p1 = RRI2I4;
+
+        for (i2 = 2; i2 < LD8KConstants.L_SUBFR; i2 += LD8KConstants.STEP) {
+            for (i3 = 3; i3 < LD8KConstants.L_SUBFR; i3 += LD8KConstants.STEP) {
+                rr[p0++] *= p_sign[i2] * p_sign[i3];
+                rr[p1++] *= p_sign[i2] * p_sign[i3 + 1];
+            }
+        }
+
+	    /*-------------------------------------------------------------------*
+        * Search the optimum positions of the four pulses which maximize    *
+	    *     square(correlation) / energy                                  *
+	    *-------------------------------------------------------------------*/
+
+        psk = (float) -1.0;
+        alpk = (float) 1.0;
+
+        ptr_rri0i3_i4 = RRI0I3;
+        ptr_rri1i3_i4 = RRI1I3;
+        ptr_rri2i3_i4 = RRI2I3;
+        ptr_rri3i3_i4 = RRI3I3;
+
+	    /* Initializations only to remove warning from some compilers */
+
+        ip0 = 0;
+        ip1 = 1;
+        ip2 = 2;
+        ip3 = 3;
+        ix = 0;
+        iy = 0;
+        ps = (float) 0.0;
+        i0 = 0;
+
+	    /* search 2 times: track 3 and 4 */
+        for (track = 3; track < 5; track++) {
+	        /*------------------------------------------------------------------*
+            * depth first search 3, phase A: track 2 and 3/4.                  *
+	        *------------------------------------------------------------------*/
+
+            sq = (float) -1.0;
+            alp = (float) 1.0;
+
+	        /* i0 loop: 2 positions in track 2 */
+
+            prev_i0 = -1;
+
+            for (i = 0; i < 2; i++) {
+                max = (float) -1.0;
+	            /* search "dn[]" maximum position in track 2 */
+                for (j = 2; j < LD8KConstants.L_SUBFR; j += LD8KConstants.STEP) {
+                    if (dn[j] > max && prev_i0 != j) {
+                        max = dn[j];
+                        i0 = j;
+                    }
+                }
+                prev_i0 = i0;
+
+                j = i0 / 5;
+                p0 = RRI2I2 + j;
+
+                ps1 = dn[i0];
+                alp1 = rr[p0];
+
+	            /* i1 loop: 8 positions in track 3/4 */
+
+                p0 = ptr_rri2i3_i4 + (j << 3);
+                p1 = ptr_rri3i3_i4;
+
+                for (i1 = track; i1 < LD8KConstants.L_SUBFR; i1 += LD8KConstants.STEP) {
+                    ps2 = ps1 + dn[i1];
+
+	                /* alp2 = alp1 + 2*rr[i0][i1] + rr[i1][i1]; */
+                    alp2 = alp1 + (float) 2.0 * rr[p0++] + rr[p1++];
+
+                    sq2 = ps2 * ps2;
+
+                    if (alp * sq2 - sq * alp2 > (float) 0.0) {
+                        sq = sq2;
+                        ps = ps2;
+                        alp = alp2;
+                        ix = i0;
+                        iy = i1;
+                    }
+                }
+            }
+
+            i0 = ix;
+            i1 = iy;
+
+	        /*------------------------------------------------------------------*
+            * depth first search 3, phase B: track 0 and 1.                    *
+	        *------------------------------------------------------------------*/
+
+            ps0 = ps;
+            alp0 = alp;
+
+            sq = (float) -1.0;
+            alp = (float) 1.0;
+
+	        /* build vector for next loop to decrease complexity */
+
+            p0 = RRI1I2 + i0 / 5;
+            p1 = ptr_rri1i3_i4 + i1 / 5;
+            p2 = RRI1I1;
+            p3 = 0;
+
+            for (i3 = 1; i3 < LD8KConstants.L_SUBFR; i3 += LD8KConstants.STEP) {
+	            /* rrv[i3] = rr[i3][i3] + 2*rr[i0][i3] + 2*rr[i1][i3]; */
+                tmp_vect[p3++] = rr[p2++] + (float) 2.0 * (rr[p0] + rr[p1]);
+                p0 += LD8KConstants.NB_POS;
+                p1 += LD8KConstants.NB_POS;
+            }
+
+	        /* i2 loop: 8 positions in track 0 */
+
+            p0 = RRI0I0;
+            p1 = RRI0I1;
+            p2 = RRI0I2 + i0 / 5;
+            p3 = ptr_rri0i3_i4 + i1 / 5;
+
+            for (i2 = 0; i2 < LD8KConstants.L_SUBFR; i2 += LD8KConstants.STEP) {
+                ps1 = ps0 + dn[i2];
+
+	            /* alp1 = alp0 + rr[i2][i2] + 2*rr[i0][i2] + 2*rr[i1][i2]; */
+                alp1 = alp0 + rr[p0++] + (float) 2.0 * (rr[p2] + rr[p3]);
+                p2 += LD8KConstants.NB_POS;
+                p3 += LD8KConstants.NB_POS;
+
+	            /* i3 loop: 8 positions in track 1 */
+
+                p4 = 0;
+
+                for (i3 = 1; i3 < LD8KConstants.L_SUBFR; i3 += LD8KConstants.STEP) {
+                    ps2 = ps1 + dn[i3];
+
+	                /* alp2 = alp1 + 2*rr[i2][i3] + rrv[i3]; */
+                    alp2 = alp1 + (float) 2.0 * rr[p1++] + tmp_vect[p4++];
+
+                    sq2 = ps2 * ps2;
+
+                    if (alp * sq2 - sq * alp2 > (float) 0.0) {
+                        sq = sq2;
+                        alp = alp2;
+                        ix = i2;
+                        iy = i3;
+                    }
+                }
+            }
+
+	        /*----------------------------------------------------------------*
+            * depth first search 3: compare codevector with the best case.   *
+	        *----------------------------------------------------------------*/
+
+            if (alpk * sq - psk * alp > (float) 0.0) {
+                psk = sq;
+                alpk = alp;
+                ip2 = i0;
+                ip3 = i1;
+                ip0 = ix;
+                ip1 = iy;
+            }
+
+	        /*------------------------------------------------------------------*
+            * depth first search 4, phase A: track 3 and 0.                    *
+	        *------------------------------------------------------------------*/
+
+            sq = (float) -1.0;
+            alp = (float) 1.0;
+
+	        /* i0 loop: 2 positions in track 3/4 */
+
+            prev_i0 = -1;
+
+            for (i = 0; i < 2; i++) {
+                max = (float) -1.0;
+	            /* search "dn[]" maximum position in track 3/4 */
+                for (j = track; j < LD8KConstants.L_SUBFR; j += LD8KConstants.STEP) {
+                    if (dn[j] > max && prev_i0 != j) {
+                        max = dn[j];
+                        i0 = j;
+                    }
+                }
+                prev_i0 = i0;
+
+                j = i0 / 5;
+                p0 = ptr_rri3i3_i4 + j;
+
+                ps1 = dn[i0];
+                alp1 = rr[p0];
+
+	            /* i1 loop: 8 positions in track 0 */
+
+                p0 = ptr_rri0i3_i4 + j;
+                p1 = RRI0I0;
+
+                for (i1 = 0; i1 < LD8KConstants.L_SUBFR; i1 += LD8KConstants.STEP) {
+                    ps2 = ps1 + dn[i1];
+
+	                /* alp2 = alp1 + 2*rr[i0][i1] + rr[i1][i1]; */
+                    alp2 = alp1 + (float) 2.0 * rr[p0] + rr[p1++];
+                    p0 += LD8KConstants.NB_POS;
+
+                    sq2 = ps2 * ps2;
+
+                    if (alp * sq2 - sq * alp2 > (float) 0.0) {
+                        sq = sq2;
+                        ps = ps2;
+                        alp = alp2;
+                        ix = i0;
+                        iy = i1;
+                    }
+                }
+            }
+
+            i0 = ix;
+            i1 = iy;
+            i1_offset = (i1 / 5) << 3;
+
+	        /*------------------------------------------------------------------*
+            * depth first search 4, phase B: track 1 and 2.                    *
+	        *------------------------------------------------------------------*/
+
+            ps0 = ps;
+            alp0 = alp;
+
+            sq = (float) -1.0;
+            alp = (float) 1.0;
+
+	        /* build vector for next loop to decrease complexity */
+
+            p0 = ptr_rri2i3_i4 + i0 / 5;
+            p1 = RRI0I2 + i1_offset;
+            p2 = RRI2I2;
+            p3 = 0;
+
+            for (i3 = 2; i3 < LD8KConstants.L_SUBFR; i3 += LD8KConstants.STEP) {
+	            /* rrv[i3] = rr[i3][i3] + 2*rr[i0][i3] + 2*rr[i1][i3]; */
+                tmp_vect[p3++] = rr[p2++] + (float) 2.0 * (rr[p0] + rr[p1++]);
+                p0 += LD8KConstants.NB_POS;
+            }
+
+	        /* i2 loop: 8 positions in track 1 */
+
+            p0 = RRI1I1;
+            p1 = RRI1I2;
+            p2 = ptr_rri1i3_i4 + i0 / 5;
+            p3 = RRI0I1 + i1_offset;
+
+            for (i2 = 1; i2 < LD8KConstants.L_SUBFR; i2 += LD8KConstants.STEP) {
+                ps1 = ps0 + dn[i2];
+
+	            /* alp1 = alp0 + rr[i2][i2] + 2*rr[i0][i2] + 2*rr[i1][i2]; */
+                alp1 = alp0 + rr[p0++] + (float) 2.0 * (rr[p2] + rr[p3++]);
+                p2 += LD8KConstants.NB_POS;
+
+	            /* i3 loop: 8 positions in track 2 */
+
+                p4 = 0;
+
+                for (i3 = 2; i3 < LD8KConstants.L_SUBFR; i3 += LD8KConstants.STEP) {
+                    ps2 = ps1 + dn[i3];
+
+	                /* alp2 = alp1 + 2*rr[i2][i3] + rrv[i3]; */
+                    alp2 = alp1 + (float) 2.0 * rr[p1++] + tmp_vect[p4++];
+
+                    sq2 = ps2 * ps2;
+
+                    if (alp * sq2 - sq * alp2 > (float) 0.0) {
+                        sq = sq2;
+                        alp = alp2;
+                        ix = i2;
+                        iy = i3;
+                    }
+                }
+            }
+
+	        /*----------------------------------------------------------------*
+            * depth first search 4: compare codevector with the best case.   *
+	        *----------------------------------------------------------------*/
+
+            if (alpk * sq - psk * alp > (float) 0.0) {
+                psk = sq;
+                alpk = alp;
+                ip3 = i0;
+                ip0 = i1;
+                ip1 = ix;
+                ip2 = iy;
+            }
+
+            ptr_rri0i3_i4 = RRI0I4;
+            ptr_rri1i3_i4 = RRI1I4;
+            ptr_rri2i3_i4 = RRI2I4;
+            ptr_rri3i3_i4 = RRI4I4;
+        }
+
+	    /* Find the codeword corresponding to the selected positions */
+
+        for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+            cod[i] = (float) 0.0;
+        }
+        cod[ip0] = p_sign[ip0];
+        cod[ip1] = p_sign[ip1];
+        cod[ip2] = p_sign[ip2];
+        cod[ip3] = p_sign[ip3];
+
+	    /* find the filtered codeword */
+
+        for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+            y[i] = (float) 0.0;
+        }
+        add_pulse(y, h, ip0, p_sign[ip0]);
+        add_pulse(y, h, ip1, p_sign[ip1]);
+        add_pulse(y, h, ip2, p_sign[ip2]);
+        add_pulse(y, h, ip3, p_sign[ip3]);
+
+	    /* find codebook index;  17-bit address */
+
+        i = 0;
+        if (p_sign[ip0] > (float) 0.0) i += 1;
+        if (p_sign[ip1] > (float) 0.0) i += 2;
+        if (p_sign[ip2] > (float) 0.0) i += 4;
+        if (p_sign[ip3] > (float) 0.0) i += 8;
+        sign.value = i;
+
+        ip0 = ip0 / 5;
+        ip1 = ip1 / 5;
+        ip2 = ip2 / 5;
+        i = ip3 / 5;
+        j = ip3 % 5 - 3;
+        ip3 = (i << 1) + j;
+
+        return ip0 + (ip1 << 3) + (ip2 << 6) + (ip3 << 9);
+    }
+
+    /* y[] +/-= h[] shifted to the pulse position */
+    private static void add_pulse(float y[], float h[], int ip, float sign) {
+        for (int i = ip, j = 0; i < LD8KConstants.L_SUBFR; i++, j++) {
+            y[i] += sign * h[j];
+        }
+    }
+}
@@ -53,16 +53,28 @@ public class Bits {
             byte dst[]           /* output: serial bits (SERIAL_SIZE ) bits[0] = bfi
                                                 bits[1] = 80 */
     ) {
-        dst[0] = (byte) (anau[0] & 255);
-        dst[1] = (byte) ((anau[1] & 0x3ff) >> 2);
-        dst[2] = (byte) (((anau[1] & 3) << 6) | ((anau[2] >> 2) & 0x3f));
-        dst[3] = (byte) (((anau[2] & 3) << 6) | ((anau[3] & 1) << 5) | ((anau[4] & 8191) >> 8));
-        dst[4] = (byte) (anau[4] & 255);
-        dst[5] = (byte) (((anau[5] & 15) << 4) | ((anau[6] & 127) >> 3));
-        dst[6] = (byte) (((anau[6] & 7) << 5) | (anau[7] & 31));
-        dst[7] = (byte) ((anau[8] & 8191) >> 5);
-        dst[8] = (byte) (((anau[8] & 31) << 3) | ((anau[9] & 15) >> 1));
-        dst[9] = (byte) (((anau[9] & 1) << 7) | (anau[10] & 127));
+        prm2bits_ld8k_b(anau, dst, 0);
+    }
+
+    /*----------------------------------------------------------------------------
+     * prm2bits_ld8k_b - packs the encoder parameters straight into the 10 byte
+     *                   (80 bit) frame at dst[dsts], no serial bit vector needed
+     *----------------------------------------------------------------------------
+     */
+    public static void prm2bits_ld8k_b(
+            int anau[],         /* input : encoded parameters  (PRM_SIZE parameters)  */
+            byte dst[], int dsts /* output: packed frame dst[dsts:dsts+9]            */
+    ) {
+        dst[dsts] = (byte) (anau[0] & 255);
+        dst[dsts + 1] = (byte) ((anau[1] & 0x3ff) >> 2);
+        dst[dsts + 2] = (byte) (((anau[1] & 3) << 6) | ((anau[2] >> 2) & 0x3f));
+        dst[dsts + 3] = (byte) (((anau[2] & 3) << 6) | ((anau[3] & 1) << 5) | ((anau[4] & 8191) >> 8));
+        dst[dsts + 4] = (byte) (anau[4] & 255);
+        dst[dsts + 5] = (byte) (((anau[5] & 15) << 4) | ((anau[6] & 127) >> 3));
+        dst[dsts + 6] = (byte) (((anau[6] & 7) << 5) | (anau[7] & 31));
+        dst[dsts + 7] = (byte) ((anau[8] & 8191) >> 5);
+        dst[dsts + 8] = (byte) (((anau[8] & 31) << 3) | ((anau[9] & 15) >> 1));
+        dst[dsts + 9] = (byte) (((anau[9] & 1) << 7) | (anau[10] & 127));
 
         return;
     }
@@ -153,6 +165,62 @@ public class Bits {
 
     }
 
+    /*----------------------------------------------------------------------------
+     * bits2prm_ld8k_b - unpacks a 10 byte (80 bit) frame at src[srcs] straight
+     *                   into the parameter vector, inverse of prm2bits_ld8k_b
+     *----------------------------------------------------------------------------
+     */
+    public static void bits2prm_ld8k_b(
+            byte src[], int srcs,        /* input : packed frame src[srcs:srcs+9]          */
+            int prm[], int ps            /* output: decoded parameters (11 parameters)     */
+    ) {
+        int b0 = src[srcs] & 255, b1 = src[srcs + 1] & 255, b2 = src[srcs + 2] & 255, b3 = src[srcs + 3] & 255;
+        int b4 = src[srcs + 4] & 255, b5 = src[srcs + 5] & 255, b6 = src[srcs + 6] & 255, b7 = src[srcs + 7] & 255;
+        int b8 = src[srcs + 8] & 255, b9 = src[srcs + 9] & 255;
+
+        prm[ps] = b0;
+        prm[ps + 1] = (b1 << 2) | (b2 >> 6);
+        prm[ps + 2] = ((b2 & 0x3f) << 2) | (b3 >> 6);
+        prm[ps + 3] = (b3 >> 5) & 1;
+        prm[ps + 4] = ((b3 & 31) << 8) | b4;
+        prm[ps + 5] = b5 >> 4;
+        prm[ps + 6] = ((b5 & 15) << 3) | (b6 >> 5);
+        prm[ps + 7] = b6 & 31;
+        prm[ps + 8] = (b7 << 5) | (b8 >> 3);
+        prm[ps + 9] = ((b8 & 7) << 1) | (b9 >> 7);
+        prm[ps + 10] = b9 & 127;
+    }
+
+    /*----------------------------------------------------------------------------
+     * prm2bits_sid_b - packs the SID parameters (G.729B: 1 bit MA mode, 5+4 bit
+     *                  LSF indices, 5 bit gain) into the 2 byte frame at dst[dsts],
+     *                  the last bit is unused and set to zero (RFC 3551)
+     *----------------------------------------------------------------------------
+     */
+    public static void prm2bits_sid_b(
+            int anau[], int as,          /* input : SID parameters (PRM_SIZE_SID parameters) */
+            byte dst[], int dsts         /* output: packed frame dst[dsts:dsts+1]            */
+    ) {
+        dst[dsts] = (byte) (((anau[as] & 1) << 7) | ((anau[as + 1] & 31) << 2) | ((anau[as + 2] & 15) >> 2));
+        dst[dsts + 1] = (byte) (((anau[as + 2] & 3) << 6) | ((anau[as + 3] & 31) << 1));
+    }
+
+    /*----------------------------------------------------------------------------
+     * bits2prm_sid_b - unpacks a 2 byte SID frame, inverse of prm2bits_sid_b
+     *----------------------------------------------------------------------------
+     */
+    public static void bits2prm_sid_b(
+            byte src[], int srcs,        /* input : packed frame src[srcs:srcs+1]            */
+            int prm[], int ps            /* output: SID parameters (4 parameters)            */
+    ) {
+        int b0 = src[srcs] & 255, b1 = src[srcs + 1] & 255;
+
+        prm[ps] = b0 >> 7;
+        prm[ps + 1] = (b0 >> 2) & 31;
+        prm[ps + 2] = ((b0 & 3) << 2) | (b1 >> 6);
+        prm[ps + 3] = (b1 >> 1) & 31;
+    }
+
     /*----------------------------------------------------------------------------
      * bin2int - read specified bits from bit array  and convert to integer value
      *----------------------------------------------------------------------------
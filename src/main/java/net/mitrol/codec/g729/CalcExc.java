@@ -0,0 +1,160 @@
+package net.mitrol.codec.g729;
+
+/**
+ * Comfort noise excitation of G.729 Annex B (calcexc.c), shared by the encoder and the decoder: both run it with
+ * the same seed and the same gains so that their excitation histories stay identical through the silence and the
+ * adaptive codebook is in sync again when speech resumes.
+ */
+public class CalcExc {
+
+    /* Workspace, kept here so calc_exc_rand() does not allocate */
+    float excg[] = new float[LD8KConstants.L_SUBFR];
+    int pos[] = new int[4];
+    int sign[] = new int[4];
+
+    /*-----------------------------------------------------------*
+     * random_g729 - pseudo random generator of the ITU reference *
+     *   (16 bit linear congruential, seed kept by the caller)    *
+     *-----------------------------------------------------------*/
+    static short random_g729(IntegerPointer seed) {
+        seed.value = (short) (seed.value * 31821 + 13849);
+        return (short) seed.value;
+    }
+
+    /*-----------------------------------------------------------*
+     * gauss - approximately gaussian sample (sum of 12 uniform)  *
+     *-----------------------------------------------------------*/
+    static float gauss(IntegerPointer seed) {
+        int i;
+        float temp = (float) 0.0;
+
+        for (i = 0; i < 12; i++) {
+            temp += (float) random_g729(seed);
+        }
+        return temp * ((float) 1. / (float) 65536.);
+    }
+
+    /*-----------------------------------------------------------*
+     * calc_exc_rand - computes the comfort noise excitation      *
+     *                                                            *
+     * Each subframe gets a random adaptive codebook vector       *
+     * (lag 40..103, gain up to G_MAX_CNG), four random pulses    *
+     * and gaussian noise. The pulse gain is solved so that the   *
+     * adaptive and pulse part carries K0 of the target energy    *
+     * L_SUBFR * cur_gain^2, the gaussian part carries the rest.  *
+     *-----------------------------------------------------------*/
+    public void calc_exc_rand(
+            float cur_gain,            /* (i)   : target sample gain                 */
+            float exc[], int excs,     /* (i/o) : excitation array, exc[-PIT_MAX..]  */
+            IntegerPointer seed,       /* (i/o) : current seed for random generator  */
+            Taming taming              /* (i/o) : encoder taming state, null at decoder */
+    ) {
+        int i, i_subfr, temp1, temp2, t0, frac;
+        float ener, fact, inter_exc, b, c, delta, x1, x2, gp, gf;
+
+        if (cur_gain == (float) 0.) {
+            for (i = 0; i < LD8KConstants.L_FRAME; i++) {
+                exc[excs + i] = (float) 0.;
+            }
+            if (taming != null) {
+                for (i_subfr = 0; i_subfr < LD8KConstants.L_FRAME; i_subfr += LD8KConstants.L_SUBFR) {
+                    taming.update_exc_err((float) 0., LD8KConstants.L_SUBFR + 1);
+                }
+            }
+            return;
+        }
+
+        for (i_subfr = 0; i_subfr < LD8KConstants.L_FRAME; i_subfr += LD8KConstants.L_SUBFR) {
+            int cur_exc = excs + i_subfr;
+
+	        /* generate random adaptive codebook and fixed codebook parameters */
+            temp1 = random_g729(seed);
+            frac = (temp1 & 3) - 1;
+            if (frac == 2) frac = 0;
+            temp1 >>= 2;
+            t0 = (temp1 & 0x3F) + 40;
+            temp1 >>= 6;
+            temp2 = temp1 & 7;
+            pos[0] = 5 * temp2;
+            temp1 >>= 3;
+            sign[0] = temp1 & 1;
+            temp1 >>= 1;
+            temp2 = temp1 & 7;
+            pos[1] = 5 * temp2 + 1;
+            temp1 >>= 3;
+            sign[1] = temp1 & 1;
+
+            temp1 = random_g729(seed);
+            temp2 = temp1 & 7;
+            pos[2] = 5 * temp2 + 2;
+            temp1 >>= 3;
+            sign[2] = temp1 & 1;
+            temp1 >>= 1;
+            temp2 = temp1 & 0xF;
+            pos[3] = (temp2 & 1) + 3;
+            temp2 = (temp2 >> 1) & 7;
+            pos[3] += 5 * temp2;
+            temp1 >>= 4;
+            sign[3] = temp1 & 1;
+
+            gp = LD8KConstants.G_MAX_CNG * (float) (random_g729(seed) & 0x3FFF) * ((float) 1. / (float) 16384.);
+
+	        /* generate gaussian excitation, scaled to FRAC_GAUSS of the target rms */
+            ener = (float) 0.;
+            for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+                excg[i] = gauss(seed);
+                ener += excg[i] * excg[i];
+            }
+            fact = LD8KConstants.FRAC_GAUSS * cur_gain * (float) Math.sqrt((float) LD8KConstants.L_SUBFR / (ener + (float) 0.01));
+            for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+                excg[i] *= fact;
+            }
+
+	        /* generate random adaptive excitation */
+            PredLt.pred_lt_3(exc, cur_exc, t0, frac, LD8KConstants.L_SUBFR);
+
+	        /* compute the pulse gain: solve 4 X^2 + 2 b X + c = 0 */
+            inter_exc = (float) 0.;
+            for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+                exc[cur_exc + i] *= gp;
+                inter_exc += exc[cur_exc + i] * exc[cur_exc + i];
+            }
+            b = (float) 0.;
+            for (i = 0; i < 4; i++) {
+                if (sign[i] != 0) b += exc[cur_exc + pos[i]];
+                else b -= exc[cur_exc + pos[i]];
+            }
+            c = inter_exc - LD8KConstants.K0 * (float) LD8KConstants.L_SUBFR * cur_gain * cur_gain;
+            delta = b * b - (float) 4. * c;
+
+            if (delta < (float) 0.) {
+	            /* adaptive part alone is too strong: drop it */
+                for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+                    exc[cur_exc + i] = (float) 0.;
+                }
+                gp = (float) 0.;
+                b = (float) 0.;
+                c = -LD8KConstants.K0 * (float) LD8KConstants.L_SUBFR * cur_gain * cur_gain;
+                delta = (float) -4. * c;
+            }
+
+            delta = (float) Math.sqrt(delta);
+            x1 = (-b + delta) * (float) 0.25;
+            x2 = (-b - delta) * (float) 0.25;
+            gf = (Math.abs(x1) < Math.abs(x2)) ? x1 : x2;
+
+	        /* update cur_exc with the pulses and the gaussian noise */
+            for (i = 0; i < 4; i++) {
+                if (sign[i] != 0) exc[cur_exc + pos[i]] += gf;
+                else exc[cur_exc + pos[i]] -= gf;
+            }
+            for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+                exc[cur_exc + i] += excg[i];
+            }
+
+            if (taming != null) {
+                taming.update_exc_err(gp, t0);
+            }
+        }
+    }
+}
@@ -24,6 +24,11 @@ package net.mitrol.codec.g729;
 
 public class CelpCo {
 
+    /* scratch */
+    float dn[] = new float[LD8KConstants.L_SUBFR];
+    float rr[] = new float[LD8KConstants.DIM_RR];
+    float p_sign[] = new float[LD8KConstants.L_SUBFR];
+
     int extra;
 
 
@@ -382,8 +387,6 @@ public class CelpCo {
                             IntegerPointer sign             /* (o)     :Signs of 4 pulses            */
     ) {
         int i, index;
-        float dn[] = new float[LD8KConstants.L_SUBFR];
-        float rr[] = new float[LD8KConstants.DIM_RR];
 
 	    /*----------------------------------------------------------------*
         * Include fixed-gain pitch contribution into impulse resp. h[]    *
@@ -449,7 +452,6 @@ public class CelpCo {
         float ps0, ps1, ps2, ps3, alp0, alp1, alp2, alp3;
         float ps3c, psc, alpha;
         float average, max0, max1, max2, thres;
-        float p_sign[] = new float[LD8KConstants.L_SUBFR];
 
         int rri0i0, rri1i1, rri2i2, rri3i3, rri4i4;
         int rri0i1, rri0i2, rri0i3, rri0i4;
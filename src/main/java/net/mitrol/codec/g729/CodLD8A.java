@@ -0,0 +1,290 @@
+package net.mitrol.codec.g729;
+
+/**
+ * Low complexity encoder of G.729 Annex A (cod_ld8a.c). The LP analysis, the LSP quantizer, the gain quantizer and
+ * the bitstream are those of {@link CodLD8K}; what changes is the search:
+ * <ul>
+ * <li>fixed perceptual weighting, W(z)/A(z) = 1/A(z/0.75), so one filter replaces the three of the full coder;</li>
+ * <li>open-loop pitch on the decimated weighted speech ({@link PitchA#pitch_ol_fast});</li>
+ * <li>closed-loop pitch on integer lags, fractions only around the best one ({@link PitchA#pitch_fr3_fast});</li>
+ * <li>depth-first algebraic codebook search ({@link AcelpCa}).</li>
+ * </ul>
+ * It reuses the state of the full coder, so {@link #reset_coder_ld8k()} and {@link #loadSpeech(float[])} apply.
+ */
+public class CodLD8A extends CodLD8K {
+
+    private static final float GAMMA1 = (float) 0.75;  /* Bandwitdh factor of the weighting filter */
+
+    AcelpCa acelpA = new AcelpCa();
+
+    /* Filter's memory */
+    float[] mem_zero = new float[LD8KConstants.M];
+
+    /* Per frame workspace */
+    float[] Ap_t = new float[(LD8KConstants.MP1) * 2];   /* A(z/gamma) for the 2 subframes */
+    float[] dn = new float[LD8KConstants.L_SUBFR];
+    float[] exc_tmp = new float[LD8KConstants.L_SUBFR];
+
+    /*----------------------------------------------------------------------------
+     * coder_ld8k - encoder routine ( speech data should be in new_speech ),
+     *              Annex A search
+     *----------------------------------------------------------------------------
+     */
+    @Override
+    public int coder_ld8k(
+            int[] ana_array, int ana             /* output: analysis parameters */
+    ) {
+        int Aq, Ap;              /* Pointer on Aq_t and Ap_t             */
+
+	  /* Scalars */
+
+        int i, j, i_subfr;
+        int T_op, t0;
+        int index, taming;
+        int Vad, ftyp;
+        float gain_pit, gain_code;
+
+	/*------------------------------------------------------------------------*
+	 *  - Perform LPC analysis:                                               *
+	 *       * autocorrelation + lag windowing                                *
+	 *       * Levinson-durbin algorithm to find a[]                          *
+	 *       * convert a[] to lsp[]                                           *
+	 *       * quantize and code the LSPs                                     *
+	 *       * find the interpolated LSPs and convert to a[] for the 2        *
+	 *         subframes (quantized only, the weighting uses them too)        *
+	 *------------------------------------------------------------------------*/
+
+        i = dtx_enable ? LD8KConstants.NP : LD8KConstants.M;         /* the VAD needs NP lags */
+        lpc.autocorr(old_speech_array, p_window, i, r);               /* Autocorrelations */
+        lpc.lag_window(i, r);                                         /* Lag windowing    */
+        lpc.levinson(r, A_t, 0, rc);                                  /* Levinson Durbin  */
+        lpc.az_lsp(A_t, 0, lsp_new, lsp_old);                         /* From A(z) to lsp */
+
+	  /* For G.729B: voice activity detection */
+
+        Vad = vad_frame();
+
+	 /*----------------------------------------------------------------------*
+	  * Inactive frame: comfort noise excitation instead of the search,      *
+	  * update wsp[], mem_w and mem_w0 from it                               *
+	  *----------------------------------------------------------------------*/
+
+        if (Vad == LD8KConstants.NOISE) {
+            ftyp = dtx.cod_cng(old_exc_array, exc, pastVad, lsp_old_q, Aq_t, ana_array, ana, quaLsp.freq_prev, seed,
+                    tamingFunc);
+            ppastVad = pastVad;
+            pastVad = Vad;
+
+            Aq = 0;
+            for (i_subfr = 0; i_subfr < LD8KConstants.L_FRAME; i_subfr += LD8KConstants.L_SUBFR) {
+	    /* Residual signal in xn */
+                Filter.residu(Aq_t, Aq, old_speech_array, speech + i_subfr, xn, 0, LD8KConstants.L_SUBFR);
+                LpcFunc.weight_az(Aq_t, Aq, GAMMA1, LD8KConstants.M, Ap_t, 0);
+
+	    /* Compute wsp and mem_w */
+                Ap1[0] = (float) 1.0;
+                for (i = 1; i <= LD8KConstants.M; i++)
+                    Ap1[i] = Ap_t[i] - (float) 0.7 * Ap_t[i - 1];
+                Filter.syn_filt(Ap1, 0, xn, 0, old_wsp_array, wsp + i_subfr, LD8KConstants.L_SUBFR, mem_w, 0, 1, yy_b);
+
+	    /* Compute mem_w0 */
+                for (i = 0; i < LD8KConstants.L_SUBFR; i++)
+                    xn[i] -= old_exc_array[exc + i_subfr + i];        /* residu[] - exc[] */
+                Filter.syn_filt(Ap_t, 0, xn, 0, xn, 0, LD8KConstants.L_SUBFR, mem_w0, 0, 1, yy_b);
+
+                Aq += LD8KConstants.MP1;
+            }
+            sharp = LD8KConstants.SHARPMIN;
+
+            update_frame();
+            return ftyp;
+        }
+
+	  /* Active frame */
+
+        seed.value = LD8KConstants.INIT_SEED;
+        ppastVad = pastVad;
+        pastVad = Vad;
+
+	  /* LSP quantization */
+
+        quaLsp.qua_lsp(lsp_new, lsp_new_q, ana_array);
+        ana += 2;                         /* Advance analysis parameters pointer */
+
+	  /*--------------------------------------------------------------------*
+	   * Find interpolated LPC parameters in all subframes                  *
+	   * The interpolated parameters are in array Aq_t[].                   *
+	   *--------------------------------------------------------------------*/
+
+        LpcFunc.int_qlpc(lsp_old_q, lsp_new_q, Aq_t, lsp_tmp, f1, f2);
+
+	  /* Compute A(z/gamma) */
+
+        LpcFunc.weight_az(Aq_t, 0, GAMMA1, LD8KConstants.M, Ap_t, 0);
+        LpcFunc.weight_az(Aq_t, LD8KConstants.MP1, GAMMA1, LD8KConstants.M, Ap_t, LD8KConstants.MP1);
+
+	  /* update the LSPs for the next frame */
+
+        for (i = 0; i < LD8KConstants.M; i++) {
+            lsp_old[i] = lsp_new[i];
+            lsp_old_q[i] = lsp_new_q[i];
+        }
+
+	 /*----------------------------------------------------------------------*
+	  * - Find the weighted input speech w_sp[] for the whole speech frame   *
+	  * - Find the open-loop pitch delay for the whole speech frame          *
+	  * - Set the range for searching closed-loop pitch in 1st subframe      *
+	  *----------------------------------------------------------------------*/
+
+        Filter.residu(Aq_t, 0, old_speech_array, speech, old_exc_array, exc, LD8KConstants.L_SUBFR);
+        Filter.residu(Aq_t, LD8KConstants.MP1, old_speech_array, speech + LD8KConstants.L_SUBFR, old_exc_array,
+                exc + LD8KConstants.L_SUBFR, LD8KConstants.L_SUBFR);
+
+        Ap1[0] = (float) 1.0;
+        for (i = 1; i <= LD8KConstants.M; i++)
+            Ap1[i] = Ap_t[i] - (float) 0.7 * Ap_t[i - 1];
+        Filter.syn_filt(Ap1, 0, old_exc_array, exc, old_wsp_array, wsp, LD8KConstants.L_SUBFR, mem_w, 0, 1, yy_b);
+
+        for (i = 1; i <= LD8KConstants.M; i++)
+            Ap1[i] = Ap_t[LD8KConstants.MP1 + i] - (float) 0.7 * Ap_t[LD8KConstants.MP1 + i - 1];
+        Filter.syn_filt(Ap1, 0, old_exc_array, exc + LD8KConstants.L_SUBFR, old_wsp_array, wsp + LD8KConstants.L_SUBFR,
+                LD8KConstants.L_SUBFR, mem_w, 0, 1, yy_b);
+
+	  /* Find open loop pitch lag for whole speech frame */
+
+        T_op = PitchA.pitch_ol_fast(old_wsp_array, wsp, LD8KConstants.L_FRAME);
+
+	  /* range for closed loop pitch search in 1st subframe */
+
+        t0_min.value = T_op - 3;
+        if (t0_min.value < LD8KConstants.PIT_MIN) t0_min.value = (int) LD8KConstants.PIT_MIN;
+        t0_max.value = t0_min.value + 6;
+        if (t0_max.value > LD8KConstants.PIT_MAX) {
+            t0_max.value = (int) LD8KConstants.PIT_MAX;
+            t0_min.value = t0_max.value - 6;
+        }
+
+	 /*------------------------------------------------------------------------*
+	  *          Loop for every subframe in the analysis frame                 *
+	  *------------------------------------------------------------------------*
+	  *  To find the pitch and innovation parameters. The subframe size is     *
+	  *  L_SUBFR and the loop is repeated L_FRAME/L_SUBFR times.               *
+	  *     - compute impulse response of weighted synthesis filter (h1[])     *
+	  *     - compute the target signal for pitch search                       *
+	  *     - find the closed-loop pitch parameters                            *
+	  *     - encode the pitch delay                                           *
+	  *     - find target vector for codebook search                           *
+	  *     - codebook search                                                  *
+	  *     - VQ of pitch and codebook gains                                   *
+	  *     - update states of weighting filter                                *
+	  *------------------------------------------------------------------------*/
+
+        Aq = 0;    /* pointer to interpolated quantized LPC parameters */
+        Ap = 0;    /* pointer to weighted LPC coefficients             */
+
+        for (i_subfr = 0; i_subfr < LD8KConstants.L_FRAME; i_subfr += LD8KConstants.L_SUBFR) {
+
+	   /*---------------------------------------------------------------*
+	    * Compute impulse response, h1[], of weighted synthesis filter  *
+	    *---------------------------------------------------------------*/
+
+            h1[0] = (float) 1.0;
+            for (i = 1; i < LD8KConstants.L_SUBFR; i++) h1[i] = (float) 0.0;
+            Filter.syn_filt(Ap_t, Ap, h1, 0, h1, 0, LD8KConstants.L_SUBFR, h1, 1, 0, yy_b);
+
+	   /*------------------------------------------------------------------------*
+	    *  Find the target vector for pitch search:                              *
+	    *------------------------------------------------------------------------*/
+
+            Filter.syn_filt(Ap_t, Ap, old_exc_array, exc + i_subfr, xn, 0, LD8KConstants.L_SUBFR, mem_w0, 0, 0, yy_b);
+
+	   /*----------------------------------------------------------------------*
+	    *                 Closed-loop fractional pitch search                  *
+	    *----------------------------------------------------------------------*/
+
+            t0 = PitchA.pitch_fr3_fast(old_exc_array, exc + i_subfr, xn, h1, LD8KConstants.L_SUBFR, t0_min.value,
+                    t0_max.value, i_subfr, t0_frac, dn, exc_tmp);
+
+            index = Pitch.enc_lag3(t0, t0_frac.value, t0_min, t0_max, LD8KConstants.PIT_MIN, LD8KConstants.PIT_MAX, i_subfr);
+
+            ana_array[ana++] = index;
+            if (i_subfr == 0)
+                ana_array[ana++] = PParity.parity_pitch(index);
+
+	   /*-----------------------------------------------------------------*
+	    *   - find filtered pitch exc                                     *
+	    *   - compute pitch gain and limit between 0 and 1.2              *
+	    *   - update target vector for codebook search                    *
+	    *-----------------------------------------------------------------*/
+
+            Filter.syn_filt(Ap_t, Ap, old_exc_array, exc + i_subfr, y1, 0, LD8KConstants.L_SUBFR, mem_zero, 0, 0, yy_b);
+
+            gain_pit = Pitch.g_pitch(xn, 0, y1, 0, g_coeff, 0, LD8KConstants.L_SUBFR);
+
+	    /* clip pitch gain if taming is necessary */
+
+            taming = tamingFunc.test_err(t0, t0_frac.value);
+
+            if (taming == 1) {
+                if (gain_pit > LD8KConstants.GPCLIP) {
+                    gain_pit = LD8KConstants.GPCLIP;
+                }
+            }
+
+            for (i = 0; i < LD8KConstants.L_SUBFR; i++)
+                xn2[i] = xn[i] - y1[i] * gain_pit;
+
+	   /*-----------------------------------------------------*
+	    * - Innovative codebook search.                       *
+	    *-----------------------------------------------------*/
+
+            index = acelpA.ACELP_code_A(xn2, h1, t0, sharp, code, y2, sign);
+            ana_array[ana++] = index;        /* Positions index */
+            ana_array[ana++] = sign.value;   /* Signs index     */
+
+	   /*-----------------------------------------------------*
+	    * - Quantization of gains.                            *
+	    *-----------------------------------------------------*/
+
+            CorFunc.corr_xy2(xn, y1, y2, g_coeff);
+
+            ana_array[ana++] = quaGain.qua_gain(code, g_coeff, LD8KConstants.L_SUBFR, tmpgain_pit, tmpgain_code, taming);
+            gain_pit = tmpgain_pit.value;
+            gain_code = tmpgain_code.value;
+
+	   /*------------------------------------------------------------*
+	    * - Update pitch sharpening "sharp" with quantized gain_pit  *
+	    *------------------------------------------------------------*/
+
+            sharp = gain_pit;
+            if (sharp > LD8KConstants.SHARPMAX) sharp = LD8KConstants.SHARPMAX;
+            if (sharp < LD8KConstants.SHARPMIN) sharp = LD8KConstants.SHARPMIN;
+
+	    /*------------------------------------------------------*
+	     * - Find the total excitation                          *
+	     * - update filter's memory for finding the target      *
+	     *   vector in the next subframe                        *
+	     *   update error function for taming process           *
+	     *------------------------------------------------------*/
+
+            for (i = 0; i < LD8KConstants.L_SUBFR; i++)
+                old_exc_array[exc + i + i_subfr] = gain_pit * old_exc_array[exc + i + i_subfr] + gain_code * code[i];
+
+            tamingFunc.update_exc_err(gain_pit, t0);
+
+            for (i = LD8KConstants.L_SUBFR - LD8KConstants.M, j = 0; i < LD8KConstants.L_SUBFR; i++, j++)
+                mem_w0[j] = xn[i] - gain_pit * y1[i] - gain_code * y2[i];
+
+            Aq += LD8KConstants.MP1;      /* interpolated LPC parameters for next subframe */
+            Ap += LD8KConstants.MP1;
+        }
+
+	  /*--------------------------------------------------*
+	   * Update signal for next frame.                    *
+	   *--------------------------------------------------*/
+
+        update_frame();
+
+        return LD8KConstants.FTYP_SPEECH;
+    }
+}
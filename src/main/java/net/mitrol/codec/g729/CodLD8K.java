@@ -70,6 +70,9 @@ public class CodLD8K {
     float[] lsp_old =
             {(float) 0.9595, (float) 0.8413, (float) 0.6549, (float) 0.4154, (float) 0.1423,
                     (float) -0.1423, (float) -0.4154, (float) -0.6549, (float) -0.8413, (float) -0.9595};
+    float[] lsp_old_reset =                   /* lsp_old(init) */
+            {(float) 0.9595, (float) 0.8413, (float) 0.6549, (float) 0.4154, (float) 0.1423,
+                    (float) -0.1423, (float) -0.4154, (float) -0.6549, (float) -0.8413, (float) -0.9595};
     float[] lsp_old_q = new float[LD8KConstants.M];
 
 	        /* Filter's memory */
@@ -90,6 +93,84 @@ public class CodLD8K {
     CelpCo acelp = new CelpCo();
     QuaGain quaGain = new QuaGain();
 
+    /* Annex B: voice activity detection and discontinuous transmission */
+    boolean dtx_enable;
+    Vad vad = new Vad();
+    Dtx dtx = new Dtx();
+    int frame;                  /* frame counter for the VAD      */
+    int pastVad, ppastVad;      /* VAD decisions of the 2 previous frames */
+    IntegerPointer seed = new IntegerPointer();   /* comfort noise generator */
+
+    /*-----------------------------------------------------------------------*
+     * Per frame workspace, kept here so coder_ld8k() does not allocate.    *
+     *-----------------------------------------------------------------------*/
+
+	  /* LPC coefficients */
+    float[] r = new float[LD8KConstants.NP + 1];             /* Autocorrelations low and hi          */
+    float[] A_t = new float[(LD8KConstants.MP1) * 2];          /* A(z) unquantized for the 2 subframes */
+    float[] Aq_t = new float[(LD8KConstants.MP1) * 2];         /* A(z)   quantized for the 2 subframes */
+    float[] Ap1 = new float[LD8KConstants.MP1];              /* A(z) with spectral expansion         */
+    float[] Ap2 = new float[LD8KConstants.MP1];              /* A(z) with spectral expansion         */
+
+	  /* LSP coefficients */
+    float[] lsp_new = new float[LD8KConstants.M];
+    float[] lsp_new_q = new float[LD8KConstants.M]; /* LSPs at 2th subframe                 */
+    float[] lsf_int = new float[LD8KConstants.M];               /* Interpolated LSF 1st subframe.       */
+    float[] lsf_new = new float[LD8KConstants.M];
+
+	  /* Variable added for adaptive gamma1 and gamma2 of the PWF */
+
+    float[] rc = new float[LD8KConstants.M];                        /* Reflection coefficients */
+    float[] gamma1 = new float[2];             /* Gamma1 for 1st and 2nd subframes */
+    float[] gamma2 = new float[2];             /* Gamma2 for 1st and 2nd subframes */
+
+	  /* Other vectors */
+    float[] synth = new float[LD8KConstants.L_FRAME];        /* Buffer for synthesis speech        */
+    float[] h1 = new float[LD8KConstants.L_SUBFR];           /* Impulse response h1[]              */
+    float[] xn = new float[LD8KConstants.L_SUBFR];           /* Target vector for pitch search     */
+    float[] xn2 = new float[LD8KConstants.L_SUBFR];          /* Target vector for codebook search  */
+    float[] code = new float[LD8KConstants.L_SUBFR];         /* Fixed codebook excitation          */
+    float[] y1 = new float[LD8KConstants.L_SUBFR];           /* Filtered adaptive excitation       */
+    float[] y2 = new float[LD8KConstants.L_SUBFR];           /* Filtered fixed codebook excitation */
+    float[] g_coeff = new float[5];            /* Correlations between xn, y1, & y2:
+	                                  <y1,y1>, <xn,y1>, <y2,y2>, <xn,y2>,<y1,y2>*/
+
+    IntegerPointer t0_frac = new IntegerPointer();
+    IntegerPointer t0_min = new IntegerPointer();
+    IntegerPointer t0_max = new IntegerPointer();
+    IntegerPointer sign = new IntegerPointer();
+    FloatPointer tmpgain_pit = new FloatPointer(), tmpgain_code = new FloatPointer();
+
+	  /* scratch for the static helpers */
+    float[] lsp_tmp = new float[LD8KConstants.M];
+    float[] f1 = new float[LD8KConstants.NC + 1], f2 = new float[LD8KConstants.NC + 1];
+    float[] yy_b = new float[LD8KConstants.L_SUBFR + LD8KConstants.M];
+    float[] corr_v = new float[10 + 2 * LD8KConstants.L_INTER4];
+    float[] excf = new float[LD8KConstants.L_SUBFR];
+    FloatPointer max1 = new FloatPointer(), max2 = new FloatPointer(), max3 = new FloatPointer();
+
+    /*----------------------------------------------------------------------------
+     * reset_coder_ld8k - brings an encoder that has already run back to its
+     *                    initial state, reusing the existing arrays
+     *----------------------------------------------------------------------------
+     */
+    public void reset_coder_ld8k() {
+        Util.set_zero(old_speech_array, LD8KConstants.L_TOTAL);
+        Util.set_zero(old_wsp_array, old_wsp_array.length);
+        Util.set_zero(old_exc_array, old_exc_array.length);
+        Util.set_zero(ai_zero_array, ai_zero_array.length);
+        Util.set_zero(mem_syn, LD8KConstants.M);
+        Util.set_zero(mem_w0, LD8KConstants.M);
+        Util.set_zero(mem_w, LD8KConstants.M);
+        Util.set_zero(mem_err_array, mem_err_array.length);
+        Util.copy(lsp_old_reset, lsp_old, LD8KConstants.M);
+
+        quaGain.init_qua_gain();
+        pwf.init_pwf();
+
+        init_coder_ld8k();
+    }
+
     /*----------------------------------------------------------------------------
      * init_coder_ld8k - initialization of variables for the encoder
      *----------------------------------------------------------------------------
@@ -141,6 +222,14 @@ public class CodLD8K {
         quaLsp.lsp_encw_reset();
         tamingFunc.init_exc_err();
 
+	  /* For G.729B */
+        frame = 0;
+        pastVad = LD8KConstants.VOICE;
+        ppastVad = LD8KConstants.VOICE;
+        seed.value = LD8KConstants.INIT_SEED;
+        vad.vad_init();
+        dtx.init_cod_cng();
+
         return;
     }
 
@@ -153,51 +242,24 @@ public class CodLD8K {
 
     /*----------------------------------------------------------------------------
      * coder_ld8k - encoder routine ( speech data should be in new_speech )
+     *
+     * Returns the frame type: FTYP_SPEECH when ana[] holds the PRM_SIZE speech
+     * parameters, FTYP_SID when it holds the PRM_SIZE_SID parameters of a SID
+     * frame and FTYP_NO_DATA when nothing is to be sent. Only FTYP_SPEECH is
+     * returned unless dtx_enable is set.
      *----------------------------------------------------------------------------
      */
-    public void coder_ld8k(
+    public int coder_ld8k(
             int[] ana_array, int ana             /* output: analysis parameters */
     ) {
-	  
-	  /* LPC coefficients */
-        float[] r = new float[LD8KConstants.MP1];                /* Autocorrelations low and hi          */
-        float[] A_t = new float[(LD8KConstants.MP1) * 2];          /* A(z) unquantized for the 2 subframes */
-        float[] Aq_t = new float[(LD8KConstants.MP1) * 2];         /* A(z)   quantized for the 2 subframes */
-        float[] Ap1 = new float[LD8KConstants.MP1];              /* A(z) with spectral expansion         */
-        float[] Ap2 = new float[LD8KConstants.MP1];              /* A(z) with spectral expansion         */
         int A, Aq;               /* Pointer on A_t and Aq_t              */
 
-	  /* LSP coefficients */
-        float[] lsp_new = new float[LD8KConstants.M];
-        float[] lsp_new_q = new float[LD8KConstants.M]; /* LSPs at 2th subframe                 */
-        float[] lsf_int = new float[LD8KConstants.M];               /* Interpolated LSF 1st subframe.       */
-        float[] lsf_new = new float[LD8KConstants.M];
-
-	  /* Variable added for adaptive gamma1 and gamma2 of the PWF */
-
-        float[] rc = new float[LD8KConstants.M];                        /* Reflection coefficients */
-        float[] gamma1 = new float[2];             /* Gamma1 for 1st and 2nd subframes */
-        float[] gamma2 = new float[2];             /* Gamma2 for 1st and 2nd subframes */
-
-	  /* Other vectors */
-        float[] synth = new float[LD8KConstants.L_FRAME];        /* Buffer for synthesis speech        */
-        float[] h1 = new float[LD8KConstants.L_SUBFR];           /* Impulse response h1[]              */
-        float[] xn = new float[LD8KConstants.L_SUBFR];           /* Target vector for pitch search     */
-        float[] xn2 = new float[LD8KConstants.L_SUBFR];          /* Target vector for codebook search  */
-        float[] code = new float[LD8KConstants.L_SUBFR];         /* Fixed codebook excitation          */
-        float[] y1 = new float[LD8KConstants.L_SUBFR];           /* Filtered adaptive excitation       */
-        float[] y2 = new float[LD8KConstants.L_SUBFR];           /* Filtered fixed codebook excitation */
-        float[] g_coeff = new float[5];            /* Correlations between xn, y1, & y2:
-	                                  <y1,y1>, <xn,y1>, <y2,y2>, <xn,y2>,<y1,y2>*/
-
 	  /* Scalars */
 
         int i, j, i_gamma, i_subfr;
         int T_op, t0;
-        IntegerPointer t0_frac = new IntegerPointer();
-        IntegerPointer t0_min = new IntegerPointer();
-        IntegerPointer t0_max = new IntegerPointer();
         int index, taming;
+        int Vad, ftyp;
         float gain_pit, gain_code = 0;
 
 	/*------------------------------------------------------------------------*
@@ -212,19 +274,24 @@ public class CodLD8K {
 
 	  /* LP analysis */
 
-        lpc.autocorr(ArrayUtils.subArray(old_speech_array, p_window), LD8KConstants.M, r);                     /* Autocorrelations */
-        lpc.lag_window(LD8KConstants.M, r);                             /* Lag windowing    */
+        i = dtx_enable ? LD8KConstants.NP : LD8KConstants.M;         /* the VAD needs NP lags */
+        lpc.autocorr(old_speech_array, p_window, i, r);                     /* Autocorrelations */
+        lpc.lag_window(i, r);                             /* Lag windowing    */
+
+        lpc.levinson(r, A_t, LD8KConstants.MP1, rc);                   /* Levinson Durbin  */
+
+        lpc.az_lsp(A_t, LD8KConstants.MP1, lsp_new, lsp_old);          /* From A(z) to lsp */
+
+	  /* For G.729B: voice activity detection */
 
-        float[] tmp = ArrayUtils.subArray(A_t, LD8KConstants.MP1);
-        lpc.levinson(r, tmp, rc);                   /* Levinson Durbin  */
-        ArrayUtils.replace(A_t, LD8KConstants.MP1, tmp);
+        Vad = vad_frame();
 
-        lpc.az_lsp(tmp, lsp_new, lsp_old);          /* From A(z) to lsp */
-        ArrayUtils.replace(A_t, LD8KConstants.MP1, tmp);
-	  /* LSP quantization */
+	  /* LSP quantization, an inactive frame gets its LSPs from the SID coder */
 
-        quaLsp.qua_lsp(lsp_new, lsp_new_q, ana_array);
-        ana += 2;                         /* Advance analysis parameters pointer */
+        if (Vad == LD8KConstants.VOICE) {
+            quaLsp.qua_lsp(lsp_new, lsp_new_q, ana_array);
+            ana += 2;                         /* Advance analysis parameters pointer */
+        }
 
 	  /*--------------------------------------------------------------------*
 	   * Find interpolated LPC parameters in all subframes (both quantized  *
@@ -233,15 +300,17 @@ public class CodLD8K {
 	   * and the quantized interpolated parameters are in array Aq_t[]      *
 	   *--------------------------------------------------------------------*/
 
-        LpcFunc.int_lpc(lsp_old, lsp_new, lsf_int, lsf_new, A_t);
-        LpcFunc.int_qlpc(lsp_old_q, lsp_new_q, Aq_t);
+        LpcFunc.int_lpc(lsp_old, lsp_new, lsf_int, lsf_new, A_t, lsp_tmp, f1, f2);
+        if (Vad == LD8KConstants.VOICE)
+            LpcFunc.int_qlpc(lsp_old_q, lsp_new_q, Aq_t, lsp_tmp, f1, f2);
 
 	  /* update the LSPs for the next frame */
 
         for (i = 0; i < LD8KConstants.M; i++) {
             lsp_old[i] = lsp_new[i];
-            lsp_old_q[i] = lsp_new_q[i];
         }
+        if (Vad == LD8KConstants.VOICE)
+            Util.copy(lsp_new_q, lsp_old_q, LD8KConstants.M);
 
 	 /*----------------------------------------------------------------------*
 	  * - Find the weighting factors                                         *
@@ -260,16 +329,63 @@ public class CodLD8K {
         LpcFunc.weight_az(A_t, 0, gamma2[0], LD8KConstants.M, Ap2, 0);
 
         Filter.residu(Ap1, 0, old_speech_array, speech, old_wsp_array, wsp, LD8KConstants.L_SUBFR);
-        Filter.syn_filt(Ap2, 0, old_wsp_array, wsp, old_wsp_array, wsp, LD8KConstants.L_SUBFR, mem_w, 0, 1);
+        Filter.syn_filt(Ap2, 0, old_wsp_array, wsp, old_wsp_array, wsp, LD8KConstants.L_SUBFR, mem_w, 0, 1, yy_b);
 
         LpcFunc.weight_az(A_t, LD8KConstants.MP1, gamma1[1], LD8KConstants.M, Ap1, 0);
         LpcFunc.weight_az(A_t, LD8KConstants.MP1, gamma2[1], LD8KConstants.M, Ap2, 0);
         Filter.residu(Ap1, 0, old_speech_array, speech + LD8KConstants.L_SUBFR, old_wsp_array, wsp + LD8KConstants.L_SUBFR, LD8KConstants.L_SUBFR);
-        Filter.syn_filt(Ap2, 0, old_wsp_array, wsp + LD8KConstants.L_SUBFR, old_wsp_array, wsp + LD8KConstants.L_SUBFR, LD8KConstants.L_SUBFR, mem_w, 0, 1);
+        Filter.syn_filt(Ap2, 0, old_wsp_array, wsp + LD8KConstants.L_SUBFR, old_wsp_array, wsp + LD8KConstants.L_SUBFR, LD8KConstants.L_SUBFR, mem_w, 0, 1, yy_b);
 	  
+	 /*----------------------------------------------------------------------*
+	  * Inactive frame: comfort noise excitation instead of the search, the  *
+	  * filter memories follow it so that speech can resume seamlessly       *
+	  *----------------------------------------------------------------------*/
+
+        if (Vad == LD8KConstants.NOISE) {
+            ftyp = dtx.cod_cng(old_exc_array, exc, pastVad, lsp_old_q, Aq_t, ana_array, ana, quaLsp.freq_prev, seed,
+                    tamingFunc);
+            ppastVad = pastVad;
+            pastVad = Vad;
+
+            A = 0;
+            Aq = 0;
+            i_gamma = 0;
+            for (i_subfr = 0; i_subfr < LD8KConstants.L_FRAME; i_subfr += LD8KConstants.L_SUBFR) {
+                LpcFunc.weight_az(A_t, A, gamma1[i_gamma], LD8KConstants.M, Ap1, 0);
+                LpcFunc.weight_az(A_t, A, gamma2[i_gamma], LD8KConstants.M, Ap2, 0);
+                i_gamma++;
+
+	    /* update mem_syn */
+                Filter.syn_filt(Aq_t, Aq, old_exc_array, exc + i_subfr, synth, i_subfr, LD8KConstants.L_SUBFR, mem_syn, 0, 1, yy_b);
+
+	    /* update mem_w0 */
+                for (i = 0; i < LD8KConstants.L_SUBFR; i++)
+                    mem_err_array[error + i] = old_speech_array[speech + i_subfr + i] - synth[i_subfr + i];
+                Filter.residu(Ap1, 0, mem_err_array, error, xn, 0, LD8KConstants.L_SUBFR);
+                Filter.syn_filt(Ap2, 0, xn, 0, xn, 0, LD8KConstants.L_SUBFR, mem_w0, 0, 1, yy_b);
+
+	    /* update mem_err */
+                for (i = LD8KConstants.L_SUBFR - LD8KConstants.M, j = 0; i < LD8KConstants.L_SUBFR; i++, j++)
+                    mem_err_array[mem_err + j] = mem_err_array[error + i];
+
+                A += LD8KConstants.MP1;
+                Aq += LD8KConstants.MP1;
+            }
+            sharp = LD8KConstants.SHARPMIN;
+
+            update_frame();
+            return ftyp;
+        }
+
+	  /* Active frame */
+
+        seed.value = LD8KConstants.INIT_SEED;
+        ppastVad = pastVad;
+        pastVad = Vad;
+
 	  /* Find open loop pitch lag for whole speech frame */
 
-        T_op = Pitch.pitch_ol(old_wsp_array, wsp, LD8KConstants.PIT_MIN, LD8KConstants.PIT_MAX, LD8KConstants.L_FRAME);
+        T_op = Pitch.pitch_ol(old_wsp_array, wsp, LD8KConstants.PIT_MIN, LD8KConstants.PIT_MAX, LD8KConstants.L_FRAME, max1, max2, max3);
 
 	  /* range for closed loop pitch search in 1st subframe */
 
@@ -320,8 +436,8 @@ public class CodLD8K {
 	    *---------------------------------------------------------------*/
 
             for (i = 0; i <= LD8KConstants.M; i++) ai_zero_array[ai_zero + i] = Ap1[i];
-            Filter.syn_filt(Aq_t, Aq, ai_zero_array, ai_zero, h1, 0, LD8KConstants.L_SUBFR, ai_zero_array, zero, 0);
-            Filter.syn_filt(Ap2, 0, h1, 0, h1, 0, LD8KConstants.L_SUBFR, ai_zero_array, zero, 0);
+            Filter.syn_filt(Aq_t, Aq, ai_zero_array, ai_zero, h1, 0, LD8KConstants.L_SUBFR, ai_zero_array, zero, 0, yy_b);
+            Filter.syn_filt(Ap2, 0, h1, 0, h1, 0, LD8KConstants.L_SUBFR, ai_zero_array, zero, 0, yy_b);
 
 	   /*------------------------------------------------------------------------*
 	    *                                                                        *
@@ -352,18 +468,18 @@ public class CodLD8K {
 
             Filter.residu(Aq_t, Aq, old_speech_array, speech + i_subfr, old_exc_array, exc + i_subfr, LD8KConstants.L_SUBFR);   /* LPC residual */
 
-            Filter.syn_filt(Aq_t, Aq, old_exc_array, exc + i_subfr, mem_err_array, error, LD8KConstants.L_SUBFR, mem_err_array, mem_err, 0);
+            Filter.syn_filt(Aq_t, Aq, old_exc_array, exc + i_subfr, mem_err_array, error, LD8KConstants.L_SUBFR, mem_err_array, mem_err, 0, yy_b);
 
             Filter.residu(Ap1, 0, mem_err_array, error, xn, 0, LD8KConstants.L_SUBFR);
 
-            Filter.syn_filt(Ap2, 0, xn, 0, xn, 0, LD8KConstants.L_SUBFR, mem_w0, 0, 0);    /* target signal xn[]*/
+            Filter.syn_filt(Ap2, 0, xn, 0, xn, 0, LD8KConstants.L_SUBFR, mem_w0, 0, 0, yy_b);    /* target signal xn[]*/
 
 	   /*----------------------------------------------------------------------*
 	    *                 Closed-loop fractional pitch search                  *
 	    *----------------------------------------------------------------------*/
 
             t0 = Pitch.pitch_fr3(old_exc_array, exc + i_subfr, xn, 0, h1, 0, LD8KConstants.L_SUBFR, t0_min.value, t0_max.value,
-                    i_subfr, t0_frac);
+                    i_subfr, t0_frac, corr_v, excf);
 
 
             index = Pitch.enc_lag3(t0, t0_frac.value, t0_min, t0_max, LD8KConstants.PIT_MIN, LD8KConstants.PIT_MAX, i_subfr);
@@ -404,11 +520,9 @@ public class CodLD8K {
 	    * - Innovative codebook search.                       *
 	    *-----------------------------------------------------*/
 
-            IntegerPointer tmpi = new IntegerPointer(i);
-            index = acelp.ACELP_codebook(xn2, h1, t0, sharp, i_subfr, code, y2, tmpi);
-            i = tmpi.value;
+            index = acelp.ACELP_codebook(xn2, h1, t0, sharp, i_subfr, code, y2, sign);
             ana_array[ana++] = index;        /* Positions index */
-            ana_array[ana++] = i;            /* Signs index     */
+            ana_array[ana++] = sign.value;   /* Signs index     */
 
 
 	   /*-----------------------------------------------------*
@@ -416,7 +530,6 @@ public class CodLD8K {
 	    *-----------------------------------------------------*/
             CorFunc.corr_xy2(xn, y1, y2, g_coeff);
 
-            FloatPointer tmpgain_pit = new FloatPointer(gain_pit), tmpgain_code = new FloatPointer(gain_code);
             ana_array[ana++] = quaGain.qua_gain(code, g_coeff, LD8KConstants.L_SUBFR, tmpgain_pit, tmpgain_code, taming);
             gain_pit = tmpgain_pit.value;
             gain_code = tmpgain_code.value;
@@ -442,7 +555,7 @@ public class CodLD8K {
 
             tamingFunc.update_exc_err(gain_pit, t0);
 
-            Filter.syn_filt(Aq_t, Aq, old_exc_array, exc + i_subfr, synth, i_subfr, LD8KConstants.L_SUBFR, mem_syn, 0, 1);
+            Filter.syn_filt(Aq_t, Aq, old_exc_array, exc + i_subfr, synth, i_subfr, LD8KConstants.L_SUBFR, mem_syn, 0, 1, yy_b);
 
             for (i = LD8KConstants.L_SUBFR - LD8KConstants.M, j = 0; i < LD8KConstants.L_SUBFR; i++, j++) {
                 mem_err_array[mem_err + j] = old_speech_array[speech + i_subfr + i] - synth[i_subfr + i];
@@ -453,18 +566,38 @@ public class CodLD8K {
 
         }
 
-	  /*--------------------------------------------------*
-	   * Update signal for next frame.                    *
-	   * -> shift to the left by L_FRAME:                 *
-	   *     speech[], wsp[] and  exc[]                   *
-	   *--------------------------------------------------*/
+        update_frame();
+
+        return LD8KConstants.FTYP_SPEECH;
+    }
+
+    /*----------------------------------------------------------------------------
+     * vad_frame - voice activity decision of the current frame (G.729B), the
+     *             frame is always active when DTX is disabled
+     *----------------------------------------------------------------------------
+     */
+    int vad_frame() {
+        int Vad;
+
+        if (!dtx_enable) return LD8KConstants.VOICE;
 
+        if (frame == 32767) frame = 256;
+        else frame++;
+
+        Vad = vad.vad(rc[1], lsp_new, r, old_speech_array, p_window, frame, pastVad, ppastVad);
+        dtx.update_cng(r, Vad);
+        return Vad;
+    }
+
+    /*----------------------------------------------------------------------------
+     * update_frame - update signal for next frame:
+     *                shift to the left by L_FRAME speech[], wsp[] and exc[]
+     *----------------------------------------------------------------------------
+     */
+    void update_frame() {
         Util.copy(old_speech_array, old_speech + LD8KConstants.L_FRAME, old_speech_array, old_speech, LD8KConstants.L_TOTAL - LD8KConstants.L_FRAME);
         Util.copy(old_wsp_array, old_wsp + LD8KConstants.L_FRAME, old_wsp_array, old_wsp, LD8KConstants.PIT_MAX);
         Util.copy(old_exc_array, old_exc + LD8KConstants.L_FRAME, old_exc_array, old_exc, LD8KConstants.PIT_MAX + LD8KConstants.L_INTERPOL);
-
-
-        return;
     }
 
 
@@ -35,7 +35,15 @@ public class DecAcelp {
             int index,             /* input : positions of 4 pulses */
             float cod[]            /* output: innovative codevector */
     ) {
-        int pos[] = new int[4];
+        decod_ACELP(sign, index, cod, new int[4]);
+    }
+
+    public static void decod_ACELP(
+            int sign,              /* input : signs of 4 pulses     */
+            int index,             /* input : positions of 4 pulses */
+            float cod[],           /* output: innovative codevector */
+            int pos[]              /* scratch: 4 elements           */
+    ) {
         int i, j;
 
 	   /* decode the positions of 4 pulses */
@@ -24,6 +24,16 @@ package net.mitrol.codec.g729;
 
 public class DecGain {
     float past_qua_en[] = new float[]{(float) -14.0, (float) -14.0, (float) -14.0, (float) -14.0};
+    FloatPointer gcode0 = new FloatPointer(); /* scratch */
+
+    /*----------------------------------------------------------------------------
+     * init_dec_gain - reset the past quantized energies
+     *----------------------------------------------------------------------------
+     */
+    void init_dec_gain() {
+        int i;
+        for (i = 0; i < 4; i++) past_qua_en[i] = (float) -14.0;
+    }
 
     public void dec_gain(
             int index,             /* input : quantizer index              */
@@ -37,7 +47,6 @@ public class DecGain {
 
         int index1, index2;
         float g_code;
-        FloatPointer gcode0 = new FloatPointer();
 
 	   /*----------------- Test erasure ---------------*/
         if (bfi != 0) {
@@ -52,17 +52,51 @@ public class DecLD8K {
     float lsp_old[] = new float[]{
             (float) 0.9595, (float) 0.8413, (float) 0.6549, (float) 0.4154, (float) 0.1423,
             (float) -0.1423, (float) -0.4154, (float) -0.6549, (float) -0.8413, (float) -0.9595};
+    float lsp_old_reset[] = new float[]{      /* lsp_old(init) */
+            (float) 0.9595, (float) 0.8413, (float) 0.6549, (float) 0.4154, (float) 0.1423,
+            (float) -0.1423, (float) -0.4154, (float) -0.6549, (float) -0.8413, (float) -0.9595};
 
     /* Filter's memory */
     float mem_syn[] = new float[LD8KConstants.M];        /* Filter's memory */
 
     float sharp;            /* pitch sharpening of previous fr */
     int old_t0;              /* integer delay of previous frame */
+    int t0_subfr[] = new int[2];  /* integer delay of each subframe, for the Annex A postfilter */
+    IntegerPointer seed_fer = new IntegerPointer();   /* random codebook of erased frames */
     FloatPointer gain_code = new FloatPointer();         /* fixed codebook gain */
     FloatPointer gain_pitch = new FloatPointer();       /* adaptive codebook gain */
     LspDec lspDec = new LspDec();
     DecGain decGain = new DecGain();
 
+    /* For G.729B */
+    int past_ftyp;           /* type of the previous frame               */
+    float sid_sav;           /* excitation power of the last good frame   */
+    IntegerPointer seed = new IntegerPointer();   /* comfort noise generator */
+    DecSid decSid = new DecSid();
+
+    /* Per frame workspace, kept here so decod_ld8k() does not allocate */
+    float lsp_new[] = new float[LD8KConstants.M];           /* LSPs                               */
+    float code[] = new float[LD8KConstants.L_SUBFR];        /* algebraic codevector               */
+    IntegerPointer t0 = new IntegerPointer(), t0_frac = new IntegerPointer();
+    float lsp_tmp[] = new float[LD8KConstants.M];
+    float f1[] = new float[LD8KConstants.NC + 1], f2[] = new float[LD8KConstants.NC + 1];
+    float yy_b[] = new float[LD8KConstants.L_SUBFR + LD8KConstants.M];
+    int pos[] = new int[4];
+
+    /*--------------------------------------------------------------------------
+     * reset_decod_ld8k - brings a decoder that has already run back to its
+     *                    initial state, reusing the existing arrays
+     *--------------------------------------------------------------------------
+     */
+    public void reset_decod_ld8k() {
+        Util.set_zero(old_exc_array, old_exc_array.length);
+        Util.copy(lsp_old_reset, lsp_old, LD8KConstants.M);
+
+        decGain.init_dec_gain();
+
+        init_decod_ld8k();
+    }
+
     /*--------------------------------------------------------------------------
      * init_decod_ld8k - Initialization of variables for the decoder section.
      *--------------------------------------------------------------------------
@@ -77,11 +111,18 @@ public class DecLD8K {
 
         sharp = LD8KConstants.SHARPMIN;
         old_t0 = 60;
+        seed_fer.value = 21845;
         gain_code.value = (float) 0.;
         gain_pitch.value = (float) 0.;
 
         lspDec.lsp_decw_reset();
 
+	    /* For G.729B */
+        past_ftyp = LD8KConstants.FTYP_SPEECH;
+        sid_sav = (float) 0.;
+        seed.value = LD8KConstants.INIT_SEED;
+        decSid.init_dec_cng();
+
         return;
     }
 
@@ -95,22 +136,61 @@ public class DecLD8K {
             float synth[], int ss,         /* output: synthesized speech                         */
             float A_t[],           /* output: two sets of A(z) coefficients length=2*MP1 */
             IntegerPointer t0_first          /* output: integer delay of first subframe            */
+    ) {
+        decod_ld8k(parm, parms, LD8KConstants.FTYP_SPEECH, voicing, synth, ss, A_t, t0_first);
+    }
+
+    /*--------------------------------------------------------------------------
+     * decod_ld8k - decoder with the frame types of G.729 Annex B: the
+     *              parameters after bfi are those of a speech frame or of a SID
+     *              frame, a frame of type FTYP_NO_DATA carries none. Returns the
+     *              type of the decoded frame, an erased frame is concealed as
+     *              speech after speech and as comfort noise otherwise.
+     *--------------------------------------------------------------------------
+     */
+    public int decod_ld8k(
+            int parm[], int parms,            /* input : synthesis parameters (parm[0] = bfi)       */
+            int ftyp,              /* input : FTYP_SPEECH, FTYP_SID or FTYP_NO_DATA      */
+            int voicing,           /* input : voicing decision from previous frame       */
+            float synth[], int ss,         /* output: synthesized speech                         */
+            float A_t[],           /* output: two sets of A(z) coefficients length=2*MP1 */
+            IntegerPointer t0_first          /* output: integer delay of first subframe            */
     ) {
         int Az;                  /* Pointer to A_t (LPC coefficients)  */
-        float lsp_new[] = new float[LD8KConstants.M];           /* LSPs                               */
-        float code[] = new float[LD8KConstants.L_SUBFR];        /* algebraic codevector               */
 
 	  /* Scalars */
         int i, i_subfr;
         int index;
 
-        IntegerPointer t0 = new IntegerPointer(), t0_frac = new IntegerPointer();
         int bfi;
         int bad_pitch;
 
 	  /* Test bad frame indicator (bfi) */
 
         bfi = parm[parms++];
+        if (bfi != 0) {
+            ftyp = (past_ftyp == LD8KConstants.FTYP_SPEECH) ? LD8KConstants.FTYP_SPEECH : LD8KConstants.FTYP_NO_DATA;
+        }
+
+	  /* Processing non active frames (SID & not transmitted) */
+
+        if (ftyp != LD8KConstants.FTYP_SPEECH) {
+            decSid.dec_cng(past_ftyp, sid_sav, parm, parms, ftyp, old_exc_array, exc, lsp_old, A_t, seed,
+                    lspDec.freq_prev);
+
+            Az = 0;
+            for (i_subfr = 0; i_subfr < LD8KConstants.L_FRAME; i_subfr += LD8KConstants.L_SUBFR) {
+                Filter.syn_filt(A_t, Az, old_exc_array, exc + i_subfr, synth, ss + i_subfr, LD8KConstants.L_SUBFR, mem_syn, 0, 1, yy_b);
+                Az += LD8KConstants.MP1;
+            }
+            t0_first.value = old_t0;
+            sharp = LD8KConstants.SHARPMIN;
+
+            update_frame(bfi, ftyp);
+            return ftyp;
+        }
+
+        seed.value = LD8KConstants.INIT_SEED;
 
 	  /* Decode the LSPs */
 
@@ -119,7 +199,7 @@ public class DecLD8K {
 
 	  /* Interpolation of LPC for the 2 subframes */
 
-        LpcFunc.int_qlpc(lsp_old, lsp_new, A_t);
+        LpcFunc.int_qlpc(lsp_old, lsp_new, A_t, lsp_tmp, f1, f2);
 
 	  /* update the LSFs for the next frame */
 
@@ -176,6 +256,7 @@ public class DecLD8K {
         *  - Find the adaptive codebook vector.            *
 	    *--------------------------------------------------*/
 
+            t0_subfr[i_subfr / LD8KConstants.L_SUBFR] = t0.value;
             PredLt.pred_lt_3(old_exc_array, exc + i_subfr, t0.value, t0_frac.value, LD8KConstants.L_SUBFR);
 
 	   /*-------------------------------------------------------*
@@ -184,11 +265,11 @@ public class DecLD8K {
 	    *-------------------------------------------------------*/
 
             if (bfi != 0) {            /* Bad Frame Error Concealment */
-                parm[parms + 0] = (int) (Util.random_g729() & 0x1fff);      /* 13 bits random*/
-                parm[parms + 1] = (int) (Util.random_g729() & 0x000f);      /*  4 bits random */
+                parm[parms + 0] = (int) (CalcExc.random_g729(seed_fer) & 0x1fff);      /* 13 bits random*/
+                parm[parms + 1] = (int) (CalcExc.random_g729(seed_fer) & 0x000f);      /*  4 bits random */
             }
 
-            DecAcelp.decod_ACELP(parm[parms + 1], parm[parms + 0], code);
+            DecAcelp.decod_ACELP(parm[parms + 1], parm[parms + 0], code, pos);
             parms += 2;
             for (i = t0.value; i < LD8KConstants.L_SUBFR; i++) code[i] += sharp * code[i - t0.value];
 
@@ -231,18 +312,33 @@ public class DecLD8K {
 	     * - Find synthesis speech corresponding to exc[].       *
 	     *-------------------------------------------------------*/
 
-            Filter.syn_filt(A_t, Az, old_exc_array, exc + i_subfr, synth, ss + i_subfr, LD8KConstants.L_SUBFR, mem_syn, 0, 1);
+            Filter.syn_filt(A_t, Az, old_exc_array, exc + i_subfr, synth, ss + i_subfr, LD8KConstants.L_SUBFR, mem_syn, 0, 1, yy_b);
 
             Az += LD8KConstants.MP1;        /* interpolated LPC parameters for next subframe */
         }
 
-	   /*--------------------------------------------------*
-	    * Update signal for next frame.                    *
-	    * -> shift to the left by L_FRAME  exc[]           *
-	    *--------------------------------------------------*/
-        Util.copy(old_exc_array, LD8KConstants.L_FRAME, old_exc_array, 0, LD8KConstants.PIT_MAX + LD8KConstants.L_INTERPOL);
+        update_frame(bfi, ftyp);
+        return ftyp;
+    }
 
-        return;
+    /*--------------------------------------------------------------------------
+     * update_frame - keeps the excitation power of a good frame for the CNG
+     *                and shifts exc[] to the left by L_FRAME for the next frame
+     *--------------------------------------------------------------------------
+     */
+    private void update_frame(int bfi, int ftyp) {
+        int i;
+        float ener;
+
+        if (bfi == 0) {
+            ener = (float) 0.;
+            for (i = 0; i < LD8KConstants.L_FRAME; i++)
+                ener += old_exc_array[exc + i] * old_exc_array[exc + i];
+            sid_sav = ener * ((float) 1. / (float) LD8KConstants.L_FRAME);
+        }
+        past_ftyp = ftyp;
+
+        Util.copy(old_exc_array, LD8KConstants.L_FRAME, old_exc_array, 0, LD8KConstants.PIT_MAX + LD8KConstants.L_INTERPOL);
     }
 
 }
@@ -0,0 +1,123 @@
+package net.mitrol.codec.g729;
+
+/**
+ * Decoder side of G.729 Annex B (dec_sid.c): decodes SID frames and generates comfort noise for SID and untransmitted
+ * frames.
+ */
+public class DecSid {
+
+    static final float lspSid_reset[] = new float[]{
+            (float) 0.9595, (float) 0.8413, (float) 0.6549, (float) 0.4154, (float) 0.1423,
+            (float) -0.1423, (float) -0.4154, (float) -0.6549, (float) -0.8413, (float) -0.9595
+    };
+
+    /* Static memory */
+    float lspSid[] = new float[LD8KConstants.M];
+    float sid_gain;
+    float cur_gain;
+
+    CalcExc calcExc = new CalcExc();
+
+    /* Workspace */
+    float tmpbuf[] = new float[LD8KConstants.M];
+    float lsp_tmp[] = new float[LD8KConstants.M];
+    float f1[] = new float[LD8KConstants.NC + 1], f2[] = new float[LD8KConstants.NC + 1];
+    FloatPointer energyq = new FloatPointer();
+
+    public DecSid() {
+        init_dec_cng();
+    }
+
+    /*-----------------------------------------------------------*
+     * init_dec_cng - initialize (or reset) the CNG decoder       *
+     *-----------------------------------------------------------*/
+    public void init_dec_cng() {
+        Util.copy(lspSid_reset, lspSid, LD8KConstants.M);
+        sid_gain = TabDtx.tab_Sidgain[0];
+        cur_gain = (float) 0.;
+    }
+
+    /*-----------------------------------------------------------*
+     * dec_cng - decodes a SID frame (or extrapolates the last    *
+     *           one) and computes the comfort noise excitation   *
+     *-----------------------------------------------------------*/
+    public void dec_cng(
+            int past_ftyp,          /* (i)   : past frame type                      */
+            float sid_sav,          /* (i)   : mean excitation power of last frame  */
+            int parm[], int ps,     /* (i)   : coded SID parameters                 */
+            int ftyp,               /* (i)   : FTYP_SID or FTYP_NO_DATA             */
+            float exc[], int excs,  /* (i/o) : excitation array                     */
+            float lsp_old[],        /* (i/o) : previous lsp                         */
+            float A_t[],            /* (o)   : set of interpolated LPC coefficients */
+            IntegerPointer seed,    /* (i/o) : random generator seed                */
+            float freq_prev[][]     /* (i/o) : previous LPS for quantization        */
+    ) {
+        /* SID Frame */
+        if (ftyp == LD8KConstants.FTYP_SID) {
+            sid_gain = TabDtx.tab_Sidgain[parm[ps + 3]];
+
+            /* Inverse quantization of the LSP */
+            sid_lsfq_decode(parm, ps, lspSid, freq_prev, tmpbuf);
+        }
+        /* non SID Frame */
+        else {
+            /* Case of 1st SID frame erased : quantize-decode energy estimate stored in sid_sav */
+            if (past_ftyp == LD8KConstants.FTYP_SPEECH) {
+                sid_gain = TabDtx.tab_Sidgain[Dtx.quant_Energy(sid_sav, energyq)];
+            }
+        }
+
+        if (past_ftyp == LD8KConstants.FTYP_SPEECH) {
+            cur_gain = sid_gain;
+        } else {
+            cur_gain *= LD8KConstants.A_GAIN0;
+            cur_gain += LD8KConstants.A_GAIN1 * sid_gain;
+        }
+
+        calcExc.calc_exc_rand(cur_gain, exc, excs, seed, null);
+
+        /* Interpolate the Lsp vectors */
+        LpcFunc.int_qlpc(lsp_old, lspSid, A_t, lsp_tmp, f1, f2);
+        Util.copy(lspSid, lsp_old, LD8KConstants.M);
+    }
+
+    /*-----------------------------------------------------------*
+     * sid_lsfq_decode - decodes the SID LSP vector, shared with  *
+     *                   the encoder so both predictors agree     *
+     *-----------------------------------------------------------*/
+    static void sid_lsfq_decode(
+            int index[], int is,    /* (i) : quantizer indices                */
+            float lspq[],           /* (o) : quantized lsp vector             */
+            float freq_prev[][],    /* (i/o) : memory of the MA predictor     */
+            float tmpbuf[]          /* (-) : scratch, M floats                */
+    ) {
+        int i, mode;
+        float[] cb1, cb2l, cb2h;
+
+        mode = index[is];
+        cb1 = TabLD8k.lspcb1[TabDtx.PtrTab_1[index[is + 1]]];
+        cb2l = TabLD8k.lspcb2[TabDtx.PtrTab_2[0][index[is + 2]]];
+        cb2h = TabLD8k.lspcb2[TabDtx.PtrTab_2[1][index[is + 2]]];
+
+        /* get the lsf error vector */
+        for (i = 0; i < LD8KConstants.NC; i++)
+            tmpbuf[i] = cb1[i] + cb2l[i];
+        for (i = LD8KConstants.NC; i < LD8KConstants.M; i++)
+            tmpbuf[i] = cb1[i] + cb2h[i];
+
+        /* guarantee minimum distance between tmpbuf[j] and tmpbuf[j+1] */
+        LspGetq.lsp_expand_1_2(tmpbuf, LD8KConstants.GAP1);
+
+        /* compute the quantized lsf vector */
+        LspGetq.lsp_prev_compose(tmpbuf, lspq, TabDtx.noise_fg[mode], freq_prev, TabDtx.noise_fg_sum[mode]);
+
+        /* update the prediction memory */
+        LspGetq.lsp_prev_update(tmpbuf, freq_prev);
+
+        /* lsf stability check */
+        LspGetq.lsp_stability(lspq);
+
+        /* convert lsf to lsp */
+        LpcFunc.lsf_lsp(lspq, lspq, LD8KConstants.M);
+    }
+}
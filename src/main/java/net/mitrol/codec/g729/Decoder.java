@@ -22,18 +22,20 @@
 
 package net.mitrol.codec.g729;
 
-import net.mitrol.codec.dsp.Codec;
 import net.mitrol.codec.format.Format;
 import net.mitrol.codec.format.FormatFactory;
+import net.mitrol.codec.jfr.FlightEvents;
 import net.mitrol.codec.memory.Frame;
+import net.mitrol.codec.memory.Memory;
 
-public class Decoder implements Codec {
+import java.nio.ByteBuffer;
+
+public class Decoder implements FrameDecoder {
 
     private final static Format g729 = FormatFactory.createAudioFormat("g729", 8000);
     private final static Format linear = FormatFactory.createAudioFormat("linear", 8000, 16, 1);
 
     int frame = 0;
-    CircularBuffer circular = new CircularBuffer(16000);
     float synth_buf[] = new float[LD8KConstants.L_FRAME + LD8KConstants.M]; /* Synthesis */
 
     int synth;
@@ -42,7 +44,8 @@ public class Decoder implements Codec {
      * BFI
      */
 
-    short serial[] = new short[LD8KConstants.SERIAL_SIZE]; /* Serial stream */
+    byte serialBytes[] = new byte[LD8KConstants.FRAME_BYTES]; /* Packed frame, direct buffers only */
+    byte pcmBytes[] = new byte[2 * LD8KConstants.L_FRAME]; /* Output frame, direct buffers only */
 
     float Az_dec[] = new float[2 * LD8KConstants.MP1];
     int ptr_Az; /* Decoded Az for post-filter */
@@ -55,13 +58,23 @@ public class Decoder implements Codec {
     IntegerPointer sf_voic = new IntegerPointer(0); /* voicing for subframe */
 
     DecLD8K decLD = new DecLD8K();
-    PostFil postFil = new PostFil();
+    PostFil postFil;
     PostPro postPro = new PostPro();
+    boolean annexA;
 
-    private byte[][] subFrames = new byte[10][10];
-    private int framesCount;
 
     public Decoder() {
+        this(false);
+    }
+
+    /**
+     * @param annexA use the simplified postfilter of G.729 Annex A ({@link PostFilA}), searched on the delay of
+     *               each subframe. It decodes any G.729 bitstream at a lower cost, and pairs with the Annex A
+     *               encoder of {@link Encoder#Encoder(boolean)}.
+     */
+    public Decoder(boolean annexA) {
+        this.annexA = annexA;
+        postFil = annexA ? new PostFilA() : new PostFil();
         for (int i = 0; i < LD8KConstants.M; i++) {
             synth_buf[i] = (float) 0.0;
         }
@@ -73,6 +86,20 @@ public class Decoder implements Codec {
         voicing = 60;
     }
 
+    /**
+     * Brings the decoder back to the state of a newly constructed one, so it can be reused for another stream
+     * without reallocating its buffers.
+     */
+    public void reset() {
+        frame = 0;
+        Util.set_zero(synth_buf, synth_buf.length);
+
+        decLD.reset_decod_ld8k();
+        postFil.init_post_filter();
+        postPro.init_post_process();
+        voicing = 60;
+    }
+
     public Format getSupportedInputFormat() {
         return g729;
     }
@@ -81,39 +108,22 @@ public class Decoder implements Codec {
         return linear;
     }
 
+    /**
+     * Decodes the 10 byte frames of <code>frame</code>, read through {@link Frame#getBuffer()}, into a frame of
+     * the same kind, off heap for an off heap input.
+     */
     public Frame process(Frame frame) {
-        Frame res = null;
-        byte[] data = frame.getData();
+        Object event = FlightEvents.beginCodecFrame();
+        int length = frame.getLength();
 
-        if (data.length == 0 || data.length > 100 || data.length % 10 != 0)
+        if (length == 0 || length > 100 || length % 10 != 0)
             throw new RuntimeException("Invalid frame size!");
 
-        circular.addData(data);
-
-        byte[] speechWindow = circular.getData(data.length);
-
-        // Process two frames at time, 20ms
-        byte[] resultBytes = null, transcodedBytes = null;
-        if (speechWindow != null) {
-            for (int q = 0; q < speechWindow.length; q++) {
-                subFrames[q / 10][q % 10] = speechWindow[q];
-            }
-
-            res = new Frame(new byte[speechWindow.length * 16]);
-            res.setLength(speechWindow.length * 16);
-            resultBytes = res.getData();
-
-            framesCount = speechWindow.length / 10;
-            for (int q = 0; q < framesCount; q++) {
-                transcodedBytes = process(subFrames[q]);
-                for (int k = 0; k < transcodedBytes.length; k++){
-                    resultBytes[q * 160 + k] = transcodedBytes[k];
-                }
-            }
-        } else {
-            res = new Frame(new byte[frame.getLength()]);
-            res.setLength(0);
-            resultBytes = new byte[0];
+        int count = length / LD8KConstants.FRAME_BYTES;
+        Frame res = Memory.allocate(count * 2 * LD8KConstants.L_FRAME, frame.isDirect());
+        ByteBuffer in = frame.getBuffer(), out = res.getBuffer();
+        for (int i = 0; i < count; i++) {
+            process(in, out);
         }
         res.setOffset(0);
         res.setTimestamp(frame.getTimestamp());
@@ -121,42 +131,150 @@ public class Decoder implements Codec {
         res.setSequenceNumber(frame.getSequenceNumber());
         res.setEOM(frame.isEOM());
         res.setFormat(linear);
+        FlightEvents.endCodecFrame(event, "G729", "decode", frame.getLength(), res.getLength());
         return res;
     }
 
     /**
-     * Perform compression.
+     * Perform decompression.
      *
-     * @return compressed media.
+     * @return decompressed media.
      */
     public byte[] process(byte[] media) {
-        serial = Bits.fromRealBits(media);
-        // serial = Util.byteArrayToShortArray(media);
-        frame++;
-        Bits.bits2prm_ld8k(serial, 2, parm, 1);
-
-        /*
-         * the hardware detects frame erasures by checking if all bits are set
-         * to zero
-         */
-        parm[0] = 0; /* No frame erasure */
-        for (int i = 2; i < LD8KConstants.SERIAL_SIZE; i++) {
-            if (serial[i] == 0) {
-                parm[0] = 1; /* frame erased */
-
-            /* check parity and put 1 in parm[4] if parity error */
+        byte[] res = new byte[2 * LD8KConstants.L_FRAME];
+        process(media, 0, res, 0);
+        return res;
+    }
+
+    /**
+     * Decodes the 10 byte frame at <code>src[srcOffset]</code> into L_FRAME samples at <code>pcm[offset]</code>.
+     * Uses only the decoder's own workspace, nothing is allocated.
+     *
+     * @return the number of samples written
+     */
+    public int process(byte[] src, int srcOffset, short[] pcm, int offset) {
+        Bits.bits2prm_ld8k_b(src, srcOffset, parm, 1);
+        decode(0, LD8KConstants.FTYP_SPEECH);
+        for (int i = 0; i < LD8KConstants.L_FRAME; i++) {
+            float temp = pst_out[i];
+            if (temp >= (float) 0.0)
+                temp += (float) 0.5;
+            else temp -= (float) 0.5;
+            if (temp > (float) 32767.0) temp = (float) 32767.0;
+            if (temp < (float) -32768.0) temp = (float) -32768.0;
+            pcm[offset + i] = (short) temp;
+        }
+        return LD8KConstants.L_FRAME;
+    }
+
+    /**
+     * Decodes the 10 byte frame at <code>src[srcOffset]</code> into 16-bit little-endian PCM (2 * L_FRAME bytes)
+     * at <code>dst[dstOffset]</code>. Uses only the decoder's own workspace, nothing is allocated.
+     *
+     * @return the number of bytes written
+     */
+    public int process(byte[] src, int srcOffset, byte[] dst, int dstOffset) {
+        Bits.bits2prm_ld8k_b(src, srcOffset, parm, 1);
+        decode(0, LD8KConstants.FTYP_SPEECH);
+        Util.floatArrayToByteArray(pst_out, LD8KConstants.L_FRAME, dst, dstOffset);
+        return 2 * LD8KConstants.L_FRAME;
+    }
+
+    /**
+     * Decodes one frame read from <code>in</code> into 16-bit little-endian PCM written to <code>pcm</code>: a
+     * 10 byte speech frame, or with less remaining a 2 byte SID frame (G.729 Annex B), or with less than that an
+     * untransmitted frame, both rendered as comfort noise. Heap and direct buffers are supported and both
+     * positions are advanced; nothing is allocated.
+     *
+     * @return the number of bytes written
+     */
+    public int process(ByteBuffer in, ByteBuffer pcm) {
+        int ftyp, len;
+        if (in.remaining() >= LD8KConstants.FRAME_BYTES) {
+            ftyp = LD8KConstants.FTYP_SPEECH;
+            len = LD8KConstants.FRAME_BYTES;
+        } else if (in.remaining() >= LD8KConstants.SID_FRAME_BYTES) {
+            ftyp = LD8KConstants.FTYP_SID;
+            len = LD8KConstants.SID_FRAME_BYTES;
+        } else {
+            ftyp = LD8KConstants.FTYP_NO_DATA;
+            len = 0;
+        }
+
+        byte[] src = serialBytes;
+        int srcOffset = 0;
+        if (in.hasArray()) {
+            src = in.array();
+            srcOffset = in.arrayOffset() + in.position();
+        } else {
+            for (int i = 0; i < len; i++) {
+                serialBytes[i] = in.get(in.position() + i);
+            }
+        }
+        if (ftyp == LD8KConstants.FTYP_SPEECH) {
+            Bits.bits2prm_ld8k_b(src, srcOffset, parm, 1);
+        } else if (ftyp == LD8KConstants.FTYP_SID) {
+            Bits.bits2prm_sid_b(src, srcOffset, parm, 1);
+        }
+        in.position(in.position() + len);
+
+        decode(0, ftyp);
+
+        return store(pcm);
+    }
+
+    /**
+     * Conceals <code>frames</code> lost frames: each runs the bad frame path of the decoder (parameters
+     * extrapolated from the last good frame, random fixed codebook, attenuated gains), or extends the comfort
+     * noise when the stream was in a silence period. Writes 16-bit little-endian PCM to <code>pcm</code>, stopping
+     * early when it has no room for another frame; nothing is allocated.
+     *
+     * @return the number of bytes written
+     */
+    public int decodeLost(int frames, ByteBuffer pcm) {
+        int written = 0;
+        for (int i = 0; i < frames && pcm.remaining() >= 2 * LD8KConstants.L_FRAME; i++) {
+            decode(1, LD8KConstants.FTYP_SPEECH);
+            written += store(pcm);
+        }
+        return written;
+    }
+
+    private int store(ByteBuffer pcm) {
+        int len = 2 * LD8KConstants.L_FRAME;
+        if (pcm.hasArray()) {
+            Util.floatArrayToByteArray(pst_out, LD8KConstants.L_FRAME, pcm.array(), pcm.arrayOffset() + pcm.position());
+        } else {
+            Util.floatArrayToByteArray(pst_out, LD8KConstants.L_FRAME, pcmBytes, 0);
+            for (int i = 0; i < len; i++) {
+                pcm.put(pcm.position() + i, pcmBytes[i]);
             }
         }
-        parm[4] = PParity.check_parity_pitch(parm[3], parm[4]);
+        pcm.position(pcm.position() + len);
+        return len;
+    }
+
+    /*
+     * Runs the decoder and the post-filter on the parameters in parm[1..], those of
+     * a speech or of a SID frame as given by ftyp, or conceals a lost frame when bfi
+     * is set, leaving the post-processed frame in pst_out.
+     */
+    private void decode(int bfi, int ftyp) {
+        frame++;
 
-        decLD.decod_ld8k(parm, 0, voicing, synth_buf, synth, Az_dec, t0_first); /* Decoder */
+        parm[0] = bfi; /* Bad frame indicator */
+        if (bfi == 0 && ftyp == LD8KConstants.FTYP_SPEECH)
+            parm[4] = PParity.check_parity_pitch(parm[3], parm[4]);
+
+        ftyp = decLD.decod_ld8k(parm, 0, ftyp, voicing, synth_buf, synth, Az_dec, t0_first); /* Decoder */
 
         /* Post-filter and decision on voicing parameter */
         voicing = 0;
         ptr_Az = 0;// Az_dec;
         for (int i = 0; i < LD8KConstants.L_FRAME; i += LD8KConstants.L_SUBFR) {
-            postFil.post(t0_first.value, synth_buf, synth + i, Az_dec, ptr_Az,
-                    pst_out, i, sf_voic);
+            postFil.post(annexA ? decLD.t0_subfr[i / LD8KConstants.L_SUBFR] : t0_first.value,
+                    synth_buf, synth + i, Az_dec, ptr_Az,
+                    pst_out, i, sf_voic, ftyp);
             if (sf_voic.value != 0) {
                 voicing = sf_voic.value;
             }
@@ -166,8 +284,6 @@ public class Decoder implements Codec {
                 LD8KConstants.M);
 
         postPro.post_process(pst_out, LD8KConstants.L_FRAME);
-
-        return Util.floatArrayToByteArray(pst_out, LD8KConstants.L_FRAME);
     }
 
 }
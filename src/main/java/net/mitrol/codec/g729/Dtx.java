@@ -0,0 +1,454 @@
+package net.mitrol.codec.g729;
+
+/**
+ * Encoder side of the G.729 Annex B discontinuous transmission (dtx.c, qsidgain.c, qsidlsf.c). For every frame the
+ * VAD classifies as noise it decides between sending a SID frame and sending nothing, quantizes the SID parameters
+ * and generates the same comfort noise excitation the decoder will, so both excitation histories stay in sync.
+ */
+public class Dtx {
+
+    private static final int SIZ_ACF = LD8KConstants.NB_CURACF * LD8KConstants.MP1;
+    private static final int SIZ_SUMACF = LD8KConstants.NB_SUMACF * LD8KConstants.MP1;
+
+    /* SID gain levels in whole dB, so that the 2 dB change test compares exact steps */
+    static final float tab_Sidgain_dB[] = new float[TabDtx.tab_Sidgain.length];
+
+    /* From the residual energy of NB_CURACF windowed frames to a per sample excitation power */
+    private static final float ACF_NORM;
+
+    static {
+        int i;
+        float sum = (float) 0.0;
+
+        for (i = 0; i < tab_Sidgain_dB.length; i++)
+            tab_Sidgain_dB[i] = (float) Math.rint(20.0 * Math.log10(TabDtx.tab_Sidgain[i]));
+        for (i = 0; i < LD8KConstants.L_WINDOW; i++)
+            sum += TabLD8k.hamwindow[i] * TabLD8k.hamwindow[i];
+        ACF_NORM = (float) 1.0 / ((float) LD8KConstants.NB_CURACF * sum);
+    }
+
+    /* Static memory */
+    float Acf[] = new float[SIZ_ACF];          /* autocorrelations of the last NB_CURACF frames */
+    float sumAcf[] = new float[SIZ_SUMACF];    /* NB_SUMACF sums of NB_CURACF autocorrelations  */
+    float ener[] = new float[LD8KConstants.NB_GAIN];
+    float RCoeff[] = new float[LD8KConstants.MP1]; /* autocorrelation of the reference filter   */
+    float lspSid_q[] = new float[LD8KConstants.M];
+    int fr_cur;
+    int nb_ener;
+    int count_fr0;
+    int flag_chang;
+    int cur_igain;
+    float prev_energy;
+    float sid_gain;
+    float cur_gain;
+
+    Lpc lpc = new Lpc();
+    CalcExc calcExc = new CalcExc();
+
+    /* Per frame workspace, kept here so cod_cng() does not allocate */
+    float curAcf[] = new float[LD8KConstants.MP1];
+    float s_sumAcf[] = new float[LD8KConstants.MP1];
+    float curCoeff[] = new float[LD8KConstants.MP1];
+    float pastCoeff[] = new float[LD8KConstants.MP1];
+    float rc[] = new float[LD8KConstants.M];
+    float lsp_new[] = new float[LD8KConstants.M];
+    float lsf[] = new float[LD8KConstants.M];
+    float lsfq[] = new float[LD8KConstants.M];
+    float weight[] = new float[LD8KConstants.M];
+    float errlsf[][] = new float[LD8KConstants.MODE][LD8KConstants.M];
+    float wegt_mode[][] = new float[LD8KConstants.MODE][LD8KConstants.M];
+    float cand_dist[] = new float[LD8KConstants.R_LSFQ];
+    int cand_mode[] = new int[LD8KConstants.R_LSFQ];
+    int cand_i1[] = new int[LD8KConstants.R_LSFQ];
+    float tmpbuf[] = new float[LD8KConstants.M];
+    float lsp_tmp[] = new float[LD8KConstants.M];
+    float f1[] = new float[LD8KConstants.NC + 1], f2[] = new float[LD8KConstants.NC + 1];
+    FloatPointer energyq = new FloatPointer();
+
+    public Dtx() {
+        init_cod_cng();
+    }
+
+    /*-----------------------------------------------------------*
+     * init_cod_cng - initialize variables used for dtx at the   *
+     *                encoder, also used to reset them           *
+     *-----------------------------------------------------------*/
+    public void init_cod_cng() {
+        Util.set_zero(Acf, SIZ_ACF);
+        Util.set_zero(sumAcf, SIZ_SUMACF);
+        Util.set_zero(ener, LD8KConstants.NB_GAIN);
+        Util.set_zero(RCoeff, LD8KConstants.MP1);
+
+        fr_cur = 0;
+        nb_ener = 0;
+        count_fr0 = 0;
+        flag_chang = 0;
+        cur_igain = 0;
+        prev_energy = (float) 0.0;
+        sid_gain = (float) 0.0;
+        cur_gain = (float) 0.0;
+    }
+
+    /*-----------------------------------------------------------*
+     * update_cng - stores the autocorrelations of every frame;  *
+     *              after active frames the running sums too     *
+     *-----------------------------------------------------------*/
+    public void update_cng(
+            float r[],          /* (i) :   frame autocorrelation          */
+            int vad             /* (i) :   current VAD decision           */
+    ) {
+        int i;
+
+        /* Update Acf */
+        for (i = SIZ_ACF - 1; i >= LD8KConstants.MP1; i--)
+            Acf[i] = Acf[i - LD8KConstants.MP1];
+
+        /* Save current Acf */
+        for (i = 0; i < LD8KConstants.MP1; i++)
+            Acf[i] = r[i];
+
+        fr_cur++;
+        if (fr_cur == LD8KConstants.NB_CURACF) {
+            fr_cur = 0;
+            if (vad != LD8KConstants.NOISE) {
+                update_sumAcf();
+            }
+        }
+    }
+
+    /*-----------------------------------------------------------*
+     * cod_cng - computes the excitation of an inactive frame,   *
+     *           decides whether a SID frame is sent and codes it *
+     *-----------------------------------------------------------*/
+    public int cod_cng(                     /* (o) : FTYP_SID or FTYP_NO_DATA           */
+            float exc[], int excs,          /* (i/o) : excitation array                 */
+            int pastVad,                    /* (i)   : previous VAD decision            */
+            float lsp_old_q[],              /* (i/o) : previous quantized lsp           */
+            float Aq[],                     /* (o)   : set of interpolated LPC coeffs   */
+            int ana[], int anas,            /* (o)   : coded SID parameters             */
+            float freq_prev[][],            /* (i/o) : previous LPS for quantization    */
+            IntegerPointer seed,            /* (i/o) : random generator seed            */
+            Taming taming                   /* (i/o) : taming state                     */
+    ) {
+        int i, ftyp;
+        float[] lpcCoeff;
+
+        /* Update Ener */
+        for (i = LD8KConstants.NB_GAIN - 1; i >= 1; i--) {
+            ener[i] = ener[i - 1];
+        }
+
+        /* Compute current Acfs */
+        calc_sum_acf(Acf, curAcf, LD8KConstants.NB_CURACF);
+
+        /* Compute LPC coefficients and residual energy */
+        if (curAcf[0] == (float) 0.0) {
+            ener[0] = (float) 0.0;                /* should not happen */
+        } else {
+            ener[0] = lpc.levinson(curAcf, curCoeff, 0, rc);
+        }
+
+        /* if first frame of silence => SID frame */
+        if (pastVad != LD8KConstants.NOISE) {
+            ftyp = LD8KConstants.FTYP_SID;
+            count_fr0 = 0;
+            nb_ener = 1;
+            cur_igain = qua_Sidgain(ener, nb_ener, energyq);
+        } else {
+            nb_ener++;
+            if (nb_ener > LD8KConstants.NB_GAIN) nb_ener = LD8KConstants.NB_GAIN;
+            cur_igain = qua_Sidgain(ener, nb_ener, energyq);
+
+            /* Compute stationarity of current filter versus reference filter */
+            if (cmp_filt(RCoeff, curAcf, ener[0], LD8KConstants.THRESH1) != 0) {
+                flag_chang = 1;
+            }
+
+            /* compare energy difference between current frame and last frame */
+            if (Math.abs(prev_energy - energyq.value) > (float) 2.0) flag_chang = 1;
+
+            count_fr0++;
+            if (count_fr0 < LD8KConstants.FR_SID_MIN) {
+                ftyp = LD8KConstants.FTYP_NO_DATA;  /* no transmission */
+            } else {
+                if (flag_chang != 0) ftyp = LD8KConstants.FTYP_SID; /* transmit SID frame */
+                else ftyp = LD8KConstants.FTYP_NO_DATA;
+                count_fr0 = LD8KConstants.FR_SID_MIN;   /* to avoid overflow */
+            }
+        }
+
+        if (ftyp == LD8KConstants.FTYP_SID) {
+            /* Reset frame count and change flag */
+            count_fr0 = 0;
+            flag_chang = 0;
+
+            /* Compute past average filter */
+            calc_pastfilt(pastCoeff);
+            calc_RCoeff(pastCoeff, RCoeff);
+
+            /* Compute stationarity of current filter versus past average filter */
+            /* if stationary, transmit average filter => new ref. filter */
+            if (cmp_filt(RCoeff, curAcf, ener[0], LD8KConstants.THRESH2) == 0) {
+                lpcCoeff = pastCoeff;
+            }
+            /* else transmit current filter => new ref. filter */
+            else {
+                lpcCoeff = curCoeff;
+                calc_RCoeff(curCoeff, RCoeff);
+            }
+
+            /* Compute SID frame codes */
+            lpc.az_lsp(lpcCoeff, 0, lsp_new, lsp_old_q);    /* From A(z) to lsp */
+
+            /* LSP quantization */
+            lsfq_noise(lsp_new, lspSid_q, freq_prev, ana, anas);
+
+            prev_energy = energyq.value;
+            ana[anas + 3] = cur_igain;
+            sid_gain = TabDtx.tab_Sidgain[cur_igain];
+        }
+
+        /* Compute new excitation */
+        if (pastVad != LD8KConstants.NOISE) {
+            cur_gain = sid_gain;
+        } else {
+            cur_gain *= LD8KConstants.A_GAIN0;
+            cur_gain += LD8KConstants.A_GAIN1 * sid_gain;
+        }
+
+        calcExc.calc_exc_rand(cur_gain, exc, excs, seed, taming);
+
+        LpcFunc.int_qlpc(lsp_old_q, lspSid_q, Aq, lsp_tmp, f1, f2);
+        Util.copy(lspSid_q, lsp_old_q, LD8KConstants.M);
+
+        /* Update sumAcf if fr_cur = 0 */
+        if (fr_cur == 0) {
+            update_sumAcf();
+        }
+
+        return ftyp;
+    }
+
+    /*-----------------------------------------------------------*
+     * qua_Sidgain - quantizes the mean excitation power of the  *
+     *               last nb_ener frames                         *
+     *-----------------------------------------------------------*/
+    static int qua_Sidgain(     /* (o) : SID gain index               */
+            float ener[],       /* (i) : residual energies            */
+            int nb_ener,        /* (i) : number of energies averaged  */
+            FloatPointer enerq  /* (o) : quantized energy in dB       */
+    ) {
+        int i;
+        float x = (float) 0.0;
+
+        for (i = 0; i < nb_ener; i++) {
+            x += ener[i];
+        }
+        x *= ACF_NORM / (float) nb_ener;
+        return quant_Energy(x, enerq);
+    }
+
+    /*-----------------------------------------------------------*
+     * quant_Energy - nearest SID gain level, in dB, to the      *
+     *                excitation power x                         *
+     *-----------------------------------------------------------*/
+    static int quant_Energy(
+            float x,            /* (i) : excitation power (per sample)  */
+            FloatPointer enerq  /* (o) : quantized energy in dB         */
+    ) {
+        int i, idx;
+        float dB, dist, dmin;
+
+        dB = (float) 10.0 * (float) Math.log10(x + (float) 1.0e-10);
+        idx = 0;
+        dmin = Math.abs(dB - tab_Sidgain_dB[0]);
+        for (i = 1; i < tab_Sidgain_dB.length; i++) {
+            dist = Math.abs(dB - tab_Sidgain_dB[i]);
+            if (dist < dmin) {
+                dmin = dist;
+                idx = i;
+            }
+        }
+        enerq.value = tab_Sidgain_dB[idx];
+        return idx;
+    }
+
+    /*-----------------------------------------------------------*
+     * lsfq_noise - quantizes the SID LSFs: MA predictor switch, *
+     *              5 bit first stage and 4 bit second stage,    *
+     *              M-best search with R_LSFQ survivors          *
+     *-----------------------------------------------------------*/
+    void lsfq_noise(
+            float lsp[],            /* (i) : unquantized lsp vector */
+            float lspq[],           /* (o) : quantized lsp vector   */
+            float freq_prev[][],    /* (i/o) : MA prediction memory */
+            int idx[], int idxs     /* (o) : quantizer indices      */
+    ) {
+        int i, k, mode, i1, i2, best_mode, best_i1, best_i2;
+        float dist, dmin, err;
+        float[] cb1, cb2l, cb2h;
+
+        /* convert lsp to lsf */
+        LpcFunc.lsp_lsf(lsp, lsf, LD8KConstants.M);
+
+        /* spacing to ~100Hz */
+        if (lsf[0] < LD8KConstants.L_LIMIT)
+            lsf[0] = LD8KConstants.L_LIMIT;
+        for (i = 0; i < LD8KConstants.M - 1; i++)
+            if (lsf[i + 1] - lsf[i] < (float) 2. * LD8KConstants.GAP3)
+                lsf[i + 1] = lsf[i] + (float) 2. * LD8KConstants.GAP3;
+        if (lsf[LD8KConstants.M - 1] > LD8KConstants.M_LIMIT)
+            lsf[LD8KConstants.M - 1] = LD8KConstants.M_LIMIT;
+        if (lsf[LD8KConstants.M - 1] < lsf[LD8KConstants.M - 2])
+            lsf[LD8KConstants.M - 2] = lsf[LD8KConstants.M - 1] - LD8KConstants.GAP3;
+
+        /* get the lsf weighting */
+        QuaLsp.get_wegt(lsf, weight);
+
+        /* get the prediction error vector */
+        for (mode = 0; mode < LD8KConstants.MODE; mode++)
+            LspGetq.lsp_prev_extract(lsf, errlsf[mode], TabDtx.noise_fg[mode], freq_prev, TabDtx.noise_fg_sum_inv[mode]);
+
+        /* weight the error of each predictor by its fg_sum, the error is scaled by fg_sum in the lsf domain */
+        for (mode = 0; mode < LD8KConstants.MODE; mode++)
+            for (i = 0; i < LD8KConstants.M; i++)
+                wegt_mode[mode][i] = weight[i] * TabDtx.noise_fg_sum[mode][i] * TabDtx.noise_fg_sum[mode][i];
+
+        /* first stage: keep the R_LSFQ best (mode, index) pairs */
+        for (k = 0; k < LD8KConstants.R_LSFQ; k++)
+            cand_dist[k] = LD8KConstants.FLT_MAX_G729;
+        for (mode = 0; mode < LD8KConstants.MODE; mode++) {
+            for (i1 = 0; i1 < TabDtx.PtrTab_1.length; i1++) {
+                cb1 = TabLD8k.lspcb1[TabDtx.PtrTab_1[i1]];
+                dist = (float) 0.;
+                for (i = 0; i < LD8KConstants.M; i++) {
+                    err = errlsf[mode][i] - cb1[i];
+                    dist += wegt_mode[mode][i] * err * err;
+                }
+                if (dist < cand_dist[LD8KConstants.R_LSFQ - 1]) {
+                    for (k = LD8KConstants.R_LSFQ - 1; k > 0 && dist < cand_dist[k - 1]; k--) {
+                        cand_dist[k] = cand_dist[k - 1];
+                        cand_mode[k] = cand_mode[k - 1];
+                        cand_i1[k] = cand_i1[k - 1];
+                    }
+                    cand_dist[k] = dist;
+                    cand_mode[k] = mode;
+                    cand_i1[k] = i1;
+                }
+            }
+        }
+
+        /* second stage on the survivors, lower and upper half from the same index */
+        dmin = LD8KConstants.FLT_MAX_G729;
+        best_mode = best_i1 = best_i2 = 0;
+        for (k = 0; k < LD8KConstants.R_LSFQ; k++) {
+            mode = cand_mode[k];
+            cb1 = TabLD8k.lspcb1[TabDtx.PtrTab_1[cand_i1[k]]];
+            for (i2 = 0; i2 < TabDtx.PtrTab_2[0].length; i2++) {
+                cb2l = TabLD8k.lspcb2[TabDtx.PtrTab_2[0][i2]];
+                cb2h = TabLD8k.lspcb2[TabDtx.PtrTab_2[1][i2]];
+                dist = (float) 0.;
+                for (i = 0; i < LD8KConstants.NC; i++) {
+                    err = errlsf[mode][i] - cb1[i] - cb2l[i];
+                    dist += wegt_mode[mode][i] * err * err;
+                }
+                for (i = LD8KConstants.NC; i < LD8KConstants.M; i++) {
+                    err = errlsf[mode][i] - cb1[i] - cb2h[i];
+                    dist += wegt_mode[mode][i] * err * err;
+                }
+                if (dist < dmin) {
+                    dmin = dist;
+                    best_mode = mode;
+                    best_i1 = cand_i1[k];
+                    best_i2 = i2;
+                }
+            }
+        }
+
+        idx[idxs] = best_mode;
+        idx[idxs + 1] = best_i1;
+        idx[idxs + 2] = best_i2;
+
+        DecSid.sid_lsfq_decode(idx, idxs, lspq, freq_prev, tmpbuf);
+    }
+
+    /*-----------------------------------------------------------*
+     * calc_sum_acf - sums nb consecutive autocorrelations       *
+     *-----------------------------------------------------------*/
+    static void calc_sum_acf(float acf[], float sum[], int nb) {
+        int i, j, ptr;
+
+        for (j = 0; j < LD8KConstants.MP1; j++)
+            sum[j] = (float) 0.;
+        for (i = 0, ptr = 0; i < nb; i++, ptr += LD8KConstants.MP1) {
+            for (j = 0; j < LD8KConstants.MP1; j++)
+                sum[j] += acf[ptr + j];
+        }
+    }
+
+    /*-----------------------------------------------------------*
+     * update_sumAcf - shifts in the sum of the last NB_CURACF   *
+     *                 autocorrelations                          *
+     *-----------------------------------------------------------*/
+    void update_sumAcf() {
+        int i;
+
+        /* Move sumAcf */
+        for (i = SIZ_SUMACF - 1; i >= LD8KConstants.MP1; i--)
+            sumAcf[i] = sumAcf[i - LD8KConstants.MP1];
+
+        /* Compute new sumAcf */
+        calc_sum_acf(Acf, s_sumAcf, LD8KConstants.NB_CURACF);
+        for (i = 0; i < LD8KConstants.MP1; i++)
+            sumAcf[i] = s_sumAcf[i];
+    }
+
+    /*-----------------------------------------------------------*
+     * calc_pastfilt - filter of the average past autocorrelation*
+     *-----------------------------------------------------------*/
+    void calc_pastfilt(float Coeff[]) {
+        int i;
+
+        calc_sum_acf(sumAcf, s_sumAcf, LD8KConstants.NB_SUMACF);
+
+        if (s_sumAcf[0] == (float) 0.) {
+            Coeff[0] = (float) 1.0;
+            for (i = 1; i <= LD8KConstants.M; i++) Coeff[i] = (float) 0.;
+            return;
+        }
+
+        lpc.levinson(s_sumAcf, Coeff, 0, rc);
+    }
+
+    /*-----------------------------------------------------------*
+     * calc_RCoeff - autocorrelation of the filter coefficients  *
+     *-----------------------------------------------------------*/
+    static void calc_RCoeff(float Coeff[], float RCoeff[]) {
+        int i, j;
+        float temp;
+
+        /* RCoeff[j] = SUM(i=0->M-j) Coeff[i] * Coeff[i+j] */
+        for (j = 0; j <= LD8KConstants.M; j++) {
+            temp = (float) 0.;
+            for (i = 0; i <= LD8KConstants.M - j; i++) {
+                temp += Coeff[i] * Coeff[i + j];
+            }
+            RCoeff[j] = temp;
+        }
+    }
+
+    /*-----------------------------------------------------------*
+     * cmp_filt - 1 when the residual energy of acf through the  *
+     *            filter of RCoeff exceeds alpha * thresh        *
+     *-----------------------------------------------------------*/
+    static int cmp_filt(float RCoeff[], float acf[], float alpha, float thresh) {
+        int i;
+        float temp1;
+
+        temp1 = RCoeff[0] * acf[0];
+        for (i = 1; i <= LD8KConstants.M; i++)
+            temp1 += (float) 2. * RCoeff[i] * acf[i];
+
+        return (temp1 > alpha * thresh) ? 1 : 0;
+    }
+}
@@ -22,32 +22,56 @@
 
 package net.mitrol.codec.g729;
 
-import net.mitrol.codec.dsp.Codec;
 import net.mitrol.codec.format.Format;
 import net.mitrol.codec.format.FormatFactory;
+import net.mitrol.codec.jfr.FlightEvents;
 import net.mitrol.codec.memory.Frame;
+import net.mitrol.codec.memory.Memory;
 
 import java.io.FileInputStream;
+import java.nio.ByteBuffer;
 import java.io.FileOutputStream;
 
 
-public class Encoder implements Codec {
+public class Encoder implements FrameEncoder {
 
     private final static Format g729 = FormatFactory.createAudioFormat("g729", 8000);
     private final static Format linear = FormatFactory.createAudioFormat("linear", 8000, 16, 1);
 
     int frame = 0;
-    CodLD8K encoder = new CodLD8K();
+    CodLD8K encoder;
     PreProc preProc = new PreProc();
-    CircularBuffer circularBuffer = new CircularBuffer(32000);
     int prm[] = new int[LD8KConstants.PRM_SIZE];
     short serial[] = new short[LD8KConstants.SERIAL_SIZE];
+    float new_speech[] = new float[LD8KConstants.L_FRAME];
+    byte serialBytes[] = new byte[LD8KConstants.FRAME_BYTES];
 
     /* For Debugging Only */
     FileInputStream testData = null;
     FileOutputStream outdbg = null;
 
     public Encoder() {
+        this(false);
+    }
+
+    /**
+     * @param annexA use the reduced complexity search of G.729 Annex A ({@link CodLD8A}). The bitstream is the
+     *               same, so any G.729 decoder accepts it; the encoder costs about half the CPU for a slightly
+     *               lower quality.
+     */
+    public Encoder(boolean annexA) {
+        this(annexA, false);
+    }
+
+    /**
+     * @param annexA use the reduced complexity search of G.729 Annex A, see {@link #Encoder(boolean)}.
+     * @param dtx    discontinuous transmission of G.729 Annex B: frames the voice activity detector classifies as
+     *               background noise skip the codebook search and are sent as 2 byte SID frames, or not at all
+     *               while the noise does not change. The decoder fills them with comfort noise.
+     */
+    public Encoder(boolean annexA, boolean dtx) {
+        encoder = annexA ? new CodLD8A() : new CodLD8K();
+        encoder.dtx_enable = dtx;
         preProc.init_pre_process();
         encoder.init_coder_ld8k();
         try {
@@ -60,6 +84,16 @@ public class Encoder implements Codec {
 
     }
 
+    /**
+     * Brings the encoder back to the state of a newly constructed one, so it can be reused for another stream
+     * without reallocating its buffers.
+     */
+    public void reset() {
+        frame = 0;
+        preProc.init_pre_process();
+        encoder.reset_coder_ld8k();
+    }
+
     public Format getSupportedInputFormat() {
         return linear;
     }
@@ -68,81 +102,119 @@ public class Encoder implements Codec {
         return g729;
     }
 
+    /**
+     * Encodes the whole 10 ms frames of <code>frame</code>, read through {@link Frame#getBuffer()}, into a frame
+     * of the same kind, off heap for an off heap input. With DTX a SID frame takes 2 bytes and an untransmitted
+     * frame none.
+     */
     public Frame process(Frame frame) {
-        Frame res = null;
-        byte[] data = frame.getData();
-
-        circularBuffer.addData(data);
+        Object event = FlightEvents.beginCodecFrame();
+        int count = frame.getLength() / (2 * LD8KConstants.L_FRAME);
 
-        //int frameSize = 2 * LD8KConstants.L_FRAME;
-        int frameSize = data.length;
-        byte[] speechWindow = circularBuffer.getData(frameSize);
-        byte[] resultingBytes = null;
-
-        if (speechWindow == null) {
-            resultingBytes = new byte[0]; // No data available right now, send
-            // empty buffer
-        } else {
-            // Process 2 frames = 20ms
-            byte[] one = new byte[frameSize];
-            //byte[] two = new byte[frameSize];
-            for (int q = 0; q < frameSize; q++) {
-                one[q] = speechWindow[q];
-                //two[q] = speechWindow[q + frameSize];
-            }
-            one = process(one);
-            //two = process(two);
-
-            /*if (one.length != two.length) {
-                throw new RuntimeException(
-                        "The two frames are not equal in size!");
-            }*/
-            /*res = new Frame(new byte[one.length + two.length]);
-            res.setLength(one.length + two.length);
-            byte[] resultBytes = res.getData();
-            for (int q = 0; q < one.length; q++) {
-                resultBytes[q] = one[q];
-                resultBytes[q + one.length] = two[q];
-            }*/
-            res = new Frame(new byte[one.length]);
-            res.setLength(one.length);
-            byte[] resultBytes = res.getData();
-            for (int q = 0; q < one.length; q++) {
-                resultBytes[q] = one[q];
-                //resultBytes[q + one.length] = two[q];
-            }
+        Frame res = Memory.allocate(count * LD8KConstants.FRAME_BYTES, frame.isDirect());
+        ByteBuffer in = frame.getBuffer(), out = res.getBuffer();
+        int len = 0;
+        for (int i = 0; i < count; i++) {
+            len += process(in, out);
         }
         res.setOffset(0);
+        res.setLength(len);
         res.setTimestamp(frame.getTimestamp());
         res.setDuration(frame.getDuration());
         res.setSequenceNumber(frame.getSequenceNumber());
         res.setEOM(frame.isEOM());
         res.setFormat(g729);
+        FlightEvents.endCodecFrame(event, "G729", "encode", frame.getLength(), res.getLength());
         return res;
     }
 
     /**
      * Perform compression.
      *
-     * @return compressed media.
+     * @return compressed media: 10 bytes, or with DTX 2 bytes for a SID frame and none for an untransmitted one.
      */
     public byte[] process(byte[] media) {
-        frame++;
+        byte[] res = new byte[LD8KConstants.FRAME_BYTES];
+        int len = process(ByteBuffer.wrap(media), ByteBuffer.wrap(res));
+        if (len != res.length) {
+            byte[] sid = new byte[len];
+            System.arraycopy(res, 0, sid, 0, len);
+            res = sid;
+        }
+        return res;
+    }
 
-        float[] new_speech = new float[media.length];
-        short[] shortMedia = Util.byteArrayToShortArray(media);
+    /**
+     * Encodes one frame (L_FRAME samples) from <code>pcm[offset]</code> into the 10 bytes at
+     * <code>dst[dstOffset]</code>, or with DTX possibly into a 2 byte SID frame or nothing. Uses only the
+     * encoder's own workspace, nothing is allocated.
+     *
+     * @return the number of bytes written
+     */
+    public int process(short[] pcm, int offset, byte[] dst, int dstOffset) {
         for (int i = 0; i < LD8KConstants.L_FRAME; i++) {
-            new_speech[i] = (float) shortMedia[i];
+            new_speech[i] = (float) pcm[offset + i];
+        }
+        return encode(dst, dstOffset);
+    }
+
+    /**
+     * Encodes one frame of 16-bit little-endian PCM (2 * L_FRAME bytes) from <code>pcm[offset]</code> into the
+     * 10 bytes at <code>dst[dstOffset]</code>, or with DTX possibly into a 2 byte SID frame or nothing. Uses only
+     * the encoder's own workspace, nothing is allocated.
+     *
+     * @return the number of bytes written
+     */
+    public int process(byte[] pcm, int offset, byte[] dst, int dstOffset) {
+        for (int i = 0; i < LD8KConstants.L_FRAME; i++, offset += 2) {
+            new_speech[i] = (float) (short) ((pcm[offset] & 0xff) | (pcm[offset + 1] << 8));
+        }
+        return encode(dst, dstOffset);
+    }
+
+    /**
+     * Encodes one frame of 16-bit little-endian PCM (2 * L_FRAME bytes) read from <code>pcm</code> into
+     * <code>dst</code>: 10 bytes, or with DTX 2 bytes for a SID frame and none for an untransmitted one. Heap and
+     * direct buffers are supported and both positions are advanced; nothing is allocated.
+     *
+     * @return the number of bytes written
+     */
+    public int process(ByteBuffer pcm, ByteBuffer dst) {
+        int p = pcm.position();
+        for (int i = 0; i < LD8KConstants.L_FRAME; i++, p += 2) {
+            new_speech[i] = (float) (short) ((pcm.get(p) & 0xff) | (pcm.get(p + 1) << 8));
+        }
+        pcm.position(p);
+
+        int len;
+        if (dst.hasArray()) {
+            len = encode(dst.array(), dst.arrayOffset() + dst.position());
+        } else {
+            len = encode(serialBytes, 0);
+            for (int i = 0; i < len; i++) {
+                dst.put(dst.position() + i, serialBytes[i]);
+            }
         }
+        dst.position(dst.position() + len);
+        return len;
+    }
+
+    private int encode(byte[] dst, int dstOffset) {
+        frame++;
+
         preProc.pre_process(new_speech, LD8KConstants.L_FRAME);
 
         encoder.loadSpeech(new_speech);
-        encoder.coder_ld8k(prm, 0);
-
-        //byte[] a = new byte[10];
-        Bits.prm2bits_ld8k(prm, serial);
-        // return a;
-        return Bits.toRealBits(serial);
+        switch (encoder.coder_ld8k(prm, 0)) {
+            case LD8KConstants.FTYP_SPEECH:
+                Bits.prm2bits_ld8k_b(prm, dst, dstOffset);
+                return LD8KConstants.FRAME_BYTES;
+            case LD8KConstants.FTYP_SID:
+                Bits.prm2bits_sid_b(prm, 0, dst, dstOffset);
+                return LD8KConstants.SID_FRAME_BYTES;
+            default:
+                return 0;
+        }
     }
 
     /* These methods are just for debugging */
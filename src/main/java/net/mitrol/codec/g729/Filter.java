@@ -60,10 +60,20 @@ public class Filter {
             float mem[], int mems,   /* in/out: filter memory                    */
             int update    /* input : 0 = no memory update, 1 = update */
     ) {
-        int i, j;
-
 	   /* This is usually done by memory allocation (l+m) */
-        float yy_b[] = new float[LD8KConstants.L_SUBFR + LD8KConstants.M];
+        syn_filt(a, as, x, xs, y, ys, l, mem, mems, update, new float[LD8KConstants.L_SUBFR + LD8KConstants.M]);
+    }
+
+    public static void syn_filt(
+            float a[], int as,     /* input : predictor coefficients a[0:m]    */
+            float x[], int xs,     /* input : excitation signal                */
+            float y[], int ys,     /* output: filtered output signal           */
+            int l,        /* input : vector dimension                 */
+            float mem[], int mems,   /* in/out: filter memory                    */
+            int update,   /* input : 0 = no memory update, 1 = update */
+            float yy_b[]  /* scratch: at least l+m elements           */
+    ) {
+        int i, j;
         double s;
         int yy, py, pa;
 
@@ -23,9 +23,9 @@
 package net.mitrol.codec.g729;
 
 public class FloatPointer {
-    public Float value = null;
+    public float value;
 
-    public FloatPointer(Float v) {
+    public FloatPointer(float v) {
         value = v;
     }
 
@@ -0,0 +1,51 @@
+package net.mitrol.codec.g729;
+
+import net.mitrol.codec.dsp.Codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame level view of a G.729 decoder: one call turns one 10 byte frame into L_FRAME samples of 16-bit PCM, using
+ * only the decoder's own workspace. Implemented by the floating point {@link Decoder}.
+ */
+public interface FrameDecoder extends Codec {
+
+    /**
+     * Decodes the 10 byte frame at <code>src[srcOffset]</code> into L_FRAME samples at <code>pcm[offset]</code>.
+     *
+     * @return the number of samples written
+     */
+    int process(byte[] src, int srcOffset, short[] pcm, int offset);
+
+    /**
+     * Decodes the 10 byte frame at <code>src[srcOffset]</code> into 16-bit little-endian PCM (2 * L_FRAME bytes)
+     * at <code>dst[dstOffset]</code>.
+     *
+     * @return the number of bytes written
+     */
+    int process(byte[] src, int srcOffset, byte[] dst, int dstOffset);
+
+    /**
+     * Decodes one frame read from <code>in</code> into 16-bit little-endian PCM written to <code>pcm</code>,
+     * advancing both positions. The frame is a 10 byte speech frame when that much remains; otherwise it is a
+     * 2 byte SID frame of G.729 Annex B, or with less than 2 bytes remaining an untransmitted frame.
+     *
+     * @return the number of bytes written
+     */
+    int process(ByteBuffer in, ByteBuffer pcm);
+
+    /**
+     * Fills the gap left by <code>frames</code> lost 10 ms frames with the decoder's own concealment, the bad
+     * frame path of the standard, writing 16-bit little-endian PCM to <code>pcm</code> and advancing its position.
+     * Much cheaper than decoding made up frames, and the decoder state stays consistent for the next good frame.
+     * Stops early when <code>pcm</code> has no room for another frame.
+     *
+     * @return the number of bytes written
+     */
+    int decodeLost(int frames, ByteBuffer pcm);
+
+    /**
+     * Brings the decoder back to the state of a newly constructed one.
+     */
+    void reset();
+}
@@ -0,0 +1,43 @@
+package net.mitrol.codec.g729;
+
+import net.mitrol.codec.dsp.Codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame level view of a G.729 encoder: one call turns L_FRAME samples of 16-bit PCM into one 10 byte frame, using
+ * only the encoder's own workspace. Implemented by the floating point {@link Encoder}, whose full G.729 and Annex A
+ * searches produce interchangeable bitstreams.
+ */
+public interface FrameEncoder extends Codec {
+
+    /**
+     * Encodes one frame from <code>pcm[offset]</code> into the 10 bytes at <code>dst[dstOffset]</code>. An
+     * encoder with discontinuous transmission (G.729 Annex B) writes a 2 byte SID frame or nothing at all for
+     * background noise.
+     *
+     * @return the number of bytes written: 10, 2 or 0
+     */
+    int process(short[] pcm, int offset, byte[] dst, int dstOffset);
+
+    /**
+     * Encodes one frame of 16-bit little-endian PCM (2 * L_FRAME bytes) from <code>pcm[offset]</code> into the
+     * 10 bytes at <code>dst[dstOffset]</code>.
+     *
+     * @return the number of bytes written
+     */
+    int process(byte[] pcm, int offset, byte[] dst, int dstOffset);
+
+    /**
+     * Encodes one frame of 16-bit little-endian PCM read from <code>pcm</code> into <code>dst</code>, advancing
+     * both positions.
+     *
+     * @return the number of bytes written
+     */
+    int process(ByteBuffer pcm, ByteBuffer dst);
+
+    /**
+     * Brings the encoder back to the state of a newly constructed one.
+     */
+    void reset();
+}
@@ -23,16 +23,16 @@
 package net.mitrol.codec.g729;
 
 public class IntegerPointer {
-    public Integer value = null;
+    public int value;
 
-    public IntegerPointer(Integer v) {
+    public IntegerPointer(int v) {
         value = v;
     }
 
     public IntegerPointer() {
     }
 
-    public void setValue(Integer a) {
+    public void setValue(int a) {
         value = a;
     }
 }
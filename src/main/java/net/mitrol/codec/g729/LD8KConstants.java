@@ -42,6 +42,7 @@ public class LD8KConstants {
     public static final short SIZE_WORD = 80; /* size of bitstream frame */
     public static final short PRM_SIZE = 11;     /* number of parameters per 10 ms frame      */
     public static final short SERIAL_SIZE = 82;     /* bits per frame                            */
+    public static final short FRAME_BYTES = 10;     /* packed bytes per frame (SIZE_WORD / 8)    */
 
     /*---------------------------------------------------------------------------*
      * constants for lpc analysis and lsp quantizer                              *
@@ -175,5 +176,36 @@ public class LD8KConstants {
     public static final short SIZ_TAB_HUP_L = ((F_UP_PST - 1) * LH2_L);
     public static final short SIZ_TAB_HUP_S = ((F_UP_PST - 1) * LH2_S);
 
+    /*--------------------------------------------------------------------------*
+     * Annex B: VAD, DTX and comfort noise generation                           *
+     *--------------------------------------------------------------------------*/
+    public static final short NP = 12;           /* Increased LPC order for the VAD          */
+    public static final short NOISE = 0;
+    public static final short VOICE = 1;
+    public static final short INIT_FRAME = 32;   /* Frames used to learn the background      */
+    public static final short INIT_COUNT = 20;
+    public static final short ZC_START = 120;    /* Zero crossing window in the LPC window   */
+    public static final short ZC_END = 200;
+
+    public static final short FTYP_NO_DATA = 0;  /* Frame types: not transmitted             */
+    public static final short FTYP_SPEECH = 1;   /*              active speech, 80 bits       */
+    public static final short FTYP_SID = 2;      /*              silence descriptor, 15 bits  */
+    public static final short SID_FRAME_BYTES = 2; /* packed SID frame (15 bits + 1 pad bit)  */
+    public static final short PRM_SIZE_SID = 4;  /* number of SID parameters                 */
+
+    public static final short NB_CURACF = 2;     /* Frames in the current autocorrelation     */
+    public static final short NB_SUMACF = 3;     /* Sums of NB_CURACF kept for the past filter */
+    public static final short NB_GAIN = 2;       /* Energies averaged for the SID gain        */
+    public static final short FR_SID_MIN = 3;    /* Minimum SID interval (frames)             */
+    public static final short R_LSFQ = 4;        /* Survivors of the 1st SID LSF stage        */
+    public static final float THRESH1 = (float) 1.1481628; /* Filter change threshold, current   */
+    public static final float THRESH2 = (float) 1.0966466; /* Filter change threshold, past avg. */
+    public static final float A_GAIN0 = (float) 0.875;     /* Comfort noise gain smoothing       */
+    public static final float A_GAIN1 = ((float) 1. - A_GAIN0);
+    public static final float FRAC_GAUSS = (float) 0.5;     /* Gaussian share of the CNG amplitude */
+    public static final float K0 = ((float) 1. - FRAC_GAUSS * FRAC_GAUSS); /* ACELP share of energy */
+    public static final float G_MAX_CNG = (float) 0.5;      /* Maximum random pitch gain           */
+    public static final short INIT_SEED = 11111;
+
 
 }
@@ -33,8 +33,14 @@ public class LpcFunc {
             float[] lsp, int lsps,            /* input : lsp[0:M-1] */
             float[] a, int as              /* output: predictor coeffs a[0:M], a[0] = 1. */
     ) {
+        lsp_az(lsp, lsps, a, as, new float[LD8KConstants.NC + 1], new float[LD8KConstants.NC + 1]);
+    }
 
-        float f1[] = new float[LD8KConstants.NC + 1], f2[] = new float[LD8KConstants.NC + 1];
+    public static void lsp_az(
+            float[] lsp, int lsps,            /* input : lsp[0:M-1] */
+            float[] a, int as,             /* output: predictor coeffs a[0:M], a[0] = 1. */
+            float[] f1, float[] f2         /* scratch: NC+1 elements each */
+    ) {
         int i, j;
 
 
@@ -144,15 +150,24 @@ public class LpcFunc {
             float lsp_old[],       /* input : LSPs for past frame (0:M-1) */
             float lsp_new[],       /* input : LSPs for present frame (0:M-1) */
             float az[]             /* output: filter parameters in 2 subfr (dim 2(m+1)) */
+    ) {
+        int_qlpc(lsp_old, lsp_new, az, new float[LD8KConstants.M], new float[LD8KConstants.NC + 1], new float[LD8KConstants.NC + 1]);
+    }
+
+    public static void int_qlpc(
+            float lsp_old[],       /* input : LSPs for past frame (0:M-1) */
+            float lsp_new[],       /* input : LSPs for present frame (0:M-1) */
+            float az[],            /* output: filter parameters in 2 subfr (dim 2(m+1)) */
+            float lsp[],           /* scratch: M elements */
+            float f1[], float f2[] /* scratch: NC+1 elements each */
     ) {
         int i;
-        float lsp[] = new float[LD8KConstants.M];
 
         for (i = 0; i < LD8KConstants.M; i++)
             lsp[i] = lsp_old[i] * (float) 0.5 + lsp_new[i] * (float) 0.5;
 
-        lsp_az(lsp, 0, az, 0);
-        lsp_az(lsp_new, 0, az, LD8KConstants.M + 1);
+        lsp_az(lsp, 0, az, 0, f1, f2);
+        lsp_az(lsp_new, 0, az, LD8KConstants.M + 1, f1, f2);
 
         return;
     }
@@ -168,14 +183,24 @@ public class LpcFunc {
             float lsf_new[],       /* input : LSFs for present frame (0:M-1) */
             float az[]             /* output: filter parameters in 2 subfr (dim 2(m+1)) */
     ) {
-        int i;
-        float lsp[] = new float[LD8KConstants.M];
+        int_lpc(lsp_old, lsp_new, lsf_int, lsf_new, az, new float[LD8KConstants.M], new float[LD8KConstants.NC + 1], new float[LD8KConstants.NC + 1]);
+    }
 
+    public static void int_lpc(
+            float lsp_old[],       /* input : LSPs for past frame (0:M-1) */
+            float lsp_new[],       /* input : LSPs for present frame (0:M-1) */
+            float lsf_int[],        /* output: interpolated lsf coefficients */
+            float lsf_new[],       /* input : LSFs for present frame (0:M-1) */
+            float az[],            /* output: filter parameters in 2 subfr (dim 2(m+1)) */
+            float lsp[],           /* scratch: M elements */
+            float f1[], float f2[] /* scratch: NC+1 elements each */
+    ) {
+        int i;
 
         for (i = 0; i < LD8KConstants.M; i++)
             lsp[i] = lsp_old[i] * (float) 0.5 + lsp_new[i] * (float) 0.5;
 
-        lsp_az(lsp, 0, az, 0);
+        lsp_az(lsp, 0, az, 0, f1, f2);
 
         lsp_lsf(lsp, lsf_int, LD8KConstants.M);
         lsp_lsf(lsp_new, lsf_new, LD8KConstants.M);
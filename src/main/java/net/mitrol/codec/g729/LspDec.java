@@ -24,9 +24,10 @@ package net.mitrol.codec.g729;
 
 public class LspDec {
 
-    /* static memory for frame erase operation */
-    static int prev_ma;                  /* previous MA prediction coef.*/
-    static float prev_lsp[] = new float[LD8KConstants.M];            /* previous LSP vector         */
+    /* memory for frame erase operation */
+    int prev_ma;                  /* previous MA prediction coef.*/
+    float prev_lsp[] = new float[LD8KConstants.M];            /* previous LSP vector         */
+    float buf[] = new float[LD8KConstants.M];                 /* scratch                     */
     /* static memory */
     float freq_prev[][] = new float[LD8KConstants.MA_NP][LD8KConstants.M];    /* previous LSP vector       */
     float freq_prev_reset[] = new float[]{  /* previous LSP vector(init) */
@@ -65,7 +66,6 @@ public class LspDec {
         int code0;
         int code1;
         int code2;
-        float buf[] = new float[LD8KConstants.M];
 
 
         if (erase == 0)                 /* Not frame erasure */ {
@@ -75,7 +75,7 @@ public class LspDec {
             code2 = prm[prms + 1] & (short) (LD8KConstants.NC1 - 1);
 
             LspGetq.lsp_get_quant(TabLD8k.lspcb1, TabLD8k.lspcb2, code0, code1, code2, TabLD8k.fg[mode_index],
-                    freq_prev, lsp_q, TabLD8k.fg_sum[mode_index]);
+                    freq_prev, lsp_q, TabLD8k.fg_sum[mode_index], buf);
 
             Util.copy(lsp_q, prev_lsp, LD8KConstants.M);
             prev_ma = mode_index;
@@ -40,9 +40,22 @@ public class LspGetq {
             float lspq[],         /*output: quantized LSP parameters     */
             float fg_sum[]        /*input : present MA prediction coef.  */
     ) {
-        int j;
-        float buf[] = new float[LD8KConstants.M];
+        lsp_get_quant(lspcb1, lspcb2, code0, code1, code2, fg, freq_prev, lspq, fg_sum, new float[LD8KConstants.M]);
+    }
 
+    public static void lsp_get_quant(
+            float lspcb1[][],    /*input : first stage LSP codebook     */
+            float lspcb2[][],    /*input : Second stage LSP codebook    */
+            int code0,          /*input : selected code of first stage */
+            int code1,          /*input : selected code of second stage*/
+            int code2,          /*input : selected code of second stage*/
+            float fg[][],        /*input : MA prediction coef.          */
+            float freq_prev[][], /*input : previous LSP vector          */
+            float lspq[],         /*output: quantized LSP parameters     */
+            float fg_sum[],       /*input : present MA prediction coef.  */
+            float buf[]           /*scratch: M elements                  */
+    ) {
+        int j;
 
         for (j = 0; j < LD8KConstants.NC; j++)
             buf[j] = lspcb1[code0][j] + lspcb2[code1][j];
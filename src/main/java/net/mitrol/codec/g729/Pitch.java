@@ -35,7 +35,17 @@ public class Pitch {
                                           int pit_max,         /* input : maximum pitch lag                          */
                                           int l_frame          /* input : error minimization window */
     ) {
-        FloatPointer max1 = new FloatPointer(), max2 = new FloatPointer(), max3 = new FloatPointer();
+        return pitch_ol(signal, signals, pit_min, pit_max, l_frame, new FloatPointer(), new FloatPointer(), new FloatPointer());
+    }
+
+    public static int pitch_ol(           /* output: open-loop pitch lag */
+                                          float signal[], int signals,        /* input : signal to compute pitch  */
+                            /*         s[-PIT_MAX : l_frame-1]  */
+                                          int pit_min,         /* input : minimum pitch lag                          */
+                                          int pit_max,         /* input : maximum pitch lag                          */
+                                          int l_frame,         /* input : error minimization window */
+                                          FloatPointer max1, FloatPointer max2, FloatPointer max3 /* scratch */
+    ) {
         int p_max1, p_max2, p_max3;
 
 	   /*--------------------------------------------------------------------*
@@ -129,12 +139,27 @@ public class Pitch {
                                           int t0_max,            /* input : maximum value in the searched range */
                                           int i_subfr,           /* input : indicator for first subframe        */
                                           IntegerPointer pit_frac          /* output: chosen fraction                     */
+    ) {
+        return pitch_fr3(exc, excs, xn, xns, h, hs, l_subfr, t0_min, t0_max, i_subfr, pit_frac,
+                new float[10 + 2 * LD8KConstants.L_INTER4], new float[LD8KConstants.L_SUBFR]);
+    }
+
+    public static int pitch_fr3(          /* output: integer part of pitch period        */
+                                          float exc[], int excs,           /* input : excitation buffer                   */
+                                          float xn[], int xns,            /* input : target vector                       */
+                                          float h[], int hs,            /* input : impulse response of filters.        */
+                                          int l_subfr,           /* input : Length of frame to compute pitch    */
+                                          int t0_min,            /* input : minimum value in the searched range */
+                                          int t0_max,            /* input : maximum value in the searched range */
+                                          int i_subfr,           /* input : indicator for first subframe        */
+                                          IntegerPointer pit_frac,         /* output: chosen fraction                     */
+                                          float corr_v[],        /* scratch: 10+2*L_INTER4 elements */
+                                          float excf[]           /* scratch: L_SUBFR elements */
     ) {
         int i, frac;
         int lag, t_min, t_max;
         float max;
         float corr_int;
-        float corr_v[] = new float[10 + 2 * LD8KConstants.L_INTER4];  /* size: 2*L_INTER4+t0_max-t0_min+1 */
         int corr;
 
 	  /* Find interval to compute normalized correlation */
@@ -146,7 +171,7 @@ public class Pitch {
 
 	  /* Compute normalized correlation between target and filtered excitation */
 
-        norm_corr(exc, excs, xn, xns, h, hs, l_subfr, t_min, t_max, corr_v, corr);
+        norm_corr(exc, excs, xn, xns, h, hs, l_subfr, t_min, t_max, corr_v, corr, excf);
 
 	  /* find integer pitch */
 
@@ -213,9 +238,21 @@ public class Pitch {
                                        target and filtered excitation divided by
 	                                   the square root of energy of filtered
 	                                    excitation) */
+    ) {
+        norm_corr(exc, excs, xn, xns, h, hs, l_subfr, t_min, t_max, corr_norm, cs, new float[LD8KConstants.L_SUBFR]);
+    }
+
+    public static void norm_corr(
+            float exc[], int excs,           /* input : excitation buffer */
+            float xn[], int xns,            /* input : target vector */
+            float h[], int hs,             /* input : imp response of synth and weighting flt */
+            int l_subfr,           /* input : Length of frame to compute pitch */
+            int t_min,             /* input : minimum value of searched range */
+            int t_max,             /* input : maximum value of search range */
+            float corr_norm[], int cs,     /* output: normalized correlation */
+            float excf[]           /* scratch: filtered past excitation, L_SUBFR elements */
     ) {
         int i, j, k;
-        float excf[] = new float[LD8KConstants.L_SUBFR];     /* filtered past excitation */
         float alp, s, norm;
 
         k = -t_min;
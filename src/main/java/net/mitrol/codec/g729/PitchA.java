@@ -0,0 +1,219 @@
+package net.mitrol.codec.g729;
+
+/**
+ * Pitch search of G.729 Annex A (pitch_a.c): open-loop search on the decimated weighted speech and a closed-loop
+ * search that tests the fractions only around the best integer lag. Lag encoding and the pitch gain are shared
+ * with the full search in {@link Pitch}.
+ */
+public class PitchA {
+
+    /*---------------------------------------------------------------------------*
+     * Function  pitch_ol_fast                                                   *
+     * ~~~~~~~~~~~~~~~~~~~~~~~                                                   *
+     * Compute the open loop pitch lag. (fast version)                           *
+     *---------------------------------------------------------------------------*/
+    public static int pitch_ol_fast(   /* output: open-loop pitch lag */
+                                       float signal[], int ss, /* input : signal to compute pitch      */
+                                                               /*         s[-PIT_MAX : l_frame-1]      */
+                                       int l_frame             /* input : error minimization window    */
+    ) {
+        int i;
+        int T1, T2, T3;
+        float max1, max2, max3;
+
+	    /*--------------------------------------------------------------------*
+        *  The pitch lag search is divided in three sections.                *
+	    *  Each section cannot have a pitch multiple.                        *
+	    *  A maximum is find for each section.                               *
+	    *  The final lag is selected by taking into account the multiple.    *
+	    *                                                                    *
+	    *  First section:  lag delay = 20 to 39                              *
+	    *  Second section: lag delay = 40 to 79                              *
+	    *  Third section:  lag delay = 80 to 143                             *
+	    *                                                                    *
+	    *  All the dot products skip every other sample.                     *
+	    *--------------------------------------------------------------------*/
+
+	    /* First section */
+
+        max1 = LD8KConstants.FLT_MIN_G729;
+        T1 = 20;
+        for (i = 20; i < 40; i++) {
+            float sum = dot_even(signal, ss, ss - i, l_frame);
+            if (sum > max1) {
+                max1 = sum;
+                T1 = i;
+            }
+        }
+        max1 *= Pitch.inv_sqrt(energy_even(signal, ss - T1, l_frame));
+
+	    /* Second section */
+
+        max2 = LD8KConstants.FLT_MIN_G729;
+        T2 = 40;
+        for (i = 40; i < 80; i++) {
+            float sum = dot_even(signal, ss, ss - i, l_frame);
+            if (sum > max2) {
+                max2 = sum;
+                T2 = i;
+            }
+        }
+        max2 *= Pitch.inv_sqrt(energy_even(signal, ss - T2, l_frame));
+
+	    /* Third section */
+
+	    /* find maximum with steps of 2 */
+        max3 = LD8KConstants.FLT_MIN_G729;
+        T3 = 80;
+        for (i = 80; i < 143; i += 2) {
+            float sum = dot_even(signal, ss, ss - i, l_frame);
+            if (sum > max3) {
+                max3 = sum;
+                T3 = i;
+            }
+        }
+
+	    /* Test around max3 */
+        i = T3;
+        float sum = dot_even(signal, ss, ss - (i + 1), l_frame);
+        if (sum > max3) {
+            max3 = sum;
+            T3 = i + 1;
+        }
+        sum = dot_even(signal, ss, ss - (i - 1), l_frame);
+        if (sum > max3) {
+            max3 = sum;
+            T3 = i - 1;
+        }
+        max3 *= Pitch.inv_sqrt(energy_even(signal, ss - T3, l_frame));
+
+	    /*-----------------------*
+        * Test for multiple.    *
+	    *-----------------------*/
+
+        if (Math.abs(T2 * 2 - T3) < 5) max2 += max3 * (float) 0.25;
+        if (Math.abs(T2 * 3 - T3) < 7) max2 += max3 * (float) 0.25;
+
+        if (Math.abs(T1 * 2 - T2) < 5) max1 += max2 * (float) 0.20;
+        if (Math.abs(T1 * 3 - T2) < 7) max1 += max2 * (float) 0.20;
+
+	    /*--------------------------------------------------------------------*
+        * Compare the 3 sections maximum.                                    *
+	    *--------------------------------------------------------------------*/
+
+        if (max1 < max2) {
+            max1 = max2;
+            T1 = T2;
+        }
+        if (max1 < max3) {
+            T1 = T3;
+        }
+
+        return T1;
+    }
+
+    /* dot product of x[xs..] and x[ys..] over the even samples of l */
+    private static float dot_even(float x[], int xs, int ys, int l) {
+        float sum = (float) 0.0;
+        for (int j = 0; j < l; j += 2) {
+            sum += x[xs + j] * x[ys + j];
+        }
+        return sum;
+    }
+
+    /* energy of the even samples of x[xs..xs+l-1], never 0 */
+    private static float energy_even(float x[], int xs, int l) {
+        float sum = (float) 0.01;
+        for (int j = 0; j < l; j += 2) {
+            sum += x[xs + j] * x[xs + j];
+        }
+        return sum;
+    }
+
+    /*----------------------------------------------------------------------*
+     *    Function pitch_fr3_fast()                                         *
+     *             ~~~~~~~~~~~~~~~                                          *
+     * Fast version of the closed loop pitch search with 1/3 resolution.   *
+     * Only the integer lags are searched on the correlation with the      *
+     * backward filtered target; the fractions -1/3, 0, +1/3 are then      *
+     * tested around the best one.                                         *
+     *                                                                     *
+     * On return exc[0..l_subfr-1] contains the adaptive codebook vector   *
+     * of the selected lag.                                                *
+     *----------------------------------------------------------------------*/
+    public static int pitch_fr3_fast(    /* output: integer part of pitch period        */
+                                         float exc[], int excs,  /* in/out: excitation buffer                   */
+                                         float xn[],             /* input : target vector                       */
+                                         float h[],              /* input : impulse response of filters.        */
+                                         int l_subfr,            /* input : Length of subframe                  */
+                                         int t0_min,             /* input : minimum value in the searched range */
+                                         int t0_max,             /* input : maximum value in the searched range */
+                                         int i_subfr,            /* input : indicator for first subframe        */
+                                         IntegerPointer pit_frac, /* output: chosen fraction                    */
+                                         float dn[], float exc_tmp[] /* scratch: l_subfr elements each          */
+    ) {
+        int t, t0;
+        float max, corr;
+
+	    /* Compute correlations of input response h with the target vector. */
+
+        CorFunc.cor_h_x(h, xn, dn);
+
+	    /* Find maximum integer delay */
+
+        max = LD8KConstants.FLT_MIN_G729;
+        t0 = t0_min;
+        for (t = t0_min; t <= t0_max; t++) {
+            corr = dot_product(dn, exc, excs - t, l_subfr);
+            if (corr > max) {
+                max = corr;
+                t0 = t;
+            }
+        }
+
+	    /* Test fractions */
+
+	    /* Fraction 0 */
+        PredLt.pred_lt_3(exc, excs, t0, 0, l_subfr);
+        max = dot_product(dn, exc, excs, l_subfr);
+        pit_frac.value = 0;
+
+	    /* If first subframe and lag > 84 do not search fractional pitch */
+
+        if ((i_subfr == 0) && (t0 > 84)) {
+            return t0;
+        }
+
+        System.arraycopy(exc, excs, exc_tmp, 0, l_subfr);
+
+	    /* Fraction -1/3 */
+
+        PredLt.pred_lt_3(exc, excs, t0, -1, l_subfr);
+        corr = dot_product(dn, exc, excs, l_subfr);
+        if (corr > max) {
+            max = corr;
+            pit_frac.value = -1;
+            System.arraycopy(exc, excs, exc_tmp, 0, l_subfr);
+        }
+
+	    /* Fraction +1/3 */
+
+        PredLt.pred_lt_3(exc, excs, t0, 1, l_subfr);
+        corr = dot_product(dn, exc, excs, l_subfr);
+        if (corr > max) {
+            pit_frac.value = 1;
+        } else {
+            System.arraycopy(exc_tmp, 0, exc, excs, l_subfr);
+        }
+
+        return t0;
+    }
+
+    private static float dot_product(float x[], float y[], int ys, int l) {
+        float sum = (float) 0.0;
+        for (int i = 0; i < l; i++) {
+            sum += x[i] * y[ys + i];
+        }
+        return sum;
+    }
+}
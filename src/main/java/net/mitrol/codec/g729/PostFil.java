@@ -37,6 +37,19 @@ public class PostFil {
     /* Variables */
     FloatPointer gain_prec = new FloatPointer((float) 0);             /* for gain adjustment          */
 
+    /* Per subframe workspace, kept here so post() does not allocate */
+    float apond1[] = new float[LD8KConstants.MP1];           /* s.t. denominator coeff.      */
+    float sig_ltp[] = new float[LD8KConstants.L_SUBFRP1];   /* H0 output signal             */
+    FloatPointer parcor0 = new FloatPointer();
+    IntegerPointer ltpdel = new IntegerPointer(0), phase = new IntegerPointer(0);
+    FloatPointer num_gltp1 = new FloatPointer((float) 0), den_gltp1 = new FloatPointer((float) 0);
+    FloatPointer num2_gltp = new FloatPointer((float) 0), den2_gltp = new FloatPointer((float) 0);
+    float y_up[] = new float[LD8KConstants.SIZ_Y_UP];
+    IntegerPointer off_yup = new IntegerPointer();
+    float tab_den0[] = new float[LD8KConstants.F_UP_PST - 1], tab_den1[] = new float[LD8KConstants.F_UP_PST - 1];
+    float h[] = new float[LD8KConstants.LONG_H_ST];
+    float yy_b[] = new float[LD8KConstants.L_SUBFR + LD8KConstants.M];
+
     /****   Short term postfilter :                                     *****/
     /*      Hst(z) = Hst0(z) Hst1(z)                                        */
     /*      Hst0(z) = 1/g0 A(gamma2)(z) / A(gamma1)(z)                      */
@@ -70,14 +83,14 @@ public class PostFil {
             FloatPointer num_gltp,       /* output: numerator of LTP gain */
             FloatPointer den_gltp,       /* output: denominator of LTP gain */
             float[] y_up,           /*       : */
-            IntegerPointer off_yup           /*       : */
+            IntegerPointer off_yup,          /*       : */
+            float[] tab_den0, float[] tab_den1 /* scratch: F_UP_PST-1 elements each */
     ) {
 
 	    /* pointers on tables of constants */
         int ptr_h;
 
 	    /* Variables and local arrays */
-        float tab_den0[] = new float[LD8KConstants.F_UP_PST - 1], tab_den1[] = new float[LD8KConstants.F_UP_PST - 1];
         int ptr_den0, ptr_den1;
         int ptr_sig_past, ptr_sig_past0;
         int ptr1;
@@ -509,10 +522,23 @@ public class PostFil {
             float[] sig_out, int outs,        /* output: postfiltered output */
             IntegerPointer vo                /* output: voicing decision 0 = uv,  > 0 delay */
     ) {
-        float apond1[] = new float[LD8KConstants.MP1];           /* s.t. denominator coeff.      */
-        float sig_ltp[] = new float[LD8KConstants.L_SUBFRP1];   /* H0 output signal             */
+        post(t0, signal_ptr, signals, coeff, coeffs, sig_out, outs, vo, LD8KConstants.FTYP_SPEECH);
+    }
+
+    /*----------------------------------------------------------------------------
+     * post - adaptive postfilter main function, the harmonic postfilter is
+     *        skipped on comfort noise (G.729B: ftyp other than FTYP_SPEECH)
+     *----------------------------------------------------------------------------
+     */
+    public void post(
+            int t0,                /* input : pitch delay given by coder */
+            float[] signal_ptr, int signals,     /* input : input signal (pointer to current subframe */
+            float[] coeff, int coeffs,          /* input : LPC coefficients for current subframe */
+            float[] sig_out, int outs,        /* output: postfiltered output */
+            IntegerPointer vo,               /* output: voicing decision 0 = uv,  > 0 delay */
+            int ftyp                         /* input : type of the decoded frame */
+    ) {
         int sig_ltp_ptr;
-        FloatPointer parcor0 = new FloatPointer();
 
 	    /* Compute weighted LPC coefficients */
         LpcFunc.weight_az(coeff, coeffs, LD8KConstants.GAMMA1_PST, LD8KConstants.M, apond1, 0);
@@ -523,7 +549,12 @@ public class PostFil {
 
 	    /* Harmonic filtering */
         sig_ltp_ptr = 1;//sig_ltp + 1;
-        pst_ltp(t0, res2, res2_ptr, sig_ltp, sig_ltp_ptr, vo);
+        if (ftyp == LD8KConstants.FTYP_SPEECH) {
+            pst_ltp(t0, res2, res2_ptr, sig_ltp, sig_ltp_ptr, vo);
+        } else {
+            vo.value = 0;
+            Util.copy(res2, res2_ptr, sig_ltp, sig_ltp_ptr, LD8KConstants.L_SUBFR);
+        }
 
 	    /* Save last output of 1/A(gamma1)  */
 	    /* (from preceding subframe)        */
@@ -533,7 +564,7 @@ public class PostFil {
         calc_st_filt(apond2, 0, apond1, 0, parcor0, sig_ltp, sig_ltp_ptr);
 
 	    /* 1/A(gamma1) filtering, mem_stp is updated */
-        Filter.syn_filt(apond1, 0, sig_ltp, sig_ltp_ptr, sig_ltp, sig_ltp_ptr, LD8KConstants.L_SUBFR, mem_stp, 0, 1);
+        Filter.syn_filt(apond1, 0, sig_ltp, sig_ltp_ptr, sig_ltp, sig_ltp_ptr, LD8KConstants.L_SUBFR, mem_stp, 0, 1, yy_b);
 
 	    /* (1 + mu z-1) tilt filtering */
         filt_mu(sig_ltp, 0, sig_out, outs, parcor0.value);
@@ -559,18 +590,14 @@ public class PostFil {
     ) {
 
         /**** Declare variables                                 */
-        IntegerPointer ltpdel = new IntegerPointer(0), phase = new IntegerPointer(0);
-        FloatPointer num_gltp = new FloatPointer((float) 0), den_gltp = new FloatPointer((float) 0);
-        FloatPointer num2_gltp = new FloatPointer((float) 0), den2_gltp = new FloatPointer((float) 0);
+        FloatPointer num_gltp = num_gltp1, den_gltp = den_gltp1;
         float gain_plt;
-        float y_up[] = new float[LD8KConstants.SIZ_Y_UP];
         int ptr_y_up;
         float[] ptr_y_up_array;
-        IntegerPointer off_yup = new IntegerPointer();
 
 	    /* Sub optimal delay search */
         search_del(t0, ptr_sig_in, ins, ltpdel, phase, num_gltp, den_gltp,
-                y_up, off_yup);
+                y_up, off_yup, tab_den0, tab_den1);
         vo.value = ltpdel.value;
 
         //HACK:FIXME
@@ -654,12 +681,11 @@ public class PostFil {
             FloatPointer parcor0,    /* output: 1st parcor calcul. on composed filter */
             float[] sig_ltp_ptr, int sigs    /* in/out: input of 1/A(gamma1) : scaled by 1/g0 */
     ) {
-        float h[] = new float[LD8KConstants.LONG_H_ST];
         float g0, temp;
         int i;
 
 	    /* computes impulse response of  apond1 / apond2 */
-        Filter.syn_filt(apond1, apond1s, apond2, apond2s, h, 0, LD8KConstants.LONG_H_ST, mem_zero, 0, 0);
+        Filter.syn_filt(apond1, apond1s, apond2, apond2s, h, 0, LD8KConstants.LONG_H_ST, mem_zero, 0, 0, yy_b);
 
 	    /* computes 1st parcor */
         calc_rc0_h(h, 0, parcor0);
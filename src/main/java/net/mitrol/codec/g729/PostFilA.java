@@ -0,0 +1,227 @@
+package net.mitrol.codec.g729;
+
+/**
+ * Simplified postfilter of G.729 Annex A (pst_a.c / postfilt.c of the Annex A reference). The structure is that of
+ * {@link PostFil}, A(z/0.55) residual, harmonic filter, 1/A(z/0.7) and gain control, but each stage is cheaper:
+ * <ul>
+ * <li>harmonic filter on integer delays only, searched within 3 of the decoded delay of the subframe;</li>
+ * <li>tilt compensation by a first order filter from the correlations of the truncated impulse response, without
+ * the gain normalisation of the short term filter;</li>
+ * <li>gain control on the energies of the subframes.</li>
+ * </ul>
+ * It reuses the residual buffer and the filter memories of the full postfilter, so {@link #init_post_filter()}
+ * resets both.
+ */
+public class PostFilA extends PostFil {
+
+    private static final float MU = (float) 0.8;           /* tilt compensation factor                 */
+    private static final float AGC_FAC = (float) 0.9;      /* gain adjustment factor                   */
+    private static final float AGC_FAC1 = (float) 1. - AGC_FAC;
+    private static final float GAMMAP = (float) 0.5;       /* harmonic postfilter factor               */
+    private static final float INV_GAMMAP = (float) 1. / ((float) 1. + GAMMAP);
+    private static final float GAMMAP_2 = GAMMAP / ((float) 1. + GAMMAP);
+    private static final int L_H = 22;                     /* truncated impulse response of the filter */
+
+    float mem_pre;          /* preemphasis memory */
+
+    /* Per subframe workspace */
+    float res2_pst[] = new float[LD8KConstants.L_SUBFR];  /* res2[] after the harmonic filter */
+    float h_a[] = new float[L_H];
+
+    @Override
+    public void init_post_filter() {
+        super.init_post_filter();
+        mem_pre = (float) 0.;
+    }
+
+    /*----------------------------------------------------------------------------
+     * post - Annex A postfilter of one subframe, the harmonic filter is skipped
+     *        on comfort noise (G.729B: ftyp other than FTYP_SPEECH)
+     *----------------------------------------------------------------------------
+     */
+    @Override
+    public void post(
+            int t0,                /* input : pitch delay of the subframe */
+            float[] signal_ptr, int signals,     /* input : input signal (pointer to current subframe */
+            float[] coeff, int coeffs,          /* input : LPC coefficients for current subframe */
+            float[] sig_out, int outs,        /* output: postfiltered output */
+            IntegerPointer vo,               /* output: voicing decision 0 = uv,  > 0 delay */
+            int ftyp                         /* input : type of the decoded frame */
+    ) {
+        int i;
+        float temp1, temp2;
+
+	    /* Compute weighted LPC coefficients */
+        LpcFunc.weight_az(coeff, coeffs, LD8KConstants.GAMMA1_PST, LD8KConstants.M, apond1, 0);
+        LpcFunc.weight_az(coeff, coeffs, LD8KConstants.GAMMA2_PST, LD8KConstants.M, apond2, 0);
+
+	    /* Compute A(gamma2) residual */
+        Filter.residu(apond2, 0, signal_ptr, signals, res2, res2_ptr, LD8KConstants.L_SUBFR);
+
+	    /* Harmonic filtering */
+        if (ftyp == LD8KConstants.FTYP_SPEECH) {
+            pit_pst_filt(t0, vo);
+        } else {
+            vo.value = 0;
+            Util.copy(res2, res2_ptr, res2_pst, 0, LD8KConstants.L_SUBFR);
+        }
+
+	    /* Impulse response of A(gamma2)/A(gamma1) */
+        Util.copy(apond2, h_a, LD8KConstants.MP1);
+        for (i = LD8KConstants.MP1; i < L_H; i++) h_a[i] = (float) 0.;
+        Filter.syn_filt(apond1, 0, h_a, 0, h_a, 0, L_H, mem_zero, 0, 0, yy_b);
+
+	    /* Tilt compensation from its 1st correlations */
+        temp1 = (float) 0.;
+        for (i = 0; i < L_H; i++) temp1 += h_a[i] * h_a[i];
+        temp2 = (float) 0.;
+        for (i = 0; i < L_H - 1; i++) temp2 += h_a[i] * h_a[i + 1];
+        if (temp2 <= (float) 0.) {
+            temp2 = (float) 0.;
+        } else {
+            temp2 = MU * temp2 / temp1;
+        }
+        preemphasis(res2_pst, temp2);
+
+	    /* 1/A(gamma1) filtering, mem_stp is updated */
+        Filter.syn_filt(apond1, 0, res2_pst, 0, sig_out, outs, LD8KConstants.L_SUBFR, mem_stp, 0, 1, yy_b);
+
+	    /* gain control */
+        agc(signal_ptr, signals, sig_out, outs);
+
+        /**** Update for next frame */
+        Util.copy(res2, LD8KConstants.L_SUBFR, res2, 0, LD8KConstants.MEM_RES2);
+    }
+
+    /*---------------------------------------------------------------------------
+     * pit_pst_filt - harmonic postfilter on integer delays:
+     *                (1 + g z^-T) / (1 + g),  g = min(pit_gain * GAMMAP, 1)
+     *                from res2[] to res2_pst[]
+     *---------------------------------------------------------------------------
+     */
+    void pit_pst_filt(
+            int t0,                /* input : pitch delay of the subframe */
+            IntegerPointer vo                /* output: voicing decision 0 = uv,  > 0 delay */
+    ) {
+        int i, j, t, t0_min, t0_max;
+        int sig = res2_ptr;
+        float corr, cor_max, ener, ener0, g0, gain;
+
+	    /* Search range around the decoded delay */
+        t0_min = t0 - 3;
+        t0_max = t0_min + 6;
+        if (t0_max > LD8KConstants.PIT_MAX) {
+            t0_max = LD8KConstants.PIT_MAX;
+            t0_min = t0_max - 6;
+        }
+
+	    /* Delay of maximum correlation */
+        cor_max = LD8KConstants.FLT_MIN_G729;
+        t = t0_min;
+        for (i = t0_min; i <= t0_max; i++) {
+            corr = (float) 0.;
+            for (j = 0; j < LD8KConstants.L_SUBFR; j++) {
+                corr += res2[sig + j] * res2[sig + j - i];
+            }
+            if (corr > cor_max) {
+                cor_max = corr;
+                t = i;
+            }
+        }
+        if (cor_max < (float) 0.) {
+            cor_max = (float) 0.;
+        }
+
+	    /* Energies of the delayed and of the present signal */
+        ener = (float) 0.;
+        ener0 = (float) 0.;
+        for (j = 0; j < LD8KConstants.L_SUBFR; j++) {
+            ener += res2[sig + j - t] * res2[sig + j - t];
+            ener0 += res2[sig + j] * res2[sig + j];
+        }
+
+	    /* Switch off below 3 dB of prediction gain */
+        if (cor_max * cor_max < (float) 0.5 * ener * ener0) {
+            vo.value = 0;
+            Util.copy(res2, sig, res2_pst, 0, LD8KConstants.L_SUBFR);
+            return;
+        }
+
+        if (cor_max > ener) {            /* pitch gain > 1 */
+            g0 = INV_GAMMAP;
+            gain = GAMMAP_2;
+        } else {
+            cor_max *= GAMMAP;
+            if (cor_max + ener > (float) 0.) {
+                gain = cor_max / (cor_max + ener);
+                g0 = (float) 1. - gain;
+            } else {
+                g0 = (float) 1.;
+                gain = (float) 0.;
+            }
+        }
+
+        vo.value = t;
+        for (j = 0; j < LD8KConstants.L_SUBFR; j++) {
+            res2_pst[j] = g0 * res2[sig + j] + gain * res2[sig + j - t];
+        }
+    }
+
+    /*---------------------------------------------------------------------
+     * preemphasis - filtering through 1 - g z^-1, in place
+     *---------------------------------------------------------------------
+     */
+    void preemphasis(
+            float[] signal,      /* in/out: subframe */
+            float g              /* input : preemphasis coefficient */
+    ) {
+        int i;
+        float temp = signal[LD8KConstants.L_SUBFR - 1];
+
+        for (i = LD8KConstants.L_SUBFR - 1; i > 0; i--) {
+            signal[i] -= g * signal[i - 1];
+        }
+        signal[0] -= g * mem_pre;
+        mem_pre = temp;
+    }
+
+    /*----------------------------------------------------------------------
+     * agc - control of the subframe gain on the subframe energies
+     *       gain[n] = AGC_FAC * gain[n-1] + (1 - AGC_FAC) sqrt(e_in/e_out)
+     *----------------------------------------------------------------------
+     */
+    void agc(
+            float[] sig_in, int ins,     /* input : postfilter input signal */
+            float[] sig_out, int outs    /* in/out: postfilter output signal */
+    ) {
+        int i;
+        float ener_in, ener_out, g0, gain;
+
+        ener_out = (float) 0.;
+        for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+            ener_out += sig_out[outs + i] * sig_out[outs + i];
+        }
+        if (ener_out == (float) 0.) {
+            gain_prec.value = (float) 0.;
+            return;
+        }
+
+        ener_in = (float) 0.;
+        for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+            ener_in += sig_in[ins + i] * sig_in[ins + i];
+        }
+        if (ener_in == (float) 0.) {
+            g0 = (float) 0.;
+        } else {
+            g0 = AGC_FAC1 * (float) Math.sqrt(ener_in / ener_out);
+        }
+
+        gain = gain_prec.value;
+        for (i = 0; i < LD8KConstants.L_SUBFR; i++) {
+            gain *= AGC_FAC;
+            gain += g0;
+            sig_out[outs + i] *= gain;
+        }
+        gain_prec.value = gain;
+    }
+}
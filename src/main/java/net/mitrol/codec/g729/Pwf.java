@@ -27,6 +27,16 @@ public class Pwf {
 
     int smooth = 1;
     float lar_old[] = new float[]{(float) 0.0, (float) 0.0};
+    float lar[] = new float[4];
+
+    /*----------------------------------------------------------------------------
+     * init_pwf - reset the smoothing decision and the past log area ratios
+     *----------------------------------------------------------------------------
+     */
+    void init_pwf() {
+        smooth = 1;
+        lar_old[0] = lar_old[1] = (float) 0.0;
+    }
 
     /*----------------------------------------------------------------------------
      * perc_var -adaptive bandwidth expansion for perceptual weighting filter
@@ -39,7 +49,6 @@ public class Pwf {
             float[] lsfnew,         /* input : lsf vector : 2nd subframe */
             float[] r_c             /* input : Reflection coefficients */
     ) {
-        float lar[] = new float[4];
         int lar_new;
         float[] lsf;
         float critlar0, critlar1;
@@ -25,6 +25,20 @@ package net.mitrol.codec.g729;
 public class QuaGain {
     float past_qua_en[] = new float[]{(float) -14.0, (float) -14.0, (float) -14.0, (float) -14.0};
 
+    /* scratch */
+    IntegerPointer cand1 = new IntegerPointer(0), cand2 = new IntegerPointer(0);
+    FloatPointer gcode0 = new FloatPointer((float) 0);
+    float best_gain[] = new float[2];
+
+    /*----------------------------------------------------------------------------
+     * init_qua_gain - reset the past quantized energies
+     *----------------------------------------------------------------------------
+     */
+    void init_qua_gain() {
+        int i;
+        for (i = 0; i < 4; i++) past_qua_en[i] = (float) -14.0;
+    }
+
     /*----------------------------------------------------------------------------
      * gbk_presel - presearch for gain codebook
      */
@@ -98,13 +112,11 @@ public class QuaGain {
 
 
         int i, j, index1 = 0, index2 = 0;
-        IntegerPointer cand1 = new IntegerPointer(0), cand2 = new IntegerPointer(0);
-        FloatPointer gcode0 = new FloatPointer((float) 0);
         float dist = 0;
         float dist_min = 0;
         float g_pitch = 0;
         float g_code = 0;
-        float best_gain[] = new float[2], tmp;
+        float tmp;
 
 	  /*---------------------------------------------------*
        *-  energy due to innovation                       -*
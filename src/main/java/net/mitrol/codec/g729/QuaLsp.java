@@ -31,11 +31,24 @@ public class QuaLsp {
             (float) 1.713596, (float) 1.999195, (float) 2.284795, (float) 2.570394, (float) 2.855993
     };     /* PI*(float)(j+1)/(float)(M+1) */
 
+    /* scratch */
+    IntegerPointer index = new IntegerPointer();
+    IntegerPointer mode_index = new IntegerPointer(), cand_cur = new IntegerPointer();
+    FloatPointer tdist_cur = new FloatPointer();
+    int cand[] = new int[LD8KConstants.MODE];
+    int tindex1[] = new int[LD8KConstants.MODE], tindex2[] = new int[LD8KConstants.MODE];
+    float tdist[] = new float[LD8KConstants.MODE];
+    float rbuf[] = new float[LD8KConstants.M];
+    float buf[] = new float[LD8KConstants.M];
+    float sel_buf[] = new float[LD8KConstants.M];
+    float lsf[] = new float[LD8KConstants.M], lsf_q[] = new float[LD8KConstants.M];
+    float wegt[] = new float[LD8KConstants.M];
+
     /*----------------------------------------------------------------------------
      * relspwed -
      *----------------------------------------------------------------------------
      */
-    static void relspwed(
+    void relspwed(
             float lsp[],                  /*input: unquantized LSP parameters  */
             float wegt[],                 /*input: weight coef.                */
             float lspq[],                 /*output:quantized LSP parameters    */
@@ -48,13 +61,6 @@ public class QuaLsp {
             int code_ana[]              /*output:codes of the selected LSP   */
     ) {
         int mode, j;
-        IntegerPointer index = new IntegerPointer();
-        IntegerPointer mode_index = new IntegerPointer(), cand_cur = new IntegerPointer();
-        int cand[] = new int[LD8KConstants.MODE];
-        int tindex1[] = new int[LD8KConstants.MODE], tindex2[] = new int[LD8KConstants.MODE];
-        float tdist[] = new float[LD8KConstants.MODE];
-        float rbuf[] = new float[LD8KConstants.M];
-        float buf[] = new float[LD8KConstants.M];
 
         for (mode = 0; mode < LD8KConstants.MODE; mode++) {
 
@@ -65,7 +71,7 @@ public class QuaLsp {
             cand[mode] = cand_cur.value;
 
 	      /*----- search the second stage lsp codebook (lower 0-4) ----- */
-            lsp_select_1(rbuf, lspcb1[cand_cur.value], wegt, lspcb2, index);
+            lsp_select_1(rbuf, lspcb1[cand_cur.value], wegt, lspcb2, index, sel_buf);
 
             tindex1[mode] = index.value;
 
@@ -76,7 +82,7 @@ public class QuaLsp {
 
 	      /*----- search the second stage lsp codebook (Higher 5-9) ----- */
             lsp_select_2(rbuf, lspcb1[cand_cur.value], wegt, lspcb2,
-                    index);
+                    index, sel_buf);
 
             tindex2[mode] = index.value;
 
@@ -87,10 +93,9 @@ public class QuaLsp {
 
 	      /* check */
             LspGetq.lsp_expand_1_2(buf, LD8KConstants.GAP2);
-            FloatPointer tmp = new FloatPointer(tdist[mode]);
-            lsp_get_tdist(wegt, buf, tmp, rbuf,
+            lsp_get_tdist(wegt, buf, tdist_cur, rbuf,
                     fg_sum[mode]);  /* calculate the distortion */
-            tdist[mode] = tmp.value;
+            tdist[mode] = tdist_cur.value;
 
         } /* mode */
 
@@ -106,7 +111,7 @@ public class QuaLsp {
                 tindex1[mode_index.value], tindex2[mode_index.value],
                 fg[mode_index.value],
                 freq_prev,
-                lspq, fg_sum[mode_index.value]);
+                lspq, fg_sum[mode_index.value], buf);
 
         return;
     }
@@ -151,10 +156,10 @@ public class QuaLsp {
             float lspcb1[],       /*input : first stage lsp codebook */
             float wegt[],         /*input : weight coef.             */
             float lspcb2[][],    /*input : second stage lsp codebook*/
-            IntegerPointer index          /*output: selected codebook index     */
+            IntegerPointer index,         /*output: selected codebook index     */
+            float buf[]                   /*scratch: M elements              */
     ) {
         int j, k1;
-        float buf[] = new float[LD8KConstants.M];
         float dist, dmin, tmp;
 
         for (j = 0; j < LD8KConstants.NC; j++)
@@ -187,10 +192,10 @@ public class QuaLsp {
             float lspcb1[],       /*input : first stage lsp codebook */
             float wegt[],         /*input : weighting coef.             */
             float lspcb2[][],    /*input : second stage lsp codebook*/
-            IntegerPointer index          /*output: selected codebook index    */
+            IntegerPointer index,         /*output: selected codebook index    */
+            float buf[]                   /*scratch: M elements                */
     ) {
         int j, k1;
-        float buf[] = new float[LD8KConstants.M];
         float dist, dmin, tmp;
 
         for (j = LD8KConstants.NC; j < LD8KConstants.M; j++)
@@ -285,7 +290,7 @@ public class QuaLsp {
             int ana[]          /* (o) : indexes                    */
     ) {
         int i;
-        float lsf[] = new float[LD8KConstants.M], lsf_q[] = new float[LD8KConstants.M];  /* domain 0.0<= lsf <PI */
+        /* lsf[], lsf_q[]: domain 0.0<= lsf <PI */
 
 	  /* Convert LSPs to LSFs */
 
@@ -324,7 +329,7 @@ public class QuaLsp {
             float[] lspq_out,       /*  output: Quantized LSP parameters     */
             int[] code             /*  output: codes of the selected LSP    */
     ) {
-        float wegt[] = new float[LD8KConstants.M];   /* weight coef. */
+        /* wegt[]: weight coef. */
 
         get_wegt(flsp_in, wegt);
 
@@ -0,0 +1,68 @@
+package net.mitrol.codec.g729;
+
+/**
+ * Tables of G.729 Annex B (tab_dtx.c): VAD low band filter, SID quantizers.
+ */
+public class TabDtx {
+
+    /* Autocorrelation of the VAD low band filter (cut off ~1 kHz), lags 0..NP */
+    public static final float lbf_corr[] = new float[]{
+            (float) 0.24017939691329, (float) 0.21398822343783, (float) 0.14767692339633,
+            (float) 0.07018811903116, (float) 0.00980856433051, (float) -0.02015934721195,
+            (float) -0.02388269958005, (float) -0.01480076155002, (float) -0.00503292155509,
+            (float) 0.00012141366508, (float) 0.00119354245231, (float) 0.00065908718613,
+            (float) 0.00015015569305
+    };
+
+    /* SID LSF quantizer: entries of lspcb1 usable by the 5 bit first stage */
+    public static final int PtrTab_1[] = new int[]{
+            96, 52, 20, 54, 86, 114, 82, 68, 36, 121, 48, 92, 18, 120, 94, 124,
+            50, 125, 4, 100, 28, 76, 12, 117, 81, 22, 90, 116, 127, 21, 108, 66
+    };
+
+    /* SID LSF quantizer: entries of lspcb2 usable by the 4 bit second stage, lower and upper half */
+    public static final int PtrTab_2[][] = new int[][]{
+            {31, 21, 9, 3, 10, 2, 19, 26, 4, 3, 11, 29, 15, 27, 21, 12},
+            {16, 1, 0, 0, 8, 25, 22, 20, 19, 23, 20, 31, 4, 31, 20, 31}
+    };
+
+    /* SID gain levels (excitation rms): -6 dB, 2 to 22 dB in 4 dB steps, 24 to 72 dB in 2 dB steps */
+    public static final float tab_Sidgain[] = new float[]{
+            (float) 0.502, (float) 1.262, (float) 2.000, (float) 3.170,
+            (float) 5.024, (float) 7.962, (float) 12.619, (float) 15.887,
+            (float) 20.000, (float) 25.179, (float) 31.698, (float) 39.905,
+            (float) 50.238, (float) 63.246, (float) 79.621, (float) 100.237,
+            (float) 126.191, (float) 158.866, (float) 200.000, (float) 251.785,
+            (float) 316.979, (float) 399.052, (float) 502.377, (float) 632.456,
+            (float) 796.214, (float) 1002.374, (float) 1261.915, (float) 1588.656,
+            (float) 2000.000, (float) 2517.851, (float) 3169.786, (float) 3990.525
+    };
+
+    /*
+     * MA predictors of the SID LSF quantizer: the first one is fg[0] of the speech quantizer,
+     * the second one 0.6 * fg[0] + 0.4 * fg[1] (init_lsfq_noise).
+     */
+    public static final float noise_fg[][][] = new float[LD8KConstants.MODE][LD8KConstants.MA_NP][LD8KConstants.M];
+    public static final float noise_fg_sum[][] = new float[LD8KConstants.MODE][LD8KConstants.M];
+    public static final float noise_fg_sum_inv[][] = new float[LD8KConstants.MODE][LD8KConstants.M];
+
+    static {
+        int i, j, k;
+
+        for (i = 0; i < LD8KConstants.MA_NP; i++) {
+            for (j = 0; j < LD8KConstants.M; j++) {
+                noise_fg[0][i][j] = TabLD8k.fg[0][i][j];
+                noise_fg[1][i][j] = (float) 0.6 * TabLD8k.fg[0][i][j] + (float) 0.4 * TabLD8k.fg[1][i][j];
+            }
+        }
+        for (k = 0; k < LD8KConstants.MODE; k++) {
+            for (j = 0; j < LD8KConstants.M; j++) {
+                noise_fg_sum[k][j] = (float) 1.0;
+                for (i = 0; i < LD8KConstants.MA_NP; i++) {
+                    noise_fg_sum[k][j] -= noise_fg[k][i][j];
+                }
+                noise_fg_sum_inv[k][j] = (float) 1.0 / noise_fg_sum[k][j];
+            }
+        }
+    }
+}
@@ -277,7 +277,9 @@ public class TabLD8k {
             (float) 0.94695264,
             (float) 0.93131180,
             (float) 0.91389754,
-            (float) 0.89481964
+            (float) 0.89481964,
+            (float) 0.87419660,   /* lags 11 and 12 are only used by the Annex B VAD */
+            (float) 0.85215437
     };
 
     public static final float grid[] = new float[]{
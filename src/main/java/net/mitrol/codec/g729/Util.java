@@ -87,6 +87,33 @@ public class Util {
 
     }
 
+    /*-----------------------------------------------------------*
+     * floatArrayToByteArray - rounds, clips and writes data[] as *
+     * 16-bit little-endian samples into dst[dsts]                *
+     *-----------------------------------------------------------*/
+    public static void floatArrayToByteArray(
+            float[] data,           /* input: inputdata */
+            int length,        /* input: length of data array */
+            byte[] dst, int dsts     /* output: 2*length bytes */
+    ) {
+        int i;
+        float temp;
+        short s;
+
+        for (i = 0; i < length; i++) {
+            /* round and convert to int  */
+            temp = data[i];
+            if (temp >= (float) 0.0)
+                temp += (float) 0.5;
+            else temp -= (float) 0.5;
+            if (temp > (float) 32767.0) temp = (float) 32767.0;
+            if (temp < (float) -32768.0) temp = (float) -32768.0;
+            s = (short) temp;
+            dst[dsts++] = (byte) s;
+            dst[dsts++] = (byte) (s >> 8);
+        }
+    }
+
     public static byte[] floatArrayToByteArray(
             float[] data,           /* input: inputdata */
             int length         /* input: length of data array */
@@ -0,0 +1,307 @@
+package net.mitrol.codec.g729;
+
+/**
+ * Voice activity detector of G.729 Annex B (vad.c). Each frame is described by its full band and low band energies,
+ * its spectral distance to the background LSFs and its zero crossing rate; the differences to the running
+ * background averages are classified by a set of linear decision boundaries and then smoothed.
+ */
+public class Vad {
+
+    /* Decision boundaries, see make_dec() */
+    private static final float a[] = new float[]{
+            (float) 1.750000e-03, (float) -4.545455e-03, (float) -2.500000e+01, (float) 2.000000e+01,
+            (float) 0.000000e+00, (float) 8.800000e+03, (float) 0.000000e+00, (float) 2.5e+01,
+            (float) -2.909091e+01, (float) 0.000000e+00, (float) 1.400000e+04, (float) 0.928571,
+            (float) -1.500000e+00, (float) 0.714285};
+    private static final float b[] = new float[]{
+            (float) 0.00085, (float) 0.001159091, (float) -5.0, (float) -6.0,
+            (float) -4.7, (float) -12.2, (float) 0.0009, (float) -7.0,
+            (float) -4.8182, (float) -5.3, (float) -15.5, (float) 1.14285,
+            (float) -9.0, (float) -2.1428571};
+
+    private static final float EPSI = (float) 1.0e-38;   /* very small positive floating point number */
+
+    /* Background characteristics */
+    float MeanLSF[] = new float[LD8KConstants.M];
+    float Min_buffer[] = new float[16];
+    float Prev_Min, Next_Min, Min;
+    float MeanE, MeanSE, MeanSLE, MeanSZC;
+    float prev_energy;
+    int count_sil, count_update, count_ext;
+    int flag, v_flag, less_count;
+
+    /* scratch */
+    float lsf[] = new float[LD8KConstants.M];
+
+    public Vad() {
+        vad_init();
+    }
+
+    /*---------------------------------------------------------------------------*
+     * Function  vad_init                                                        *
+     * ~~~~~~~~~~~~~~~~~~                                                        *
+     * Initialization of the VAD state, also used to reset it.                   *
+     *---------------------------------------------------------------------------*/
+    public void vad_init() {
+        /* Static vectors to zero */
+        Util.set_zero(MeanLSF, LD8KConstants.M);
+        Util.set_zero(Min_buffer, Min_buffer.length);
+
+        /* Initialize VAD parameters */
+        MeanSE = (float) 0.0;
+        MeanSLE = (float) 0.0;
+        MeanE = (float) 0.0;
+        MeanSZC = (float) 0.0;
+        count_sil = 0;
+        count_update = 0;
+        count_ext = 0;
+        less_count = 0;
+        flag = 1;
+        v_flag = 0;
+        Min = LD8KConstants.FLT_MAX_G729;
+        Prev_Min = LD8KConstants.FLT_MAX_G729;
+        Next_Min = LD8KConstants.FLT_MAX_G729;
+        prev_energy = (float) 0.0;
+    }
+
+    /*---------------------------------------------------------------------------*
+     * Function  vad                                                             *
+     * ~~~~~~~~~~~~~                                                             *
+     * Voice activity decision for one frame.                                    *
+     *---------------------------------------------------------------------------*/
+    public int vad(              /* output: VOICE or NOISE                           */
+            float rc,            /* input : 2nd reflection coefficient               */
+            float lsp[],         /* input : unquantized LSPs                         */
+            float r[],           /* input : autocorrelations r[0:NP], lag windowed   */
+            float sigpp[], int ss, /* input : preprocessed signal, LPC window      */
+            int frm_count,       /* input : frame counter, from 1                    */
+            int prev_marker,     /* input : decision of the previous frame           */
+            int pprev_marker     /* input : decision of the frame before             */
+    ) {
+        float SD, E_low, dtemp, dSE, dSLE, dSZC;
+        float ENERGY, ENERGY_low, ZC;
+        int i, marker;
+
+        /* compute the frame energy */
+        ENERGY = (float) 10.0 * (float) Math.log10(r[0] / (float) LD8KConstants.L_WINDOW + EPSI);
+
+        /* compute the low band energy */
+        E_low = (float) 0.0;
+        for (i = 1; i <= LD8KConstants.NP; i++)
+            E_low += r[i] * TabDtx.lbf_corr[i];
+        E_low = r[0] * TabDtx.lbf_corr[0] + (float) 2.0 * E_low;
+        if (E_low < (float) 0.0) E_low = (float) 0.0;
+        ENERGY_low = (float) 10.0 * (float) Math.log10(E_low / (float) LD8KConstants.L_WINDOW + EPSI);
+
+        /* compute SD */
+        /* Normalize lsfs */
+        LpcFunc.lsp_lsf(lsp, lsf, LD8KConstants.M);
+        SD = (float) 0.0;
+        for (i = 0; i < LD8KConstants.M; i++) {
+            lsf[i] /= LD8KConstants.PI2;
+            dtemp = lsf[i] - MeanLSF[i];
+            SD += dtemp * dtemp;
+        }
+
+        /* compute # zero crossing */
+        ZC = (float) 0.0;
+        dtemp = sigpp[ss + LD8KConstants.ZC_START];
+        for (i = LD8KConstants.ZC_START + 1; i <= LD8KConstants.ZC_END; i++) {
+            if (dtemp * sigpp[ss + i] < (float) 0.0) ZC += (float) 1.0;
+            dtemp = sigpp[ss + i];
+        }
+        ZC /= (float) LD8KConstants.L_FRAME;
+
+        /* Initialize and update Mins */
+        if (frm_count < 129) {
+            if (ENERGY < Min) {
+                Min = ENERGY;
+                Prev_Min = ENERGY;
+            }
+            if ((frm_count & 0x0007) == 0) {
+                i = (frm_count >> 3) - 1;
+                Min_buffer[i] = Min;
+                Min = LD8KConstants.FLT_MAX_G729;
+            }
+        }
+
+        if ((frm_count & 0x0007) == 0) {
+            Prev_Min = Min_buffer[0];
+            for (i = 1; i < 16; i++) {
+                if (Min_buffer[i] < Prev_Min) Prev_Min = Min_buffer[i];
+            }
+        }
+
+        if (frm_count >= 129) {
+            if ((frm_count & 0x0007) == 1) {
+                Min = Prev_Min;
+                Next_Min = ENERGY;
+            } else if ((frm_count & 0x0007) == 0) {
+                for (i = 0; i < 15; i++)
+                    Min_buffer[i] = Min_buffer[i + 1];
+                Min_buffer[15] = Next_Min;
+                Prev_Min = Min_buffer[0];
+                for (i = 1; i < 16; i++) {
+                    if (Min_buffer[i] < Prev_Min) Prev_Min = Min_buffer[i];
+                }
+            }
+            if (ENERGY < Min) Min = ENERGY;
+            if (ENERGY < Next_Min) Next_Min = ENERGY;
+        }
+
+        marker = LD8KConstants.VOICE;
+
+        if (frm_count <= LD8KConstants.INIT_FRAME) {
+            if (ENERGY < (float) 21.0) {
+                less_count++;
+                marker = LD8KConstants.NOISE;
+            } else {
+                marker = LD8KConstants.VOICE;
+                int n = frm_count - less_count;
+                MeanE = (MeanE * (float) (n - 1) + ENERGY) / (float) n;
+                MeanSZC = (MeanSZC * (float) (n - 1) + ZC) / (float) n;
+                for (i = 0; i < LD8KConstants.M; i++)
+                    MeanLSF[i] = (MeanLSF[i] * (float) (n - 1) + lsf[i]) / (float) n;
+            }
+        }
+
+        if (frm_count >= LD8KConstants.INIT_FRAME) {
+            if (frm_count == LD8KConstants.INIT_FRAME) {
+                MeanSE = MeanE - (float) 10.0;
+                MeanSLE = MeanE - (float) 12.0;
+            }
+
+            dSE = MeanSE - ENERGY;
+            dSLE = MeanSLE - ENERGY_low;
+            dSZC = MeanSZC - ZC;
+
+            if (ENERGY < (float) 21.0) {
+                marker = LD8KConstants.NOISE;
+            } else {
+                marker = make_dec(dSLE, dSE, SD, dSZC);
+            }
+
+            v_flag = 0;
+            if ((prev_marker == LD8KConstants.VOICE) && (marker == LD8KConstants.NOISE)
+                    && (dSE < (float) -2.0) && (ENERGY > (float) 21.0)) {
+                marker = LD8KConstants.VOICE;
+                v_flag = 1;
+            }
+
+            if (flag == 1) {
+                if ((pprev_marker == LD8KConstants.VOICE) && (prev_marker == LD8KConstants.VOICE)
+                        && (marker == LD8KConstants.NOISE) && (Math.abs(prev_energy - ENERGY) <= (float) 3.0)) {
+                    count_ext++;
+                    marker = LD8KConstants.VOICE;
+                    v_flag = 1;
+                    if (count_ext <= 4)
+                        flag = 1;
+                    else {
+                        count_ext = 0;
+                        flag = 0;
+                    }
+                }
+            } else
+                flag = 1;
+
+            if (marker == LD8KConstants.NOISE)
+                count_sil++;
+
+            if ((marker == LD8KConstants.VOICE) && (count_sil > 10) && ((ENERGY - prev_energy) <= (float) 3.0)) {
+                marker = LD8KConstants.NOISE;
+                count_sil = 0;
+            }
+
+            if (marker == LD8KConstants.VOICE)
+                count_sil = 0;
+
+            if ((ENERGY < MeanSE + (float) 3.0) && (frm_count > 128) && (v_flag == 0) && (rc < (float) 0.6))
+                marker = LD8KConstants.NOISE;
+
+            if ((ENERGY < MeanSE + (float) 3.0) && (rc < (float) 0.75) && (SD < (float) 0.002532959)) {
+                float COEF, COEFZC, COEFSD;
+
+                count_update++;
+                if (count_update < LD8KConstants.INIT_COUNT) {
+                    COEF = (float) 0.75;
+                    COEFZC = (float) 0.8;
+                    COEFSD = (float) 0.6;
+                } else if (count_update < LD8KConstants.INIT_COUNT + 10) {
+                    COEF = (float) 0.95;
+                    COEFZC = (float) 0.92;
+                    COEFSD = (float) 0.65;
+                } else if (count_update < LD8KConstants.INIT_COUNT + 20) {
+                    COEF = (float) 0.97;
+                    COEFZC = (float) 0.94;
+                    COEFSD = (float) 0.70;
+                } else if (count_update < LD8KConstants.INIT_COUNT + 30) {
+                    COEF = (float) 0.99;
+                    COEFZC = (float) 0.96;
+                    COEFSD = (float) 0.75;
+                } else if (count_update < LD8KConstants.INIT_COUNT + 40) {
+                    COEF = (float) 0.995;
+                    COEFZC = (float) 0.99;
+                    COEFSD = (float) 0.75;
+                } else {
+                    COEF = (float) 0.995;
+                    COEFZC = (float) 0.998;
+                    COEFSD = (float) 0.75;
+                }
+                MeanSE = COEF * MeanSE + ((float) 1.0 - COEF) * ENERGY;
+                MeanSLE = COEF * MeanSLE + ((float) 1.0 - COEF) * ENERGY_low;
+                MeanSZC = COEFZC * MeanSZC + ((float) 1.0 - COEFZC) * ZC;
+                for (i = 0; i < LD8KConstants.M; i++)
+                    MeanLSF[i] = COEFSD * MeanLSF[i] + ((float) 1.0 - COEFSD) * lsf[i];
+            }
+
+            if ((frm_count > 128) && (((MeanSE < Min) && (SD < (float) 0.002532959)) || (MeanSE > Min + (float) 10.0))) {
+                MeanSE = Min;
+                count_update = 0;
+            }
+        }
+
+        prev_energy = ENERGY;
+        return marker;
+    }
+
+    /*---------------------------------------------------------------------------*
+     * Function  make_dec                                                        *
+     * ~~~~~~~~~~~~~~~~~~                                                        *
+     * Initial VAD decision from the differences between the frame features and *
+     * the background averages: VOICE as soon as one boundary is crossed.        *
+     *---------------------------------------------------------------------------*/
+    private static int make_dec(
+            float dSLE,    /* (i)  : differential low band energy */
+            float dSE,     /* (i)  : differential full band energy */
+            float SD,      /* (i)  : differential spectral distortion */
+            float dSZC     /* (i)  : differential zero crossing rate */
+    ) {
+        /* SD vs dSZC */
+        if (SD > a[0] * dSZC + b[0]) return LD8KConstants.VOICE;
+        if (SD > a[1] * dSZC + b[1]) return LD8KConstants.VOICE;
+
+        /* dE vs dSZC */
+        if (dSLE < a[2] * dSZC + b[2]) return LD8KConstants.VOICE;
+        if (dSLE > a[3] * dSZC + b[3]) return LD8KConstants.VOICE;
+        if (dSLE < b[4]) return LD8KConstants.VOICE;
+
+        /* dE vs SD */
+        if (dSLE < a[5] * SD + b[5]) return LD8KConstants.VOICE;
+        if (SD > b[6]) return LD8KConstants.VOICE;
+
+        /* dEL vs dSZC */
+        if (dSE < a[7] * dSZC + b[7]) return LD8KConstants.VOICE;
+        if (dSE < a[8] * dSZC + b[8]) return LD8KConstants.VOICE;
+        if (dSE < b[9]) return LD8KConstants.VOICE;
+
+        /* dEL vs SD */
+        if (dSE < a[10] * SD + b[10]) return LD8KConstants.VOICE;
+
+        /* dEL vs dE */
+        if (dSE < a[11] * dSLE + b[11]) return LD8KConstants.VOICE;
+        if (dSE > a[12] * dSLE + b[12]) return LD8KConstants.VOICE;
+        if (dSE < a[13] * dSLE + b[13]) return LD8KConstants.VOICE;
+
+        return LD8KConstants.NOISE;
+    }
+}
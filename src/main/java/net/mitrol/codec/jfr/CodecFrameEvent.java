@@ -0,0 +1,37 @@
+package net.mitrol.codec.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One packet encoded or decoded by a {@link net.mitrol.codec.Cipher}, or one frame processed by a
+ * {@link net.mitrol.codec.dsp.Codec}.
+ */
+@Name("net.mitrol.codec.CodecFrame")
+@Label("Codec Frame")
+@Category({"Mitrol", "Codec"})
+@Description("Encoding, decoding or transcoding of one packet")
+@Enabled(false)
+@StackTrace(false)
+final class CodecFrameEvent extends Event {
+
+    @Label("Codec")
+    String codec;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Input Bytes")
+    @DataAmount
+    int inputBytes;
+
+    @Label("Output Bytes")
+    @DataAmount
+    int outputBytes;
+}
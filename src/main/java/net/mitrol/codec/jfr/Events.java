@@ -0,0 +1,83 @@
+package net.mitrol.codec.jfr;
+
+/**
+ * Creates and commits the JFR events, only loaded by {@link FlightEvents} once <code>jdk.jfr</code> is known to
+ * be there.
+ */
+final class Events {
+
+    //never committed, only asked whether their type is enabled
+    private static final CodecFrameEvent CODEC_FRAME = new CodecFrameEvent();
+    private static final TaskDispatchEvent TASK_DISPATCH = new TaskDispatchEvent();
+    private static final OpusNativeCallEvent OPUS_NATIVE_CALL = new OpusNativeCallEvent();
+
+    private Events() {
+    }
+
+    /*
+     * Does nothing but initialize the class, with it jdk.jfr and the event types.
+     */
+    static void init() {
+    }
+
+    static Object beginCodecFrame() {
+        if (!CODEC_FRAME.isEnabled()) {
+            return null;
+        }
+        CodecFrameEvent event = new CodecFrameEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endCodecFrame(Object started, String codec, String operation, int inputBytes, int outputBytes) {
+        CodecFrameEvent event = (CodecFrameEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.codec = codec;
+            event.operation = operation;
+            event.inputBytes = inputBytes;
+            event.outputBytes = outputBytes;
+            event.commit();
+        }
+    }
+
+    static Object beginTaskDispatch() {
+        if (!TASK_DISPATCH.isEnabled()) {
+            return null;
+        }
+        TaskDispatchEvent event = new TaskDispatchEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endTaskDispatch(Object started, int cpu, long lateness, Class<?> task) {
+        TaskDispatchEvent event = (TaskDispatchEvent) started;
+        event.end();
+        //the lateness setting reads the field, so it is set before asking
+        event.lateness = lateness;
+        if (event.shouldCommit()) {
+            event.cpu = cpu;
+            event.task = task;
+            event.commit();
+        }
+    }
+
+    static Object beginOpusNativeCall() {
+        if (!OPUS_NATIVE_CALL.isEnabled()) {
+            return null;
+        }
+        OpusNativeCallEvent event = new OpusNativeCallEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endOpusNativeCall(Object started, String function, int result) {
+        OpusNativeCallEvent event = (OpusNativeCallEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.function = function;
+            event.result = result;
+            event.commit();
+        }
+    }
+}
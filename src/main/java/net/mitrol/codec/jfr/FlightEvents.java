@@ -0,0 +1,95 @@
+package net.mitrol.codec.jfr;
+
+/**
+ * Java Flight Recorder events of the codec and scheduler hot paths: {@link CodecFrameEvent},
+ * {@link TaskDispatchEvent} and {@link OpusNativeCallEvent}.
+ * <p>
+ * All of them are disabled by default; turn them on with the <code>codec.jfc</code> settings shipped next to this
+ * class, extracted to a file and given after the default profile:
+ * <pre>
+ * -XX:StartFlightRecording=settings=default,settings=/path/to/codec.jfc,filename=codec.jfr
+ * </pre>
+ * Call sites only see <code>Object</code>: a <code>begin</code> method returns null while the event type is
+ * disabled, costing a flag check and no allocation, and the matching <code>end</code> method ignores null. On a
+ * JVM without <code>jdk.jfr</code> (Java 8 before 8u262) the events are never created.
+ * <p>
+ * Loading <code>jdk.jfr</code> and registering the event types takes a few hundred milliseconds, done by
+ * {@link #init()} rather than by the first event of a hot path; {@link net.mitrol.codec.scheduler.Scheduler#start()}
+ * and {@link net.mitrol.codec.CipherKey#create()} call it.
+ */
+public final class FlightEvents {
+
+    private static final boolean SUPPORTED = isSupported();
+
+    static {
+        if (SUPPORTED) {
+            Events.init();
+        }
+    }
+
+    private FlightEvents() {
+    }
+
+    /**
+     * Loads the event classes, if not done yet. Costs nothing once they are.
+     */
+    public static void init() {
+    }
+
+    /**
+     * Starts timing the encoding or decoding of one packet.
+     */
+    public static Object beginCodecFrame() {
+        return SUPPORTED ? Events.beginCodecFrame() : null;
+    }
+
+    /**
+     * @param operation <code>encode</code>, <code>decode</code> or <code>transcode</code>
+     */
+    public static void endCodecFrame(Object event, String codec, String operation, int inputBytes, int outputBytes) {
+        if (event != null) {
+            Events.endCodecFrame(event, codec, operation, inputBytes, outputBytes);
+        }
+    }
+
+    /**
+     * Starts timing the execution of a task by a scheduler CPU thread.
+     */
+    public static Object beginTaskDispatch() {
+        return SUPPORTED ? Events.beginTaskDispatch() : null;
+    }
+
+    /**
+     * @param lateness time between the dead line of the task and its dispatch, in nanoseconds
+     */
+    public static void endTaskDispatch(Object event, int cpu, long lateness, Object task) {
+        if (event != null) {
+            Events.endTaskDispatch(event, cpu, lateness, task.getClass());
+        }
+    }
+
+    /**
+     * Starts timing a call into libopus.
+     */
+    public static Object beginOpusNativeCall() {
+        return SUPPORTED ? Events.beginOpusNativeCall() : null;
+    }
+
+    /**
+     * @param result what the call returned
+     */
+    public static void endOpusNativeCall(Object event, String function, int result) {
+        if (event != null) {
+            Events.endOpusNativeCall(event, function, result);
+        }
+    }
+
+    private static boolean isSupported() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
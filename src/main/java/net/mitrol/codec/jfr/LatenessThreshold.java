@@ -0,0 +1,75 @@
+package net.mitrol.codec.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.SettingControl;
+
+import java.util.Set;
+
+/**
+ * <code>lateness</code> setting of {@link TaskDispatchEvent}: a time span written like the JFR threshold, for
+ * example <code>3 ms</code>. When several recordings set it the lowest value wins.
+ */
+@Label("Lateness Threshold")
+@Description("Record only tasks dispatched at least this late")
+public final class LatenessThreshold extends SettingControl {
+
+    private static final String DEFAULT = "0 ns";
+
+    private volatile String value = DEFAULT;
+    private volatile long nanos;
+
+    @Override
+    public String combine(Set<String> settingValues) {
+        String lowest = null;
+        long min = Long.MAX_VALUE;
+        for (String setting : settingValues) {
+            long parsed = parse(setting);
+            if (parsed < min) {
+                min = parsed;
+                lowest = setting;
+            }
+        }
+        return lowest != null ? lowest : DEFAULT;
+    }
+
+    @Override
+    public void setValue(String value) {
+        this.nanos = parse(value);
+        this.value = value;
+    }
+
+    @Override
+    public String getValue() {
+        return value;
+    }
+
+    long getNanos() {
+        return nanos;
+    }
+
+    /*
+     * Parses "<amount> <unit>", unit one of ns, us, ms, s; anything else records every task.
+     */
+    private static long parse(String value) {
+        String[] parts = value.trim().split("\\s+");
+        try {
+            long amount = Long.parseLong(parts[0]);
+            String unit = parts.length > 1 ? parts[1] : "ns";
+            switch (unit) {
+                case "ns":
+                    return amount;
+                case "us":
+                    return amount * 1000L;
+                case "ms":
+                    return amount * 1000000L;
+                case "s":
+                    return amount * 1000000000L;
+                default:
+                    return 0;
+            }
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package net.mitrol.codec.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One call into libopus made by {@link net.mitrol.codec.OpusCipher}.
+ */
+@Name("net.mitrol.codec.OpusNativeCall")
+@Label("Opus Native Call")
+@Category({"Mitrol", "Codec"})
+@Description("Call into libopus through JNA")
+@Enabled(false)
+@StackTrace(false)
+final class OpusNativeCallEvent extends Event {
+
+    @Label("Function")
+    String function;
+
+    @Label("Result")
+    @Description("Bytes or samples produced, or a negative libopus error code")
+    int result;
+}
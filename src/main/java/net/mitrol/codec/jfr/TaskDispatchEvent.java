@@ -0,0 +1,44 @@
+package net.mitrol.codec.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.SettingDefinition;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One task run by a CPU thread of a {@link net.mitrol.codec.scheduler.Scheduler}, the event duration being the
+ * task's execution time. Besides the usual threshold on the duration the <code>lateness</code> setting keeps only
+ * tasks dispatched at least that late, see {@link LatenessThreshold}.
+ */
+@Name("net.mitrol.codec.TaskDispatch")
+@Label("Task Dispatch")
+@Category({"Mitrol", "Scheduler"})
+@Description("Execution of a task by a scheduler CPU thread")
+@Enabled(false)
+@StackTrace(false)
+final class TaskDispatchEvent extends Event {
+
+    @Label("CPU")
+    @Description("Index of the scheduler CPU thread")
+    int cpu;
+
+    @Label("Lateness")
+    @Description("Time between the task's dead line and its dispatch")
+    @Timespan
+    long lateness;
+
+    @Label("Task")
+    Class<?> task;
+
+    @SettingDefinition
+    @Name("lateness")
+    @Label("Lateness Threshold")
+    boolean lateness(LatenessThreshold threshold) {
+        return lateness >= threshold.getNanos();
+    }
+}
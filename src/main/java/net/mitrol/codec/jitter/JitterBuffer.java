@@ -0,0 +1,347 @@
+package net.mitrol.codec.jitter;
+
+import net.mitrol.codec.Cipher;
+import net.mitrol.codec.memory.Frame;
+import net.mitrol.codec.scheduler.Clock;
+import net.mitrol.codec.scheduler.DefaultClock;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive jitter buffer of one incoming leg, between the network and the {@link Cipher} decoding it.
+ * <p>
+ * The receiving thread hands packets over with {@link #offer(Frame)} in arrival order; the playout thread calls
+ * {@link #play(ByteBuffer)} once per packet time and gets them back decoded in sequence order. Packets are kept in a
+ * ring indexed by sequence number, so both sides are lock free and neither allocates. A packet missing at its
+ * playout time is rebuilt from the FEC data of the next one when the codec has it (Opus), otherwise concealed with
+ * {@link Cipher#decodeLost(int, ByteBuffer)}.
+ * <p>
+ * The playout delay follows the interarrival jitter, estimated as in RFC 3550 from the frame timestamps: playout
+ * starts once the target delay is buffered, an underrun holds the playout point (conceals without consuming a
+ * sequence number), which grows the delay, and a buffer running more than {@link #SHRINK_MARGIN} packets over the
+ * target drops its oldest packet to shrink it.
+ * <p>
+ * Frames must carry an extended (non wrapping) sequence number and a timestamp in nanoseconds, like
+ * {@link Frame#getDelay}. The buffer takes over the caller's reference to every frame offered, kept or not, and
+ * releases it once the frame is played, dropped or reset. One thread may offer and one thread may play at a time.
+ */
+public class JitterBuffer {
+
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final int DEFAULT_MIN_DELAY = 2;
+    public static final int DEFAULT_MAX_DELAY = 10;
+
+    /**
+     * Packets over the target delay tolerated before the oldest one is dropped.
+     */
+    public static final int SHRINK_MARGIN = 2;
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final Cipher cipher;
+    private final int packetFrames;
+    private final long packetTime;
+    private final int minDelay;
+    private final int maxDelay;
+    private final Clock clock;
+
+    private final AtomicReferenceArray<Frame> slots;
+    private final int mask;
+
+    //region Receiving side
+    private final AtomicLong highest = new AtomicLong(NONE);
+    private final AtomicLong lowest = new AtomicLong(NONE);
+    private long lastTransit = NONE;
+    private volatile long jitter;
+    //endregion
+
+    //region Playout side
+    private volatile boolean started;
+    private volatile long playSeq;
+    //endregion
+
+    //region Metrics
+    private final LongAdder received = new LongAdder();
+    private final LongAdder played = new LongAdder();
+    private final LongAdder late = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder underruns = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    //endregion
+
+    /**
+     * @param cipher       decoder of the leg
+     * @param packetFrames frames per packet as counted by {@link Cipher#decodeLost(int, ByteBuffer)}: the packet
+     *                     time over 10 ms for G.711 and G.729, 1 for Opus
+     * @param packetTime   packet time in milliseconds
+     */
+    public JitterBuffer(Cipher cipher, int packetFrames, int packetTime) {
+        this(cipher, packetFrames, packetTime, DEFAULT_CAPACITY, DEFAULT_MIN_DELAY, DEFAULT_MAX_DELAY, new DefaultClock());
+    }
+
+    /**
+     * @param capacity ring size in packets, rounded up to a power of two
+     * @param minDelay lowest playout delay in packets
+     * @param maxDelay highest playout delay in packets, below <code>capacity</code>
+     * @param clock    arrival time source
+     */
+    public JitterBuffer(Cipher cipher, int packetFrames, int packetTime, int capacity, int minDelay, int maxDelay,
+                        Clock clock) {
+        if (packetFrames <= 0 || packetTime <= 0) {
+            throw new IllegalArgumentException("packetFrames and packetTime must be positive: " + packetFrames + ", " + packetTime);
+        }
+        if (minDelay <= 0 || minDelay > maxDelay || maxDelay >= capacity) {
+            throw new IllegalArgumentException("need 0 < minDelay <= maxDelay < capacity: " + minDelay + ", " + maxDelay + ", " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.cipher = cipher;
+        this.packetFrames = packetFrames;
+        this.packetTime = packetTime * 1000000L;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.clock = clock;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Stores a received packet, its payload is read at playout time. The caller's reference goes to the buffer
+     * either way: a packet not kept is released here.
+     *
+     * @return false when the packet was not kept: its playout time has passed, it is a duplicate or it is too far
+     * ahead of the playout point
+     */
+    public boolean offer(Frame frame) {
+        long seq = frame.getSequenceNumber();
+        received.increment();
+        updateJitter(frame.getTimestamp());
+
+        if (started) {
+            long play = playSeq;
+            if (seq < play) {
+                late.increment();
+                frame.release();
+                return false;
+            }
+            if (seq - play > mask) {
+                overflows.increment();
+                frame.release();
+                return false;
+            }
+        } else {
+            long high = highest.get();
+            if (high != NONE && high - seq > mask) {
+                late.increment();
+                frame.release();
+                return false;
+            }
+            long low;
+            while (((low = lowest.get()) == NONE || seq < low) && !lowest.compareAndSet(low, seq)) ;
+        }
+
+        int i = (int) seq & mask;
+        Frame cur;
+        do {
+            cur = slots.get(i);
+            if (cur != null && cur.getSequenceNumber() >= seq) {
+                duplicates.increment();
+                frame.release();
+                return false;
+            }
+        } while (!slots.compareAndSet(i, cur, frame));
+        if (cur != null) {
+            /* a stale packet never played, its slot now taken by a newer one */
+            cur.release();
+        }
+
+        long high;
+        while (((high = highest.get()) == NONE || seq > high) && !highest.compareAndSet(high, seq)) ;
+        return true;
+    }
+
+    /**
+     * Writes the next packet time of audio to <code>pcmOut</code>: the next packet decoded, or a concealment of it
+     * when it is missing. Nothing is written while the initial delay is being buffered.
+     *
+     * @return the number of bytes written to <code>pcmOut</code>
+     */
+    public int play(ByteBuffer pcmOut) {
+        long high = highest.get();
+        if (!started) {
+            if (high == NONE || high - lowest.get() + 1 < getTargetDelay()) {
+                return 0;
+            }
+            playSeq = Math.max(lowest.get(), high - mask);
+            started = true;
+        }
+
+        long seq = playSeq;
+        if (high < seq) {
+            /* nothing to play: hold the playout point, the delay grows by one packet */
+            underruns.increment();
+            return cipher.decodeLost(packetFrames, pcmOut);
+        }
+        if (high - seq + 1 > getTargetDelay() + SHRINK_MARGIN) {
+            /* too much delay: drop the oldest packet */
+            Frame oldest = take(seq++);
+            if (oldest != null) {
+                oldest.release();
+            }
+            discarded.increment();
+        }
+
+        Frame frame = take(seq);
+        playSeq = seq + 1;
+        if (frame != null) {
+            played.increment();
+            try {
+                return cipher.decode(frame.getBuffer(), pcmOut);
+            } finally {
+                frame.release();
+            }
+        }
+
+        lost.increment();
+        Frame next = slots.get((int) (seq + 1) & mask);
+        if (next != null && next.getSequenceNumber() == seq + 1) {
+            int written = cipher.decodeFec(next.getBuffer(), pcmOut);
+            if (written > 0) {
+                recovered.increment();
+                return written;
+            }
+        }
+        return cipher.decodeLost(packetFrames, pcmOut);
+    }
+
+    /**
+     * Empties the buffer for a new stream, releasing the packets left in it. Neither side may be running.
+     */
+    public void reset() {
+        for (int i = 0; i <= mask; i++) {
+            Frame frame = slots.getAndSet(i, null);
+            if (frame != null) {
+                frame.release();
+            }
+        }
+        highest.set(NONE);
+        lowest.set(NONE);
+        lastTransit = NONE;
+        jitter = 0;
+        started = false;
+    }
+
+    private Frame take(long seq) {
+        Frame frame = slots.getAndSet((int) seq & mask, null);
+        if (frame != null && frame.getSequenceNumber() != seq) {
+            /* a stale packet stored after its playout time */
+            late.increment();
+            frame.release();
+            return null;
+        }
+        return frame;
+    }
+
+    /*
+     * Interarrival jitter of RFC 3550: J += (|D| - J) / 16, D being the change in
+     * transit time between consecutive packets.
+     */
+    private void updateJitter(long timestamp) {
+        long transit = clock.getTime() - timestamp;
+        if (lastTransit != NONE) {
+            long d = Math.abs(transit - lastTransit);
+            jitter += (d - jitter) >> 4;
+        }
+        lastTransit = transit;
+    }
+
+    //region Metrics
+
+    /**
+     * Playout delay the buffer adapts to, in packets: three times the jitter plus one packet, within the
+     * configured bounds.
+     */
+    public int getTargetDelay() {
+        long delay = 1 + (3 * jitter + packetTime - 1) / packetTime;
+        return (int) Math.max(minDelay, Math.min(maxDelay, delay));
+    }
+
+    /**
+     * Packets between the playout point and the newest one received, i.e. the current delay in packets.
+     */
+    public int getDepth() {
+        long high = highest.get();
+        if (high == NONE) {
+            return 0;
+        }
+        long from = started ? playSeq : lowest.get();
+        return (int) Math.max(0, high - from + 1);
+    }
+
+    /**
+     * Interarrival jitter estimate in nanoseconds.
+     */
+    public long getJitter() {
+        return jitter;
+    }
+
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    public long getPlayedCount() {
+        return played.sum();
+    }
+
+    /**
+     * Packets that arrived after their playout time.
+     */
+    public long getLateCount() {
+        return late.sum();
+    }
+
+    /**
+     * Packets missing at their playout time, concealed or rebuilt from FEC.
+     */
+    public long getLostCount() {
+        return lost.sum();
+    }
+
+    /**
+     * Lost packets rebuilt from the FEC data of the next one.
+     */
+    public long getRecoveredCount() {
+        return recovered.sum();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Packets refused because they were more than a ring ahead of the playout point.
+     */
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    /**
+     * Packet times concealed because the buffer had run dry.
+     */
+    public long getUnderrunCount() {
+        return underruns.sum();
+    }
+
+    /**
+     * Packets dropped to bring the delay back to the target.
+     */
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+    //endregion
+}
@@ -0,0 +1,63 @@
+package net.mitrol.codec.memory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Direct memory behind the off-heap frames: large direct buffers, {@value #DEFAULT_CHUNK_SIZE} bytes unless set
+ * with the system property <code>net.mitrol.codec.memory.arenaChunkSize</code>, carved into frame payloads. Chunks
+ * are never given back to the system. The slices of frames their {@link Partition} drops come back through
+ * {@link #free(ByteBuffer)} and are handed out again before any new chunk space, so the arena grows to the peak
+ * number of off heap frames in use or pooled at once, plus the slices lost with frames that are never released or
+ * that stay in the cache of a terminated thread.
+ */
+final class Arena {
+
+    static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final int chunkSize = Integer.getInteger("net.mitrol.codec.memory.arenaChunkSize", DEFAULT_CHUNK_SIZE);
+
+    private static final Map<Integer, ArrayDeque<ByteBuffer>> free = new HashMap<>();
+
+    private static ByteBuffer chunk;
+    private static long reserved;
+
+    private Arena() {
+    }
+
+    /**
+     * Returns a direct slice of <code>size</code> bytes, a freed one when there is one of that size.
+     */
+    static synchronized ByteBuffer slice(int size) {
+        ArrayDeque<ByteBuffer> slices = free.get(size);
+        if (slices != null && !slices.isEmpty()) {
+            return slices.pop();
+        }
+        if (chunk == null || chunk.remaining() < size) {
+            chunk = ByteBuffer.allocateDirect(Math.max(chunkSize, size));
+            reserved += chunk.capacity();
+        }
+        int p = chunk.position();
+        chunk.limit(p + size);
+        ByteBuffer slice = chunk.slice();
+        chunk.limit(chunk.capacity()).position(p + size);
+        return slice;
+    }
+
+    /**
+     * Takes back a slice from {@link #slice(int)} that nothing references any more.
+     */
+    static synchronized void free(ByteBuffer slice) {
+        slice.clear();
+        free.computeIfAbsent(slice.capacity(), size -> new ArrayDeque<>()).push(slice);
+    }
+
+    /**
+     * Direct memory taken from the system so far, in bytes.
+     */
+    static synchronized long reserved() {
+        return reserved;
+    }
+}
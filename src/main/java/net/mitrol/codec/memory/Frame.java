@@ -26,16 +26,29 @@ import net.mitrol.codec.format.Format;
 import net.mitrol.codec.scheduler.Clock;
 import net.mitrol.codec.scheduler.DefaultClock;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 
 /**
+ * Media frame. Frames from {@link Memory#allocate(int)} are reference counted: every holder but the allocating one
+ * calls {@link #retain()}, and each calls {@link #release()} when done, the last one putting the frame back into its
+ * pool. Frames built with the public constructor are not pooled and may simply be dropped.
+ *
  * @author kulikov
  */
 public class Frame implements Delayed {
+    private static final AtomicIntegerFieldUpdater<Frame> REF_CNT = AtomicIntegerFieldUpdater.newUpdater(Frame.class, "refCnt");
+
     public static Clock clock = new DefaultClock();
     private byte[] data;
+    final ByteBuffer buffer;
+
+    final Partition partition;
+    private volatile int refCnt = 1;
+    LeakTracker leak;
 
     private volatile int offset;
     private volatile int length;
@@ -49,14 +62,85 @@ public class Frame implements Delayed {
     private volatile String header;
 
     public Frame(byte[] data) {
+        this(null, data);
+    }
+
+    Frame(Partition partition, byte[] data) {
+        this.partition = partition;
         this.data = data;
+        this.buffer = null;
+    }
+
+    /**
+     * Off heap frame over <code>buffer</code>, a direct buffer of its own with position 0.
+     */
+    Frame(Partition partition, ByteBuffer buffer) {
+        this.partition = partition;
+        this.buffer = buffer;
     }
 
     protected void reset() {
+        this.offset = 0;
+        this.length = 0;
         this.timestamp = 0;
-        this.duration = 0;
+        this.duration = Long.MAX_VALUE;
         this.sn = 0;
         this.eom = false;
+        this.format = null;
+        this.header = null;
+    }
+
+    /**
+     * Takes one more reference to the frame, to be given back with {@link #release()}. The way to keep a frame
+     * after passing it on without copying it.
+     *
+     * @return this frame
+     */
+    public Frame retain() {
+        for (; ; ) {
+            int cnt = refCnt;
+            if (cnt <= 0) {
+                throw new IllegalStateException("Frame already released");
+            }
+            if (REF_CNT.compareAndSet(this, cnt, cnt + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Gives back one reference; the last one returns a pooled frame to its pool, after which it must not be used.
+     *
+     * @return true when this was the last reference
+     */
+    public boolean release() {
+        for (; ; ) {
+            int cnt = refCnt;
+            if (cnt <= 0) {
+                throw new IllegalStateException("Frame already released");
+            }
+            if (REF_CNT.compareAndSet(this, cnt, cnt - 1)) {
+                if (cnt > 1) {
+                    return false;
+                }
+                if (leak != null) {
+                    Memory.untrack(leak);
+                    leak = null;
+                }
+                if (partition != null) {
+                    partition.recycle(this);
+                }
+                return true;
+            }
+        }
+    }
+
+    public int refCnt() {
+        return refCnt;
+    }
+
+    void revive() {
+        refCnt = 1;
     }
 
     public String getHeader() {
@@ -83,10 +167,45 @@ public class Frame implements Delayed {
         this.length = length;
     }
 
+    /**
+     * The payload array, the payload being at <code>[getOffset(), getOffset() + getLength())</code>. For an off heap
+     * frame this is a copy of the payload, kept for compatibility: writes to it are not seen by the frame, and the
+     * copy is made on every call. Prefer {@link #getBuffer()}.
+     */
     public byte[] getData() {
+        if (buffer != null) {
+            if (data == null) {
+                data = new byte[buffer.capacity()];
+            }
+            ByteBuffer b = buffer.duplicate();
+            b.limit(offset + length).position(offset);
+            b.get(data, offset, length);
+        }
         return data;
     }
 
+    /**
+     * A buffer over the payload, positioned at {@link #getOffset()} with its limit at the end of the payload; its
+     * capacity is that of the frame. Direct for off heap frames, a wrapper of {@link #getData()} otherwise. Reads
+     * and writes go to the frame; position and limit are the caller's own.
+     */
+    public ByteBuffer getBuffer() {
+        ByteBuffer b = buffer != null ? buffer.duplicate() : ByteBuffer.wrap(data);
+        b.limit(offset + length).position(offset);
+        return b;
+    }
+
+    /**
+     * Whether the payload is off heap, see {@link Memory#allocateDirect(int)}.
+     */
+    public boolean isDirect() {
+        return buffer != null;
+    }
+
+    int capacity() {
+        return buffer != null ? buffer.capacity() : data.length;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -141,10 +260,24 @@ public class Frame implements Delayed {
         return 0;
     }
 
+    /**
+     * Copies the frame. A pooled or off heap frame gets its own payload from the same pool; an unpooled one
+     * shares its payload with the copy. Prefer {@link #retain()} when the payload is not going to be modified.
+     */
     @Override
     public Frame clone() {
-        Frame frame = new Frame(this.data);
-        System.arraycopy(data, offset, frame.data, offset, length);
+        Frame frame;
+        if (buffer != null) {
+            frame = Memory.allocateDirect(buffer.capacity());
+            frame.offset = offset;
+            frame.length = length;
+            frame.getBuffer().put(getBuffer());
+        } else if (partition != null) {
+            frame = Memory.allocate(data.length);
+            System.arraycopy(data, offset, frame.data, offset, length);
+        } else {
+            frame = new Frame(this.data);
+        }
         frame.offset = offset;
         frame.length = length;
         frame.duration = duration;
@@ -0,0 +1,18 @@
+package net.mitrol.codec.memory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+
+/**
+ * Remembers where a pooled frame was allocated, and is enqueued when the frame is collected without having been
+ * released.
+ */
+final class LeakTracker extends PhantomReference<Frame> {
+
+    final Throwable site;
+
+    LeakTracker(Frame frame, ReferenceQueue<Frame> queue) {
+        super(frame, queue);
+        this.site = new Throwable("Frame of " + frame.capacity() + " bytes allocated here");
+    }
+}
@@ -0,0 +1,153 @@
+package net.mitrol.codec.memory;
+
+import org.apache.log4j.Logger;
+
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Frame allocator. Frames come from pools of power of two size classes, {@value #MIN_SIZE} to {@value #MAX_SIZE}
+ * bytes, and go back to them on their last {@link Frame#release()}; larger frames are allocated unpooled.
+ * <p>
+ * {@link #allocateDirect(int)} gives frames whose payload lives off heap, in slices of a direct memory arena, so it
+ * can go to the network or to native code without a copy; see {@link Frame#getBuffer()}.
+ * <p>
+ * With leak detection on (system property <code>net.mitrol.codec.memory.leakDetection</code>, or
+ * {@link #setLeakDetection(boolean)}) the allocation site of every frame is kept, and frames collected without
+ * having been released are logged with it on a later allocation. It costs a stack trace per allocation, for
+ * debugging only.
+ */
+public final class Memory {
+
+    public static final int MIN_SIZE = 16;
+    public static final int MAX_SIZE = 65536;
+
+    private static final int MIN_SHIFT = 4;
+
+    private static final Logger logger = Logger.getLogger(Memory.class);
+
+    private static final Partition[] partitions = new Partition[31 - Integer.numberOfLeadingZeros(MAX_SIZE) - MIN_SHIFT + 1];
+    private static final Partition[] directPartitions = new Partition[partitions.length];
+
+    static {
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(MIN_SIZE << i, false);
+            directPartitions[i] = new Partition(MIN_SIZE << i, true);
+        }
+    }
+
+    private static volatile boolean leakDetection = Boolean.getBoolean("net.mitrol.codec.memory.leakDetection");
+    private static final ReferenceQueue<Frame> collected = new ReferenceQueue<>();
+    private static final Set<LeakTracker> tracked = ConcurrentHashMap.newKeySet();
+
+    //region Metrics
+    static final LongAdder allocated = new LongAdder();
+    static final LongAdder created = new LongAdder();
+    static final LongAdder recycled = new LongAdder();
+    static final LongAdder leaked = new LongAdder();
+    //endregion
+
+    private Memory() {
+    }
+
+    /**
+     * Returns a frame with room for at least <code>size</code> bytes, its length set to <code>size</code> and a
+     * reference count of one.
+     */
+    public static Frame allocate(int size) {
+        return allocate(size, false);
+    }
+
+    /**
+     * Same as {@link #allocate(int)} for a frame whose payload is off heap.
+     */
+    public static Frame allocateDirect(int size) {
+        return allocate(size, true);
+    }
+
+    /**
+     * Allocates an off heap frame when <code>direct</code> is set, an on heap one otherwise; codecs use it to
+     * produce the same kind of frame they were given.
+     */
+    public static Frame allocate(int size, boolean direct) {
+        if (size < 0) {
+            throw new IllegalArgumentException("negative frame size: " + size);
+        }
+        allocated.increment();
+
+        Frame frame;
+        if (size > MAX_SIZE) {
+            created.increment();
+            frame = direct ? new Frame(null, ByteBuffer.allocateDirect(size)) : new Frame(new byte[size]);
+        } else {
+            int i = size <= MIN_SIZE ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+            frame = (direct ? directPartitions : partitions)[i].allocate();
+        }
+        frame.setLength(size);
+
+        if (leakDetection) {
+            reportLeaks();
+            LeakTracker leak = new LeakTracker(frame, collected);
+            tracked.add(leak);
+            frame.leak = leak;
+        }
+        return frame;
+    }
+
+    static void untrack(LeakTracker leak) {
+        tracked.remove(leak);
+        leak.clear();
+    }
+
+    private static void reportLeaks() {
+        LeakTracker leak;
+        while ((leak = (LeakTracker) collected.poll()) != null) {
+            if (tracked.remove(leak)) {
+                leaked.increment();
+                logger.error("Frame collected without release()", leak.site);
+            }
+        }
+    }
+
+    public static boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    public static void setLeakDetection(boolean enabled) {
+        leakDetection = enabled;
+    }
+
+    //region Metrics
+    public static long getAllocatedCount() {
+        return allocated.sum();
+    }
+
+    /**
+     * Allocations that had to build a new frame, the rest were served from the pools.
+     */
+    public static long getCreatedCount() {
+        return created.sum();
+    }
+
+    public static long getRecycledCount() {
+        return recycled.sum();
+    }
+
+    /**
+     * Direct memory reserved by the arena of off heap frames, in bytes.
+     */
+    public static long getArenaSize() {
+        return Arena.reserved();
+    }
+
+    /**
+     * Frames found collected without release, counted while leak detection is on.
+     */
+    public static long getLeakCount() {
+        return leaked.sum();
+    }
+    //endregion
+}
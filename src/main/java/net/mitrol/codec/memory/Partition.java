@@ -0,0 +1,65 @@
+package net.mitrol.codec.memory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of the frames of one size class, on heap or off heap. Each thread first works on a small cache of its own, so the common
+ * allocate / release cycle of a leg touches no shared state; frames beyond it go to a bounded shared queue, and
+ * past that are left to the garbage collector, an off heap one giving its slice back to the {@link Arena} first.
+ */
+final class Partition {
+
+    static final int CACHE_SIZE = 32;
+    static final int MAX_SHARED = 1024;
+
+    final int size;
+    final boolean direct;
+
+    private final ConcurrentLinkedQueue<Frame> shared = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger sharedCount = new AtomicInteger();
+    private final ThreadLocal<Cache> cache = ThreadLocal.withInitial(Cache::new);
+
+    Partition(int size, boolean direct) {
+        this.size = size;
+        this.direct = direct;
+    }
+
+    Frame allocate() {
+        Cache cache = this.cache.get();
+        Frame frame;
+        if (cache.count > 0) {
+            frame = cache.frames[--cache.count];
+            cache.frames[cache.count] = null;
+        } else if ((frame = shared.poll()) != null) {
+            sharedCount.decrementAndGet();
+        } else {
+            Memory.created.increment();
+            return direct ? new Frame(this, Arena.slice(size)) : new Frame(this, new byte[size]);
+        }
+        frame.revive();
+        return frame;
+    }
+
+    void recycle(Frame frame) {
+        frame.reset();
+        Memory.recycled.increment();
+
+        Cache cache = this.cache.get();
+        if (cache.count < CACHE_SIZE) {
+            cache.frames[cache.count++] = frame;
+        } else if (sharedCount.incrementAndGet() <= MAX_SHARED) {
+            shared.offer(frame);
+        } else {
+            sharedCount.decrementAndGet();
+            if (direct) {
+                Arena.free(frame.buffer);
+            }
+        }
+    }
+
+    private static final class Cache {
+        final Frame[] frames = new Frame[CACHE_SIZE];
+        int count;
+    }
+}
@@ -426,6 +426,13 @@ public interface Opus extends Library {
      */
     int opus_encode(PointerByReference st, ShortByReference pcm, int frame_size, Pointer data, int max_data_bytes);
 
+    /**
+     * Encodes an Opus frame reading native-order samples straight from <code>pcm</code>.<br>
+     * Intended for direct buffers and native memory, see {@link #opus_encode(PointerByReference, ShortBuffer, int, ByteBuffer, int)}.<br>
+     * Original signature : <code>opus_int32 opus_encode(OpusEncoder*, const opus_int16*, int, unsigned char*, opus_int32)</code><br>
+     */
+    int opus_encode(PointerByReference st, Pointer pcm, int frame_size, Pointer data, int max_data_bytes);
+
     /**
      * Encodes an Opus frame from floating point input.<br>
      *
@@ -621,6 +628,13 @@ public interface Opus extends Library {
      */
     int opus_decode(PointerByReference st, Pointer data, int len, ShortByReference pcm, int frame_size, int decode_fec);
 
+    /**
+     * Decodes an Opus packet writing native-order samples straight into <code>pcm</code>.<br>
+     * Intended for direct buffers and native memory, see {@link #opus_decode(PointerByReference, byte[], int, ShortBuffer, int, int)}.<br>
+     * Original signature : <code>int opus_decode(OpusDecoder*, const unsigned char*, opus_int32, opus_int16*, int, int)</code><br>
+     */
+    int opus_decode(PointerByReference st, Pointer data, int len, Pointer pcm, int frame_size, int decode_fec);
+
     /**
      * Decode an Opus packet with floating point output.<br>
      *
@@ -0,0 +1,67 @@
+package net.mitrol.codec.opus;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Direct-mapped (<code>Native.register</code>) binding for the libopus calls made once per frame.
+ * <p>
+ * Unlike the {@link Opus} interface mapping there is no proxy, no reflective argument conversion and no
+ * marshalling of Java arrays or heap buffers: every argument is a primitive or a {@link Pointer}, so callers are
+ * expected to keep PCM and packets in native memory (a <code>Memory</code> or a direct buffer) and reuse it.
+ * Encoder and decoder states are the values returned by {@link Opus#opus_encoder_create} and
+ * {@link Opus#opus_decoder_create}, passed as <code>state.getPointer()</code>.
+ * <p>
+ * Direct mapping has no varargs support, so the ctl entry points are declared with a single fixed argument.
+ * That is how every ctl request is actually invoked (one <code>opus_int32</code> or one pointer) and it matches
+ * the variadic calling convention for integer and pointer arguments.
+ */
+public final class OpusDirect {
+
+    static {
+        Native.register(OpusDirect.class, Opus.JNA_NATIVE_LIB);
+    }
+
+    private OpusDirect() {
+    }
+
+    /**
+     * Original signature : <code>opus_int32 opus_encode(OpusEncoder*, const opus_int16*, int, unsigned char*, opus_int32)</code>
+     */
+    public static native int opus_encode(Pointer st, Pointer pcm, int frame_size, Pointer data, int max_data_bytes);
+
+    /**
+     * Original signature : <code>opus_int32 opus_encode_float(OpusEncoder*, const float*, int, unsigned char*, opus_int32)</code>
+     */
+    public static native int opus_encode_float(Pointer st, Pointer pcm, int frame_size, Pointer data, int max_data_bytes);
+
+    /**
+     * Original signature : <code>int opus_decode(OpusDecoder*, const unsigned char*, opus_int32, opus_int16*, int, int)</code>
+     */
+    public static native int opus_decode(Pointer st, Pointer data, int len, Pointer pcm, int frame_size, int decode_fec);
+
+    /**
+     * Original signature : <code>int opus_decode_float(OpusDecoder*, const unsigned char*, opus_int32, float*, int, int)</code>
+     */
+    public static native int opus_decode_float(Pointer st, Pointer data, int len, Pointer pcm, int frame_size, int decode_fec);
+
+    /**
+     * <code>opus_encoder_ctl</code> for the SET requests and {@link Opus#OPUS_RESET_STATE} (pass 0).
+     */
+    public static native int opus_encoder_ctl(Pointer st, int request, int value);
+
+    /**
+     * <code>opus_encoder_ctl</code> for the GET requests, <code>value</code> points to an <code>opus_int32</code>.
+     */
+    public static native int opus_encoder_ctl(Pointer st, int request, Pointer value);
+
+    /**
+     * <code>opus_decoder_ctl</code> for the SET requests and {@link Opus#OPUS_RESET_STATE} (pass 0).
+     */
+    public static native int opus_decoder_ctl(Pointer st, int request, int value);
+
+    /**
+     * <code>opus_decoder_ctl</code> for the GET requests, <code>value</code> points to an <code>opus_int32</code>.
+     */
+    public static native int opus_decoder_ctl(Pointer st, int request, Pointer value);
+}
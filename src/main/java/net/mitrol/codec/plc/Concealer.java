@@ -0,0 +1,41 @@
+package net.mitrol.codec.plc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packet loss concealment stage of a decoder that has none of its own. It watches the decoded signal through
+ * {@link #good} and synthesizes a replacement for each lost frame in {@link #lost}. Samples are 16-bit
+ * little-endian PCM at 8 kHz, a frame is {@link #FRAME_SIZE} samples (10 ms).
+ * <p>
+ * Implementations keep per stream state and are not thread safe, like the decoders they are plugged into.
+ */
+public interface Concealer {
+
+    /**
+     * Samples in one concealed frame, 10 ms at 8 kHz.
+     */
+    int FRAME_SIZE = 80;
+
+    /**
+     * Records <code>samples</code> decoded samples at <code>pcm[offset]</code>. When they follow concealed frames
+     * their start is faded in over the synthetic signal, in place.
+     */
+    void good(byte[] pcm, int offset, int samples);
+
+    /**
+     * Same as {@link #good(byte[], int, int)} for <code>samples</code> samples at the absolute position
+     * <code>offset</code> of a heap or direct buffer. The buffer position is not changed.
+     */
+    void good(ByteBuffer pcm, int offset, int samples);
+
+    /**
+     * Writes one frame of concealment for a lost frame to <code>pcm</code> and advances its position. The caller
+     * makes sure <code>2 * FRAME_SIZE</code> bytes remain.
+     */
+    void lost(ByteBuffer pcm);
+
+    /**
+     * Forgets the signal seen so far, as when starting a new stream.
+     */
+    void reset();
+}
@@ -0,0 +1,369 @@
+package net.mitrol.codec.plc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pitch waveform replication of ITU-T G.711 Appendix I (lowcfe.c). At the start of an erasure the pitch of the
+ * last 20 ms is estimated and the last period is repeated, with a quarter wavelength overlap-add at the loop
+ * point. The buffer grows to two and three periods at 10 and 20 ms into the erasure, the output is attenuated by
+ * 20% per 10 ms from the second lost frame and muted after 60 ms; the first good frame is faded in over the
+ * continued synthetic signal.
+ * <p>
+ * Unlike the reference, decoded frames pass through unchanged and undelayed: the reference holds back 3.75 ms of
+ * output to smooth the start of an erasure, here the first quarter wavelength of the synthetic signal is instead
+ * overlapped with the time reversed tail of the real one.
+ */
+public class G711Concealer implements Concealer {
+
+    private static final int PITCH_MIN = 40;                          /* minimum allowed pitch, 200 Hz */
+    private static final int PITCH_MAX = 120;                         /* maximum allowed pitch, 66 Hz  */
+    private static final int PITCHDIFF = PITCH_MAX - PITCH_MIN;
+    private static final int POVERLAPMAX = PITCH_MAX >> 2;            /* maximum pitch OLA window      */
+    private static final int HISTORYLEN = PITCH_MAX * 3 + POVERLAPMAX;
+    private static final int NDEC = 2;                                /* 2:1 decimation                */
+    private static final int CORRLEN = 160;                           /* 20 ms correlation length      */
+    private static final int CORRBUFLEN = CORRLEN + PITCH_MAX;
+    private static final float CORRMINPOWER = (float) 250.;
+    private static final int EOVERLAPINCR = 32;                       /* end OLA increment per frame   */
+    private static final int FRAMESZ = FRAME_SIZE;
+    private static final float ATTENFAC = (float) 0.2;                /* attenuation per 10 ms frame   */
+    private static final float ATTENINCR = ATTENFAC / FRAMESZ;        /* attenuation per sample        */
+
+    private int erasecnt;       /* consecutive erased frames       */
+    private int poverlap;       /* overlap based on pitch          */
+    private int poffset;        /* offset into pitch period        */
+    private int pitch;          /* pitch estimate                  */
+    private int pitchblen;      /* current pitch buffer length     */
+    private int pitchbufstart;  /* start of pitch buffer, it ends at HISTORYLEN */
+
+    private final float[] pitchbuf = new float[HISTORYLEN];   /* cycles of speech            */
+    private final float[] lastq = new float[POVERLAPMAX];     /* saved last quarter wavelength */
+    private final short[] history = new short[HISTORYLEN];   /* circular, oldest at hpos    */
+    private int hpos;
+
+    /* Workspace */
+    private final float[] out = new float[FRAMESZ];
+    private final float[] tmp = new float[FRAMESZ];
+    private final byte[] pcmBytes = new byte[2 * FRAMESZ];
+
+    @Override
+    public void good(byte[] pcm, int offset, int samples) {
+        if (samples <= 0) {
+            return;
+        }
+        if (erasecnt != 0) {
+            endErasure(pcm, offset, Math.min(samples, FRAMESZ));
+        }
+        if (samples > HISTORYLEN) {
+            offset += 2 * (samples - HISTORYLEN);
+            samples = HISTORYLEN;
+        }
+        for (int i = 0; i < samples; i++, offset += 2) {
+            save((short) ((pcm[offset] & 0xff) | (pcm[offset + 1] << 8)));
+        }
+    }
+
+    @Override
+    public void good(ByteBuffer pcm, int offset, int samples) {
+        if (pcm.hasArray()) {
+            good(pcm.array(), pcm.arrayOffset() + offset, samples);
+            return;
+        }
+        if (samples <= 0) {
+            return;
+        }
+        if (erasecnt != 0) {
+            int len = 2 * Math.min(samples, FRAMESZ);
+            for (int i = 0; i < len; i++) {
+                pcmBytes[i] = pcm.get(offset + i);
+            }
+            endErasure(pcmBytes, 0, len / 2);
+            for (int i = 0; i < len; i++) {
+                pcm.put(offset + i, pcmBytes[i]);
+            }
+        }
+        if (samples > HISTORYLEN) {
+            offset += 2 * (samples - HISTORYLEN);
+            samples = HISTORYLEN;
+        }
+        for (int i = 0; i < samples; i++, offset += 2) {
+            save((short) ((pcm.get(offset) & 0xff) | (pcm.get(offset + 1) << 8)));
+        }
+    }
+
+    @Override
+    public void lost(ByteBuffer pcm) {
+        dofe();
+
+        int p = pcm.position();
+        for (int i = 0; i < FRAMESZ; i++, p += 2) {
+            short s = (short) out[i];
+            save(s);
+            pcm.put(p, (byte) s);
+            pcm.put(p + 1, (byte) (s >> 8));
+        }
+        pcm.position(p);
+    }
+
+    @Override
+    public void reset() {
+        erasecnt = 0;
+        hpos = 0;
+        for (int i = 0; i < HISTORYLEN; i++) {
+            history[i] = 0;
+        }
+    }
+
+    private void save(short s) {
+        history[hpos] = s;
+        if (++hpos == HISTORYLEN) {
+            hpos = 0;
+        }
+    }
+
+    /*
+     * Generates the synthetic signal of one erased frame into out[].
+     * At the beginning of an erasure determine the pitch, and extract one pitch
+     * period from the tail of the signal. Do an OLA for 1/4 of the pitch to smooth
+     * the loop point, then repeat the extracted signal for the length of the erasure.
+     * If the erasure continues for more than 10 ms, increase the number of periods
+     * in the pitch buffer. The gain decays as the erasure gets longer.
+     */
+    private void dofe() {
+        if (erasecnt == 0) {
+            /* get history, oldest sample first */
+            int n = HISTORYLEN - hpos;
+            for (int i = 0; i < n; i++) {
+                pitchbuf[i] = history[hpos + i];
+            }
+            for (int i = 0; i < hpos; i++) {
+                pitchbuf[n + i] = history[i];
+            }
+            pitch = findpitch();
+            poverlap = pitch >> 2;    /* OLA 1/4 wavelength */
+            /* save original last poverlap samples */
+            System.arraycopy(pitchbuf, HISTORYLEN - poverlap, lastq, 0, poverlap);
+            poffset = 0;              /* create pitch buffer with 1 period */
+            pitchblen = pitch;
+            pitchbufstart = HISTORYLEN - pitchblen;
+            overlapadd(lastq, 0, pitchbuf, pitchbufstart - poverlap, pitchbuf, HISTORYLEN - poverlap, poverlap);
+            /* get synthesized speech */
+            getfespeech(out, 0, FRAMESZ);
+            /* join it to the real signal already played: OLA with its reversed tail */
+            float incr = (float) 1. / poverlap;
+            float lw = (float) 1. - incr;
+            float rw = incr;
+            for (int i = 0; i < poverlap; i++) {
+                out[i] = lw * lastq[poverlap - 1 - i] + rw * out[i];
+                lw -= incr;
+                rw += incr;
+            }
+        } else if (erasecnt == 1 || erasecnt == 2) {
+            /* tail of previous pitch estimate */
+            int saveoffset = poffset; /* save offset for OLA */
+            /* continue with old pitchbuf */
+            getfespeech(tmp, 0, poverlap);
+            /* add periods to the pitch buffer */
+            poffset = saveoffset;
+            while (poffset > pitch) {
+                poffset -= pitch;
+            }
+            pitchblen += pitch;       /* add a period */
+            pitchbufstart = HISTORYLEN - pitchblen;
+            overlapadd(lastq, 0, pitchbuf, pitchbufstart - poverlap, pitchbuf, HISTORYLEN - poverlap, poverlap);
+            /* overlap add old pitchbuffer with new */
+            getfespeech(out, 0, FRAMESZ);
+            overlapadd(tmp, 0, out, 0, out, 0, poverlap);
+            scalespeech();
+        } else if (erasecnt > 5) {
+            for (int i = 0; i < FRAMESZ; i++) {
+                out[i] = (float) 0.;
+            }
+        } else {
+            getfespeech(out, 0, FRAMESZ);
+            scalespeech();
+        }
+        if (erasecnt <= 5) {
+            erasecnt++;
+        }
+    }
+
+    /*
+     * A good frame was received after an erasure: overlap add the continued
+     * synthetic signal, scaled by the current gain, with its start. Longer erasures
+     * use longer overlaps to smooth the transition.
+     */
+    private void endErasure(byte[] pcm, int offset, int samples) {
+        int olen = poverlap + (erasecnt - 1) * EOVERLAPINCR;
+        if (olen > samples) {
+            olen = samples;
+        }
+        getfespeech(tmp, 0, olen);
+
+        float incr = (float) 1. / olen;
+        float gain = (float) 1. - (erasecnt - 1) * ATTENFAC;
+        if (gain < (float) 0.) {
+            gain = (float) 0.;
+        }
+        float incrg = incr * gain;
+        float lw = ((float) 1. - incr) * gain;
+        float rw = incr;
+        for (int i = 0; i < olen; i++, offset += 2) {
+            short s = (short) ((pcm[offset] & 0xff) | (pcm[offset + 1] << 8));
+            float t = lw * tmp[i] + rw * s;
+            if (t > (float) 32767.) {
+                t = (float) 32767.;
+            } else if (t < (float) -32768.) {
+                t = (float) -32768.;
+            }
+            s = (short) t;
+            pcm[offset] = (byte) s;
+            pcm[offset + 1] = (byte) (s >> 8);
+            lw -= incrg;
+            rw += incr;
+        }
+        erasecnt = 0;
+    }
+
+    /*
+     * Gets samples from the circular pitch buffer, updating poffset so that when
+     * subsequent frames are erased the signal continues.
+     */
+    private void getfespeech(float[] o, int os, int sz) {
+        while (sz > 0) {
+            int cnt = pitchblen - poffset;
+            if (cnt > sz) {
+                cnt = sz;
+            }
+            System.arraycopy(pitchbuf, pitchbufstart + poffset, o, os, cnt);
+            poffset += cnt;
+            if (poffset == pitchblen) {
+                poffset = 0;
+            }
+            os += cnt;
+            sz -= cnt;
+        }
+    }
+
+    private void scalespeech() {
+        float g = (float) 1. - (erasecnt - 1) * ATTENFAC;
+        for (int i = 0; i < FRAMESZ; i++) {
+            out[i] = out[i] * g;
+            g -= ATTENINCR;
+        }
+    }
+
+    /*
+     * Overlap add left and right sides.
+     */
+    private static void overlapadd(float[] l, int ls, float[] r, int rs, float[] o, int os, int cnt) {
+        if (cnt == 0) {
+            return;
+        }
+        float incr = (float) 1. / cnt;
+        float lw = (float) 1. - incr;
+        float rw = incr;
+        for (int i = 0; i < cnt; i++) {
+            float t = lw * l[ls + i] + rw * r[rs + i];
+            if (t > (float) 32767.) {
+                t = (float) 32767.;
+            } else if (t < (float) -32768.) {
+                t = (float) -32768.;
+            }
+            o[os + i] = t;
+            lw -= incr;
+            rw += incr;
+        }
+    }
+
+    /*
+     * Estimates the pitch by normalized cross correlation of the last 20 ms with
+     * the signal PITCH_MIN..PITCH_MAX earlier: a coarse search on the 2:1
+     * decimated signal, refined at full rate around the best match.
+     */
+    private int findpitch() {
+        int i, j, k, bestmatch;
+        float bestcorr, corr, energy, scale;
+        int l = HISTORYLEN - CORRLEN;     /* first sample in last 20 ms of speech */
+        int r = HISTORYLEN - CORRBUFLEN;  /* the sample PITCH_MAX before l        */
+        int rp;
+        float[] p = pitchbuf;
+
+        /* coarse search */
+        rp = r;
+        energy = (float) 0.;
+        corr = (float) 0.;
+        for (i = 0; i < CORRLEN; i += NDEC) {
+            energy += p[rp + i] * p[rp + i];
+            corr += p[rp + i] * p[l + i];
+        }
+        scale = energy;
+        if (scale < CORRMINPOWER) {
+            scale = CORRMINPOWER;
+        }
+        corr = corr / (float) Math.sqrt(scale);
+        bestcorr = corr;
+        bestmatch = 0;
+        for (j = NDEC; j <= PITCHDIFF; j += NDEC) {
+            energy -= p[rp] * p[rp];
+            energy += p[rp + CORRLEN] * p[rp + CORRLEN];
+            rp += NDEC;
+            corr = (float) 0.;
+            for (i = 0; i < CORRLEN; i += NDEC) {
+                corr += p[rp + i] * p[l + i];
+            }
+            scale = energy;
+            if (scale < CORRMINPOWER) {
+                scale = CORRMINPOWER;
+            }
+            corr /= (float) Math.sqrt(scale);
+            if (corr >= bestcorr) {
+                bestcorr = corr;
+                bestmatch = j;
+            }
+        }
+
+        /* fine search */
+        j = bestmatch - (NDEC - 1);
+        if (j < 0) {
+            j = 0;
+        }
+        k = bestmatch + (NDEC - 1);
+        if (k > PITCHDIFF) {
+            k = PITCHDIFF;
+        }
+        rp = r + j;
+        energy = (float) 0.;
+        corr = (float) 0.;
+        for (i = 0; i < CORRLEN; i++) {
+            energy += p[rp + i] * p[rp + i];
+            corr += p[rp + i] * p[l + i];
+        }
+        scale = energy;
+        if (scale < CORRMINPOWER) {
+            scale = CORRMINPOWER;
+        }
+        corr = corr / (float) Math.sqrt(scale);
+        bestcorr = corr;
+        bestmatch = j;
+        for (j++; j <= k; j++) {
+            energy -= p[rp] * p[rp];
+            energy += p[rp + CORRLEN] * p[rp + CORRLEN];
+            rp++;
+            corr = (float) 0.;
+            for (i = 0; i < CORRLEN; i++) {
+                corr += p[rp + i] * p[l + i];
+            }
+            scale = energy;
+            if (scale < CORRMINPOWER) {
+                scale = CORRMINPOWER;
+            }
+            corr = corr / (float) Math.sqrt(scale);
+            if (corr > bestcorr) {
+                bestcorr = corr;
+                bestmatch = j;
+            }
+        }
+        return PITCH_MAX - bestmatch;
+    }
+}
@@ -0,0 +1,31 @@
+package net.mitrol.codec.plc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fills lost frames with silence. Keeps no history, so it adds nothing to the cost of decoding good frames; for
+ * streams where the quality of concealment does not matter.
+ */
+public class SilenceConcealer implements Concealer {
+
+    @Override
+    public void good(byte[] pcm, int offset, int samples) {
+    }
+
+    @Override
+    public void good(ByteBuffer pcm, int offset, int samples) {
+    }
+
+    @Override
+    public void lost(ByteBuffer pcm) {
+        int p = pcm.position();
+        for (int i = 0; i < 2 * FRAME_SIZE; i++) {
+            pcm.put(p + i, (byte) 0);
+        }
+        pcm.position(p + 2 * FRAME_SIZE);
+    }
+
+    @Override
+    public void reset() {
+    }
+}
@@ -22,24 +22,89 @@
 
 package net.mitrol.codec.scheduler;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Implements queue of tasks.
+ * Lock free queue of tasks bucketed by dead line.
+ * <p>
+ * A ring of buckets, each <code>resolution</code> nanoseconds wide, holds the tasks due within the ring span as
+ * lists pushed and detached with CAS; tasks further ahead wait in an overflow list looked at once per turn of
+ * the ring. A cursor marks the earliest bucket that may hold tasks: polling detaches the bucket under the cursor
+ * once its time has come and moves its tasks to a ready list, from which every poller takes. Accept, poll and
+ * remove are O(1) amortized and the memory is the ring plus one node per queued task.
+ * <p>
+ * Tasks are ordered by bucket only, a task never runs before its dead line and runs late by less than the
+ * resolution. A task accepted with its dead line already past goes to the bucket under the cursor rather than to its
+ * own, so it never takes the cursor back over buckets already passed, and a cursor left more than a turn behind the
+ * time, after an idle spell, catches up in one sweep of the ring. Removed tasks are unlinked lazily, when their
+ * bucket comes up.
  *
  * @author kulikov
  */
 public class ConcurrentTaskQueue extends TaskQueue {
-    long time;
-    int pollIndex;
-    int N = 2000000;
-    int CUT = 1000;
-    Task[] tasks1 = new Task[N];
-    AtomicInteger size = new AtomicInteger();
-    //inner holder for tasks
-    int u = 0;
+
+    /**
+     * 100 us
+     */
+    public final static long DEFAULT_RESOLUTION = 100000L;
+
+    /**
+     * With the default resolution the ring spans 409.6 ms, a few packet times of any codec.
+     */
+    public final static int DEFAULT_BUCKETS = 4096;
+
+    //bucket width in nanoseconds
+    private final long resolution;
+
+    //bucket lists, indexed by bucket number modulo the ring size
+    private final AtomicReferenceArray<Node> buckets;
+    private final int mask;
+
+    //tasks beyond the ring span
+    private final AtomicReference<Node> overflow = new AtomicReference<>();
+
+    //tasks due, detached from their bucket
+    private final AtomicReference<Node> ready = new AtomicReference<>();
+
+    //no task is queued in a bucket before this one
+    private final AtomicLong cursor = new AtomicLong(Long.MIN_VALUE);
+
+    private final LongAdder size = new LongAdder();
 
     public ConcurrentTaskQueue() {
+        this(DEFAULT_RESOLUTION, DEFAULT_BUCKETS);
+    }
+
+    /**
+     * @param resolution bucket width in nanoseconds
+     * @param buckets    ring size, rounded up to a power of two
+     */
+    public ConcurrentTaskQueue(long resolution, int buckets) {
+        if (resolution <= 0 || buckets <= 0) {
+            throw new IllegalArgumentException("resolution and buckets must be positive: " + resolution + ", " + buckets);
+        }
+        int n = buckets == 1 ? 1 : Integer.highestOneBit(buckets - 1) << 1;
+        this.resolution = resolution;
+        this.buckets = new AtomicReferenceArray<>(n);
+        this.mask = n - 1;
+    }
+
+    @Override
+    public Collection<Task> getTasks() {
+        List<Task> tasks = new ArrayList<>();
+        collect(ready.get(), tasks);
+        for (int i = 0; i <= mask; i++) {
+            collect(buckets.get(i), tasks);
+        }
+        collect(overflow.get(), tasks);
+        return tasks;
     }
 
     /**
@@ -47,122 +112,162 @@ public class ConcurrentTaskQueue extends TaskQueue {
      *
      * @return true if queue is currently empty
      */
-    public synchronized boolean isEmpty() {
-        return size.get() == 0;
+    @Override
+    public boolean isEmpty() {
+        return size.sum() == 0;
     }
 
     /**
      * Queues specified task using tasks dead line time.
      *
      * @param task the task to be queued.
-     * @return TaskExecutor for the scheduled task.
      */
+    @Override
     public void accept(Task task) {
-        //u++;
-        ////(u%100==0) {
-        //	System.out.println(System.currentTimeMillis() + " " + task);
-        //}
-        long dead = (System.nanoTime() - task.getDeadLine()) / CUT;
-        if (dead > N) {
-            //System.out.println(task.toString() + " " + dead);
-        }//System.out.println(task.toString() + " " + dead);
-        //the smaller priority value means that task will reside
-        int index = (int) ((task.getDeadLine() / CUT) % N);
-        boolean spotFound = false;
-        int step = 100;
-        //System.out.println("\n\nAccpeting " + index + " by " + task);
-        while (!spotFound && step-- > 0 && index >= 0) {
-
-            Task t = tasks1[(int) index];
-            if (t != null) {
-                //System.out.println("Spot taken " + index + " by " + t);
-                if (t.getDeadLine() > task.getDeadLine()) {
-                    //System.out.println("Swapping " + t + " out of " + index + " with " + task);
-                    tasks1[index] = task;
-                    task = t;
-                    continue;
+        //first bucket starting at or after the dead line, so the task never runs early
+        long bucket = -Math.floorDiv(-task.getDeadLine(), resolution);
+        Node node = new Node(task, bucket);
+        task.node = node;
+        size.increment();
+        place(node);
+        //a poller may have moved past the bucket meanwhile
+        lower(node.bucket);
+    }
+
+    /**
+     * Start of the earliest bucket that may hold a task.
+     */
+    @Override
+    public long getNextTaskDeadline() {
+        if (isEmpty()) {
+            return 0;
+        }
+        long c = cursor.get();
+        return c == Long.MIN_VALUE ? 0 : c * resolution;
+    }
+
+    /**
+     * Retrieves a task whose dead line is not after <code>time</code> and removes it from queue.
+     *
+     * @return task due or null if there is none
+     */
+    @Override
+    public Task poll(long time) {
+        long now = Math.floorDiv(time, resolution);
+        for (; ; ) {
+            Task task = take();
+            if (task != null) {
+                return task;
+            }
+
+            long c = cursor.get();
+            if (isEmpty()) {
+                //nothing anywhere, skip the idle buckets at once
+                if (c < now && cursor.compareAndSet(c, now) && !isEmpty()) {
+                    lower(c);
                 }
-                if (t.getPriority() > task.getPriority()) {
-                    index--;
-                    if (index < 0) index = N + index;
-                    //System.out.println("Adjusting index " + index + " by " + t);
-                } else {
-                    index++;
-                    //System.out.println("Adjusting index " + index + " by " + t);
+                return null;
+            }
+            if (c > now || c == Long.MIN_VALUE) {
+                //nothing due yet, or the first task is not placed yet
+                return null;
+            }
+            if (now - c > mask) {
+                //more than a turn behind: everything in the ring is due, take it all and move on to now
+                if (cursor.compareAndSet(c, now)) {
+                    for (int i = 0; i <= mask; i++) {
+                        Node list = buckets.getAndSet(i, null);
+                        if (list != null) {
+                            release(list, now);
+                        }
+                    }
+                    reload();
                 }
-            } else {
-                spotFound = true;
-                //System.out.println("Seated " + index + " by " + task);
+                continue;
+            }
+
+            Node list = buckets.getAndSet((int) c & mask, null);
+            if (list != null) {
+                release(list, c);
+                continue;
             }
-        }
-        if (!spotFound) {
-            System.out.println("NO SPOTS FOUND!!!!! Adjust the settings.");
-        }
-        size.addAndGet(1);
-        tasks1[(int) index] = task;
 
+            if (cursor.compareAndSet(c, c + 1)) {
+                //a task accepted while moving on, go back for it
+                if (buckets.get((int) c & mask) != null) {
+                    lower(c);
+                }
+                if (((c + 1) & mask) == 0) {
+                    //one turn of the ring: bring in the overflow now within reach
+                    reload();
+                }
+            }
+        }
     }
 
+    /**
+     * Retrieves the task with earliest dead line and removes it from queue, however far ahead it is. The task is
+     * taken out of its bucket without moving the cursor, so timed polls and the tasks accepted afterwards are
+     * not affected; this costs a scan of the ring and the overflow.
+     *
+     * @return task which has earliest dead line or null if the queue is empty
+     */
+    @Override
+    public Task poll() {
+        for (; ; ) {
+            Task task = take();
+            if (task != null) {
+                return task;
+            }
+            Node first = null;
+            for (int i = 0; i <= mask; i++) {
+                first = earliest(buckets.get(i), first);
+            }
+            first = earliest(overflow.get(), first);
+            if (first == null) {
+                return null;
+            }
+            //left in its list, unlinked when its bucket comes up
+            task = first.task;
+            if (task != null && first.clear(task)) {
+                size.decrement();
+                return task;
+            }
+        }
+    }
 
     /**
-     * Retrieves the task with earliest dead line and removes it from queue.
+     * Retrieves but do not remove a task already found due.
      *
-     * @return task which has earliest dead line
-     */
-    public synchronized Task poll() {
-        size.addAndGet(-1);
-        //int index = (int) ((System.nanoTime()/CUT)%N);
-        pollIndex -= 1000;
-        if (pollIndex < 0) pollIndex = N + pollIndex;
-        //System.out.println("Polling at time " + index + " pollIndex " + pollIndex);
-        // if(pollIndex>index) {
-        //System.out.println("1 Scan from " + pollIndex + " to " + N);
-        for (int q = pollIndex; q < N; q++) {
-            Task t = tasks1[q];
-            if (t != null) {
-                pollIndex = q + 1;
-                tasks1[q] = null;
-                return t;
-            }
-        }
-        //System.out.println("2 Scan from " + 0 + " to " + index);
-        for (int q = 0; q <= pollIndex; q++) {
-            Task t = tasks1[q];
-            if (t != null) {
-                pollIndex = q + 1;
-                tasks1[q] = null;
-                return t;
-            }
-        }/*
-        } else {
-        	System.out.println("3 Scan from " + pollIndex + " to " + index);
-        	for(int q=pollIndex;q<N;q++) {
-        		Task t = tasks1[q];
-        		if(t != null) {
-        			pollIndex = q+1;
-        			tasks1[q] = null;
-        			return t;
-        		}
-        	}
-        	System.out.println("4 Scan from " + 0 + " to " + pollIndex);
-        	for(int q=0;q<pollIndex;q++) {
-        		Task t = tasks1[q];
-        		if(t != null) {
-        			pollIndex = q+1;
-        			tasks1[q] = null;
-        			return t;
-        		}
-        	}
-        }*/
+     * @return task or null
+     */
+    @Override
+    public Task peek() {
+        for (Node node = ready.get(); node != null; node = node.next) {
+            Task task = node.task;
+            if (task != null) {
+                return task;
+            }
+        }
         return null;
     }
 
+    @Override
+    public Object getMonitor() {
+        Task first = peek();
+        return first == null ? Integer.valueOf(0) : first;
+    }
 
     /**
      * Clean the queue.
      */
-    public synchronized void clear() {
-        for (int q = 0; q < N; q++) tasks1[q] = null;
+    @Override
+    public void clear() {
+        drop(ready.getAndSet(null));
+        for (int i = 0; i <= mask; i++) {
+            drop(buckets.getAndSet(i, null));
+        }
+        drop(overflow.getAndSet(null));
     }
 
     /**
@@ -170,33 +275,178 @@ public class ConcurrentTaskQueue extends TaskQueue {
      *
      * @return the size of the queue.
      */
+    @Override
     public int size() {
-        return size.get();
+        return (int) size.sum();
+    }
+
+    /**
+     * Counts the queued tasks one by one.
+     *
+     * @return the size of the queue.
+     */
+    public int size2() {
+        return getTasks().size();
+    }
+
+    @Override
+    protected void remove(Task task) {
+        Node node = task.node;
+        if (node != null && node.clear(task)) {
+            size.decrement();
+        }
+    }
+
+    /*
+     * Pushes a node to the bucket of its dead line, or to the overflow when the bucket is
+     * beyond the ring. A late node goes to the bucket under the cursor.
+     */
+    private void place(Node node) {
+        long c = cursor.get();
+        if (c != Long.MIN_VALUE && node.bucket < c) {
+            node.bucket = c;
+        }
+        if (c != Long.MIN_VALUE && node.bucket - c > mask) {
+            push(overflow, node);
+        } else {
+            Node head;
+            int i = (int) node.bucket & mask;
+            do {
+                head = buckets.get(i);
+                node.next = head;
+            } while (!buckets.compareAndSet(i, head, node));
+        }
     }
 
-    public synchronized int size2() {
-        int count = 0;
-        for (int q = 0; q < N; q++) if (tasks1[q] != null) count++;
-        return count;
+    /*
+     * Moves the due nodes of a detached bucket to the ready list, the ones of later turns to the overflow.
+     */
+    private void release(Node list, long c) {
+        Node due = null;
+        while (list != null) {
+            Node next = list.next;
+            if (list.task != null) {
+                if (list.bucket <= c) {
+                    list.next = due;
+                    due = list;
+                } else {
+                    push(overflow, list);
+                }
+            }
+            list = next;
+        }
+        if (due != null) {
+            Node tail = due;
+            while (tail.next != null) {
+                tail = tail.next;
+            }
+            Node head;
+            do {
+                head = ready.get();
+                tail.next = head;
+            } while (!ready.compareAndSet(head, due));
+        }
     }
 
-    protected synchronized void remove(Task task) {
-        for (int q = 0; q < N; q++) if (tasks1[q] == task) tasks1[q] = null;
+    /*
+     * Places again the overflow nodes, the ones now within the ring span leave it.
+     */
+    private void reload() {
+        Node far = overflow.getAndSet(null);
+        while (far != null) {
+            Node next = far.next;
+            if (far.task != null) {
+                place(far);
+                lower(far.bucket);
+            }
+            far = next;
+        }
+    }
+
+    /*
+     * The live node of the list with the earliest bucket, or first if none is earlier.
+     */
+    private static Node earliest(Node list, Node first) {
+        for (; list != null; list = list.next) {
+            if (list.task != null && (first == null || list.bucket < first.bucket)) {
+                first = list;
+            }
+        }
+        return first;
+    }
+
+    private Task take() {
+        for (; ; ) {
+            Node head = ready.get();
+            if (head == null) {
+                return null;
+            }
+            if (ready.compareAndSet(head, head.next)) {
+                Task task = head.task;
+                if (task != null && head.clear(task)) {
+                    size.decrement();
+                    return task;
+                }
+            }
+        }
+    }
+
+    private void lower(long bucket) {
+        long c;
+        while (((c = cursor.get()) > bucket || c == Long.MIN_VALUE) && !cursor.compareAndSet(c, bucket)) ;
+    }
+
+    private void drop(Node list) {
+        while (list != null) {
+            Task task = list.task;
+            if (task != null && list.clear(task)) {
+                size.decrement();
+            }
+            list = list.next;
+        }
+    }
+
+    private static void push(AtomicReference<Node> stack, Node node) {
+        Node head;
+        do {
+            head = stack.get();
+            node.next = head;
+        } while (!stack.compareAndSet(head, node));
+    }
+
+    private static void collect(Node list, List<Task> tasks) {
+        for (; list != null; list = list.next) {
+            Task task = list.task;
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
     }
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Queue[");
-        /*
-        int len = Math.min(30, list.size());
-        for (int i = 0; i < len -1; i++) {
-            //sb.append(list.get(i).getPriority());
-            sb.append(",");
-        }*/
-
-        //sb.append(list.get(len - 1).getPriority());
-        sb.append("]");
-        return sb.toString();
+        return "Queue[resolution=" + resolution + ", buckets=" + (mask + 1) + ", size=" + size() + "]";
+    }
+
+    /**
+     * Queued task, cleared when taken or removed.
+     */
+    static final class Node {
+        private final static AtomicReferenceFieldUpdater<Node, Task> TASK =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Task.class, "task");
+
+        //raised to the cursor when placed late
+        long bucket;
+        volatile Task task;
+        Node next;
+
+        Node(Task task, long bucket) {
+            this.task = task;
+            this.bucket = bucket;
+        }
+
+        boolean clear(Task expected) {
+            return TASK.compareAndSet(this, expected, null);
+        }
     }
 }
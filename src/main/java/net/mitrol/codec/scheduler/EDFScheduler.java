@@ -19,19 +19,84 @@
  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
+
 package net.mitrol.codec.scheduler;
 
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * Non-preemptive EDF scheduler implementation.
+ * <p>
+ * Periodic tasks go through admission control: a task's utilization, its worst case execution time over its
+ * period, is reserved on one CPU and only if that CPU stays within the utilization bound, so admitting a new call
+ * never pushes the calls already running into missing their dead lines. The worst case is the larger of the
+ * declared {@link Task#getDuration()} and a high percentile of the observed execution times; reservations follow
+ * the observed times as they change. A task that does not fit anywhere is asked to {@link Task#degrade()} and
+ * tried once more before being rejected.
+ * <p>
+ * Once admitted, a periodic task keeps its CPU and its reservation every time it is submitted again, until
+ * {@link #release(Task)}.
  *
  * @author kulikov
  */
 public class EDFScheduler {
+
+    /**
+     * How admission picks a CPU among the ones with room for the task.
+     */
+    public enum Placement {
+        /**
+         * The first one, packs tasks onto the lowest CPUs.
+         */
+        FIRST_FIT,
+        /**
+         * The most loaded one, keeps whole CPUs free for heavy tasks.
+         */
+        BEST_FIT,
+        /**
+         * The least loaded one, spreads the load and leaves each CPU the most slack.
+         */
+        WORST_FIT
+    }
+
+    /**
+     * Leaves a tenth of each CPU for blocking by non-preemptive tasks, sporadic tasks and jitter.
+     */
+    public final static double DEFAULT_UTILIZATION_BOUND = 0.9;
+
+    public final static double DEFAULT_WCET_PERCENTILE = 0.99;
+
+    //utilization fixed point: 1.0 is ONE
+    private final static long ONE = 1000000L;
+
+    //longest sporadic (non periodic) task accepted
+    private final static long SPORADIC_LIMIT = 1000000L;
+
+    //longest idle period with an empty queue
+    private final static long MAX_IDLE = 1000000L;
+
     //system clock
     private Clock clock;
     //Task executors (CPUs)
     private CPU cpu[];
 
+    private volatile Placement placement = Placement.WORST_FIT;
+    private volatile long bound = (long) (DEFAULT_UTILIZATION_BOUND * ONE);
+    private volatile double wcetPercentile = DEFAULT_WCET_PERCENTILE;
+
+    private Logger logger = Logger.getLogger(EDFScheduler.class);
+
+    //region Metrics
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder degraded = new LongAdder();
+    private final LongAdder overloads = new LongAdder();
+    //endregion
+
     /**
      * Creates new scheduler.
      *
@@ -40,7 +105,7 @@ public class EDFScheduler {
     public EDFScheduler(int cpuNum) {
         cpu = new CPU[cpuNum];
         for (int i = 0; i < cpuNum; i++) {
-            cpu[i] = new CPU(String.format("CPU[%d]", i));
+            cpu[i] = new CPU(String.format("CPU[%d]", i), i);
         }
     }
 
@@ -62,19 +127,113 @@ public class EDFScheduler {
         this.clock = clock;
     }
 
+    public Placement getPlacement() {
+        return placement;
+    }
+
+    public void setPlacement(Placement placement) {
+        if (placement == null) {
+            throw new IllegalArgumentException("placement must not be null");
+        }
+        this.placement = placement;
+    }
+
+    public double getUtilizationBound() {
+        return (double) bound / ONE;
+    }
+
+    /**
+     * Sets the utilization no CPU may exceed through admission.
+     *
+     * @param bound in (0, 1]
+     */
+    public void setUtilizationBound(double bound) {
+        if (!(bound > 0 && bound <= 1)) {
+            throw new IllegalArgumentException("bound must be in (0, 1]: " + bound);
+        }
+        this.bound = (long) (bound * ONE);
+    }
+
+    public double getWcetPercentile() {
+        return wcetPercentile;
+    }
+
     /**
-     * Queues task for execution according to its priority.
+     * Sets the percentile of the observed execution times taken as worst case.
+     *
+     * @param percentile in (0, 1], 1 for the longest execution seen
+     */
+    public void setWcetPercentile(double percentile) {
+        if (!(percentile > 0 && percentile <= 1)) {
+            throw new IllegalArgumentException("percentile must be in (0, 1]: " + percentile);
+        }
+        this.wcetPercentile = percentile;
+    }
+
+    /**
+     * Queues task for execution according to its priority. A periodic task submitted for the first time is
+     * admitted only if some CPU has room for its utilization.
      *
      * @param task the task to be executed.
+     * @return true if task was accepted and false if task was rejected
      */
     public boolean submit(Task task) {
-        //first fit heuristic
-        for (int i = 0; i < cpu.length; i++) {
-            if (cpu[i].accept(task)) return true;
+        //admitted before: back to its CPU
+        int home = task.cpu;
+        if (home >= 0 && home < cpu.length) {
+            cpu[home].accept(task);
+            return true;
         }
+
+        //TODO: make it sufficient
+        //hack: allow to execute short task
+        if (task.interarrivalTime == 0) {
+            if (wcet(task) >= SPORADIC_LIMIT) {
+                rejected.increment();
+                return false;
+            }
+            CPU target = place(0);
+            if (target == null) {
+                rejected.increment();
+                return false;
+            }
+            target.accept(task);
+            return true;
+        }
+
+        if (admit(task)) {
+            return true;
+        }
+
+        //ask for a cheaper task before turning it down
+        if (task.degrade()) {
+            task.executionTimes = null;
+            degraded.increment();
+            if (admit(task)) {
+                return true;
+            }
+        }
+
+        rejected.increment();
         return false;
     }
 
+    /**
+     * Frees the CPU share reserved for a task. Call it when the task is not going to be submitted again.
+     *
+     * @param task the admitted task
+     */
+    public void release(Task task) {
+        synchronized (task) {
+            int home = task.cpu;
+            if (home >= 0 && home < cpu.length) {
+                cpu[home].load.addAndGet(-task.reserved);
+            }
+            task.cpu = -1;
+            task.reserved = 0;
+        }
+    }
+
     /**
      * Starts scheduler.
      */
@@ -86,15 +245,153 @@ public class EDFScheduler {
     }
 
     /**
-     * Stops scheduler.
+     * Stops scheduler and waits for the CPU threads to terminate, so no task is running any more on return.
      */
     public void stop() {
         for (int i = 0; i < cpu.length; i++) {
             cpu[i].isActive = false;
             cpu[i].interrupt();
         }
+
+        //wait when threads stop
+        for (int i = 0; i < cpu.length; i++) {
+            if (cpu[i] == Thread.currentThread()) {
+                continue;
+            }
+            try {
+                cpu[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private boolean admit(Task task) {
+        long u = utilization(task);
+        if (u > bound) {
+            return false;
+        }
+
+        CPU target;
+        while ((target = place(u)) != null) {
+            //another submit may have taken the room meanwhile, then look again
+            if (target.reserve(u)) {
+                synchronized (task) {
+                    task.cpu = target.index;
+                    task.reserved = u;
+                }
+                admitted.increment();
+                target.accept(task);
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * Picks a CPU with room for utilization <code>u</code> according to the placement policy.
+     *
+     * @return the CPU or null if none has room
+     */
+    private CPU place(long u) {
+        long bound = this.bound;
+        CPU best = null;
+        for (int i = 0; i < cpu.length; i++) {
+            long load = cpu[i].load.get();
+            if (load + u > bound) {
+                continue;
+            }
+            if (best == null) {
+                best = cpu[i];
+                if (placement == Placement.FIRST_FIT) {
+                    break;
+                }
+            } else if (placement == Placement.BEST_FIT ? load > best.load.get() : load < best.load.get()) {
+                best = cpu[i];
+            }
+        }
+        return best;
+    }
+
+    //share of a CPU the task needs, fixed point
+    private long utilization(Task task) {
+        return (long) ((double) wcet(task) * ONE / task.interarrivalTime);
+    }
+
+    private long wcet(Task task) {
+        ExecutionTimes times = task.executionTimes;
+        long observed = times == null ? 0 : times.percentile(wcetPercentile);
+        return Math.max(task.getDuration(), observed);
+    }
+
+    /*
+     * Brings the reservation of a task in line with its latest observed execution times.
+     */
+    private void reestimate(Task task) {
+        synchronized (task) {
+            int home = task.cpu;
+            if (home < 0 || home >= cpu.length) {
+                return;
+            }
+            long u = utilization(task);
+            long delta = u - task.reserved;
+            if (delta == 0) {
+                return;
+            }
+            task.reserved = u;
+            long load = cpu[home].load.addAndGet(delta);
+            if (delta > 0 && load > bound) {
+                overloads.increment();
+                logger.warn(cpu[home].getName() + " utilization " + (double) load / ONE + " over bound "
+                        + (double) bound / ONE + ", tasks may miss their dead lines");
+            }
+        }
+    }
+
+    //region Metrics
+
+    public int getCpuCount() {
+        return cpu.length;
+    }
+
+    /**
+     * Utilization reserved on a CPU by the admitted tasks.
+     */
+    public double getUtilization(int cpu) {
+        return (double) this.cpu[cpu].load.get() / ONE;
+    }
+
+    /**
+     * Time a CPU spent executing tasks, in nanoseconds.
+     */
+    public long getBusyTime(int cpu) {
+        return this.cpu[cpu].busy.sum();
+    }
+
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Tasks admitted or rejected after degrading.
+     */
+    public long getDegradedCount() {
+        return degraded.sum();
+    }
+
+    /**
+     * Times the observed execution times of admitted tasks pushed a CPU over the bound.
+     */
+    public long getOverloadCount() {
+        return overloads.sum();
+    }
+    //endregion
+
     /**
      * Representation of the CPU
      */
@@ -107,59 +404,45 @@ public class EDFScheduler {
         private Task task;
         //Task execution stats
         private long startTime, duration;
-        //CPU utilization
-        private double U;
+        //Position in the CPU array
+        private final int index;
+        //CPU utilization reserved by admitted tasks
+        private final AtomicLong load = new AtomicLong();
+        //time spent executing tasks
+        private final LongAdder busy = new LongAdder();
 
         /**
          * Creates new CPU.
          *
          * @param name the name of the CPU
          */
-        public CPU(String name) {
+        public CPU(String name, int index) {
             super(name);
+            this.index = index;
         }
 
         /**
-         * Queues task if this is possible.
+         * Queues task and wakes up the CPU if idle.
          *
          * @param task the task for execution
-         * @return true if task was accepted and false if task was rejected
          */
-        public synchronized boolean accept(Task task) {
-            if (isFeasible(task)) {
-                queue.offer(task);
-
-                //wake up if waiting
-                notify();
-                return true;
-            }
-
-            return false;
+        public void accept(Task task) {
+            queue.offer(task);
+            LockSupport.unpark(this);
         }
 
         /**
-         * Feasibility test.
-         *
-         * @param task the new task for checking scheduler feasibility
-         * @return true if resulting task set will be feasible
+         * Reserves utilization <code>u</code> if it fits under the bound.
          */
-        private boolean isFeasible(Task task) {
-            //TODO: make it sufficient
-            //hack: allow to execute short task
-            if (task.interarrivalTime == 0) {
-                return task.duration < 1000000L;
-            }
-
-            //determine new utilization
-            double util = U + ((double) task.duration / (double) task.interarrivalTime);
-
-            //if utilization remains less then one allow to execute task
-            if (util < 1) {
-                U = util;
-                return true;
-            }
-
-            return false;
+        private boolean reserve(long u) {
+            long load;
+            do {
+                load = this.load.get();
+                if (load + u > bound) {
+                    return false;
+                }
+            } while (!this.load.compareAndSet(load, load + u));
+            return true;
         }
 
         @Override
@@ -175,7 +458,7 @@ public class EDFScheduler {
         private void perform() {
             //idle if no tasks in queue
             if (queue.isEmpty()) {
-                idle(clock.getTime() + 1000000L);
+                idle(clock.getTime() + MAX_IDLE);
                 return;
             }
 
@@ -196,34 +479,29 @@ public class EDFScheduler {
             startTime = clock.getTime();
             task.perform();
             duration = clock.getTime() - startTime;
+            busy.add(duration);
 
-            //task finished, updating utilization factor
-            U -= (double) task.duration / (double) task.interarrivalTime;
-
-            //remember worst case execution time
+            //running average, the worst case comes from the recorded times
             task.duration = (task.duration + duration) / 2;
+
+            ExecutionTimes times = task.executionTimes;
+            if (times == null) {
+                times = task.executionTimes = new ExecutionTimes();
+            }
+            if (times.record(duration)) {
+                reestimate(task);
+            }
         }
 
         /**
-         * Idles CPUs till time specified.
+         * Idles CPUs till time specified, or till a task is queued.
          *
          * @param time the time to wake up in nanoseconds.
          */
-        private synchronized void idle(long time) {
-            //determine number of whole milliseconds
-            long ms = (time - clock.getTime()) / 1000000;
-
-            //idle CPU for milliseconds
-            try {
-                if (ms > 0) {
-                    wait(ms, 0);
-                }
-            } catch (InterruptedException e) {
-                return;
-            }
-
-            //spin for fraction of milliseconds
-            while (clock.getTime() < time) {
+        private void idle(long time) {
+            long idle = time - clock.getTime();
+            if (idle > 0) {
+                LockSupport.parkNanos(this, idle);
             }
         }
     }
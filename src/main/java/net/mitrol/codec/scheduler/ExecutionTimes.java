@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package net.mitrol.codec.scheduler;
+
+import java.util.Arrays;
+
+/**
+ * The last execution times of a task, for a worst case estimate from an observed percentile.
+ * <p>
+ * Recording is O(1); the percentile is computed by sorting the window, which is only done a few
+ * times per window.
+ */
+final class ExecutionTimes {
+
+    final static int WINDOW = 64;
+
+    private final long[] samples = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private int count;
+    private int next;
+
+    /**
+     * @return true when the estimate is worth refreshing: while the first window fills up,
+     * each time the number of samples doubles, then each time a window of new samples is complete
+     */
+    synchronized boolean record(long duration) {
+        samples[next] = duration;
+        next = (next + 1) % WINDOW;
+        if (count < WINDOW) {
+            count++;
+            return (count & (count - 1)) == 0;
+        }
+        return next == 0;
+    }
+
+    /**
+     * @param percentile in (0, 1], 1 for the longest execution seen in the window
+     * @return the execution time not exceeded by that share of the samples, 0 if none
+     */
+    synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int rank = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package net.mitrol.codec.scheduler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Log-linear histogram of non negative values, in the manner of HdrHistogram: values below 64 have a bucket
+ * each, above that every power of two is split into 32 buckets, so any value is known within about 3% over
+ * the whole long range in a fixed 15 KB.
+ * <p>
+ * Recording is lock free and wait free for a single writer, the owning CPU thread, and may be read at any time
+ * by other threads: {@link #add(LatencyHistogram)} merges a copy for reading, which can be a few records behind
+ * the writer. {@link ConcurrentLatencyHistogram} has the same buckets for values recorded by any thread.
+ */
+public class LatencyHistogram {
+
+    private final static int SUB_BITS = 5;
+    private final static int SUB_COUNT = 1 << SUB_BITS;
+    private final static int LINEAR = SUB_COUNT << 1;
+    final static int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private volatile long count;
+    private volatile long sum;
+    private volatile long max;
+
+    /**
+     * Records a value, negative values count as 0. Only one thread may record into a histogram.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int i = index(value);
+        //single writer: a plain increment published with an ordered store is enough
+        counts.lazySet(i, counts.get(i) + 1);
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+        count++;
+    }
+
+    /**
+     * Adds the records of <code>other</code> to this histogram, used to merge per thread histograms into a
+     * snapshot owned by the reader.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.lazySet(i, counts.get(i) + n);
+            }
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        long n = count;
+        return n > 0 ? (double) sum / n : 0D;
+    }
+
+    /**
+     * @param percentile in [0, 100], for example 99.9
+     * @return the value not exceeded by that share of the records, as the upper bound of its bucket but at most
+     * {@link #getMax()}, 0 if there is none
+     */
+    public long getValueAtPercentile(double percentile) {
+        return valueAtPercentile(counts::get, max, percentile);
+    }
+
+    /*
+     * Percentile over the bucket counts given by counts, capped at max.
+     */
+    static long valueAtPercentile(IntToLongFunction counts, long max, double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.applyAsLong(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100D, percentile) / 100D * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.applyAsLong(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return LINEAR + (shift - 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+    }
+
+    private static long highest(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_COUNT + 1;
+        long top = (index - LINEAR) % SUB_COUNT + SUB_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.0f, p50=%d, p99=%d, p99.9=%d, max=%d", getCount(), getMean(),
+                getValueAtPercentile(50), getValueAtPercentile(99), getValueAtPercentile(99.9), getMax());
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package net.mitrol.codec.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queue of tasks split in one deadline ordered partition per CPU thread.
+ * <p>
+ * A task lives in the partition of its channel ({@link Task#setAffinity}) or, without one, in a partition picked
+ * round robin the first time it is queued and kept afterwards, so a channel's tasks keep running on the same
+ * thread and find its codec state in that core's caches. Each CPU thread polls its own partition with
+ * {@link #poll(int, long)}; when that has nothing due the thread steals from its peers, but only tasks already
+ * late by the steal threshold, so work moves only off a thread that has fallen behind. A stolen task goes back to
+ * its own partition the next time it is queued.
+ * <p>
+ * Give {@link Scheduler} as many partitions as CPU threads. Partitions are {@link SkipListTaskQueue}s, the
+ * owner and its thieves do not lock each other.
+ */
+public class PartitionedTaskQueue extends TaskQueue {
+
+    /**
+     * 1 ms, a third of the scheduler tolerance
+     */
+    public final static long DEFAULT_STEAL_THRESHOLD = 1000000L;
+
+    private final SkipListTaskQueue[] partitions;
+
+    //how late a task must be before another thread takes it
+    private final long stealThreshold;
+
+    //round robin for tasks without affinity
+    private final AtomicInteger next = new AtomicInteger();
+
+    //region Metrics
+    private final LongAdder steals = new LongAdder();
+    //endregion
+
+    public PartitionedTaskQueue(int partitions) {
+        this(partitions, DEFAULT_STEAL_THRESHOLD);
+    }
+
+    /**
+     * @param partitions     the number of CPU threads polling the queue
+     * @param stealThreshold lateness in nanoseconds from which a task may run on another thread
+     */
+    public PartitionedTaskQueue(int partitions, long stealThreshold) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be positive: " + partitions);
+        }
+        if (stealThreshold < 0) {
+            throw new IllegalArgumentException("stealThreshold must not be negative: " + stealThreshold);
+        }
+        this.partitions = new SkipListTaskQueue[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new SkipListTaskQueue();
+        }
+        this.stealThreshold = stealThreshold;
+    }
+
+    @Override
+    public Collection<Task> getTasks() {
+        List<Task> tasks = new ArrayList<>();
+        for (SkipListTaskQueue partition : partitions) {
+            tasks.addAll(partition.getTasks());
+        }
+        return tasks;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (SkipListTaskQueue partition : partitions) {
+            if (!partition.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queues specified task in its partition.
+     *
+     * @param task the task to be queued.
+     */
+    @Override
+    public void accept(Task task) {
+        int n = partitions.length;
+        int home;
+        if (task.affinity >= 0) {
+            home = task.affinity % n;
+        } else {
+            home = task.partition;
+            if (home < 0 || home >= n) {
+                home = Math.floorMod(next.getAndIncrement(), n);
+            }
+        }
+        task.partition = home;
+        partitions[home].accept(task);
+    }
+
+    /**
+     * Earliest dead line over all partitions.
+     */
+    @Override
+    public long getNextTaskDeadline() {
+        long next = 0;
+        for (SkipListTaskQueue partition : partitions) {
+            next = earliest(next, partition.getNextTaskDeadline());
+        }
+        return next;
+    }
+
+    /**
+     * Earliest time the thread finds work: the next dead line of its partition or the time a task of another one
+     * becomes late enough to steal.
+     */
+    @Override
+    public long getNextTaskDeadline(int cpu) {
+        int home = Math.floorMod(cpu, partitions.length);
+        long next = partitions[home].getNextTaskDeadline();
+        for (int i = 0; i < partitions.length; i++) {
+            long deadline = partitions[i].getNextTaskDeadline();
+            if (i != home && deadline != 0) {
+                next = earliest(next, deadline + stealThreshold);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Retrieves a task due at <code>time</code> from the thread's partition, or one late by the steal threshold
+     * from another partition.
+     *
+     * @param cpu index of the polling CPU thread
+     * @return task due or null
+     */
+    @Override
+    public Task poll(int cpu, long time) {
+        int n = partitions.length;
+        int home = Math.floorMod(cpu, n);
+        Task task = partitions[home].poll(time);
+        if (task != null) {
+            return task;
+        }
+
+        //start past the home partition, thieves spread over their peers
+        for (int i = 1; i < n; i++) {
+            task = partitions[(home + i) % n].poll(time - stealThreshold);
+            if (task != null) {
+                steals.increment();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves a task due at <code>time</code> from the first partition that has one.
+     */
+    @Override
+    public Task poll(long time) {
+        for (SkipListTaskQueue partition : partitions) {
+            Task task = partition.poll(time);
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Task poll() {
+        for (SkipListTaskQueue partition : partitions) {
+            Task task = partition.poll();
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Task peek() {
+        for (SkipListTaskQueue partition : partitions) {
+            Task task = partition.peek();
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object getMonitor() {
+        Task first = peek();
+        return first == null ? Integer.valueOf(0) : first;
+    }
+
+    @Override
+    public void clear() {
+        for (SkipListTaskQueue partition : partitions) {
+            partition.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (SkipListTaskQueue partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    /**
+     * Size of the thread's own partition.
+     */
+    @Override
+    public int size(int cpu) {
+        return partitions[Math.floorMod(cpu, partitions.length)].size();
+    }
+
+    @Override
+    protected void remove(Task task) {
+        int home = task.partition;
+        if (home >= 0 && home < partitions.length) {
+            partitions[home].remove(task);
+        }
+    }
+
+    private static long earliest(long a, long b) {
+        if (a == 0) {
+            return b;
+        }
+        return b == 0 || a - b < 0 ? a : b;
+    }
+
+    //region Metrics
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Tasks queued in a partition, see {@link #size()} for the whole queue.
+     */
+    public int getPartitionSize(int partition) {
+        return partitions[partition].size();
+    }
+
+    /**
+     * Tasks run by a thread other than the one of their partition.
+     */
+    public long getStealCount() {
+        return steals.sum();
+    }
+    //endregion
+
+    @Override
+    public String toString() {
+        return "PartitionedTaskQueue[partitions=" + partitions.length + ", size=" + size() + "]";
+    }
+}
@@ -22,9 +22,15 @@
 
 package net.mitrol.codec.scheduler;
 
+import net.mitrol.codec.jfr.FlightEvents;
 import org.apache.log4j.Logger;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Implements scheduler with multi-level priority queue.
@@ -41,7 +47,7 @@ import java.util.concurrent.CountDownLatch;
  */
 public class Scheduler {
     //priority queue
-    protected TaskQueue taskQueue = new TaskQueue();
+    protected TaskQueue taskQueue;
     //The clock for time measurement
     private Clock clock;
     //CPU bound threads
@@ -56,20 +62,25 @@ public class Scheduler {
     /**
      * the amount of tasks missed their deadline
      */
-    private volatile long missCount;
+    private final LongAdder missCount = new LongAdder();
 
     /**
      * the number of total tasks executed
      */
-    private volatile long taskCount;
+    private final LongAdder taskCount = new LongAdder();
 
     /**
      * The allowed time jitter
      */
     private long tolerance = 3000000L;
 
-    //The most worst execution time detected
-    private long wet;
+    /**
+     * The longest a CPU thread idles before polling again, a task queued meanwhile may be due sooner
+     */
+    private final static long MAX_IDLE = 1000000L;
+
+    //name registered with registerMBean
+    private ObjectName objectName;
 
     private Friction[] frictions;
 
@@ -79,6 +90,17 @@ public class Scheduler {
      * Creates new instance of scheduler.
      */
     public Scheduler(int cpuNum) {
+        this(cpuNum, new TaskQueue());
+    }
+
+    /**
+     * Creates new instance of scheduler polling the given queue, for example a
+     * {@link SkipListTaskQueue} when many CPU threads share it or a
+     * {@link PartitionedTaskQueue} with a partition per CPU thread.
+     */
+    public Scheduler(int cpuNum, TaskQueue taskQueue) {
+        this.taskQueue = taskQueue;
+
         Runtime runtime = Runtime.getRuntime();
         runtime.availableProcessors();
 
@@ -86,7 +108,7 @@ public class Scheduler {
 
         cpuThread = new CpuThread[cpuNum];
         for (int i = 0; i < cpuThread.length; i++) {
-            cpuThread[i] = new CpuThread(String.format("Scheduler[CPU-%s]", i));
+            cpuThread[i] = new CpuThread(String.format("Scheduler[CPU-%s]", i), i);
         }
 
     }
@@ -140,6 +162,9 @@ public class Scheduler {
 
         logger.info("Starting ");
 
+        //load the flight recorder events now rather than on the first dispatch
+        FlightEvents.init();
+
         //prepare frictions first
 //        frictions = new Friction[cpuThread.length];
 //        for (int i = 0; i < cpuThread.length; i++) {
@@ -193,22 +218,77 @@ public class Scheduler {
      * @return the miss rate value;
      */
     public double getMissRate() {
-        return taskCount > 0 ? (double) missCount / (double) taskCount : 0D;
+        long tasks = taskCount.sum();
+        return tasks > 0 ? (double) missCount.sum() / (double) tasks : 0D;
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getTaskCount() {
+        return taskCount.sum();
     }
 
     public long getWorstExecutionTime() {
+        long wet = 0;
+        for (int i = 0; i < cpuThread.length; i++) {
+            wet = Math.max(wet, cpuThread[i].executionTime.getMax());
+        }
         return wet;
     }
 
+    /**
+     * Merges the lateness, execution time and queue depth histograms of the CPU
+     * threads. The threads keep running, so a snapshot may be a few tasks behind.
+     */
+    public SchedulerSnapshot getSnapshot() {
+        SchedulerSnapshot snapshot = new SchedulerSnapshot(cpuThread.length, missCount.sum(), taskCount.sum());
+        for (int i = 0; i < cpuThread.length; i++) {
+            CpuThread thread = cpuThread[i];
+            snapshot.add(i, thread.lateness, thread.executionTime, thread.queueDepth);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Registers a {@link SchedulerMXBean} of this scheduler with the platform MBean
+     * server as <code>net.mitrol.codec:type=Scheduler,name=&lt;name&gt;</code>.
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        unregisterMBean();
+        ObjectName objectName = new ObjectName("net.mitrol.codec:type=Scheduler,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new SchedulerMonitor(this), objectName);
+        this.objectName = objectName;
+    }
+
+    /**
+     * Removes the MBean registered by {@link #registerMBean(String)}, if any.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
     /**
      * Executor thread.
      */
     private class CpuThread extends Thread {
         private Task t;
         private volatile boolean active;
+        //partition served first by a PartitionedTaskQueue
+        private final int index;
+
+        //written by this thread only, merged by getSnapshot()
+        private final LatencyHistogram lateness = new LatencyHistogram();
+        private final LatencyHistogram executionTime = new LatencyHistogram();
+        private final LatencyHistogram queueDepth = new LatencyHistogram();
 
-        public CpuThread(String name) {
+        public CpuThread(String name, int index) {
             super(name);
+            this.index = index;
         }
 
         @Override
@@ -216,7 +296,7 @@ public class Scheduler {
             this.active = true;
             latch.countDown();
             while (active) {
-/*                long next = taskQueue.getNextTaskDeadline();
+/*                long next = taskQueue.getNextTaskDeadline(index);
                 if (next == 0) {
                     synchronized(this) {
                         try {
@@ -241,16 +321,11 @@ public class Scheduler {
                 }
   */
                 //load task with highest priority and execute it.
-                t = taskQueue.poll(clock.getTime());
+                t = taskQueue.poll(index, clock.getTime());
 
                 //if task has been canceled take another one
                 if (t == null) {
-                    synchronized (this) {
-                        try {
-                            wait(1, 0);
-                        } catch (InterruptedException e) {
-                        }
-                    }
+                    idle();
                     continue;
                 }
 
@@ -262,23 +337,36 @@ public class Scheduler {
                 try {
                     //update miss rate countor
                     long now = clock.getTime();
+                    long late = now - t.getDeadLine();
 
                     //increment task countor
-                    taskCount++;
+                    taskCount.increment();
+                    lateness.record(late);
+                    queueDepth.record(taskQueue.size(index));
 
                     //check for missing dead line.
-                    if (now - t.getDeadLine() > tolerance) {
-                        missCount++;
+                    if (late > tolerance) {
+                        missCount.increment();
                     }
 
                     //execute task
+                    Object event = FlightEvents.beginTaskDispatch();
                     t.run();
-
-                    //determine worst execution time
-                    long duration = clock.getTime() - now;
-                    if (duration > wet) {
-                        wet = duration;
+                    FlightEvents.endTaskDispatch(event, index, late, t);
+
+                    //periodic task: next period, no need to resubmit from perform();
+                    //under the task's monitor so that cancel() either sees it queued or stops it here
+                    if (t.interarrivalTime > 0) {
+                        synchronized (t) {
+                            if (t.isActive()) {
+                                t.setDeadLine(t.getDeadLine() + t.interarrivalTime);
+                                taskQueue.accept(t);
+                            }
+                        }
                     }
+
+                    //execution time histogram, its max is the worst execution time
+                    executionTime.record(clock.getTime() - now);
                 } catch (Exception e) {
                 }
             }
@@ -286,6 +374,18 @@ public class Scheduler {
             latch.countDown();
         }
 
+        /**
+         * Sleeps until the next task is due, at most MAX_IDLE. Parking instead of
+         * wait(1, 0) wakes up on time rather than on the next millisecond.
+         */
+        private void idle() {
+            long next = taskQueue.getNextTaskDeadline(index);
+            long idle = next == 0 ? MAX_IDLE : Math.min(next - clock.getTime(), MAX_IDLE);
+            if (idle > 0) {
+                LockSupport.parkNanos(this, idle);
+            }
+        }
+
         /**
          * Terminates thread.
          */
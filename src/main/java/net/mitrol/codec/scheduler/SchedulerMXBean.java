@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package net.mitrol.codec.scheduler;
+
+/**
+ * Management view of a {@link Scheduler}, registered with {@link Scheduler#registerMBean(String)}. Times are in
+ * nanoseconds. Percentiles come from a {@link SchedulerSnapshot} merged at most once a second and shared by all
+ * the attributes.
+ */
+public interface SchedulerMXBean {
+
+    long getTaskCount();
+
+    long getMissCount();
+
+    double getMissRate();
+
+    long getWorstExecutionTime();
+
+    long getLatenessP50();
+
+    long getLatenessP99();
+
+    long getLatenessP999();
+
+    long getLatenessMax();
+
+    long getExecutionTimeP99();
+
+    long getExecutionTimeP999();
+
+    long getQueueDepthP99();
+
+    long getQueueDepthMax();
+
+    /**
+     * 99th percentile of the lateness, one value per CPU thread.
+     */
+    long[] getLatenessP99PerCpu();
+
+    /**
+     * 99.9th percentile of the lateness, one value per CPU thread.
+     */
+    long[] getLatenessP999PerCpu();
+}
@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package net.mitrol.codec.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SchedulerMXBean} of a {@link Scheduler}, see {@link Scheduler#registerMBean(String)}. The histogram
+ * attributes are read from one {@link SchedulerSnapshot} kept for {@link #MAX_AGE} nanoseconds, so a client
+ * reading them all merges the per CPU histograms once and gets percentiles of the same instant.
+ */
+class SchedulerMonitor implements SchedulerMXBean {
+
+    static final long MAX_AGE = TimeUnit.SECONDS.toNanos(1);
+
+    private final Scheduler scheduler;
+
+    private SchedulerSnapshot snapshot;
+    private long snapshotTime;
+
+    SchedulerMonitor(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public long getTaskCount() {
+        return scheduler.getTaskCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return scheduler.getMissCount();
+    }
+
+    @Override
+    public double getMissRate() {
+        return scheduler.getMissRate();
+    }
+
+    @Override
+    public long getWorstExecutionTime() {
+        return scheduler.getWorstExecutionTime();
+    }
+
+    @Override
+    public long getLatenessP50() {
+        return snapshot().getLateness().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getLatenessP99() {
+        return snapshot().getLateness().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getLatenessP999() {
+        return snapshot().getLateness().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getLatenessMax() {
+        return snapshot().getLateness().getMax();
+    }
+
+    @Override
+    public long getExecutionTimeP99() {
+        return snapshot().getExecutionTime().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getExecutionTimeP999() {
+        return snapshot().getExecutionTime().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getQueueDepthP99() {
+        return snapshot().getQueueDepth().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getQueueDepthMax() {
+        return snapshot().getQueueDepth().getMax();
+    }
+
+    @Override
+    public long[] getLatenessP99PerCpu() {
+        return perCpu(99);
+    }
+
+    @Override
+    public long[] getLatenessP999PerCpu() {
+        return perCpu(99.9);
+    }
+
+    private long[] perCpu(double percentile) {
+        SchedulerSnapshot snapshot = snapshot();
+        long[] values = new long[snapshot.getCpuCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = snapshot.getLateness(i).getValueAtPercentile(percentile);
+        }
+        return values;
+    }
+
+    private synchronized SchedulerSnapshot snapshot() {
+        long now = System.nanoTime();
+        if (snapshot == null || now - snapshotTime > MAX_AGE) {
+            snapshot = scheduler.getSnapshot();
+            snapshotTime = now;
+        }
+        return snapshot;
+    }
+}
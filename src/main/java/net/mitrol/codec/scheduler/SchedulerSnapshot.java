@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package net.mitrol.codec.scheduler;
+
+/**
+ * Latency histograms of a {@link Scheduler} merged at one point in time, per CPU thread and overall.
+ * <p>
+ * Lateness is how long after its dead line a task was dispatched, execution time how long it ran and queue depth
+ * the number of tasks left queued when it was taken, in the thread's own partition when the queue is partitioned
+ * (see {@link TaskQueue#size(int)}), all times in nanoseconds.
+ */
+public class SchedulerSnapshot {
+
+    private final LatencyHistogram[] lateness;
+    private final LatencyHistogram[] executionTime;
+    private final LatencyHistogram[] queueDepth;
+
+    private final LatencyHistogram totalLateness = new LatencyHistogram();
+    private final LatencyHistogram totalExecutionTime = new LatencyHistogram();
+    private final LatencyHistogram totalQueueDepth = new LatencyHistogram();
+
+    private final long missCount;
+    private final long taskCount;
+
+    SchedulerSnapshot(int cpuNum, long missCount, long taskCount) {
+        this.lateness = new LatencyHistogram[cpuNum];
+        this.executionTime = new LatencyHistogram[cpuNum];
+        this.queueDepth = new LatencyHistogram[cpuNum];
+        this.missCount = missCount;
+        this.taskCount = taskCount;
+    }
+
+    //copies the histograms of one CPU thread
+    void add(int cpu, LatencyHistogram lateness, LatencyHistogram executionTime, LatencyHistogram queueDepth) {
+        this.lateness[cpu] = copy(lateness, totalLateness);
+        this.executionTime[cpu] = copy(executionTime, totalExecutionTime);
+        this.queueDepth[cpu] = copy(queueDepth, totalQueueDepth);
+    }
+
+    private static LatencyHistogram copy(LatencyHistogram source, LatencyHistogram total) {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.add(source);
+        total.add(copy);
+        return copy;
+    }
+
+    public int getCpuCount() {
+        return lateness.length;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    public LatencyHistogram getLateness() {
+        return totalLateness;
+    }
+
+    public LatencyHistogram getLateness(int cpu) {
+        return lateness[cpu];
+    }
+
+    public LatencyHistogram getExecutionTime() {
+        return totalExecutionTime;
+    }
+
+    public LatencyHistogram getExecutionTime(int cpu) {
+        return executionTime[cpu];
+    }
+
+    public LatencyHistogram getQueueDepth() {
+        return totalQueueDepth;
+    }
+
+    public LatencyHistogram getQueueDepth(int cpu) {
+        return queueDepth[cpu];
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package net.mitrol.codec.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free queue of tasks ordered by dead line.
+ * <p>
+ * Same ordering as {@link TaskQueue}, the earliest dead line first and tasks with equal dead lines in the order they
+ * were queued, but kept in a skip list instead of a sorted array: accept, poll and remove take O(log n) and never
+ * block, so CPU threads polling it do not contend on a single monitor. Use it with
+ * {@link Scheduler#Scheduler(int, TaskQueue)} when the scheduler runs thousands of periodic tasks.
+ */
+public class SkipListTaskQueue extends TaskQueue {
+
+    //inner holder for tasks, keyed by dead line and arrival order
+    private final ConcurrentSkipListMap<Entry, Task> map = new ConcurrentSkipListMap<>();
+
+    //breaks ties between equal dead lines
+    private final AtomicLong sequence = new AtomicLong();
+
+    //the skip list counts its nodes by walking them
+    private final LongAdder size = new LongAdder();
+
+    @Override
+    public Collection<Task> getTasks() {
+        return new ArrayList<>(map.values());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    /**
+     * Queues specified task using tasks dead line time. The dead line is read once: changing it afterwards does not
+     * move the task until it is queued again.
+     *
+     * @param task the task to be queued.
+     */
+    @Override
+    public void accept(Task task) {
+        Entry entry = new Entry(task.getDeadLine(), sequence.getAndIncrement());
+        task.entry = entry;
+        map.put(entry, task);
+        size.increment();
+    }
+
+    @Override
+    public long getNextTaskDeadline() {
+        Map.Entry<Entry, Task> first = map.firstEntry();
+        return first == null ? 0 : first.getKey().deadline;
+    }
+
+    /**
+     * Retrieves the task with earliest dead line and removes it from queue if that dead line is not after
+     * <code>time</code>.
+     *
+     * @return task which has earliest dead line or null if there is no task due yet
+     */
+    @Override
+    public Task poll(long time) {
+        for (; ; ) {
+            Map.Entry<Entry, Task> first = map.firstEntry();
+            if (first == null || first.getKey().deadline - time > 0) {
+                return null;
+            }
+            //another thread may take it first, then look at the new head
+            if (map.remove(first.getKey()) != null) {
+                return taken(first);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the task with earliest dead line and removes it from queue.
+     *
+     * @return task which has earliest dead line or null if the queue is empty
+     */
+    @Override
+    public Task poll() {
+        Map.Entry<Entry, Task> first = map.pollFirstEntry();
+        return first == null ? null : taken(first);
+    }
+
+    @Override
+    public Task peek() {
+        Map.Entry<Entry, Task> first = map.firstEntry();
+        return first == null ? null : first.getValue();
+    }
+
+    @Override
+    public Object getMonitor() {
+        Task first = peek();
+        return first == null ? Integer.valueOf(0) : first;
+    }
+
+    @Override
+    public void clear() {
+        Map.Entry<Entry, Task> first;
+        while ((first = map.pollFirstEntry()) != null) {
+            taken(first);
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+    @Override
+    protected void remove(Task task) {
+        Entry entry = task.entry;
+        if (entry != null && map.remove(entry, task)) {
+            size.decrement();
+            if (task.entry == entry) {
+                task.entry = null;
+            }
+        }
+    }
+
+    private Task taken(Map.Entry<Entry, Task> first) {
+        Task task = first.getValue();
+        size.decrement();
+        if (task.entry == first.getKey()) {
+            task.entry = null;
+        }
+        return task;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Queue[");
+
+        int len = 0;
+        for (Task task : map.values()) {
+            if (len++ == 30) {
+                break;
+            }
+            if (len > 1) {
+                sb.append(",");
+            }
+            sb.append(task.getPriority());
+        }
+
+        sb.append("]");
+        return sb.toString();
+    }
+
+    /**
+     * Position of a queued task.
+     */
+    static final class Entry implements Comparable<Entry> {
+        final long deadline;
+        final long sequence;
+
+        Entry(long deadline, long sequence) {
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (deadline != other.deadline) {
+                return deadline < other.deadline ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
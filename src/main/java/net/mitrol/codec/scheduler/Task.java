@@ -37,12 +37,23 @@ public abstract class Task {
     protected TaskChain chain;
     //task duration
     protected long duration;
-    //task period if task is periodic
+    //task period if task is periodic, Scheduler queues it again one period later after each run
     protected long interarrivalTime;
     //release time
     protected long releaseTime;
+    //channel pinning the task to a partition of a PartitionedTaskQueue, -1 if none
+    protected int affinity = -1;
     Task left; //for DigitalTree
     Task right;
+    volatile SkipListTaskQueue.Entry entry; //for SkipListTaskQueue
+    volatile ConcurrentTaskQueue.Node node; //for ConcurrentTaskQueue
+    Task wheelPrev; //for TimingWheel
+    Task wheelNext;
+    int wheelSlot = -1;
+    volatile int partition = -1; //for PartitionedTaskQueue
+    volatile int cpu = -1; //for EDFScheduler
+    long reserved;
+    ExecutionTimes executionTimes;
     private volatile boolean isActive = true;
 
     public Task(Scheduler scheduler) {
@@ -87,6 +98,25 @@ public abstract class Task {
         this.deadline = d;
     }
 
+    /**
+     * Channel this task works for, tasks of the same channel share a CPU thread
+     * and its caches when the scheduler queue is partitioned.
+     *
+     * @return the channel id or -1 if the task may run anywhere.
+     */
+    public int getAffinity() {
+        return affinity;
+    }
+
+    /**
+     * Pins this task to the partition of a channel, applies the next time it is queued.
+     *
+     * @param channel the channel id, -1 to let the queue spread tasks.
+     */
+    public void setAffinity(int channel) {
+        this.affinity = channel;
+    }
+
     /**
      * Worst execution time of this task.
      *
@@ -94,6 +124,16 @@ public abstract class Task {
      */
     public abstract long getDuration();
 
+    /**
+     * Asks the task to lower its cost because the scheduler can not admit it as it
+     * is, for example by switching a leg to a cheaper codec.
+     *
+     * @return true if {@link #getDuration()} now reports the lower cost.
+     */
+    protected boolean degrade() {
+        return false;
+    }
+
     /**
      * Executes task.
      *
@@ -126,6 +166,10 @@ public abstract class Task {
         }
     }
 
+    boolean isActive() {
+        return isActive;
+    }
+
     protected synchronized void activate() {
         this.isActive = true;
     }
@@ -127,6 +127,27 @@ public class TaskQueue {
         return this.firstTask;
     }
 
+    /**
+     * Dead line of the next task the given CPU thread may take, see {@link #poll(int, long)}.
+     *
+     * @param cpu index of the polling CPU thread
+     */
+    public long getNextTaskDeadline(int cpu) {
+        return getNextTaskDeadline();
+    }
+
+    /**
+     * Retrieves a task due at <code>time</code> on behalf of a CPU thread. Queues
+     * shared by all threads ignore the index, a partitioned queue serves the
+     * thread from its own partition first.
+     *
+     * @param cpu index of the polling CPU thread
+     * @return task which has earliest dead line
+     */
+    public Task poll(int cpu, long time) {
+        return poll(time);
+    }
+
     /**
      * Retrieves the task with earliest dead line and removes it from queue.
      *
@@ -207,6 +228,16 @@ public class TaskQueue {
         return list.size();
     }
 
+    /**
+     * Number of queued tasks the given CPU thread would poll from, its own share of a partitioned queue. Cheap
+     * enough to be read on every dispatch.
+     *
+     * @param cpu index of the polling CPU thread
+     */
+    public int size(int cpu) {
+        return size();
+    }
+
     protected synchronized void remove(Task task) {
         list.remove(task);
     }
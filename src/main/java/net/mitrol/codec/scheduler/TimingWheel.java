@@ -0,0 +1,359 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package net.mitrol.codec.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical timing wheel: a queue of tasks bucketed by dead line in fixed time slots instead of sorted.
+ * <p>
+ * Four levels of 64 slots each, the first one a slot per tick, every other 64 times coarser than the one below
+ * (Varghese and Lauck, scheme 7). Queueing a task and expiring a slot are O(1) whatever the number of tasks; a
+ * task far ahead is moved down a level each time the slot holding it comes up, at most three times. Tasks of a
+ * slot come out in no particular order, a tick is the resolution of the queue.
+ * <p>
+ * A task is due at the first tick boundary not before its dead line, so it never runs early and runs late by less
+ * than a tick. Set the tick to the packetization interval and keep dead lines on its grid (see {@link #align})
+ * and every task lands exactly on a slot boundary. Periodic tasks, the ones with an
+ * {@link Task#interarrivalTime}, are queued again by {@link Scheduler} after each run one period later, which
+ * here is another O(1) insert.
+ * <p>
+ * Tasks are handed to the wheel through a lock free queue and collected from another one; only moving the wheel
+ * forward, once per tick, and removing a task take a lock.
+ */
+public class TimingWheel extends TaskQueue {
+
+    /**
+     * 1 ms, the resolution of the plain {@link TaskQueue} polling loop.
+     */
+    public final static long DEFAULT_TICK = 1000000L;
+
+    private final static int SLOT_BITS = 6;
+    private final static int SLOTS = 1 << SLOT_BITS;
+    private final static int MASK = SLOTS - 1;
+    private final static int LEVELS = 4;
+    private final static long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private final static long UNSET = Long.MIN_VALUE;
+
+    //tick length in nanoseconds
+    private final long tick;
+
+    //slots of all levels, each one a doubly linked list of tasks
+    private final Task[] slots = new Task[LEVELS * SLOTS];
+
+    //tasks queued since the last move of the wheel
+    private final ConcurrentLinkedQueue<Task> pending = new ConcurrentLinkedQueue<>();
+
+    //tasks due, waiting for a CPU thread
+    private final ConcurrentLinkedQueue<Task> ready = new ConcurrentLinkedQueue<>();
+
+    //guards the slots
+    private final ReentrantLock lock = new ReentrantLock();
+
+    //last tick expired
+    private volatile long current = UNSET;
+
+    //tasks held in the slots
+    private int scheduled;
+
+    private final LongAdder size = new LongAdder();
+
+    public TimingWheel() {
+        this(DEFAULT_TICK);
+    }
+
+    /**
+     * @param tick slot length in nanoseconds, the packetization interval for slot aligned media tasks
+     */
+    public TimingWheel(long tick) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("tick must be positive: " + tick);
+        }
+        this.tick = tick;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * First tick boundary at or after <code>time</code>, a dead line for a task to expire exactly on its slot.
+     */
+    public long align(long time) {
+        return expiry(time) * tick;
+    }
+
+    @Override
+    public Collection<Task> getTasks() {
+        List<Task> tasks = new ArrayList<>(ready);
+        lock.lock();
+        try {
+            tasks.addAll(pending);
+            for (Task head : slots) {
+                for (Task task = head; task != null; task = task.wheelNext) {
+                    tasks.add(task);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return tasks;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size.sum() == 0;
+    }
+
+    /**
+     * Queues specified task using tasks dead line time.
+     *
+     * @param task the task to be queued.
+     */
+    @Override
+    public void accept(Task task) {
+        size.increment();
+        pending.offer(task);
+    }
+
+    /**
+     * Start of the next tick if some task is queued, the wheel is not looked into.
+     */
+    @Override
+    public long getNextTaskDeadline() {
+        long now = current;
+        if (now == UNSET || isEmpty()) {
+            return 0;
+        }
+        return ready.isEmpty() ? (now + 1) * tick : now * tick;
+    }
+
+    /**
+     * Retrieves a task due at <code>time</code>, moving the wheel up to it first.
+     *
+     * @return a task whose dead line is not after <code>time</code> or null if there is none
+     */
+    @Override
+    public Task poll(long time) {
+        Task task = ready.poll();
+        if (task == null) {
+            long target = Math.floorDiv(time, tick);
+            if (target != current || !pending.isEmpty()) {
+                lock.lock();
+                try {
+                    advance(target);
+                } finally {
+                    lock.unlock();
+                }
+                task = ready.poll();
+            }
+        }
+        if (task != null) {
+            size.decrement();
+        }
+        return task;
+    }
+
+    /**
+     * Retrieves a task already found due by {@link #poll(long)}, the wheel is not moved.
+     *
+     * @return task due or null
+     */
+    @Override
+    public Task poll() {
+        Task task = ready.poll();
+        if (task != null) {
+            size.decrement();
+        }
+        return task;
+    }
+
+    @Override
+    public Task peek() {
+        return ready.peek();
+    }
+
+    @Override
+    public Object getMonitor() {
+        Task first = peek();
+        return first == null ? Integer.valueOf(0) : first;
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            for (int i = 0; i < slots.length; i++) {
+                Task task = slots[i];
+                while (task != null) {
+                    Task next = task.wheelNext;
+                    task.wheelPrev = task.wheelNext = null;
+                    task.wheelSlot = -1;
+                    task = next;
+                }
+                slots[i] = null;
+            }
+            scheduled = 0;
+            pending.clear();
+            ready.clear();
+            size.reset();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+    @Override
+    protected void remove(Task task) {
+        lock.lock();
+        try {
+            if (task.wheelSlot >= 0) {
+                unlink(task);
+                size.decrement();
+            } else if (pending.remove(task) || ready.remove(task)) {
+                size.decrement();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Expires every tick up to target. Called with the lock held.
+     */
+    private void advance(long target) {
+        if (current == UNSET) {
+            current = target;
+        }
+
+        Task task;
+        while ((task = pending.poll()) != null) {
+            schedule(task);
+        }
+
+        long now = current;
+        if (scheduled == 0 && target > now) {
+            //nothing to expire on the way
+            current = target;
+            return;
+        }
+
+        while (now < target) {
+            now++;
+            current = now;
+
+            //bring down the next slot of a level each time the level below wraps
+            for (int level = 1; level < LEVELS; level++) {
+                int shift = SLOT_BITS * level;
+                if ((now & ((1L << shift) - 1)) != 0) {
+                    break;
+                }
+                cascade(level * SLOTS + (int) ((now >> shift) & MASK));
+            }
+
+            int slot = (int) (now & MASK);
+            while ((task = slots[slot]) != null) {
+                unlink(task);
+                ready.offer(task);
+            }
+        }
+    }
+
+    private void cascade(int slot) {
+        Task task;
+        while ((task = slots[slot]) != null) {
+            unlink(task);
+            schedule(task);
+        }
+    }
+
+    /*
+     * Puts the task in the slot of its expiry tick, on the finest level that reaches it.
+     */
+    private void schedule(Task task) {
+        long due = expiry(task.getDeadLine());
+        long delta = due - current;
+        if (delta <= 0) {
+            ready.offer(task);
+            return;
+        }
+        if (delta >= SPAN) {
+            //beyond the wheel: park it in the farthest slot, it is placed again from there
+            due = current + SPAN - 1;
+            delta = SPAN - 1;
+        }
+
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        link(task, level * SLOTS + (int) ((due >> (SLOT_BITS * level)) & MASK));
+    }
+
+    private void link(Task task, int slot) {
+        Task head = slots[slot];
+        task.wheelPrev = null;
+        task.wheelNext = head;
+        if (head != null) {
+            head.wheelPrev = task;
+        }
+        slots[slot] = task;
+        task.wheelSlot = slot;
+        scheduled++;
+    }
+
+    private void unlink(Task task) {
+        Task prev = task.wheelPrev, next = task.wheelNext;
+        if (prev == null) {
+            slots[task.wheelSlot] = next;
+        } else {
+            prev.wheelNext = next;
+        }
+        if (next != null) {
+            next.wheelPrev = prev;
+        }
+        task.wheelPrev = task.wheelNext = null;
+        task.wheelSlot = -1;
+        scheduled--;
+    }
+
+    //first tick whose start is not before the time
+    private long expiry(long time) {
+        return -Math.floorDiv(-time, tick);
+    }
+
+    @Override
+    public String toString() {
+        return "TimingWheel[tick=" + tick + ", size=" + size() + "]";
+    }
+}